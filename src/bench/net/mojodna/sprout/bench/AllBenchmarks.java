@@ -0,0 +1,34 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+/**
+ * <p>Runs every benchmark; the default for <code>ant bench</code>.  Use
+ * <code>-Dbench.output=...</code> and <code>-Dbench.baseline=...</code> to
+ * check for regressions between releases.</p>
+ *
+ * @see Benchmark#report()
+ * @author Seth Fitzsimmons
+ */
+public class AllBenchmarks {
+    public static void main(final String[] args) throws Exception {
+        DispatchBenchmark.run();
+        RequestBenchmark.run();
+        ValidationBenchmark.run();
+        StartupBenchmark.run();
+        System.exit( Benchmark.report() ? 0 : 1 );
+    }
+}
@@ -0,0 +1,206 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * <p>Minimal micro-benchmark harness.  Each operation is run for a number of
+ * timed warmup iterations (to let the JIT settle) followed by a number of
+ * measured iterations; the average time per operation is reported.</p>
+ *
+ * <p>Iteration counts and lengths may be adjusted with the
+ * <code>bench.warmup</code>, <code>bench.iterations</code> and
+ * <code>bench.time</code> (milliseconds) system properties.</p>
+ *
+ * <p>To guard against regressions, results can be saved with
+ * <code>bench.output</code> (a file name) and compared against a previous
+ * run with <code>bench.baseline</code>; {@link #report()} fails if any
+ * operation became slower than <code>bench.tolerance</code> percent
+ * (10 by default).</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public final class Benchmark {
+    private static final int WARMUP = Integer.getInteger( "bench.warmup", 5 ).intValue();
+    private static final int ITERATIONS = Integer.getInteger( "bench.iterations", 5 ).intValue();
+    private static final long TIME = Long.getLong( "bench.time", 1000 ).longValue() * 1000000L;
+    private static final int BATCH = 1024;
+    private static final String OUTPUT = System.getProperty("bench.output");
+    private static final String BASELINE = System.getProperty("bench.baseline");
+    private static final double TOLERANCE = Double.parseDouble( System.getProperty( "bench.tolerance", "10" ) );
+
+    private static final Map<String,Double> results = new TreeMap<String,Double>();
+
+    /** Results are stored here so that the JIT can't discard them. */
+    private static Object sink;
+    private static volatile Object published;
+
+    /**
+     * A benchmarked operation.
+     */
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    private Benchmark() {}
+
+    /**
+     * Measures an operation and prints the result.
+     *
+     * @param name Label for the operation.
+     * @param op Operation to measure.
+     * @return Average nanoseconds per operation.
+     */
+    public static double measure(final String name, final Operation op) throws Exception {
+        for ( int i = 0; i < WARMUP; i++ )
+            iteration( op );
+
+        double total = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for ( int i = 0; i < ITERATIONS; i++ ) {
+            final double ns = iteration( op );
+            total += ns;
+            min = Math.min( min, ns );
+            max = Math.max( max, ns );
+        }
+
+        final double avg = total / ITERATIONS;
+        System.out.println( String.format( "%-48s %12.2f ns/op  [%.2f .. %.2f]", name, avg, min, max ) );
+        results.put( name, avg );
+        return avg;
+    }
+
+    /**
+     * Records and prints externally measured timings, e.g. of operations that
+     * are too expensive to run repeatedly in a tight loop.
+     *
+     * @param name Label for the operation.
+     * @param samples Durations, in nanoseconds.
+     * @return Average nanoseconds per operation.
+     */
+    public static double record(final String name, final long[] samples) {
+        double total = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for ( int i = 0; i < samples.length; i++ ) {
+            total += samples[i];
+            min = Math.min( min, samples[i] );
+            max = Math.max( max, samples[i] );
+        }
+
+        final double avg = total / samples.length;
+        System.out.println( String.format( "%-48s %12.2f ms     [%.2f .. %.2f]", name, avg / 1e6, min / 1e6, max / 1e6 ) );
+        results.put( name, avg );
+        return avg;
+    }
+
+    /**
+     * Number of measured iterations, for benchmarks that drive their own
+     * loops.
+     */
+    public static int getIterations() {
+        return ITERATIONS;
+    }
+
+    /**
+     * Number of warmup iterations, for benchmarks that drive their own loops.
+     */
+    public static int getWarmup() {
+        return WARMUP;
+    }
+
+    /**
+     * Saves results (if <code>bench.output</code> was set) and compares them
+     * with a baseline (if <code>bench.baseline</code> was set).
+     *
+     * @return Whether all operations were within tolerance of the baseline.
+     */
+    public static boolean report() throws IOException {
+        if ( null != OUTPUT ) {
+            final Properties props = new Properties();
+            for ( final Map.Entry<String,Double> result : results.entrySet() )
+                props.setProperty( result.getKey(), String.valueOf( result.getValue() ) );
+
+            final OutputStream out = new FileOutputStream( OUTPUT );
+            try {
+                props.store( out, "ns/op" );
+            }
+            finally {
+                out.close();
+            }
+        }
+
+        if ( null == BASELINE )
+            return true;
+
+        final Properties baseline = new Properties();
+        final InputStream in = new FileInputStream( new File( BASELINE ) );
+        try {
+            baseline.load( in );
+        }
+        finally {
+            in.close();
+        }
+
+        header("Comparison with " + BASELINE);
+        boolean ok = true;
+        for ( final Map.Entry<String,Double> result : results.entrySet() ) {
+            final String previous = baseline.getProperty( result.getKey() );
+            if ( null == previous )
+                continue;
+
+            final double change = ( result.getValue() / Double.parseDouble( previous ) - 1 ) * 100;
+            final boolean regressed = change > TOLERANCE;
+            System.out.println( String.format( "%-48s %+11.1f %%%s", result.getKey(), change, regressed ? "  REGRESSION" : "" ) );
+            ok &= !regressed;
+        }
+        return ok;
+    }
+
+    /**
+     * Prints a header for a group of measurements.
+     */
+    public static void header(final String title) {
+        System.out.println();
+        System.out.println( title );
+        System.out.println( title.replaceAll( ".", "-" ) );
+    }
+
+    private static double iteration(final Operation op) throws Exception {
+        long ops = 0;
+        final long start = System.nanoTime();
+        long elapsed;
+        do {
+            for ( int i = 0; i < BATCH; i++ )
+                sink = op.run();
+            ops += BATCH;
+            elapsed = System.nanoTime() - start;
+        } while ( elapsed < TIME );
+
+        published = sink;
+        return (double) elapsed / ops;
+    }
+}
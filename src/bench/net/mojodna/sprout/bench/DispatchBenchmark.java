@@ -0,0 +1,102 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+import java.lang.reflect.Method;
+
+import net.mojodna.sprout.SproutActionMapping;
+import net.mojodna.sprout.SproutInvoker;
+import net.mojodna.sprout.SproutInvokerFactory;
+import net.mojodna.sprout.action.ExampleAction;
+import net.mojodna.sprout.example.ExampleBean;
+
+import org.apache.struts.action.ActionForward;
+import org.apache.struts.action.ActionMapping;
+
+/**
+ * <p>Compares the cost of dispatching a request to a Sprout method by name
+ * (<code>MappingDispatchAction</code>'s lookup followed by
+ * <code>Method.invoke()</code>) with dispatching through a pre-bound
+ * <code>SproutInvoker</code>.</p>
+ *
+ * <p>Run with <code>ant bench -Dbench.class=net.mojodna.sprout.bench.DispatchBenchmark</code>.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class DispatchBenchmark {
+    public static void main(final String[] args) throws Exception {
+        run();
+        System.exit( Benchmark.report() ? 0 : 1 );
+    }
+
+    public static void run() throws Exception {
+        final ExampleAction action = new ExampleAction();
+        action.setExampleBean( new ExampleBean() );
+
+        final StubHttpServletRequest request = new StubHttpServletRequest("GET", "/greet.do");
+        final StubHttpServletResponse response = new StubHttpServletResponse();
+
+        // what Struts would have registered previously
+        final ActionMapping byName = new ActionMapping();
+        byName.setPath("/greet");
+        byName.setParameter("greet");
+        byName.addForwardConfig( forward() );
+
+        // what SproutAutoLoaderPlugIn registers now
+        final SproutActionMapping bound = new SproutActionMapping();
+        bound.setPath("/greet");
+        bound.setParameter("greet");
+        bound.addForwardConfig( forward() );
+        bound.setInvoker( SproutInvokerFactory.create( ExampleAction.class, "greet" ) );
+
+        final Method method = ExampleAction.class.getMethod( "greet", SproutInvokerFactory.PARAMETER_TYPES );
+        final SproutInvoker invoker = bound.getInvoker();
+
+        Benchmark.header("Sprout method dispatch");
+        Benchmark.measure( "direct call (baseline)", new Benchmark.Operation() {
+            public Object run() {
+                return action.greet( bound, null, request, response );
+            }
+        });
+        Benchmark.measure( "Method.invoke()", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                return method.invoke( action, bound, null, request, response );
+            }
+        });
+        Benchmark.measure( "SproutInvoker", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                return invoker.invoke( action, bound, null, request, response );
+            }
+        });
+        Benchmark.measure( "execute() via MappingDispatchAction", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                return action.execute( byName, null, request, response );
+            }
+        });
+        Benchmark.measure( "execute() via SproutActionMapping", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                return action.execute( bound, null, request, response );
+            }
+        });
+    }
+
+    private static ActionForward forward() {
+        final ActionForward fwd = new ActionForward();
+        fwd.setName( ExampleAction.FWD_SUCCESS );
+        fwd.setPath("/greet.jsp");
+        return fwd;
+    }
+}
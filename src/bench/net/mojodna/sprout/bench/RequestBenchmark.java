@@ -0,0 +1,296 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.mojodna.sprout.LazyForm;
+import net.mojodna.sprout.SproutActionMapping;
+import net.mojodna.sprout.SproutBody;
+import net.mojodna.sprout.SproutContext;
+import net.mojodna.sprout.SproutInvokerFactory;
+import net.mojodna.sprout.SproutRequestProcessor;
+import net.mojodna.sprout.action.ExampleAction;
+import net.mojodna.sprout.example.ExampleBean;
+import net.mojodna.sprout.json.JsonSerializer;
+import net.mojodna.sprout.json.JsonWriter;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.struts.action.Action;
+import org.apache.struts.action.ActionForm;
+import org.apache.struts.action.ActionForward;
+import org.apache.struts.action.ActionMapping;
+import org.apache.struts.action.ActionServlet;
+import org.apache.struts.action.DynaActionForm;
+import org.apache.struts.config.FormBeanConfig;
+import org.apache.struts.config.FormPropertyConfig;
+import org.apache.struts.config.ModuleConfig;
+import org.apache.struts.config.impl.ModuleConfigImpl;
+import org.apache.struts.util.RequestUtils;
+import org.apache.struts.validator.DynaValidatorForm;
+import org.apache.struts.validator.LazyValidatorForm;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+
+/**
+ * <p>Measures the in-process part of handling a request once Struts has
+ * selected a mapping and created the form:
+ * <code>SproutRequestProcessor.processActionPerform()</code>, which
+ * initializes the Sprout, dispatches to its method (which uses the
+ * <code>SproutContext</code> form accessors) and looks up the resulting
+ * forward.  The individual steps are also measured
+ * separately, as are populating the default form, streaming a download and
+ * writing JSON.</p>
+ *
+ * <p><code>ExampleAction</code> is used as the fixture, with a
+ * <code>ComplexForm</code> equivalent to the one in
+ * <code>struts-config.xml</code>.</p>
+ *
+ * <p>Run with <code>ant bench -Dbench.class=net.mojodna.sprout.bench.RequestBenchmark</code>.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class RequestBenchmark {
+    public static void main(final String[] args) throws Exception {
+        run();
+        System.exit( Benchmark.report() ? 0 : 1 );
+    }
+
+    public static void run() throws Exception {
+        final StubServletContext context = new StubServletContext();
+        final StaticWebApplicationContext wac = new StaticWebApplicationContext();
+        wac.setServletContext( context );
+        wac.refresh();
+        context.setAttribute( WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, wac );
+
+        // an ActionServlet that doesn't read struts-config.xml
+        final ActionServlet servlet = new ActionServlet() {
+            public void init() {}
+        };
+        servlet.init( context.getServletConfig("action") );
+
+        final ModuleConfig moduleConfig = new ModuleConfigImpl("");
+        final ActionMapping greet = mapping( moduleConfig, "greet" );
+        final ActionMapping complex = mapping( moduleConfig, "complexExample" );
+        moduleConfig.freeze();
+
+        final Processor processor = new Processor();
+        processor.init( servlet, moduleConfig );
+
+        final Fixture action = new Fixture();
+        action.setExampleBean( new ExampleBean() );
+        action.setServlet( servlet );
+
+        final FormBeanConfig fbc = new FormBeanConfig();
+        fbc.setName("ComplexForm");
+        fbc.setType( DynaValidatorForm.class.getName() );
+        fbc.addFormPropertyConfig( new FormPropertyConfig( "id", Integer.class.getName(), null ) );
+        fbc.addFormPropertyConfig( new FormPropertyConfig( "name", String.class.getName(), null ) );
+        fbc.addFormPropertyConfig( new FormPropertyConfig( "greeting", String.class.getName(), null ) );
+        final DynaActionForm form = (DynaActionForm) fbc.createActionForm( servlet );
+        form.set( "id", Integer.valueOf( 42 ) );
+        form.set( "name", "Seth" );
+
+        final StubHttpServletRequest request = new StubHttpServletRequest("GET", "/complex_example.do");
+        final StubHttpServletResponse response = new StubHttpServletResponse();
+
+        Benchmark.header("Request processing");
+        Benchmark.measure( "processActionPerform(): greet", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                return processor.perform( request, response, action, null, greet );
+            }
+        });
+        Benchmark.measure( "processActionPerform(): complexExample", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                return processor.perform( request, response, action, form, complex );
+            }
+        });
+        Benchmark.measure( "Sprout.init()", new Benchmark.Operation() {
+            public Object run() {
+                action.init( new SproutContext( complex, form, request, response ) );
+                return action;
+            }
+        });
+        Benchmark.measure( "f() + F() + s()", new Benchmark.Operation() {
+            public Object run() {
+                return action.accessForm();
+            }
+        });
+        final SproutContext sproutContext = new SproutContext( complex, form, request, response );
+        Benchmark.measure( "SproutContext f() + F() + s()", new Benchmark.Operation() {
+            public Object run() {
+                sproutContext.s( "greeting", "'Allo" );
+                return sproutContext.f("name") + sproutContext.F("id");
+            }
+        });
+        Benchmark.measure( "execute()", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                return action.execute( complex, form, request, response );
+            }
+        });
+        Benchmark.measure( "ActionMapping.findForward()", new Benchmark.Operation() {
+            public Object run() {
+                return complex.findForward( ExampleAction.FWD_SUCCESS );
+            }
+        });
+
+        // the default form, as populated from a typical form submission
+        final StubHttpServletRequest submission = new StubHttpServletRequest("POST", "/greet.do");
+        submission.setParameter( "name", "Seth" );
+        submission.setParameter( "greeting", "'Allo" );
+        submission.setParameter( "email", "seth@mojodna.net" );
+        submission.setParameter( "page", "2" );
+        submission.setParameter( "tags", new String[] { "a", "b" } );
+        submission.setParameter( "submit", "Save" );
+        Benchmark.measure( "populate LazyValidatorForm", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                final LazyValidatorForm lazy = new LazyValidatorForm();
+                RequestUtils.populate( lazy, null, null, submission );
+                return lazy;
+            }
+        });
+        final LazyForm pooled = new LazyForm();
+        Benchmark.measure( "populate LazyForm (recycled)", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                pooled.clear();
+                pooled.populate( submission, null, null );
+                return pooled;
+            }
+        });
+
+        // a 1MB download, read into the heap vs. streamed
+        final File download = File.createTempFile( "sprout-bench", ".bin" );
+        download.deleteOnExit();
+        final byte[] bytes = new byte[ 1 << 20 ];
+        new Random( 42 ).nextBytes( bytes );
+        final OutputStream out = new FileOutputStream( download );
+        try {
+            out.write( bytes );
+        }
+        finally {
+            out.close();
+        }
+        final StubHttpServletRequest get = new StubHttpServletRequest("GET", "/download.do");
+        final StubHttpServletResponse sink = new StubHttpServletResponse();
+        Benchmark.measure( "1MB download (read into byte[])", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                sink.resetBuffer();
+                final byte[] contents = Files.readAllBytes( download.toPath() );
+                sink.setContentLength( contents.length );
+                sink.getOutputStream().write( contents );
+                return sink;
+            }
+        });
+        Benchmark.measure( "1MB download (SproutBody)", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                sink.resetBuffer();
+                SproutBody.file( download, null ).send( get, sink );
+                return sink;
+            }
+        });
+
+        // a data object rendered as JSON the way a JSP would (by reflection, into a string) vs. by @Json
+        final Article article = new Article();
+        Benchmark.measure( "JSON (PropertyUtils + StringBuilder)", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                sink.resetBuffer();
+                final StringBuilder json = new StringBuilder("{");
+                for ( final Object o : PropertyUtils.describe( article ).entrySet() ) {
+                    final Map.Entry entry = (Map.Entry) o;
+                    if ( "class".equals( entry.getKey() ) )
+                        continue;
+                    if ( json.length() > 1 )
+                        json.append(',');
+                    json.append('"').append( entry.getKey() ).append("\":");
+                    final Object value = entry.getValue();
+                    if ( value instanceof String )
+                        json.append('"').append( ((String) value).replace( "\"", "\\\"" ) ).append('"');
+                    else
+                        json.append( value );
+                }
+                sink.getOutputStream().write( json.append('}').toString().getBytes("UTF-8") );
+                return sink;
+            }
+        });
+        Benchmark.measure( "JSON (@Json)", new Benchmark.Operation() {
+            public Object run() throws Exception {
+                sink.resetBuffer();
+                final JsonWriter out = new JsonWriter( sink.getOutputStream() );
+                JsonSerializer.writeValue( article, out );
+                out.flush();
+                return sink;
+            }
+        });
+    }
+
+    private static ActionMapping mapping(final ModuleConfig moduleConfig, final String method) throws NoSuchMethodException {
+        final SproutActionMapping mapping = new SproutActionMapping();
+        mapping.setPath( "/" + method );
+        mapping.setParameter( method );
+        mapping.setInvoker( SproutInvokerFactory.create( ExampleAction.class, method ) );
+
+        final ActionForward fwd = new ActionForward();
+        fwd.setName( ExampleAction.FWD_SUCCESS );
+        fwd.setPath( "/" + method + ".jsp" );
+        mapping.addForwardConfig( fwd );
+
+        mapping.setModuleConfig( moduleConfig );
+        moduleConfig.addActionConfig( mapping );
+        return mapping;
+    }
+
+    /**
+     * Typical data object returned by a <code>@Json</code> Sprout method.
+     */
+    public static class Article {
+        public long getId() { return 1234567L; }
+        public String getTitle() { return "Annotation-Powered Simplicity for Struts"; }
+        public String getAuthor() { return "Seth Fitzsimmons"; }
+        public int getComments() { return 17; }
+        public double getRating() { return 4.5; }
+        public boolean isPublished() { return true; }
+        public String getSummary() { return "Sprout makes \"Struts\" development quicker and more pleasant."; }
+    }
+
+    /**
+     * Exposes <code>processActionPerform()</code>.
+     */
+    private static class Processor extends SproutRequestProcessor {
+        ActionForward perform(final HttpServletRequest request, final HttpServletResponse response, final Action action, final ActionForm form, final ActionMapping mapping) throws IOException, ServletException {
+            return processActionPerform( request, response, action, form, mapping );
+        }
+    }
+
+    /**
+     * Exposes the deprecated (ThreadLocal-based) form accessors.
+     */
+    private static class Fixture extends ExampleAction {
+        Object accessForm() {
+            s( "greeting", "'Allo" );
+            return f("name") + F("id");
+        }
+    }
+}
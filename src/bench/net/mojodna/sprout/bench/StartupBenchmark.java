@@ -0,0 +1,267 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import net.mojodna.sprout.SproutAutoLoaderPlugIn;
+
+import org.apache.struts.action.ActionServlet;
+import org.apache.struts.config.ModuleConfig;
+import org.apache.struts.config.impl.ModuleConfigImpl;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * <p>Measures application startup with a large, synthetic set of actions.
+ * Thousands of Sprouts and <code>@SproutAction</code>s are generated and
+ * compiled, after which the following are timed repeatedly:
+ * <ul>
+ *   <li><em>alias registration</em>: refreshing a Spring context containing
+ *       the Sprouts (which register their aliases in
+ *       <code>Sprout.setBeanFactory()</code>), and</li>
+ *   <li><code>SproutAutoLoaderPlugIn</code> initialization, broken down into
+ *       the phases reported by
+ *       {@link SproutAutoLoaderPlugIn#getPhaseTimes()}.</li>
+ * </ul></p>
+ *
+ * <p>The size of the application can be adjusted with the
+ * <code>bench.sprouts</code>, <code>bench.methods</code> (per Sprout) and
+ * <code>bench.actions</code> system properties.  Set
+ * <code>bench.parallel</code> to <em>true</em> to load Sprouts in parallel
+ * (see {@link SproutAutoLoaderPlugIn#setParallel(boolean)}) and
+ * <code>bench.index</code> to <em>true</em> to let every boot after the first
+ * reuse the route index (see {@link SproutAutoLoaderPlugIn#setIndex(boolean)}).</p>
+ *
+ * <p>Run with <code>ant bench -Dbench.class=net.mojodna.sprout.bench.StartupBenchmark</code>.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class StartupBenchmark {
+    private static final int SPROUTS = Integer.getInteger( "bench.sprouts", 2000 ).intValue();
+    private static final int METHODS = Integer.getInteger( "bench.methods", 5 ).intValue();
+    private static final int ACTIONS = Integer.getInteger( "bench.actions", 2000 ).intValue();
+    private static final boolean PARALLEL = Boolean.getBoolean("bench.parallel");
+    /** Whether boots after the first may reuse the route index. */
+    private static final boolean INDEX = Boolean.getBoolean("bench.index");
+    /** Number of generated @SproutActions per package. */
+    private static final int PACKAGE_SIZE = 50;
+    private static final String PACKAGE = "net.mojodna.sprout.bench.generated";
+
+    public static void main(final String[] args) throws Exception {
+        run();
+        System.exit( Benchmark.report() ? 0 : 1 );
+    }
+
+    public static void run() throws Exception {
+        final File dir = File.createTempFile( "sprout-bench", "" );
+        dir.delete();
+        try {
+            final List<String> sprouts = new ArrayList<String>();
+            final File classes = generate( dir, sprouts );
+            final ClassLoader loader = new URLClassLoader( new URL[] { classes.toURI().toURL() }, StartupBenchmark.class.getClassLoader() );
+
+            final Map<String,long[]> timings = new LinkedHashMap<String,long[]>();
+            final int iterations = Benchmark.getIterations();
+            for ( int i = -Benchmark.getWarmup(); i < iterations; i++ )
+                boot( loader, sprouts, timings, i, INDEX ? new File( dir, "tmp" ) : null );
+
+            Benchmark.header("Startup with " + SPROUTS + " Sprouts (" + SPROUTS * ( METHODS + 1 ) + " methods) and " + ACTIONS + " @SproutActions" + ( PARALLEL ? " (parallel)" : "" ) + ( INDEX ? " (indexed)" : "" ) );
+            for ( final Map.Entry<String,long[]> timing : timings.entrySet() )
+                Benchmark.record( "startup: " + timing.getKey(), timing.getValue() );
+        }
+        finally {
+            delete( dir );
+        }
+    }
+
+    /**
+     * Starts the application once.
+     *
+     * @param iteration Iteration number; timings are discarded for warmup
+     * (negative) iterations.
+     * @param tmp Temporary directory for the route index, or null.
+     */
+    private static void boot(final ClassLoader loader, final List<String> sprouts, final Map<String,long[]> timings, final int iteration, final File tmp) throws Exception {
+        final StubServletContext context = new StubServletContext();
+        if ( null != tmp ) {
+            tmp.mkdirs();
+            context.setAttribute( WebUtils.TEMP_DIR_CONTEXT_ATTRIBUTE, tmp );
+        }
+
+        // root context, which is where Sprouts register their aliases
+        final StaticWebApplicationContext root = new StaticWebApplicationContext();
+        root.setServletContext( context );
+        root.setClassLoader( loader );
+        for ( final String sprout : sprouts )
+            root.registerSingleton( sprout, loader.loadClass( sprout ) );
+
+        long start = System.nanoTime();
+        root.refresh();
+        record( timings, "alias registration", iteration, System.nanoTime() - start );
+        context.setAttribute( WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, root );
+
+        final ActionServlet servlet = new ActionServlet() {
+            public void init() {}
+        };
+        servlet.init( context.getServletConfig("action") );
+
+        final ModuleConfig moduleConfig = new ModuleConfigImpl("");
+        final SproutAutoLoaderPlugIn plugIn = new SproutAutoLoaderPlugIn();
+        plugIn.setContextClass( StaticWebApplicationContext.class );
+        plugIn.setParallel( PARALLEL );
+
+        // the plug-in scans the context class loader
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader( loader );
+        try {
+            start = System.nanoTime();
+            plugIn.init( servlet, moduleConfig );
+            record( timings, "plug-in", iteration, System.nanoTime() - start );
+        }
+        finally {
+            thread.setContextClassLoader( previous );
+        }
+
+        for ( final Map.Entry<String,Long> phase : plugIn.getPhaseTimes().entrySet() )
+            record( timings, "plug-in " + phase.getKey(), iteration, phase.getValue() );
+
+        final int expected = SPROUTS * ( METHODS + 1 ) + ACTIONS;
+        if ( moduleConfig.findActionConfigs().length < expected )
+            throw new IllegalStateException( "Expected " + expected + " actions; found " + moduleConfig.findActionConfigs().length );
+
+        plugIn.destroy();
+        root.close();
+    }
+
+    private static void record(final Map<String,long[]> timings, final String name, final int iteration, final long nanos) {
+        if ( iteration < 0 )
+            return;
+
+        long[] samples = timings.get( name );
+        if ( null == samples ) {
+            samples = new long[ Benchmark.getIterations() ];
+            timings.put( name, samples );
+        }
+        samples[ iteration ] = nanos;
+    }
+
+    /**
+     * Generates and compiles Sprouts and <code>@SproutAction</code>s.
+     *
+     * @param dir Working directory.
+     * @param sprouts List to add the names of generated Sprouts to.
+     * @return Directory containing compiled classes.
+     */
+    private static File generate(final File dir, final List<String> sprouts) throws IOException {
+        final File src = new File( dir, "src" );
+        final File classes = new File( dir, "classes" );
+        classes.mkdirs();
+
+        final List<File> files = new ArrayList<File>();
+        for ( int i = 0; i < SPROUTS; i++ ) {
+            // one Sprout per package, as each registers /<package>/index
+            final String pkg = PACKAGE + ".action.c" + i;
+            final String name = "Sprout" + i;
+            final StringBuilder sb = new StringBuilder();
+            sb.append("package ").append( pkg ).append(";\n\n");
+            sb.append("import javax.servlet.http.*;\n");
+            sb.append("import org.apache.struts.action.*;\n\n");
+            sb.append("public class ").append( name ).append(" extends net.mojodna.sprout.Sprout {\n");
+            for ( int j = 0; j < METHODS; j++ ) {
+                if ( 0 == j )
+                    sb.append("    @Forward(name=\"failure\", path=\"/failure.do\", redirect=true)\n");
+                else if ( 1 == j )
+                    sb.append("    @Validate\n");
+                sb.append("    public ActionForward someMethod").append( j );
+                sb.append("(ActionMapping mapping, ActionForm form, HttpServletRequest request, HttpServletResponse response) {\n");
+                sb.append("        return mapping.findForward( FWD_SUCCESS );\n");
+                sb.append("    }\n");
+            }
+            sb.append("}\n");
+            files.add( write( src, pkg, name, sb ) );
+            sprouts.add( pkg + "." + name );
+        }
+
+        for ( int i = 0; i < ACTIONS; i++ ) {
+            final String pkg = PACKAGE + ".actions.p" + i / PACKAGE_SIZE;
+            final String name = "Action" + i;
+            final StringBuilder sb = new StringBuilder();
+            sb.append("package ").append( pkg ).append(";\n\n");
+            sb.append("import net.mojodna.sprout.annotation.*;\n\n");
+            sb.append("@SproutAction(path=\"/generated/p").append( i / PACKAGE_SIZE ).append("/action").append( i ).append("\",\n");
+            sb.append("    forwards={ @SproutForward(name=\"success\", path=\"/action").append( i ).append(".jsp\") })\n");
+            sb.append("public class ").append( name ).append(" extends org.apache.struts.action.Action {}\n");
+            files.add( write( src, pkg, name, sb ) );
+        }
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if ( null == compiler )
+            throw new IllegalStateException("A JDK is required to generate classes.");
+
+        final StandardJavaFileManager fm = compiler.getStandardFileManager( null, null, null );
+        try {
+            final List<String> options = Arrays.asList( "-proc:none", "-nowarn",
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-d", classes.getPath() );
+            if ( !compiler.getTask( null, fm, null, options, null, fm.getJavaFileObjectsFromFiles( files ) ).call() )
+                throw new IllegalStateException("Unable to compile generated classes.");
+        }
+        finally {
+            fm.close();
+        }
+        return classes;
+    }
+
+    private static File write(final File src, final String pkg, final String name, final CharSequence source) throws IOException {
+        final File dir = new File( src, pkg.replace('.', File.separatorChar) );
+        dir.mkdirs();
+        final File file = new File( dir, name + ".java" );
+        final Writer out = new FileWriter( file );
+        try {
+            out.write( source.toString() );
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if ( null != children ) {
+            for ( int i = 0; i < children.length; i++ )
+                delete( children[i] );
+        }
+        file.delete();
+    }
+}
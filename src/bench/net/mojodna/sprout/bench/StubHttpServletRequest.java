@@ -0,0 +1,148 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * In-memory stand-in for a container-provided request.
+ *
+ * @author Seth Fitzsimmons
+ */
+public class StubHttpServletRequest implements HttpServletRequest {
+    private final Map<String,Object> attributes = new HashMap<String,Object>();
+    private final Map<String,String[]> parameters = new HashMap<String,String[]>();
+    private final Map<String,String> headers = new HashMap<String,String>();
+    private String method = "GET";
+    private String contextPath = "";
+    private String servletPath = "";
+    private String pathInfo;
+    private String queryString;
+    private Cookie[] cookies;
+    private StubHttpSession session;
+
+    public StubHttpServletRequest() {}
+
+    public StubHttpServletRequest(final String method, final String servletPath) {
+        this.method = method;
+        this.servletPath = servletPath;
+    }
+
+    /**
+     * Clears per-request state so that the stub may be reused.
+     */
+    public void reset() {
+        attributes.clear();
+    }
+
+    public void setMethod(final String method) { this.method = method; }
+    public void setContextPath(final String contextPath) { this.contextPath = contextPath; }
+    public void setServletPath(final String servletPath) { this.servletPath = servletPath; }
+    public void setPathInfo(final String pathInfo) { this.pathInfo = pathInfo; }
+    public void setQueryString(final String queryString) { this.queryString = queryString; }
+    public void setCookies(final Cookie[] cookies) { this.cookies = cookies; }
+    public void setHeader(final String name, final String value) { headers.put( name.toLowerCase(), value ); }
+    public void setParameter(final String name, final String value) { parameters.put( name, new String[] { value } ); }
+    public void setParameter(final String name, final String[] values) { parameters.put( name, values ); }
+
+    // ServletRequest
+
+    public Object getAttribute(final String name) { return attributes.get( name ); }
+    public Enumeration getAttributeNames() { return Collections.enumeration( attributes.keySet() ); }
+    public String getCharacterEncoding() { return "UTF-8"; }
+    public void setCharacterEncoding(final String env) {}
+    public int getContentLength() { return -1; }
+    public String getContentType() { return null; }
+    public ServletInputStream getInputStream() { throw new UnsupportedOperationException(); }
+    public String getParameter(final String name) {
+        final String[] values = parameters.get( name );
+        return null == values || 0 == values.length ? null : values[0];
+    }
+    public Enumeration getParameterNames() { return Collections.enumeration( parameters.keySet() ); }
+    public String[] getParameterValues(final String name) { return parameters.get( name ); }
+    public Map getParameterMap() { return parameters; }
+    public String getProtocol() { return "HTTP/1.1"; }
+    public String getScheme() { return "http"; }
+    public String getServerName() { return "localhost"; }
+    public int getServerPort() { return 80; }
+    public BufferedReader getReader() { return new BufferedReader( new StringReader("") ); }
+    public String getRemoteAddr() { return "127.0.0.1"; }
+    public String getRemoteHost() { return "localhost"; }
+    public void setAttribute(final String name, final Object o) {
+        if ( null == o )
+            attributes.remove( name );
+        else
+            attributes.put( name, o );
+    }
+    public void removeAttribute(final String name) { attributes.remove( name ); }
+    public Locale getLocale() { return Locale.US; }
+    public Enumeration getLocales() { return Collections.enumeration( Collections.singleton( Locale.US ) ); }
+    public boolean isSecure() { return false; }
+    public RequestDispatcher getRequestDispatcher(final String path) { return null; }
+    public String getRealPath(final String path) { return null; }
+    public int getRemotePort() { return 1024; }
+    public String getLocalName() { return "localhost"; }
+    public String getLocalAddr() { return "127.0.0.1"; }
+    public int getLocalPort() { return 80; }
+
+    // HttpServletRequest
+
+    public String getAuthType() { return null; }
+    public Cookie[] getCookies() { return cookies; }
+    public long getDateHeader(final String name) { return -1; }
+    public String getHeader(final String name) { return headers.get( name.toLowerCase() ); }
+    public Enumeration getHeaders(final String name) {
+        final String value = getHeader( name );
+        return Collections.enumeration( null == value ? Collections.<String>emptySet() : Collections.singleton( value ) );
+    }
+    public Enumeration getHeaderNames() { return Collections.enumeration( headers.keySet() ); }
+    public int getIntHeader(final String name) { return null == getHeader( name ) ? -1 : Integer.parseInt( getHeader( name ) ); }
+    public String getMethod() { return method; }
+    public String getPathInfo() { return pathInfo; }
+    public String getPathTranslated() { return null; }
+    public String getContextPath() { return contextPath; }
+    public String getQueryString() { return queryString; }
+    public String getRemoteUser() { return null; }
+    public boolean isUserInRole(final String role) { return false; }
+    public Principal getUserPrincipal() { return null; }
+    public String getRequestedSessionId() { return null; }
+    public String getRequestURI() { return contextPath + servletPath + ( null == pathInfo ? "" : pathInfo ); }
+    public StringBuffer getRequestURL() { return new StringBuffer("http://localhost").append( getRequestURI() ); }
+    public String getServletPath() { return servletPath; }
+    public HttpSession getSession(final boolean create) {
+        if ( null == session && create )
+            session = new StubHttpSession();
+        return session;
+    }
+    public HttpSession getSession() { return getSession( true ); }
+    public boolean isRequestedSessionIdValid() { return false; }
+    public boolean isRequestedSessionIdFromCookie() { return false; }
+    public boolean isRequestedSessionIdFromURL() { return false; }
+    public boolean isRequestedSessionIdFromUrl() { return false; }
+}
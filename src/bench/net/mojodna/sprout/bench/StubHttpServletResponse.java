@@ -0,0 +1,111 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * In-memory stand-in for a container-provided response.  Output is
+ * buffered and may be inspected or discarded with {@link #reset()}.
+ *
+ * @author Seth Fitzsimmons
+ */
+public class StubHttpServletResponse implements HttpServletResponse {
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final Map<String,String> headers = new HashMap<String,String>();
+    private final ServletOutputStream out = new ServletOutputStream() {
+        public void write(final int b) {
+            body.write( b );
+        }
+        public void write(final byte[] b, final int off, final int len) {
+            body.write( b, off, len );
+        }
+    };
+    private PrintWriter writer;
+    private int status = SC_OK;
+    private String redirect;
+    private String contentType;
+    private boolean committed;
+
+    public int getStatus() { return status; }
+    public String getRedirect() { return redirect; }
+    public String getHeader(final String name) { return headers.get( name.toLowerCase() ); }
+    public byte[] getBody() {
+        if ( null != writer )
+            writer.flush();
+        return body.toByteArray();
+    }
+
+    // ServletResponse
+
+    public String getCharacterEncoding() { return "UTF-8"; }
+    public String getContentType() { return contentType; }
+    public ServletOutputStream getOutputStream() { return out; }
+    public PrintWriter getWriter() throws UnsupportedEncodingException {
+        if ( null == writer )
+            writer = new PrintWriter( new OutputStreamWriter( out, "UTF-8" ) );
+        return writer;
+    }
+    public void setCharacterEncoding(final String charset) {}
+    public void setContentLength(final int len) { setIntHeader( "Content-Length", len ); }
+    public void setContentType(final String type) { this.contentType = type; }
+    public void setBufferSize(final int size) {}
+    public int getBufferSize() { return 0; }
+    public void flushBuffer() { committed = true; }
+    public void resetBuffer() { body.reset(); }
+    public boolean isCommitted() { return committed; }
+    public void reset() {
+        body.reset();
+        headers.clear();
+        writer = null;
+        status = SC_OK;
+        redirect = null;
+        contentType = null;
+        committed = false;
+    }
+    public void setLocale(final Locale loc) {}
+    public Locale getLocale() { return Locale.US; }
+
+    // HttpServletResponse
+
+    public void addCookie(final Cookie cookie) { headers.put( "set-cookie", cookie.getName() + "=" + cookie.getValue() ); }
+    public boolean containsHeader(final String name) { return headers.containsKey( name.toLowerCase() ); }
+    public String encodeURL(final String url) { return url; }
+    public String encodeRedirectURL(final String url) { return url; }
+    public String encodeUrl(final String url) { return url; }
+    public String encodeRedirectUrl(final String url) { return url; }
+    public void sendError(final int sc, final String msg) { sendError( sc ); }
+    public void sendError(final int sc) { status = sc; committed = true; }
+    public void sendRedirect(final String location) { status = SC_MOVED_TEMPORARILY; redirect = location; committed = true; }
+    public void setDateHeader(final String name, final long date) { setHeader( name, String.valueOf( date ) ); }
+    public void addDateHeader(final String name, final long date) { setDateHeader( name, date ); }
+    public void setHeader(final String name, final String value) { headers.put( name.toLowerCase(), value ); }
+    public void addHeader(final String name, final String value) { setHeader( name, value ); }
+    public void setIntHeader(final String name, final int value) { setHeader( name, String.valueOf( value ) ); }
+    public void addIntHeader(final String name, final int value) { setIntHeader( name, value ); }
+    public void setStatus(final int sc) { status = sc; }
+    public void setStatus(final int sc, final String sm) { status = sc; }
+}
@@ -0,0 +1,58 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionContext;
+
+/**
+ * In-memory stand-in for a container-provided session.
+ *
+ * @author Seth Fitzsimmons
+ */
+public class StubHttpSession implements HttpSession {
+    private final Map<String,Object> attributes = new HashMap<String,Object>();
+    private final long created = System.currentTimeMillis();
+
+    public long getCreationTime() { return created; }
+    public String getId() { return Integer.toHexString( System.identityHashCode( this ) ); }
+    public long getLastAccessedTime() { return created; }
+    public ServletContext getServletContext() { return null; }
+    public void setMaxInactiveInterval(final int interval) {}
+    public int getMaxInactiveInterval() { return -1; }
+    public HttpSessionContext getSessionContext() { return null; }
+    public Object getAttribute(final String name) { return attributes.get( name ); }
+    public Object getValue(final String name) { return getAttribute( name ); }
+    public Enumeration getAttributeNames() { return Collections.enumeration( attributes.keySet() ); }
+    public String[] getValueNames() { return attributes.keySet().toArray( new String[ attributes.size() ] ); }
+    public void setAttribute(final String name, final Object value) {
+        if ( null == value )
+            attributes.remove( name );
+        else
+            attributes.put( name, value );
+    }
+    public void putValue(final String name, final Object value) { setAttribute( name, value ); }
+    public void removeAttribute(final String name) { attributes.remove( name ); }
+    public void removeValue(final String name) { removeAttribute( name ); }
+    public void invalidate() { attributes.clear(); }
+    public boolean isNew() { return false; }
+}
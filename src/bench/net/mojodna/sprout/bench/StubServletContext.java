@@ -0,0 +1,84 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.Servlet;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * In-memory stand-in for a container-provided servlet context.  Resources,
+ * dispatchers and other servlets are unavailable.
+ *
+ * @author Seth Fitzsimmons
+ */
+public class StubServletContext implements ServletContext {
+    private final Map<String,Object> attributes = new HashMap<String,Object>();
+    private final Map<String,String> parameters = new HashMap<String,String>();
+
+    /**
+     * Creates a configuration for a servlet running in this context.
+     */
+    public ServletConfig getServletConfig(final String servletName) {
+        return new ServletConfig() {
+            public String getServletName() { return servletName; }
+            public ServletContext getServletContext() { return StubServletContext.this; }
+            public String getInitParameter(final String name) { return null; }
+            public Enumeration getInitParameterNames() { return Collections.enumeration( Collections.<String>emptySet() ); }
+        };
+    }
+
+    public void setInitParameter(final String name, final String value) { parameters.put( name, value ); }
+
+    public ServletContext getContext(final String uripath) { return null; }
+    public int getMajorVersion() { return 2; }
+    public int getMinorVersion() { return 4; }
+    public String getMimeType(final String file) { return null; }
+    public Set getResourcePaths(final String path) { return null; }
+    public URL getResource(final String path) { return null; }
+    public InputStream getResourceAsStream(final String path) { return null; }
+    public RequestDispatcher getRequestDispatcher(final String path) { return null; }
+    public RequestDispatcher getNamedDispatcher(final String name) { return null; }
+    public Servlet getServlet(final String name) { return null; }
+    public Enumeration getServlets() { return Collections.enumeration( Collections.emptySet() ); }
+    public Enumeration getServletNames() { return Collections.enumeration( Collections.emptySet() ); }
+    public void log(final String msg) {}
+    public void log(final Exception exception, final String msg) {}
+    public void log(final String message, final Throwable throwable) {}
+    public String getRealPath(final String path) { return null; }
+    public String getServerInfo() { return "sprout-bench"; }
+    public String getInitParameter(final String name) { return parameters.get( name ); }
+    public Enumeration getInitParameterNames() { return Collections.enumeration( parameters.keySet() ); }
+    public Object getAttribute(final String name) { return attributes.get( name ); }
+    public Enumeration getAttributeNames() { return Collections.enumeration( attributes.keySet() ); }
+    public void setAttribute(final String name, final Object object) {
+        if ( null == object )
+            attributes.remove( name );
+        else
+            attributes.put( name, object );
+    }
+    public void removeAttribute(final String name) { attributes.remove( name ); }
+    public String getServletContextName() { return "sprout-bench"; }
+}
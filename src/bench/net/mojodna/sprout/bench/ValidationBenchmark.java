@@ -0,0 +1,164 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Locale;
+
+import net.mojodna.sprout.validation.CompiledValidator;
+import net.mojodna.sprout.validation.ValidatorCompiler;
+
+import org.apache.commons.validator.ValidatorResources;
+import org.apache.struts.Globals;
+import org.apache.struts.action.ActionMapping;
+import org.apache.struts.action.ActionServlet;
+import org.apache.struts.action.DynaActionForm;
+import org.apache.struts.config.FormBeanConfig;
+import org.apache.struts.config.FormPropertyConfig;
+import org.apache.struts.config.ModuleConfig;
+import org.apache.struts.config.impl.ModuleConfigImpl;
+import org.apache.struts.util.MessageResources;
+import org.apache.struts.validator.DynaValidatorForm;
+import org.apache.struts.validator.ValidatorPlugIn;
+
+/**
+ * <p>Compares validating a form with commons-validator
+ * (<code>DynaValidatorForm.validate()</code>) against validating it with
+ * the rules precompiled by <code>ValidatorCompiler</code>, for both a valid
+ * and an invalid submission.</p>
+ *
+ * <p>The rules come from <em>src/web/WEB-INF/validator-rules.xml</em>; the
+ * form is defined here and has five fields with two or three rules
+ * each.</p>
+ *
+ * <p>Run with <code>ant bench -Dbench.class=net.mojodna.sprout.bench.ValidationBenchmark</code>.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class ValidationBenchmark {
+    private static final String RULES = "src/web/WEB-INF/validator-rules.xml";
+    private static final String FORMS =
+        "<!DOCTYPE form-validation PUBLIC \"-//Apache Software Foundation//DTD Commons Validator Rules Configuration 1.1.3//EN\" " +
+        "\"http://jakarta.apache.org/commons/dtds/validator_1_1_3.dtd\">" +
+        "<form-validation><formset><form name=\"SignupForm\">" +
+        "<field property=\"name\" depends=\"required,maxlength\">" +
+        "<arg0 key=\"Name\" resource=\"false\" /><arg1 name=\"maxlength\" key=\"${var:maxlength}\" resource=\"false\" />" +
+        "<var><var-name>maxlength</var-name><var-value>40</var-value></var></field>" +
+        "<field property=\"age\" depends=\"required,integer,intRange\">" +
+        "<arg0 key=\"Age\" resource=\"false\" /><arg1 name=\"intRange\" key=\"${var:min}\" resource=\"false\" /><arg2 name=\"intRange\" key=\"${var:max}\" resource=\"false\" />" +
+        "<var><var-name>min</var-name><var-value>13</var-value></var><var><var-name>max</var-name><var-value>120</var-value></var></field>" +
+        "<field property=\"nickname\" depends=\"minlength,maxlength\">" +
+        "<arg0 key=\"Nickname\" resource=\"false\" /><arg1 name=\"minlength\" key=\"${var:minlength}\" resource=\"false\" /><arg1 name=\"maxlength\" key=\"${var:maxlength}\" resource=\"false\" />" +
+        "<var><var-name>minlength</var-name><var-value>3</var-value></var><var><var-name>maxlength</var-name><var-value>20</var-value></var></field>" +
+        "<field property=\"password\" depends=\"required,minlength\">" +
+        "<arg0 key=\"Password\" resource=\"false\" /><arg1 name=\"minlength\" key=\"${var:minlength}\" resource=\"false\" />" +
+        "<var><var-name>minlength</var-name><var-value>8</var-value></var></field>" +
+        "<field property=\"score\" depends=\"double,floatRange\">" +
+        "<arg0 key=\"Score\" resource=\"false\" /><arg1 name=\"floatRange\" key=\"${var:min}\" resource=\"false\" /><arg2 name=\"floatRange\" key=\"${var:max}\" resource=\"false\" />" +
+        "<var><var-name>min</var-name><var-value>0</var-value></var><var><var-name>max</var-name><var-value>100</var-value></var></field>" +
+        "</form></formset></form-validation>";
+    private static final String[] PROPERTIES = { "name", "age", "nickname", "password", "score" };
+
+    public static void main(final String[] args) throws Exception {
+        run();
+        System.exit( Benchmark.report() ? 0 : 1 );
+    }
+
+    public static void run() throws Exception {
+        final InputStream rules = new FileInputStream( RULES );
+        final ValidatorResources resources;
+        try {
+            resources = new ValidatorResources( new InputStream[] { rules, new ByteArrayInputStream( FORMS.getBytes("UTF-8") ) } );
+        }
+        finally {
+            rules.close();
+        }
+
+        final StubServletContext context = new StubServletContext();
+        context.setAttribute( ValidatorPlugIn.VALIDATOR_KEY, resources );
+
+        // an ActionServlet that doesn't read struts-config.xml
+        final ActionServlet servlet = new ActionServlet() {
+            public void init() {}
+        };
+        servlet.init( context.getServletConfig("action") );
+
+        final ModuleConfig moduleConfig = new ModuleConfigImpl("");
+        final ActionMapping mapping = new ActionMapping();
+        mapping.setPath("/signup");
+        mapping.setName("SignupForm");
+        mapping.setValidate( true );
+        mapping.setModuleConfig( moduleConfig );
+        moduleConfig.addActionConfig( mapping );
+        moduleConfig.freeze();
+
+        final FormBeanConfig fbc = new FormBeanConfig();
+        fbc.setName("SignupForm");
+        fbc.setType( DynaValidatorForm.class.getName() );
+        for ( int i = 0; i < PROPERTIES.length; i++ )
+            fbc.addFormPropertyConfig( new FormPropertyConfig( PROPERTIES[i], String.class.getName(), null ) );
+
+        final DynaActionForm valid = (DynaActionForm) fbc.createActionForm( servlet );
+        valid.set( "name", "Seth" );
+        valid.set( "age", "29" );
+        valid.set( "nickname", "mojodna" );
+        valid.set( "password", "correct horse" );
+        valid.set( "score", "87.5" );
+
+        final DynaActionForm invalid = (DynaActionForm) fbc.createActionForm( servlet );
+        invalid.set( "name", "" );
+        invalid.set( "age", "7" );
+        invalid.set( "nickname", "s" );
+        invalid.set( "password", "hunter2" );
+        invalid.set( "score", "abc" );
+
+        final StubHttpServletRequest request = new StubHttpServletRequest("POST", "/signup.do");
+        request.setAttribute( Globals.MODULE_KEY, moduleConfig );
+        // any bundle will do; messages are only resolved when rendered
+        request.setAttribute( Globals.MESSAGES_KEY, MessageResources.getMessageResources("org.apache.struts.action.ActionResources") );
+
+        final CompiledValidator compiled = new ValidatorCompiler( resources ).getValidator( "SignupForm", Locale.US );
+
+        Benchmark.header("Validation");
+        Benchmark.measure( "commons-validator (valid)", new Benchmark.Operation() {
+            public Object run() {
+                return ((DynaValidatorForm) valid).validate( mapping, request );
+            }
+        });
+        Benchmark.measure( "precompiled (valid)", new Benchmark.Operation() {
+            public Object run() {
+                return compiled.validate( valid, 0, context, request, false );
+            }
+        });
+        Benchmark.measure( "commons-validator (invalid)", new Benchmark.Operation() {
+            public Object run() {
+                return ((DynaValidatorForm) invalid).validate( mapping, request );
+            }
+        });
+        Benchmark.measure( "precompiled (invalid)", new Benchmark.Operation() {
+            public Object run() {
+                return compiled.validate( invalid, 0, context, request, false );
+            }
+        });
+        Benchmark.measure( "precompiled (invalid, fail fast)", new Benchmark.Operation() {
+            public Object run() {
+                return compiled.validate( invalid, 0, context, request, true );
+            }
+        });
+    }
+}
@@ -0,0 +1,63 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.struts.action.ActionForm;
+import org.apache.struts.action.ActionForward;
+import org.apache.struts.action.ActionMapping;
+
+/**
+ * <p>Placeholder returned (in place of a real forward) by invokers for
+ * Sprout methods that return <code>CompletableFuture&lt;ActionForward&gt;</code>.
+ * <code>SproutRequestProcessor</code> processes the actual forward once the
+ * future completes.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+final class AsyncForward extends ActionForward {
+    private final CompletableFuture<ActionForward> future;
+    private transient ActionMapping mapping;
+    private transient ActionForm form;
+
+    AsyncForward(final CompletableFuture<ActionForward> future) {
+        this.future = future;
+    }
+
+    /**
+     * Future forward; may be null if the Sprout method returned null.
+     */
+    CompletableFuture<ActionForward> getFuture() {
+        return future;
+    }
+
+    /**
+     * Mapping the forward was produced by, for use when handling exceptions.
+     */
+    ActionMapping getMapping() {
+        return mapping;
+    }
+
+    ActionForm getForm() {
+        return form;
+    }
+
+    void bind(final ActionMapping mapping, final ActionForm form) {
+        this.mapping = mapping;
+        this.form = form;
+    }
+}
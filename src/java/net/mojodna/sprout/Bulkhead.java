@@ -0,0 +1,105 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Concurrency limit for a single action path, declared with
+ * <code>@SproutBulkhead</code>.  Bulkheads are created by
+ * <code>SproutAutoLoaderPlugIn</code>, stored in the servlet context under
+ * {@link #BULKHEADS_KEY} followed by the module prefix (as a map keyed by
+ * path) and enforced by <code>SproutRequestProcessor</code>.</p>
+ *
+ * <p>Permits are taken without locking; only requests that find none left
+ * and are allowed to wait for one park.</p>
+ *
+ * @see net.mojodna.sprout.annotation.SproutBulkhead
+ * @author Seth Fitzsimmons
+ */
+public class Bulkhead {
+    /** Servlet context attribute (suffixed with the module prefix) holding bulkheads by path. */
+    public static final String BULKHEADS_KEY = Bulkhead.class.getName();
+
+    private final int maxConcurrent;
+    private final long maxWait;
+    private final String forward;
+    private final Semaphore permits;
+
+    /**
+     * @param maxConcurrent Maximum number of concurrent executions.
+     * @param maxWait Milliseconds to wait for a permit; 0 to not wait.
+     * @param forward Name of the forward to render rejections with, or null.
+     */
+    public Bulkhead(final int maxConcurrent, final long maxWait, final String forward) {
+        if ( maxConcurrent < 1 )
+            throw new IllegalArgumentException("Bulkheads must allow at least 1 concurrent execution.");
+        this.maxConcurrent = maxConcurrent;
+        this.maxWait = Math.max( 0, maxWait );
+        this.forward = null == forward || 0 == forward.length() ? null : forward;
+        this.permits = new Semaphore( maxConcurrent );
+    }
+
+    /**
+     * Takes a permit, waiting for up to <em>maxWait</em> milliseconds for
+     * one to become available.  Each successful call must be followed by a
+     * call to {@link #release()}.
+     *
+     * @return false if the execution should be rejected.
+     */
+    public boolean acquire() {
+        if ( permits.tryAcquire() )
+            return true;
+        if ( 0 == maxWait )
+            return false;
+
+        try {
+            return permits.tryAcquire( maxWait, TimeUnit.MILLISECONDS );
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Name of the forward to render rejections with, or null if an error
+     * should be sent.
+     */
+    public String getForward() {
+        return forward;
+    }
+
+    /**
+     * Number of executions currently in progress.
+     */
+    public int getInUse() {
+        return maxConcurrent - permits.availablePermits();
+    }
+}
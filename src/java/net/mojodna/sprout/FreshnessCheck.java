@@ -0,0 +1,135 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * <p>Pre-bound calls to the freshness callbacks a Sprout method declared
+ * with <code>@Conditional</code>.  Created once per registered path by
+ * <code>SproutAutoLoaderPlugIn</code> and attached to the corresponding
+ * <code>SproutActionMapping</code>.</p>
+ *
+ * <p>Callbacks take the request as their only parameter.  Last-modified
+ * callbacks return a <code>long</code> (milliseconds since the epoch, or a
+ * negative number if unknown); entity tag callbacks return a
+ * <code>String</code> (or null if unknown).</p>
+ *
+ * @see Sprout.Conditional
+ * @author Seth Fitzsimmons
+ */
+public final class FreshnessCheck {
+    private static final MethodType LAST_MODIFIED_TYPE = MethodType.methodType( long.class, Sprout.class, HttpServletRequest.class );
+    private static final MethodType ETAG_TYPE = MethodType.methodType( String.class, Sprout.class, HttpServletRequest.class );
+
+    private final MethodHandle lastModified;
+    private final MethodHandle etag;
+
+    private FreshnessCheck(final MethodHandle lastModified, final MethodHandle etag) {
+        this.lastModified = lastModified;
+        this.etag = etag;
+    }
+
+    /**
+     * Binds freshness callbacks.
+     *
+     * @param clazz Sprout class.
+     * @param lastModified Name of the last-modified callback, or null.
+     * @param etag Name of the entity tag callback, or null.
+     * @return Bound callbacks, or null if neither was named.
+     * @throws NoSuchMethodException if a callback does not exist, is not
+     * public or has the wrong return type.
+     */
+    public static FreshnessCheck create(final Class clazz, final String lastModified, final String etag) throws NoSuchMethodException {
+        if ( null == lastModified && null == etag )
+            return null;
+
+        return new FreshnessCheck(
+                null == lastModified ? null : bind( clazz, lastModified, LAST_MODIFIED_TYPE ),
+                null == etag ? null : bind( clazz, etag, ETAG_TYPE ) );
+    }
+
+    private static MethodHandle bind(final Class clazz, final String name, final MethodType type) throws NoSuchMethodException {
+        final Method method = clazz.getMethod( name, HttpServletRequest.class );
+        if ( !Modifier.isPublic( method.getModifiers() ) || !type.returnType().equals( method.getReturnType() ) )
+            throw new NoSuchMethodException( clazz.getName() + "." + name + " does not return " + type.returnType().getName() + "." );
+
+        try {
+            return MethodHandles.publicLookup().unreflect( method ).asType( type );
+        }
+        catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException( "Unable to bind " + method, e );
+        }
+    }
+
+    /**
+     * Gets the time the response was last modified.
+     *
+     * @return Milliseconds since the epoch, or -1 if unknown.
+     */
+    public long getLastModified(final Sprout sprout, final HttpServletRequest request) throws ServletException {
+        if ( null == lastModified )
+            return -1;
+
+        try {
+            return (long) lastModified.invokeExact( sprout, request );
+        }
+        catch (final RuntimeException e) {
+            throw e;
+        }
+        catch (final Error e) {
+            throw e;
+        }
+        catch (final Throwable t) {
+            throw new ServletException( t );
+        }
+    }
+
+    /**
+     * Gets the entity tag of the response, quoted if necessary.
+     *
+     * @return Entity tag or null if unknown.
+     */
+    public String getETag(final Sprout sprout, final HttpServletRequest request) throws ServletException {
+        if ( null == etag )
+            return null;
+
+        final String tag;
+        try {
+            tag = (String) etag.invokeExact( sprout, request );
+        }
+        catch (final RuntimeException e) {
+            throw e;
+        }
+        catch (final Error e) {
+            throw e;
+        }
+        catch (final Throwable t) {
+            throw new ServletException( t );
+        }
+
+        if ( null == tag || tag.startsWith("\"") || tag.startsWith("W/\"") )
+            return tag;
+        return "\"" + tag + "\"";
+    }
+}
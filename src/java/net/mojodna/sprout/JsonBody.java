@@ -0,0 +1,54 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.mojodna.sprout.json.JsonSerializer;
+import net.mojodna.sprout.json.JsonWriter;
+
+/**
+ * <p>Body returned (in place of a real forward) by invokers for Sprout
+ * methods annotated with <code>@Json</code>; writes the object the method
+ * returned.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+final class JsonBody extends SproutBody {
+    private final Object value;
+
+    JsonBody(final String contentType, final Object value) {
+        super( contentType );
+        this.value = value;
+    }
+
+    public long getLength() {
+        return -1;
+    }
+
+    protected boolean isCacheable() {
+        return true;
+    }
+
+    protected void write(final HttpServletRequest request, final HttpServletResponse response, final long start, final long count) throws IOException {
+        final JsonWriter out = new JsonWriter( response.getOutputStream() );
+        JsonSerializer.writeValue( value, out );
+        out.flush();
+    }
+}
@@ -0,0 +1,333 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.beanutils.DynaClass;
+import org.apache.commons.beanutils.DynaProperty;
+import org.apache.commons.beanutils.LazyDynaBean;
+import org.apache.struts.validator.ValidatorForm;
+
+/**
+ * <p>Default form for Sprouts that do not declare one of their own.  Behaves
+ * like <code>LazyValidatorForm</code> (properties spring into existence when
+ * they are set; indexed and mapped properties grow as needed), but keeps
+ * its properties in a pair of arrays in insertion order, indexed by a small
+ * open-addressing hash table, rather than in a <code>LazyDynaBean</code> and
+ * its class.</p>
+ *
+ * <p><code>SproutRequestProcessor</code> populates simple request parameters
+ * directly (with the first value of each, as <code>BeanUtils</code> would),
+ * leaving only indexed, mapped and nested ones to <code>BeanUtils</code>.
+ * Request-scoped instances are recycled once the request has been
+ * processed, so they must not be retained beyond it.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class LazyForm extends ValidatorForm implements DynaBean, DynaClass {
+    private static final int INITIAL_CAPACITY = 8;
+    /** Forms that grew beyond this many properties are shrunk when cleared. */
+    private static final int MAXIMUM_RETAINED_CAPACITY = 64;
+    private static final String STRUTS_PREFIX = "org.apache.struts.";
+
+    private String[] names;
+    private Object[] values;
+    /** Open-addressing table of (position in names + 1); 0 marks a free slot. */
+    private int[] table;
+    private int size;
+
+    public LazyForm() {
+        allocate( INITIAL_CAPACITY );
+    }
+
+    private void allocate(final int capacity) {
+        names = new String[ capacity ];
+        values = new Object[ capacity ];
+        // kept at most half full
+        table = new int[ capacity * 2 ];
+    }
+
+    /**
+     * Populates this form from the parameters of a (non-multipart) request,
+     * in the same manner as <code>RequestUtils.populate()</code>.
+     *
+     * @param prefix Prefix that parameter names must have (stripped), or null.
+     * @param suffix Suffix that parameter names must have (stripped), or null.
+     */
+    public void populate(final HttpServletRequest request, final String prefix, final String suffix) throws ServletException {
+        for ( final Iterator i = request.getParameterMap().entrySet().iterator(); i.hasNext(); ) {
+            final Map.Entry param = (Map.Entry) i.next();
+            String name = (String) param.getKey();
+            if ( null != prefix ) {
+                if ( !name.startsWith( prefix ) )
+                    continue;
+                name = name.substring( prefix.length() );
+            }
+            if ( null != suffix ) {
+                if ( !name.endsWith( suffix ) )
+                    continue;
+                name = name.substring( 0, name.length() - suffix.length() );
+            }
+            if ( name.startsWith( STRUTS_PREFIX ) )
+                continue;
+
+            final String[] value = (String[]) param.getValue();
+            if ( isSimple( name ) ) {
+                set( name, null == value || 0 == value.length ? null : value[0] );
+                continue;
+            }
+
+            try {
+                BeanUtils.setProperty( this, name, value );
+            }
+            catch (final IllegalAccessException e) {
+                throw new ServletException("BeanUtils.populate", e );
+            }
+            catch (final InvocationTargetException e) {
+                throw new ServletException("BeanUtils.populate", e );
+            }
+            catch (final RuntimeException e) {
+                throw new ServletException("BeanUtils.populate", e );
+            }
+        }
+    }
+
+    private static boolean isSimple(final String name) {
+        for ( int i = 0; i < name.length(); i++ ) {
+            final char c = name.charAt( i );
+            if ( '.' == c || '[' == c || '(' == c )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes all properties and detaches this form from the servlet, so
+     * that it can be reused for another request.
+     */
+    public void clear() {
+        if ( names.length > MAXIMUM_RETAINED_CAPACITY ) {
+            allocate( INITIAL_CAPACITY );
+        } else {
+            Arrays.fill( names, 0, size, null );
+            Arrays.fill( values, 0, size, null );
+            Arrays.fill( table, 0 );
+        }
+        size = 0;
+        setServlet( null );
+        setMultipartRequestHandler( null );
+        setPage( 0 );
+        setValidatorResults( null );
+    }
+
+    /**
+     * Gets all property values, keyed by name.  Equivalent to
+     * <code>LazyValidatorForm.getMap()</code>.
+     */
+    public Map<String,Object> getMap() {
+        final Map<String,Object> map = new LinkedHashMap<String,Object>( size * 2 );
+        for ( int i = 0; i < size; i++ )
+            map.put( names[i], values[i] );
+        return map;
+    }
+
+    /**
+     * Number of elements of an indexed or mapped property (or 0).
+     */
+    public int size(final String name) {
+        final Object value = get( name );
+        if ( value instanceof Map )
+            return ((Map) value).size();
+        else if ( value instanceof List )
+            return ((List) value).size();
+        else if ( null != value && value.getClass().isArray() )
+            return Array.getLength( value );
+        return 0;
+    }
+
+    public DynaClass getDynaClass() {
+        return this;
+    }
+
+    public Object get(final String name) {
+        final int i = indexOf( name );
+        return i < 0 ? null : values[i];
+    }
+
+    public void set(final String name, final Object value) {
+        if ( null == name )
+            throw new IllegalArgumentException("No property name specified");
+
+        final int i = indexOf( name );
+        if ( i >= 0 ) {
+            values[i] = value;
+            return;
+        }
+
+        if ( size == names.length ) {
+            final String[] oldNames = names;
+            final Object[] oldValues = values;
+            allocate( names.length * 2 );
+            System.arraycopy( oldNames, 0, names, 0, size );
+            System.arraycopy( oldValues, 0, values, 0, size );
+            for ( int j = 0; j < size; j++ )
+                insert( j );
+        }
+        names[ size ] = name;
+        values[ size ] = value;
+        insert( size++ );
+    }
+
+    /**
+     * Gets an element of an indexed property.  As with
+     * <code>LazyValidatorForm</code>, elements beyond the end of a list
+     * (or of a property that does not exist yet) are created as
+     * <code>LazyDynaBean</code>s, so that nested properties can be populated.
+     */
+    public Object get(final String name, final int index) {
+        final Object value = get( name );
+        if ( index >= size( name ) && ( null == value || value instanceof List ) ) {
+            final DynaBean element = new LazyDynaBean();
+            set( name, index, element );
+            return element;
+        }
+
+        if ( value instanceof List )
+            return ((List) value).get( index );
+        else if ( null != value && value.getClass().isArray() )
+            return Array.get( value, index );
+        throw new IllegalArgumentException("Non-indexed property for '" + name + "[" + index + "]'");
+    }
+
+    @SuppressWarnings("unchecked")
+    public void set(final String name, final int index, final Object value) {
+        Object prop = get( name );
+        if ( null == prop ) {
+            prop = new ArrayList();
+            set( name, prop );
+        }
+
+        if ( prop instanceof List ) {
+            final List list = (List) prop;
+            while ( list.size() <= index )
+                list.add( null );
+            list.set( index, value );
+        } else if ( prop.getClass().isArray() ) {
+            Array.set( prop, index, value );
+        } else {
+            throw new IllegalArgumentException("Non-indexed property for '" + name + "[" + index + "]'");
+        }
+    }
+
+    public Object get(final String name, final String key) {
+        final Object value = get( name );
+        return null == value ? null : mapped( name, value ).get( key );
+    }
+
+    @SuppressWarnings("unchecked")
+    public void set(final String name, final String key, final Object value) {
+        Object prop = get( name );
+        if ( null == prop ) {
+            prop = new HashMap();
+            set( name, prop );
+        }
+        mapped( name, prop ).put( key, value );
+    }
+
+    public boolean contains(final String name, final String key) {
+        final Object value = get( name );
+        return null != value && mapped( name, value ).containsKey( key );
+    }
+
+    public void remove(final String name, final String key) {
+        final Object value = get( name );
+        if ( null != value )
+            mapped( name, value ).remove( key );
+    }
+
+    public String getName() {
+        return getClass().getName();
+    }
+
+    /**
+     * Describes a property, whether or not it exists yet; properties that
+     * have not been set are of type Object.
+     */
+    public DynaProperty getDynaProperty(final String name) {
+        final Object value = get( name );
+        return null == value ? new DynaProperty( name ) : new DynaProperty( name, value.getClass() );
+    }
+
+    public DynaProperty[] getDynaProperties() {
+        final DynaProperty[] properties = new DynaProperty[ size ];
+        for ( int i = 0; i < size; i++ )
+            properties[i] = null == values[i] ? new DynaProperty( names[i] ) : new DynaProperty( names[i], values[i].getClass() );
+        return properties;
+    }
+
+    public DynaBean newInstance() {
+        return new LazyForm();
+    }
+
+    public String toString() {
+        return getClass().getName() + getMap();
+    }
+
+    private int indexOf(final String name) {
+        final int mask = table.length - 1;
+        for ( int slot = hash( name ) & mask; ; slot = ( slot + 1 ) & mask ) {
+            final int entry = table[ slot ];
+            if ( 0 == entry )
+                return -1;
+            final String candidate = names[ entry - 1 ];
+            if ( candidate == name || candidate.equals( name ) )
+                return entry - 1;
+        }
+    }
+
+    private void insert(final int i) {
+        final int mask = table.length - 1;
+        int slot = hash( names[i] ) & mask;
+        while ( 0 != table[ slot ] )
+            slot = ( slot + 1 ) & mask;
+        table[ slot ] = i + 1;
+    }
+
+    private static int hash(final String name) {
+        final int h = name.hashCode();
+        return h ^ ( h >>> 16 );
+    }
+
+    private static Map mapped(final String name, final Object value) {
+        if ( !( value instanceof Map ) )
+            throw new IllegalArgumentException("Non-mapped property for '" + name + "'");
+        return (Map) value;
+    }
+}
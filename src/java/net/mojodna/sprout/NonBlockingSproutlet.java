@@ -0,0 +1,469 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import net.mojodna.sprout.support.AsyncSupport;
+import net.mojodna.sprout.support.NonBlockingSupport;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>{@link Sproutlet} that processes requests with Servlet 3.1 non-blocking
+ * I/O, so that many slow clients (uploads trickling in, long-lived push
+ * streams) can be served by a few container threads.  Dependencies are
+ * wired exactly as they are for a <code>Sproutlet</code>.</p>
+ *
+ * <p>Rather than implementing <code>doGet()</code> and friends, subclasses
+ * receive callbacks for each request (of any method), each passed the
+ * request's {@link Exchange}:
+ * <ol>
+ *   <li>{@link #onRequest(Exchange)}, on the container thread, before any of
+ *       the body has been read;</li>
+ *   <li>{@link #onData(Exchange, byte[], int, int)} for each chunk of the
+ *       body, as it arrives;</li>
+ *   <li>{@link #onAllDataRead(Exchange)}, once all of it has.</li>
+ * </ol>
+ * Responses are written with {@link Exchange#send(byte[])}, from any thread
+ * and at any time; data is queued and written as the client is able to
+ * accept it.  The request is complete once {@link Exchange#close()} has been
+ * called and everything queued has been written.</p>
+ *
+ * <pre>
+ * public class UploadSproutlet extends NonBlockingSproutlet {
+ *     protected void onData(final Exchange exchange, final byte[] buffer, final int offset, final int length) {
+ *         ...
+ *     }
+ *
+ *     protected void onAllDataRead(final Exchange exchange) throws IOException {
+ *         exchange.getResponse().setContentType("text/plain");
+ *         exchange.send("OK");
+ *         exchange.close();
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>The servlet (and every filter in front of it) must be
+ * <em>async-supported</em>, which requires a Servlet 3.0 (or later)
+ * <em>web.xml</em>:</p>
+ *
+ * <pre>
+ * &lt;servlet&gt;
+ *   &lt;servlet-name&gt;upload&lt;/servlet-name&gt;
+ *   &lt;servlet-class&gt;com.example.UploadSproutlet&lt;/servlet-class&gt;
+ *   &lt;async-supported&gt;true&lt;/async-supported&gt;
+ * &lt;/servlet&gt;
+ * </pre>
+ *
+ * <p>Where non-blocking I/O is unavailable, the same callbacks are made
+ * with blocking I/O and the container thread waits for the exchange to be
+ * closed.</p>
+ *
+ * @see net.mojodna.sprout.support.NonBlockingSupport
+ * @author Seth Fitzsimmons
+ */
+public abstract class NonBlockingSproutlet extends Sproutlet {
+    private static final Logger log = Logger.getLogger( NonBlockingSproutlet.class );
+    /** Size of the buffer request bodies are read into. */
+    private static final int BUFFER_SIZE = 8192;
+    /** Timeout used by the blocking fallback when the container's default applies. */
+    private static final long DEFAULT_TIMEOUT = 30000;
+
+    @Override
+    protected void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+        final Exchange exchange = new Exchange( request, response );
+        if ( NonBlockingSupport.isAvailable( request ) )
+            exchange.start();
+        else
+            exchange.run();
+    }
+
+    /**
+     * Milliseconds after which requests time out, 0 if they never do, or -1
+     * (the default) to use the container's default.  Push endpoints will
+     * usually want to override this.
+     */
+    protected long getAsyncTimeout() {
+        return -1;
+    }
+
+    /**
+     * Called before any of the request body has been read, e.g. to check
+     * headers or register the exchange with a source of events to push.
+     * Does nothing by default.
+     */
+    protected void onRequest(final Exchange exchange) throws IOException {}
+
+    /**
+     * Called for each chunk of the request body.  The buffer is reused once
+     * this returns.  Discards the data by default.
+     */
+    protected void onData(final Exchange exchange, final byte[] buffer, final int offset, final int length) throws IOException {}
+
+    /**
+     * Called once the entire request body has been read (immediately for
+     * requests without one).  The exchange remains open until it is closed.
+     */
+    protected abstract void onAllDataRead(Exchange exchange) throws IOException;
+
+    /**
+     * Called if reading, writing or one of the other callbacks fails.  The
+     * exchange is closed afterwards.  By default the error is logged and,
+     * if possible, <em>500 Internal Server Error</em> is sent.
+     */
+    protected void onError(final Exchange exchange, final Throwable t) {
+        log.warn("Error while processing " + exchange.getRequest().getRequestURI() + ": " + t.getMessage(), t );
+        try {
+            if ( !exchange.getResponse().isCommitted() )
+                exchange.getResponse().sendError( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
+        }
+        catch (final IOException e) {
+            log.debug("Unable to send error: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Called if the request times out before the exchange has been closed.
+     * The exchange is closed afterwards, discarding anything still queued.
+     * Does nothing by default.
+     */
+    protected void onTimeout(final Exchange exchange) {}
+
+    /**
+     * Called once the exchange is complete, however that came about, e.g. to
+     * unregister it from a source of events.  Does nothing by default.
+     */
+    protected void onComplete(final Exchange exchange) {}
+
+    /**
+     * <p>A request being processed by a <code>NonBlockingSproutlet</code>.
+     * Response data is queued by {@link #send(byte[])} and written whenever
+     * the client is able to accept it; {@link #getQueuedBytes()} can be used
+     * to detect clients that are falling behind.</p>
+     *
+     * <p>Queued data is written by whichever thread finds the response
+     * writable first, so that writes are never concurrent.</p>
+     */
+    public final class Exchange {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<byte[]>();
+        private final AtomicLong queued = new AtomicLong();
+        /** Number of pending requests to write queued data; see drain(). */
+        private final AtomicInteger drains = new AtomicInteger();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean closed;
+        /** Whether the response may be written to (in non-blocking mode, once a WriteListener is registered). */
+        private volatile boolean writable;
+        /** AsyncContext, or null if blocking. */
+        private Object context;
+        /** Released once the exchange completes, if blocking. */
+        private CountDownLatch done;
+        private byte[] buffer;
+
+        private Exchange(final HttpServletRequest request, final HttpServletResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        public HttpServletRequest getRequest() {
+            return request;
+        }
+
+        public HttpServletResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * Queues data to be written.  The array must not be modified
+         * afterwards.  Data sent after the exchange has been closed is
+         * discarded.
+         */
+        public void send(final byte[] data) {
+            if ( closed || 0 == data.length )
+                return;
+            queued.addAndGet( data.length );
+            queue.add( data );
+            drain();
+        }
+
+        /**
+         * Queues a string to be written in the response's character
+         * encoding.
+         */
+        public void send(final String data) throws UnsupportedEncodingException {
+            send( data.getBytes( response.getCharacterEncoding() ) );
+        }
+
+        /**
+         * Number of bytes queued but not yet written.
+         */
+        public long getQueuedBytes() {
+            return queued.get();
+        }
+
+        /**
+         * Completes the exchange once everything queued has been written.
+         */
+        public void close() {
+            closed = true;
+            drain();
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Processes the request with non-blocking I/O.
+         */
+        private void start() throws ServletException, IOException {
+            context = AsyncSupport.start( request, response );
+            NonBlockingSupport.addListener( context, new NonBlockingSupport.AsyncHandler() {
+                public void onComplete() {
+                    finish();
+                }
+
+                public void onTimeout() {
+                    timeout();
+                }
+
+                public void onError(final Throwable t) {
+                    fail( t );
+                }
+            });
+            if ( getAsyncTimeout() >= 0 )
+                NonBlockingSupport.setTimeout( context, getAsyncTimeout() );
+
+            try {
+                onRequest( this );
+            }
+            catch (final Throwable t) {
+                fail( t );
+                return;
+            }
+
+            NonBlockingSupport.setWriteListener( response.getOutputStream(), new NonBlockingSupport.WriteHandler() {
+                public void onWritePossible() {
+                    writable = true;
+                    drain();
+                }
+
+                public void onError(final Throwable t) {
+                    fail( t );
+                }
+            });
+            writable = true;
+
+            final ServletInputStream in = request.getInputStream();
+            NonBlockingSupport.setReadListener( in, new NonBlockingSupport.ReadHandler() {
+                public void onDataAvailable() {
+                    try {
+                        while ( !completed.get() && NonBlockingSupport.isReady( in ) ) {
+                            final int n = in.read( getBuffer() );
+                            if ( -1 == n )
+                                break;
+                            onData( Exchange.this, buffer, 0, n );
+                        }
+                    }
+                    catch (final Throwable t) {
+                        fail( t );
+                    }
+                }
+
+                public void onAllDataRead() {
+                    try {
+                        NonBlockingSproutlet.this.onAllDataRead( Exchange.this );
+                    }
+                    catch (final Throwable t) {
+                        fail( t );
+                    }
+                }
+
+                public void onError(final Throwable t) {
+                    fail( t );
+                }
+            });
+        }
+
+        /**
+         * Processes the request with blocking I/O, waiting for the exchange
+         * to complete.
+         */
+        private void run() throws IOException {
+            done = new CountDownLatch( 1 );
+            writable = true;
+            try {
+                onRequest( this );
+                final ServletInputStream in = request.getInputStream();
+                int n;
+                while ( !completed.get() && -1 != ( n = in.read( getBuffer() ) ) )
+                    onData( this, buffer, 0, n );
+                if ( !completed.get() )
+                    onAllDataRead( this );
+            }
+            catch (final Throwable t) {
+                fail( t );
+            }
+
+            final long timeout = getAsyncTimeout() < 0 ? DEFAULT_TIMEOUT : getAsyncTimeout();
+            try {
+                if ( 0 == timeout )
+                    done.await();
+                else if ( !done.await( timeout, TimeUnit.MILLISECONDS ) )
+                    timeout();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                complete();
+            }
+            finish();
+        }
+
+        private byte[] getBuffer() {
+            if ( null == buffer )
+                buffer = new byte[ BUFFER_SIZE ];
+            return buffer;
+        }
+
+        /**
+         * Writes as much queued data as the client will accept, completing
+         * the exchange if it has been closed and nothing remains.  Only one
+         * thread writes at a time; threads that arrive while another is
+         * writing leave the work to it.
+         */
+        private void drain() {
+            if ( !writable || 0 != drains.getAndIncrement() )
+                return;
+
+            int missed = 1;
+            try {
+                final ServletOutputStream out = response.getOutputStream();
+                while ( true ) {
+                    boolean blocked = false;
+                    boolean wrote = false;
+                    byte[] data;
+                    while ( null != ( data = queue.peek() ) ) {
+                        if ( !isReady( out ) ) {
+                            blocked = true;
+                            break;
+                        }
+                        queue.poll();
+                        queued.addAndGet( -data.length );
+                        out.write( data );
+                        wrote = true;
+                    }
+                    if ( wrote && isReady( out ) )
+                        out.flush();
+                    if ( !blocked && closed && queue.isEmpty() )
+                        complete();
+
+                    missed = drains.addAndGet( -missed );
+                    if ( 0 == missed )
+                        break;
+                }
+            }
+            catch (final Throwable t) {
+                drains.set( 0 );
+                fail( t );
+            }
+        }
+
+        private boolean isReady(final ServletOutputStream out) throws IOException {
+            return null == context || NonBlockingSupport.isReady( out );
+        }
+
+        private void fail(final Throwable t) {
+            if ( completed.get() )
+                return;
+            closed = true;
+            try {
+                onError( this, t );
+            }
+            catch (final Throwable e) {
+                log.warn("Error while handling error: " + e.getMessage(), e );
+            }
+            complete();
+        }
+
+        private void timeout() {
+            if ( completed.get() )
+                return;
+            closed = true;
+            try {
+                onTimeout( this );
+            }
+            catch (final Throwable t) {
+                log.warn("Error while handling timeout: " + t.getMessage(), t );
+            }
+            complete();
+        }
+
+        /**
+         * Completes the request (once).
+         */
+        private void complete() {
+            if ( !completed.compareAndSet( false, true ) )
+                return;
+
+            queue.clear();
+            queued.set( 0 );
+            if ( null == context ) {
+                done.countDown();
+                return;
+            }
+            try {
+                AsyncSupport.complete( context );
+            }
+            catch (final Exception e) {
+                // e.g. the request has already timed out
+                log.debug("Unable to complete " + request.getRequestURI() + ": " + e.getMessage() );
+            }
+        }
+
+        /**
+         * Notifies the servlet that the exchange is complete (once).
+         */
+        private void finish() {
+            if ( !finished.compareAndSet( false, true ) )
+                return;
+            // the container completed the request on its own
+            completed.set( true );
+            closed = true;
+            try {
+                onComplete( this );
+            }
+            catch (final Throwable t) {
+                log.warn("Error while completing " + request.getRequestURI() + ": " + t.getMessage(), t );
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Per-client token bucket for a single action path, declared with
+ * <code>@SproutRateLimit</code>.  Rate limiters are created by
+ * <code>SproutAutoLoaderPlugIn</code>, stored in the servlet context under
+ * {@link #RATE_LIMITERS_KEY} followed by the module prefix (as a map keyed
+ * by path) and enforced by <code>SproutRequestProcessor</code>.</p>
+ *
+ * <p>Clients are identified by IP address, session id or the value of a
+ * header (falling back to the IP address when there is no session or
+ * header).  Each client's bucket is a single <code>long</code>: the time at
+ * which it will be full again (the generic cell rate algorithm, which is
+ * equivalent to a token bucket).  Taking a token is a compare-and-set on
+ * it, so requests never lock.</p>
+ *
+ * <p>A bucket that has refilled is indistinguishable from a new one, so
+ * buckets of idle clients are evicted periodically and whenever the table
+ * reaches {@link #MAX_CLIENTS} entries.  If the table is still full after
+ * that (e.g. because a client is rotating header values), the buckets
+ * closest to being full, i.e. those of the clients that have made the
+ * fewest recent requests, are evicted to make room.  Clients are never
+ * made to share a bucket, so a flood of new clients cannot throttle
+ * existing ones; at worst an evicted client starts over with a full
+ * bucket.</p>
+ *
+ * @see net.mojodna.sprout.annotation.SproutRateLimit
+ * @author Seth Fitzsimmons
+ */
+public class RateLimiter {
+    private static final Logger log = Logger.getLogger( RateLimiter.class );
+
+    /** Servlet context attribute (suffixed with the module prefix) holding rate limiters by path. */
+    public static final String RATE_LIMITERS_KEY = RateLimiter.class.getName();
+    /** Maximum number of clients tracked individually. */
+    public static final int MAX_CLIENTS = 10000;
+
+    public static final String KEY_IP = "IP";
+    public static final String KEY_SESSION = "SESSION";
+    public static final String KEY_HEADER = "HEADER";
+
+    /** Nanoseconds between sweeps for idle clients. */
+    private static final long SWEEP_INTERVAL = 60L * 1000000000L;
+    /** Minimum nanoseconds between sweeps when the table is full. */
+    private static final long MIN_SWEEP_INTERVAL = 1000000000L;
+    /** Number of buckets evicted when the table is full of active clients. */
+    private static final int EVICTION_BATCH = MAX_CLIENTS / 16;
+
+    private final double rate;
+    private final int burst;
+    private final String key;
+    private final String header;
+    /** Nanoseconds per token. */
+    private final long interval;
+    /** Nanoseconds an empty bucket takes to fill up. */
+    private final long capacity;
+    private final ConcurrentHashMap<String,AtomicLong> buckets = new ConcurrentHashMap<String,AtomicLong>();
+    private final AtomicLong lastSweep;
+
+    /**
+     * @param rate Sustained number of requests allowed per second.
+     * @param burst Number of requests that may be made in a burst; 0 for
+     * one second's worth.
+     * @param key What identifies a client: {@link #KEY_IP},
+     * {@link #KEY_SESSION} or {@link #KEY_HEADER}.
+     * @param header Header identifying the client when keyed by header.
+     */
+    public RateLimiter(final double rate, final int burst, final String key, final String header) {
+        if ( !( rate > 0 ) )
+            throw new IllegalArgumentException("Rate limits must allow some requests.");
+        if ( KEY_HEADER.equals( key ) && ( null == header || 0 == header.length() ) )
+            throw new IllegalArgumentException("Rate limits keyed by header must name one.");
+
+        this.rate = rate;
+        this.burst = burst > 0 ? burst : (int) Math.max( 1, Math.ceil( rate ) );
+        this.key = null == key ? KEY_IP : key;
+        this.header = KEY_HEADER.equals( key ) ? header : null;
+        this.interval = Math.max( 1, (long) ( 1000000000L / rate ) );
+        this.capacity = interval * this.burst;
+
+        final long now = System.nanoTime();
+        this.lastSweep = new AtomicLong( now );
+    }
+
+    /**
+     * Takes a token for the client making a request.
+     *
+     * @return 0 if the request may proceed, otherwise the number of
+     * nanoseconds until it would have.
+     */
+    public long acquire(final HttpServletRequest request) {
+        return acquire( getClient( request ) );
+    }
+
+    /**
+     * Takes a token for a client.
+     *
+     * @return 0 if the request may proceed, otherwise the number of
+     * nanoseconds until it would have.
+     */
+    public long acquire(final String client) {
+        final long now = System.nanoTime();
+        sweep( now, SWEEP_INTERVAL );
+
+        AtomicLong bucket = buckets.get( client );
+        if ( null == bucket )
+            bucket = create( client, now );
+
+        long full;
+        long next;
+        do {
+            full = bucket.get();
+            next = Math.max( full, now ) + interval;
+            if ( next - now > capacity )
+                return next - now - capacity;
+        } while ( !bucket.compareAndSet( full, next ) );
+        return 0;
+    }
+
+    private AtomicLong create(final String client, final long now) {
+        if ( buckets.size() >= MAX_CLIENTS ) {
+            sweep( now, MIN_SWEEP_INTERVAL );
+            if ( buckets.size() >= MAX_CLIENTS )
+                evict( now );
+        }
+
+        final AtomicLong created = new AtomicLong( now );
+        final AtomicLong existing = buckets.putIfAbsent( client, created );
+        return null == existing ? created : existing;
+    }
+
+    /**
+     * Evicts buckets that have refilled, unless the table has been swept
+     * recently (or is being swept).  A client taking a token from a bucket
+     * as it is evicted gets that token for free.
+     *
+     * @param minInterval Nanoseconds that must have passed since the last
+     * sweep.
+     */
+    private void sweep(final long now, final long minInterval) {
+        final long last = lastSweep.get();
+        if ( now - last < minInterval || !lastSweep.compareAndSet( last, now ) )
+            return;
+
+        for ( final Iterator<AtomicLong> i = buckets.values().iterator(); i.hasNext(); ) {
+            if ( i.next().get() - now <= 0 )
+                i.remove();
+        }
+    }
+
+    /**
+     * Evicts the {@link #EVICTION_BATCH} buckets that will be full soonest,
+     * unless another thread has already made room.
+     */
+    private synchronized void evict(final long now) {
+        if ( buckets.size() < MAX_CLIENTS )
+            return;
+
+        // times relative to now, as nanoTime() may wrap
+        long[] times = new long[ buckets.size() ];
+        int count = 0;
+        for ( final AtomicLong bucket : buckets.values() ) {
+            if ( count == times.length )
+                times = Arrays.copyOf( times, count * 2 );
+            times[ count++ ] = bucket.get() - now;
+        }
+        if ( 0 == count )
+            return;
+        Arrays.sort( times, 0, count );
+        final long threshold = times[ Math.min( count, EVICTION_BATCH ) - 1 ];
+
+        int evicted = 0;
+        for ( final Iterator<AtomicLong> i = buckets.values().iterator(); i.hasNext(); ) {
+            if ( i.next().get() - now <= threshold ) {
+                i.remove();
+                evicted++;
+            }
+        }
+        if ( log.isDebugEnabled() )
+            log.debug("Too many clients; evicted " + evicted + " of " + count + " buckets");
+    }
+
+    /**
+     * Identifies the client making a request.
+     */
+    public String getClient(final HttpServletRequest request) {
+        if ( KEY_SESSION.equals( key ) ) {
+            final HttpSession session = request.getSession( false );
+            if ( null != session )
+                return session.getId();
+        } else if ( null != header ) {
+            final String value = request.getHeader( header );
+            if ( null != value )
+                return value;
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * Sustained number of requests allowed per second.
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Number of clients currently tracked.
+     */
+    public int getClients() {
+        return buckets.size();
+    }
+}
@@ -21,19 +21,24 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import net.mojodna.sprout.cache.ResponseCache;
+import net.mojodna.sprout.support.AsyncSupport;
 import net.mojodna.sprout.support.SproutUtils;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.log4j.Logger;
-import org.apache.struts.Globals;
 import org.apache.struts.action.ActionForm;
 import org.apache.struts.action.ActionForward;
 import org.apache.struts.action.ActionMapping;
@@ -89,7 +94,10 @@ import org.springframework.beans.factory.support.AbstractBeanFactory;
  * with <code>@Input</code>, <code>@Validate</code>, and <code>@Scope</code>
  * respectively.</p>
  * 
- * <p><code>f(key)</code>, <code>F(key)</code>, and <code>s(key,value)</code>
+ * <p>Per-request state (the mapping, form, request and response, along with
+ * any attributes added in <code>onInit()</code>) is kept in a
+ * {@link SproutContext}, obtained with <code>getContext(request)</code>.
+ * Its <code>f(key)</code>, <code>F(key)</code>, and <code>s(key,value)</code>
  * are helper methods that manipulate DynaActionForms (if used) and obviate
  * the need to cast excessively.  <code>f()</code> is the equivalent of
  * calling <code>getString()</code>, <code>F()</code> <code>get()</code>, and
@@ -97,8 +105,9 @@ import org.springframework.beans.factory.support.AbstractBeanFactory;
  * 
  * <p><code>getMessages()</code>, <code>getErrors()</code>,
  * <code>saveMessages()</code>, and <code>saveErrors()</code> have been
- * modified to store state in the user's session allowing them to be used more
- * simply and effectively.  Rather than using this:
+ * modified to carry state across redirects (without using the user's
+ * session; see <code>net.mojodna.sprout.flash.FlashStore</code>) allowing
+ * them to be used more simply and effectively.  Rather than using this:
  * <pre>
  *   ActionMessages errors = new ActionMessages();
  *   ...
@@ -136,8 +145,12 @@ public abstract class Sprout extends MappingDispatchAction implements BeanFactor
     /** Default forward key. */
     public static final String FWD_SUCCESS = "success";
     
+    private static final Pattern CAMEL_CASE = Pattern.compile("([A-Z])");
+
     private String beanName;
-    private ThreadLocal<DynaActionForm> formHolder = new ThreadLocal();
+    private String[] paths;
+    // only used by the deprecated f(), F() and s(); cleared after each request
+    private final ThreadLocal<SproutContext> contextHolder = new ThreadLocal<SproutContext>();
 
     public final void setBeanFactory(final BeanFactory factory) throws BeansException {
         if ( !factory.isSingleton( beanName ) ) {
@@ -152,27 +165,42 @@ public abstract class Sprout extends MappingDispatchAction implements BeanFactor
             final AbstractBeanFactory dlbf = (AbstractBeanFactory) factory;
             
             final Collection<Method> methods = SproutUtils.getDeclaredMethods( getClass(), Sprout.class );
+            // overridden methods appear more than once
+            final Set<String> registered = new LinkedHashSet<String>();
             
             // register beans for each url
+            // (registerAlias() is a no-op for aliases already registered to this
+            // bean, so there's no need to consult getAliases(), which scans
+            // every alias in the factory)
             log.debug("Registering paths...");
             for ( final Iterator<Method> i = methods.iterator(); i.hasNext(); ) {
                 final Method method = i.next();
                 String name = method.getName();
-                if ( Modifier.isPublic( method.getModifiers() ) && method.getReturnType().equals( ActionForward.class ) ) {
+                if ( SproutInvokerFactory.isActionMethod( method ) ) {
                     if ( name.equals("publick") )
                         name = "public";
-                    final String url = path + name.replaceAll("([A-Z])", "_$1" ).toLowerCase();
+                    final String url = path + CAMEL_CASE.matcher( name ).replaceAll("_$1").toLowerCase();
                     log.debug( url );
-                    if ( !ArrayUtils.contains( dlbf.getAliases( beanName ), url ) )
+                    if ( registered.add( url ) )
                         dlbf.registerAlias( beanName, url );
                 }
             }
+            paths = registered.toArray( new String[ registered.size() ] );
         } else {
             log.warn("Unable to self-register; factory bean was of an unsupported type.");
             throw new BeanNotOfRequiredTypeException( beanName, AbstractBeanFactory.class, factory.getClass() );
         }
     }
 
+    /**
+     * Paths (aliases) that this Sprout registered for itself.
+     * 
+     * @return Registered paths, or null if this Sprout did not self-register.
+     */
+    public final String[] getPaths() {
+        return null == paths ? null : paths.clone();
+    }
+
     /**
      * Sets the name of this bean, as registered in the Spring context.
      */
@@ -180,97 +208,203 @@ public abstract class Sprout extends MappingDispatchAction implements BeanFactor
         this.beanName = name;
     }
     
+    /**
+     * Initializes this Sprout for a request.
+     * 
+     * @deprecated <code>SproutRequestProcessor</code> creates a
+     * <code>SproutContext</code> and calls {@link #init(SproutContext)}.
+     */
+    @Deprecated
     public final void init(final ActionMapping mapping, final ActionForm form, final HttpServletRequest request, final HttpServletResponse response) {
-        if ( form instanceof DynaActionForm )
-            formHolder.set( (DynaActionForm) form );
-        else
-            // clean up
-            formHolder.remove();
-        
-        onInit( mapping, form, request, response );
+        final SproutContext context = new SproutContext( mapping, form, request, response );
+        request.setAttribute( SproutContext.CONTEXT_KEY, context );
+        init( context );
+    }
+    
+    /**
+     * Initializes this Sprout for a request.
+     */
+    public final void init(final SproutContext context) {
+        contextHolder.set( context );
+        onInit( context );
+    }
+    
+    /**
+     * Releases per-thread state once a request has been processed.
+     */
+    final void release() {
+        contextHolder.remove();
+    }
+    
+    /**
+     * Dispatches directly to the method bound to a
+     * <code>SproutActionMapping</code>, falling back to
+     * <code>MappingDispatchAction</code>'s reflective dispatch by name for
+     * other mappings.
+     */
+    @Override
+    protected ActionForward dispatchMethod(final ActionMapping mapping, final ActionForm form, final HttpServletRequest request, final HttpServletResponse response, final String name) throws Exception {
+        if ( mapping instanceof SproutActionMapping ) {
+            final SproutInvoker invoker = ((SproutActionMapping) mapping).getInvoker();
+            if ( null != invoker )
+                return invoker.invoke( this, mapping, form, request, response );
+        }
+
+        return super.dispatchMethod( mapping, form, request, response, name );
+    }
+    
+    /**
+     * Callback for subclass-specific initialization.  Per-request state
+     * should be stored as attributes of the context rather than in fields or
+     * <code>ThreadLocal</code>s.
+     */
+    protected void onInit(final SproutContext context) {
+        onInit( context.getMapping(), context.getForm(), context.getRequest(), context.getResponse() );
     }
     
     /**
      * Callback for subclass-specific initialization.
+     * 
+     * @deprecated Override {@link #onInit(SproutContext)} instead.
      */
+    @Deprecated
     protected void onInit(final ActionMapping mapping, final ActionForm form, final HttpServletRequest request, final HttpServletResponse response) {}
     
+    /**
+     * Gets the context of a request being processed by this Sprout.
+     */
+    protected SproutContext getContext(final HttpServletRequest request) {
+        return SproutContext.getContext( request );
+    }
+    
+    /**
+     * <p>Runs a task asynchronously, on a virtual thread where the JVM
+     * supports them.  Sprout methods may return the result in order to
+     * release the container's thread while the task runs:</p>
+     * <pre>
+     * public CompletableFuture&lt;ActionForward&gt; report(final ActionMapping mapping, ...) {
+     *     return async( new Callable&lt;ActionForward&gt;() {
+     *         public ActionForward call() throws Exception {
+     *             ...
+     *             return mapping.findForward( FWD_SUCCESS );
+     *         }
+     *     });
+     * }
+     * </pre>
+     *
+     * <p><strong>NOTE:</strong> the task does not run on the request's
+     * thread; use the request's <code>SproutContext</code> (rather than the
+     * deprecated <code>f()</code>, <code>F()</code> and <code>s()</code>) to
+     * access the form.</p>
+     */
+    protected CompletableFuture<ActionForward> async(final Callable<ActionForward> task) {
+        final CompletableFuture<ActionForward> future = new CompletableFuture<ActionForward>();
+        try {
+            AsyncSupport.getExecutor().execute( new Runnable() {
+                public void run() {
+                    try {
+                        future.complete( task.call() );
+                    }
+                    catch (final Throwable t) {
+                        future.completeExceptionally( t );
+                    }
+                }
+            });
+        }
+        catch (final RejectedExecutionException e) {
+            // the pool is saturated; answered with 503 Service Unavailable
+            future.completeExceptionally( e );
+        }
+        return future;
+    }
+    
     /**
      * Shortcut for ((DynaActionForm) form).getString(key).
+     * 
+     * @deprecated Use <code>getContext( request ).f( key )</code>, which
+     * also works outside of the request's thread.
      */
+    @Deprecated
     protected String f(final String key) {
-        if ( null == formHolder.get() )
-            throw new UnsupportedOperationException("Active form is not a DynaActionForm.");
-        
-        return formHolder.get().getString( key );
+        return getDynaForm().getString( key );
     }
     
     /**
      * Shortcut for ((DynaActionForm) form).get(key).
+     * 
+     * @deprecated Use <code>getContext( request ).F( key )</code>.
      */
+    @Deprecated
     protected Object F(final String key) {
-        if ( null == formHolder.get() )
-            throw new UnsupportedOperationException("Active form is not a DynaActionForm.");
-        
-        return formHolder.get().get( key );
+        return getDynaForm().get( key );
     }
     
     /**
      * Shortcut for ((DynaActionForm) form).set(key, value).
+     * 
+     * @deprecated Use <code>getContext( request ).s( key, value )</code>.
      */
+    @Deprecated
     protected void s(final String key, final Object value) {
-        if ( null == formHolder.get() )
+        getDynaForm().set( key, value );
+    }
+    
+    private DynaActionForm getDynaForm() {
+        final SproutContext context = contextHolder.get();
+        if ( null == context || !( context.getForm() instanceof DynaActionForm ) )
             throw new UnsupportedOperationException("Active form is not a DynaActionForm.");
         
-        formHolder.get().set( key, value );
+        return (DynaActionForm) context.getForm();
     }
     
     /**
-     * Add errors to the session.
+     * Add errors to the request.
      */
     protected void addErrors(final HttpServletRequest request, final ActionMessages msgs) {
         saveErrors( request, msgs );
     }
     
     /**
-     * Gets undisplayed errors from both the request and the session.
+     * Gets undisplayed errors, including those carried over from the
+     * previous request.
      */
     protected ActionMessages getErrors(final HttpServletRequest request) {
-        final ActionMessages errors = super.getErrors( request );
-        errors.add( (ActionMessages) request.getSession().getAttribute( Globals.ERROR_KEY ) );
-        return errors;
+        return super.getErrors( request );
     }
     
     /**
-     * Saves errors to the session scope so that they may be picked up by the
-     * next action that accesses errors.
+     * Saves errors so that they may be picked up by the next action that
+     * accesses errors.  If this action redirects before they have been
+     * displayed, they are carried over to the next request by the configured
+     * <code>FlashStore</code>.
      */
     protected void saveErrors(final HttpServletRequest request, final ActionMessages msgs) {
-        saveErrors( request.getSession(), msgs );
+        super.saveErrors( request, msgs );
     }
     
     /**
-     * Add messages to the session.
+     * Add messages to the request.
      */
     protected void addMessages(final HttpServletRequest request, final ActionMessages msgs) {
         saveMessages( request, msgs );
     }
     
     /**
-     * Gets undisplayed messages from both the request and the session.
+     * Gets undisplayed messages, including those carried over from the
+     * previous request.
      */
     protected ActionMessages getMessages(final HttpServletRequest request) {
-        final ActionMessages msgs = super.getMessages( request );
-        msgs.add( (ActionMessages) request.getSession().getAttribute( Globals.MESSAGE_KEY ) );
-        return msgs;
+        return super.getMessages( request );
     }
     
     /**
-     * Saves messages to the session scope so that they may be picked up by the
-     * next action that accesses messages.
+     * Saves messages so that they may be picked up by the next action that
+     * accesses messages.  If this action redirects before they have been
+     * displayed, they are carried over to the next request by the configured
+     * <code>FlashStore</code>.
      */
     protected void saveMessages(final HttpServletRequest request, final ActionMessages msgs) {
-        saveMessages( request.getSession(), msgs );
+        super.saveMessages( request, msgs );
     }
     
     /**
@@ -281,6 +415,86 @@ public abstract class Sprout extends MappingDispatchAction implements BeanFactor
         return mapping.findForward( FWD_SUCCESS );
     }
     
+    /**
+     * <p>Names cheap callbacks that determine whether a client's copy of
+     * this action's response is still fresh.  <em>GET</em> and
+     * <em>HEAD</em> requests carrying a matching <em>If-None-Match</em> or
+     * <em>If-Modified-Since</em> header are answered with <em>304 Not
+     * Modified</em> before the form is populated or the action runs.
+     * Otherwise the <em>ETag</em> and <em>Last-Modified</em> headers are
+     * set.</p>
+     *
+     * <p>Callbacks are public methods of the same Sprout that take the
+     * request as their only parameter.  Since they are called before the
+     * Sprout is initialized for the request, they must not use its
+     * {@link SproutContext}:
+     * <pre>
+     * public long articleModified(final HttpServletRequest request) {
+     *     return articles.getModified( request.getAttribute( SproutRouter.ID_KEY ) );
+     * }
+     * </pre>
+     */
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    protected @interface Conditional {
+        /**
+         * Name of a method returning the time the response was last
+         * modified, in milliseconds since the epoch (or -1 if unknown).
+         */
+        String lastModified() default "";
+        /**
+         * Name of a method returning the response's entity tag (or null if
+         * unknown).  Unquoted tags are quoted.
+         */
+        String etag() default "";
+    }
+
+    /**
+     * <p>Caches the rendered response of an idempotent action.  Subsequent
+     * <em>GET</em> requests with the same path and key parameters are
+     * answered from the cache without running the action (or populating its
+     * form) until the entry expires.</p>
+     *
+     * <p>Only responses rendered by forwarding (i.e. not redirects or
+     * errors) are cached, along with the headers and locale set while
+     * rendering them.  Requests carrying flashed messages bypass the
+     * cache.</p>
+     *
+     * <p>Responses may depend on who is asking, so requests with a session
+     * or a remote user also bypass the cache unless the response varies by
+     * {@link #SESSION} or {@link #USER}, or is declared
+     * {@link #shared()}.</p>
+     */
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    protected @interface Cache {
+        /** Varies cached responses by session. */
+        String SESSION = ResponseCache.VARY_SESSION;
+        /** Varies cached responses by remote user. */
+        String USER = ResponseCache.VARY_USER;
+
+        /**
+         * Time to live, in seconds.
+         */
+        int ttl();
+        /**
+         * Request parameters that distinguish cached responses.  If empty,
+         * the entire query string is used.
+         */
+        String[] params() default {};
+        /**
+         * Further parts of the request that distinguish cached responses:
+         * {@link #SESSION}, {@link #USER} or the names of request headers
+         * (e.g. <em>Accept-Language</em>).
+         */
+        String[] vary() default {};
+        /**
+         * Whether responses are the same for every user, and so may be
+         * cached for requests with a session or a remote user.
+         */
+        boolean shared() default false;
+    }
+
     /**
      * Override the default form name for this action.  Equivalent to setting
      * <em>name</em> property in an <em>action</em> mapping in
@@ -322,6 +536,27 @@ public abstract class Sprout extends MappingDispatchAction implements BeanFactor
         String[] path();
     }
     
+    /**
+     * <p>Writes the object returned by a Sprout method to the response as
+     * JSON rather than forwarding.  The method may return any type:</p>
+     * <pre>
+     * &#64;Json
+     * public Article show(final ActionMapping mapping, ...) {
+     *     return articles.get( getContext( request ).F("id") );
+     * }
+     * </pre>
+     *
+     * @see net.mojodna.sprout.json.JsonSerializer
+     */
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    protected @interface Json {
+        /**
+         * Content type of the response.
+         */
+        String contentType() default "application/json; charset=UTF-8";
+    }
+
     /**
      * Specifies the "input" property for this action.
      */
@@ -358,5 +593,11 @@ public abstract class Sprout extends MappingDispatchAction implements BeanFactor
          * present, <em>false</em> otherwise.
          */
         boolean value() default true;
+        /**
+         * Whether to stop validating at the first invalid field, reporting
+         * only its error.  Only applies to forms whose rules can be
+         * precompiled (see <code>net.mojodna.sprout.validation.ValidatorCompiler</code>).
+         */
+        boolean failFast() default false;
     }
 }
@@ -0,0 +1,142 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import org.apache.struts.action.ActionMapping;
+
+/**
+ * <code>ActionMapping</code> registered for Sprout paths.  Carries a
+ * pre-bound <code>SproutInvoker</code> for the method the path maps to.
+ *
+ * @author Seth Fitzsimmons
+ */
+public class SproutActionMapping extends ActionMapping {
+    private transient SproutInvoker invoker;
+    private int cacheTtl;
+    private String[] cacheParameters;
+    private String[] cacheVary;
+    private boolean cacheShared;
+    private transient FreshnessCheck freshnessCheck;
+    private boolean failFast;
+
+    /**
+     * Gets the invoker for this mapping's method.
+     *
+     * @return Invoker or null if the method should be dispatched by name.
+     */
+    public SproutInvoker getInvoker() {
+        return invoker;
+    }
+
+    public void setInvoker(final SproutInvoker invoker) {
+        if ( configured )
+            throw new IllegalStateException("Configuration is frozen");
+        this.invoker = invoker;
+    }
+
+    /**
+     * Number of seconds rendered responses may be cached for, or 0 if they
+     * are not cacheable.
+     *
+     * @see Sprout.Cache
+     */
+    public int getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(final int cacheTtl) {
+        if ( configured )
+            throw new IllegalStateException("Configuration is frozen");
+        this.cacheTtl = cacheTtl;
+    }
+
+    /**
+     * Request parameters that make up the cache key, or null if the entire
+     * query string does.
+     */
+    public String[] getCacheParameters() {
+        return cacheParameters;
+    }
+
+    public void setCacheParameters(final String[] cacheParameters) {
+        if ( configured )
+            throw new IllegalStateException("Configuration is frozen");
+        this.cacheParameters = cacheParameters;
+    }
+
+    /**
+     * Parts of the request other than parameters that make up the cache
+     * key, or null.
+     *
+     * @see Sprout.Cache#vary()
+     */
+    public String[] getCacheVary() {
+        return cacheVary;
+    }
+
+    public void setCacheVary(final String[] cacheVary) {
+        if ( configured )
+            throw new IllegalStateException("Configuration is frozen");
+        this.cacheVary = cacheVary;
+    }
+
+    /**
+     * Whether responses may be cached for requests with a session or a
+     * remote user.
+     *
+     * @see Sprout.Cache#shared()
+     */
+    public boolean isCacheShared() {
+        return cacheShared;
+    }
+
+    public void setCacheShared(final boolean cacheShared) {
+        if ( configured )
+            throw new IllegalStateException("Configuration is frozen");
+        this.cacheShared = cacheShared;
+    }
+
+    /**
+     * Gets the freshness callbacks for this mapping's method.
+     *
+     * @return Callbacks or null if requests are not conditional.
+     * @see Sprout.Conditional
+     */
+    public FreshnessCheck getFreshnessCheck() {
+        return freshnessCheck;
+    }
+
+    public void setFreshnessCheck(final FreshnessCheck freshnessCheck) {
+        if ( configured )
+            throw new IllegalStateException("Configuration is frozen");
+        this.freshnessCheck = freshnessCheck;
+    }
+
+    /**
+     * Whether validation stops at the first invalid field.
+     *
+     * @see Sprout.Validate#failFast()
+     */
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public void setFailFast(final boolean failFast) {
+        if ( configured )
+            throw new IllegalStateException("Configuration is frozen");
+        this.failFast = failFast;
+    }
+}
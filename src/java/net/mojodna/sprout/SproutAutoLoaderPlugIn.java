@@ -18,20 +18,41 @@ package net.mojodna.sprout;
 
 import net.mojodna.sprout.Sprout.Forward;
 import net.mojodna.sprout.annotation.SproutAction;
+import net.mojodna.sprout.annotation.SproutBulkhead;
 import net.mojodna.sprout.annotation.SproutForm;
 import net.mojodna.sprout.annotation.SproutForward;
 import net.mojodna.sprout.annotation.SproutProperty;
+import net.mojodna.sprout.annotation.SproutRateLimit;
+import net.mojodna.sprout.support.AsyncSupport;
+import net.mojodna.sprout.support.ClassFileInfo;
+import net.mojodna.sprout.support.ClassPathScanner;
+import net.mojodna.sprout.support.PhaseTimer;
 import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 import javax.servlet.ServletException;
 import org.apache.commons.beanutils.BeanMap;
 import org.apache.log4j.Logger;
+import org.apache.struts.action.Action;
 import org.apache.struts.action.ActionForm;
 import org.apache.struts.action.ActionFormBean;
 import org.apache.struts.action.ActionForward;
@@ -39,10 +60,15 @@ import org.apache.struts.action.ActionMapping;
 import org.apache.struts.config.ActionConfig;
 import org.apache.struts.config.FormBeanConfig;
 import org.apache.struts.config.ForwardConfig;
-import org.apache.struts.validator.LazyValidatorForm;
+import org.springframework.beans.BeanInstantiationException;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeansException;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringValueResolver;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
+import org.springframework.web.util.WebUtils;
 import org.springframework.web.struts.ContextLoaderPlugIn;
 
 /**
@@ -59,82 +85,67 @@ import org.springframework.web.struts.ContextLoaderPlugIn;
  */
 public class SproutAutoLoaderPlugIn extends ContextLoaderPlugIn {
     private final static Logger log = Logger.getLogger( SproutAutoLoaderPlugIn.class );
+    private static final Pattern UNDERSCORED = Pattern.compile("_([a-z])");
+
+    private String registry;
+    private boolean parallel;
+    private boolean reload;
+    /** Class directories found while scanning the classpath. */
+    private final List<File> classDirectories = new ArrayList<File>();
+    private boolean index = true;
+    private int asyncThreads = AsyncSupport.DEFAULT_MAXIMUM_THREADS;
+    private int asyncQueueSize = AsyncSupport.DEFAULT_QUEUE_SIZE;
+    // forms and routes found while scanning, if an index is to be written
+    private List<FormBeanConfig> indexForms;
+    private List<SproutRoute> indexRoutes;
+    private SproutReloader reloader;
+    private final SproutRouter router = new SproutRouter();
+    /** Bulkheads by path; Sprouts may be built concurrently. */
+    private final ConcurrentMap<String,Bulkhead> bulkheads = new ConcurrentHashMap<String,Bulkhead>();
+    private final ConcurrentMap<String,RateLimiter> rateLimiters = new ConcurrentHashMap<String,RateLimiter>();
+    private final PhaseTimer timer = new PhaseTimer();
+
+    /**
+     * Registers the default ActionForm used by Sprouts that do not have one
+     * of their own, unless <em>struts-config.xml</em> declares one.
+     */
+    private void loadDefaultForm() {
+        if ( null != getModuleConfig().findFormBeanConfig( Sprout.SPROUT_DEFAULT_ACTION_FORM_NAME ) )
+            return;
 
-    private void loadSprouts(final WebApplicationContext wac)
-        throws BeansException {
-        final String[] beanNames = wac.getBeanNamesForType( Sprout.class );
-        
-        // create a default actionform
         final FormBeanConfig fbc = new FormBeanConfig();
         fbc.setName( Sprout.SPROUT_DEFAULT_ACTION_FORM_NAME );
-        fbc.setType( LazyValidatorForm.class.getName() );
+        fbc.setType( LazyForm.class.getName() );
         getModuleConfig().addFormBeanConfig( fbc );
-        
-        for ( int i = 0; i < beanNames.length; i++ ) {
-            final Sprout bean = (Sprout) wac.getBean( beanNames[i] );
-            final String[] aliases = wac.getAliases( beanNames[i] );
-            for ( int j = 0; j < aliases.length; j++ ) {
-                final String name = aliases[j].substring( aliases[j].lastIndexOf('/') + 1 );
-                try {
-                    final Method method = findMethod( name, bean.getClass() );
-                    log.debug( aliases[j] + " -> " + beanNames[i] + "." + name );
-
-                    final ActionMapping ac = new ActionMapping();
-                    ac.setParameter( method.getName() );
-                    ac.setPath( aliases[j] );
-
-                    // establish defaults
-                    String actionForm = bean.getClass().getSimpleName() + Sprout.DEFAULT_FORM_SUFFIX;
-                    String input = aliases[j] + Sprout.DEFAULT_VIEW_EXTENSION;
-                    String scope = Sprout.DEFAULT_SCOPE;
-                    boolean validate = false;
-                    ac.addForwardConfig( makeForward( Sprout.FWD_SUCCESS, aliases[j] + ".jsp" ) );
-
-                    // process annotations and override defaults where appropriate
-                    final Annotation[] annotations = method.getAnnotations();
-                    for (int k = 0; k < annotations.length; k++ ) {
-                        final Annotation a = annotations[k];
-                        final Class type = a.annotationType();
-                        if ( type.equals( Sprout.FormName.class) )
-                            actionForm = ((Sprout.FormName) a).value();
-                        else if ( type.equals( Sprout.Forward.class ) ) {
-                            final Forward fwd = (Sprout.Forward) a;
-                            for (int m=0; m < fwd.path().length; m++ ) {
-                                String fwdPath = fwd.path()[m];
-                                String fwdName = Sprout.FWD_SUCCESS;
-                                boolean fwdRedirect = false;
-                                if ( fwd.name().length - 1  >= m )
-                                    fwdName = fwd.name()[m];
-                                if ( fwd.redirect().length - 1  >= m )
-                                    fwdRedirect = fwd.redirect()[m];
-                                ac.addForwardConfig( makeForward( fwdName, fwdPath, fwdRedirect, null ) );
-                            }
-                        } else if ( type.equals( Sprout.Input.class) )
-                            input = ((Sprout.Input) a).value();
-                        if ( type.equals( Sprout.Scope.class) )
-                            scope = ((Sprout.Scope) a).value();
-                        else if ( type.equals( Sprout.Validate.class ) )
-                            validate = ((Sprout.Validate) a).value();
-                    }
+    }
 
-                    // use values
-                    if ( null != getModuleConfig().findFormBeanConfig( actionForm ) )
-                        ac.setName( actionForm );
-                    else {
-                        log.info("No ActionForm defined: " + actionForm + ". Using default.");
-                        ac.setName( Sprout.SPROUT_DEFAULT_ACTION_FORM_NAME );
-                    }
-                    ac.setValidate( validate );
-                    ac.setInput( input );
-                    ac.setScope( scope );
+    /**
+     * Registers the methods of every Sprout defined in the Spring context.
+     * Action configs are built for each Sprout (in parallel if
+     * {@link #setParallel(boolean) parallel} is set) and then added to the
+     * module in one step, in bean definition order.
+     */
+    private void loadSprouts(final WebApplicationContext wac)
+        throws BeansException {
+        final String[] beanNames = wac.getBeanNamesForType( Sprout.class );
 
-                    getModuleConfig().addActionConfig( ac );
-                }
-                catch (final NoSuchMethodException e) {
-                    log.warn("Could not register action; no such method: " + name, e);
-                }
-            }
+        final List<List<ActionConfig>> configs;
+        if ( parallel && beanNames.length > 1 ) {
+            final long start = timer.start();
+            configs = buildSproutsInParallel( wac, beanNames );
+            timer.stop( "parallel", start );
+        } else {
+            configs = new ArrayList<List<ActionConfig>>( beanNames.length );
+            for ( int i = 0; i < beanNames.length; i++ )
+                configs.add( buildSprout( wac, beanNames[i], timer ) );
         }
+
+        final long start = timer.start();
+        for ( final List<ActionConfig> sprout : configs ) {
+            for ( final ActionConfig ac : sprout )
+                register( ac );
+        }
+        timer.stop( "registration", start );
         
         /* Useful if you'd like a view into registered paths
          * TODO create a ServletFilter that displays these
@@ -145,8 +156,580 @@ public class SproutAutoLoaderPlugIn extends ContextLoaderPlugIn {
         }
         */
     }
+
+    /**
+     * Registers aliases of Sprouts that the Sprouts did not register
+     * themselves, e.g. those declared with <code>&lt;alias&gt;</code> in
+     * <em>applicationContext.xml</em>.  Rather than asking for the aliases
+     * of every Sprout (each <code>getAliases()</code> call scans every
+     * alias in the context), the context's aliases are enumerated once and
+     * those that are not already registered are checked individually.
+     */
+    private void loadExtraAliases(final WebApplicationContext wac) {
+        if ( !( wac instanceof ConfigurableApplicationContext ) )
+            return;
+
+        // resolveAliases() passes every alias (and name) through the resolver
+        final Set<String> aliases = new HashSet<String>();
+        ((ConfigurableApplicationContext) wac).getBeanFactory().resolveAliases( new StringValueResolver() {
+            public String resolveStringValue(final String value) {
+                aliases.add( value );
+                return value;
+            }
+        });
+
+        // (findActionConfig() only works once the module is frozen)
+        final ActionConfig[] configs = getModuleConfig().findActionConfigs();
+        for ( int i = 0; i < configs.length; i++ )
+            aliases.remove( configs[i].getPath() );
+
+        Map<Object,String> owners = null;
+        for ( final String alias : aliases ) {
+            if ( !alias.startsWith("/") || wac.containsBeanDefinition( alias ) || !wac.isTypeMatch( alias, Sprout.class ) )
+                continue;
+
+            if ( null == owners ) {
+                final String[] beanNames = wac.getBeanNamesForType( Sprout.class );
+                owners = new IdentityHashMap<Object,String>();
+                for ( int i = 0; i < beanNames.length; i++ ) {
+                    if ( wac.isSingleton( beanNames[i] ) )
+                        owners.put( wac.getBean( beanNames[i] ), beanNames[i] );
+                }
+            }
+
+            final Sprout bean = (Sprout) wac.getBean( alias );
+            final String beanName = owners.get( bean );
+            if ( null == beanName ) {
+                log.warn("Not registering " + alias + "; it is an alias of a Sprout that is not a singleton.");
+                continue;
+            }
+            log.info("Registering " + alias + ", an alias of " + beanName + " that it did not register itself.");
+            for ( final ActionConfig ac : buildSprout( beanName, bean, new String[] { alias }, timer ) )
+                register( ac );
+        }
+    }
+
+    /**
+     * Builds action configs for several Sprouts on a fork-join pool using
+     * all available processors.
+     * 
+     * @return Action configs for each Sprout, in the order of
+     * <code>beanNames</code>.
+     */
+    private List<List<ActionConfig>> buildSproutsInParallel(final WebApplicationContext wac, final String[] beanNames)
+        throws BeansException {
+        // Spring resolves classes (and Sprouts may look up resources) using
+        // the context class loader
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final List<Callable<List<ActionConfig>>> tasks = new ArrayList<Callable<List<ActionConfig>>>( beanNames.length );
+        for ( int i = 0; i < beanNames.length; i++ ) {
+            final String beanName = beanNames[i];
+            tasks.add( new Callable<List<ActionConfig>>() {
+                public List<ActionConfig> call() {
+                    final Thread thread = Thread.currentThread();
+                    final ClassLoader previous = thread.getContextClassLoader();
+                    thread.setContextClassLoader( loader );
+                    try {
+                        // PhaseTimer is not thread-safe; only wall time is recorded
+                        return buildSprout( wac, beanName, new PhaseTimer() );
+                    }
+                    finally {
+                        thread.setContextClassLoader( previous );
+                    }
+                }
+            });
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool( Math.min( beanNames.length, Runtime.getRuntime().availableProcessors() ) );
+        try {
+            final List<List<ActionConfig>> configs = new ArrayList<List<ActionConfig>>( beanNames.length );
+            for ( final Future<List<ActionConfig>> result : pool.invokeAll( tasks ) )
+                configs.add( result.get() );
+            return configs;
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while loading Sprouts", e );
+        }
+        catch (final ExecutionException e) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException) e.getCause();
+            if ( e.getCause() instanceof Error )
+                throw (Error) e.getCause();
+            throw new IllegalStateException( e.getCause() );
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Obtains a Sprout from the Spring context and builds action configs for
+     * each of its aliases.  Does not modify the module, so may be called
+     * concurrently.
+     * 
+     * @param wac Spring context containing the Sprout.
+     * @param beanName Name of the Sprout bean.
+     * @param timer Timer to record phases with.
+     * @return Action configs for the Sprout's aliases.
+     */
+    private List<ActionConfig> buildSprout(final WebApplicationContext wac, final String beanName, final PhaseTimer timer)
+        throws BeansException {
+        final long start = timer.start();
+        final Sprout bean = (Sprout) wac.getBean( beanName );
+        timer.stop( "lookup", start );
+        return buildSprout( wac, beanName, bean, timer );
+    }
+
+    /**
+     * Builds action configs for each alias of a Sprout.  Does not modify the
+     * module, so may be called concurrently.
+     * 
+     * @param wac Spring context containing the Sprout.
+     * @param beanName Name of the Sprout bean.
+     * @param bean Sprout instance.
+     * @param timer Timer to record phases with.
+     * @return Action configs for the Sprout's aliases.
+     */
+    List<ActionConfig> buildSprout(final WebApplicationContext wac, final String beanName, final Sprout bean, final PhaseTimer timer) {
+        final long start = timer.start();
+        // getAliases() scans every alias in the context, so only fall back
+        // to it for Sprouts that did not register themselves (other aliases
+        // are registered by loadExtraAliases())
+        String[] aliases = bean.getPaths();
+        if ( null == aliases )
+            aliases = wac.getAliases( beanName );
+        timer.stop( "lookup", start );
+        return buildSprout( beanName, bean, aliases, timer );
+    }
+
+    /**
+     * Builds action configs for some of a Sprout's aliases.
+     */
+    private List<ActionConfig> buildSprout(final String beanName, final Sprout bean, final String[] aliases, final PhaseTimer timer) {
+        long start = timer.start();
+        final Map<String,Method> methods = indexMethods( bean.getClass() );
+        timer.stop( "lookup", start );
+
+        final List<ActionConfig> configs = new ArrayList<ActionConfig>( aliases.length );
+        for ( int j = 0; j < aliases.length; j++ ) {
+            final String name = aliases[j].substring( aliases[j].lastIndexOf('/') + 1 );
+            try {
+                start = timer.start();
+                final Method method = findMethod( name, methods );
+                timer.stop( "lookup", start );
+                log.debug( aliases[j] + " -> " + beanName + "." + name );
+
+                start = timer.start();
+                final SproutRoute route = createRoute( aliases[j], method, bean.getClass() );
+                timer.stop( "routes", start );
+                if ( null != indexRoutes )
+                    indexRoutes.add( route );
+
+                start = timer.start();
+                configs.add( createSproutConfig( route, bean.getClass() ) );
+                timer.stop( "configs", start );
+            }
+            catch (final NoSuchMethodException e) {
+                log.warn("Could not register action; no such method: " + name, e);
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * Creates a route for a Sprout method registered under a given alias,
+     * using annotations present on the method to override defaults.
+     * 
+     * @param alias Path registered by the Sprout.
+     * @param method Method the alias corresponds to.
+     * @param clazz Sprout class.
+     * @return Route for the alias.
+     */
+    private SproutRoute createRoute(final String alias, final Method method, final Class clazz) {
+        final SproutRoute route = new SproutRoute();
+        route.setType( clazz.getName() );
+        route.setSprout( true );
+        route.setPath( alias );
+        route.setMethod( method.getName() );
+
+        // establish defaults
+        route.setName( clazz.getSimpleName() + Sprout.DEFAULT_FORM_SUFFIX );
+        route.setInput( alias + Sprout.DEFAULT_VIEW_EXTENSION );
+        route.setScope( Sprout.DEFAULT_SCOPE );
+        route.setValidate( false );
+        route.addForward( Sprout.FWD_SUCCESS, alias + Sprout.DEFAULT_VIEW_EXTENSION, false, null );
+
+        // process annotations and override defaults where appropriate
+        final Annotation[] annotations = method.getAnnotations();
+        for (int k = 0; k < annotations.length; k++ ) {
+            final Annotation a = annotations[k];
+            final Class type = a.annotationType();
+            if ( type.equals( Sprout.FormName.class) )
+                route.setName( ((Sprout.FormName) a).value() );
+            else if ( type.equals( Sprout.Forward.class ) ) {
+                final Forward fwd = (Sprout.Forward) a;
+                for (int m=0; m < fwd.path().length; m++ ) {
+                    String fwdPath = fwd.path()[m];
+                    String fwdName = Sprout.FWD_SUCCESS;
+                    boolean fwdRedirect = false;
+                    if ( fwd.name().length - 1  >= m )
+                        fwdName = fwd.name()[m];
+                    if ( fwd.redirect().length - 1  >= m )
+                        fwdRedirect = fwd.redirect()[m];
+                    route.addForward( fwdName, fwdPath, fwdRedirect, null );
+                }
+            } else if ( type.equals( Sprout.Input.class) )
+                route.setInput( ((Sprout.Input) a).value() );
+            if ( type.equals( Sprout.Scope.class) )
+                route.setScope( ((Sprout.Scope) a).value() );
+            else if ( type.equals( Sprout.Validate.class ) ) {
+                route.setValidate( ((Sprout.Validate) a).value() );
+                route.setFailFast( ((Sprout.Validate) a).failFast() );
+            }
+            else if ( type.equals( Sprout.Conditional.class ) )
+                route.setConditional( ((Sprout.Conditional) a).lastModified(), ((Sprout.Conditional) a).etag() );
+            else if ( type.equals( Sprout.Cache.class ) )
+                route.setCache( ((Sprout.Cache) a).ttl(), ((Sprout.Cache) a).params(), ((Sprout.Cache) a).vary(), ((Sprout.Cache) a).shared() );
+            else if ( type.equals( SproutBulkhead.class ) )
+                setBulkhead( route, (SproutBulkhead) a );
+            else if ( type.equals( SproutRateLimit.class ) )
+                setRateLimit( route, (SproutRateLimit) a );
+        }
+
+        return route;
+    }
+
+    private static void setBulkhead(final SproutRoute route, final SproutBulkhead bulkhead) {
+        route.setBulkhead( bulkhead.value(), bulkhead.maxWait(), bulkhead.forward() );
+    }
+
+    private static void setRateLimit(final SproutRoute route, final SproutRateLimit limit) {
+        route.setRateLimit( limit.value(), limit.burst(), limit.key().name(), limit.header() );
+    }
+
+    /**
+     * Creates (or removes, if the route no longer declares them) the
+     * bulkhead and rate limiter for a route's path.
+     */
+    private void createLimits(final SproutRoute route) {
+        if ( route.getBulkheadLimit() > 0 )
+            bulkheads.put( route.getPath(), new Bulkhead( route.getBulkheadLimit(), route.getBulkheadWait(), route.getBulkheadForward() ) );
+        else
+            bulkheads.remove( route.getPath() );
+
+        if ( route.getRateLimit() > 0 ) {
+            try {
+                rateLimiters.put( route.getPath(), new RateLimiter( route.getRateLimit(), route.getRateBurst(), route.getRateKey(), route.getRateHeader() ) );
+            }
+            catch (final IllegalArgumentException e) {
+                log.warn("Not rate limiting " + route + ": " + e.getMessage() );
+                rateLimiters.remove( route.getPath() );
+            }
+        } else {
+            rateLimiters.remove( route.getPath() );
+        }
+    }
+
+    /**
+     * Creates and registers the action mapping described by a route.
+     * 
+     * @param route Route to register.
+     * @param clazz Sprout class the route dispatches to (Sprout routes only).
+     */
+    private void addRoute(final SproutRoute route, final Class clazz) {
+        final ActionConfig ac = route.isSprout() ? createSproutConfig( route, clazz ) : createActionConfig( route );
+        if ( null != ac )
+            register( ac );
+    }
+
+    /**
+     * Adds an action config to the module and its path to the router.
+     */
+    private void register(final ActionConfig ac) {
+        getModuleConfig().addActionConfig( ac );
+        router.add( ac.getPath() );
+    }
+
+    private ActionConfig createSproutConfig(final SproutRoute route, final Class clazz) {
+        final SproutActionMapping ac = new SproutActionMapping();
+        ac.setParameter( route.getMethod() );
+        ac.setPath( route.getPath() );
+
+        // use values
+        if ( null != getModuleConfig().findFormBeanConfig( route.getName() ) )
+            ac.setName( route.getName() );
+        else {
+            log.info("No ActionForm defined: " + route.getName() + ". Using default.");
+            ac.setName( Sprout.SPROUT_DEFAULT_ACTION_FORM_NAME );
+        }
+
+        // bind the method once rather than looking it up on every request
+        try {
+            ac.setInvoker( SproutInvokerFactory.create( clazz, route.getMethod(), getFormType( ac.getName(), clazz ) ) );
+        }
+        catch (final NoSuchMethodException e) {
+            log.warn("Unable to bind " + route + "; it will be dispatched by name: " + e.getMessage() );
+        }
+        catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException( "Unable to bind " + route + " to form " + ac.getName() + ": " + e.getMessage(), e );
+        }
+
+        try {
+            ac.setFreshnessCheck( FreshnessCheck.create( clazz, route.getLastModifiedMethod(), route.getETagMethod() ) );
+        }
+        catch (final NoSuchMethodException e) {
+            log.warn("Unable to bind freshness callbacks for " + route + "; requests will not be conditional: " + e.getMessage() );
+        }
+
+        for ( final ForwardConfig fc : route.getForwards() )
+            ac.addForwardConfig( makeForward( fc.getName(), fc.getPath(), fc.getRedirect(), fc.getModule() ) );
+
+        ac.setValidate( route.isValidate() );
+        ac.setFailFast( route.isFailFast() );
+        ac.setInput( route.getInput() );
+        ac.setScope( route.getScope() );
+        ac.setCacheTtl( route.getCacheTtl() );
+        ac.setCacheParameters( route.getCacheParameters() );
+        ac.setCacheVary( route.getCacheVary() );
+        ac.setCacheShared( route.isCacheShared() );
+        createLimits( route );
+
+        return ac;
+    }
+
+    /**
+     * Loads the class of a form bean, using the Sprout's class loader so
+     * that reloaded forms are seen by reloaded Sprouts.
+     *
+     * @return Form class, or null if it is not registered or cannot be
+     * loaded (in which case Struts will complain when creating the form).
+     */
+    private Class getFormType(final String name, final Class clazz) {
+        final FormBeanConfig fbc = getModuleConfig().findFormBeanConfig( name );
+        if ( null == fbc || null == fbc.getType() )
+            return null;
+        try {
+            return ClassUtils.forName( fbc.getType(), clazz.getClassLoader() );
+        }
+        catch (final ClassNotFoundException e) {
+            log.debug("Unable to load form " + name + ": " + e.getMessage() );
+        }
+        catch (final LinkageError e) {
+            log.debug("Unable to load form " + name + ": " + e.getMessage() );
+        }
+        return null;
+    }
+
+    private ActionConfig createActionConfig(final SproutRoute route) {
+        final String mappingClass = route.getMappingClass();
+        ActionConfig actionConfig = null;
+
+        if ( ActionConfig.class.getName().equals( mappingClass ) ) {
+            actionConfig = new ActionConfig();
+        } else {
+            try {
+                actionConfig = (ActionConfig) BeanUtils.instantiateClass( ClassUtils.forName( mappingClass ) );
+            } catch (ClassNotFoundException cnfe) {
+                log.error("Failed to create a new instance of " + mappingClass + ", " + cnfe.getMessage());
+            } catch (BeanInstantiationException bie) {
+                log.error("Failed to create a new instance of " + mappingClass + ", " + bie.getMessage());
+            }
+        }
+
+        if(actionConfig != null) {
+            actionConfig.setPath(route.getPath());
+            actionConfig.setType(route.getType());
+            actionConfig.setScope(route.getScope());
+            actionConfig.setValidate(route.isValidate());
+
+            if(route.getName() != null) {
+                actionConfig.setName(route.getName());
+            }
+            if(route.getInput() != null) {
+                actionConfig.setInput(route.getInput());
+            }
+
+            if(!route.getProperties().isEmpty()) {
+                Map actionConfigBeanMap = new BeanMap(actionConfig);
+                actionConfigBeanMap.putAll(route.getProperties());
+            }
+
+            for ( final ForwardConfig fc : route.getForwards() )
+                actionConfig.addForwardConfig( makeForward( fc.getName(), fc.getPath(), fc.getRedirect(), fc.getModule() ) );
+            createLimits( route );
+        }
+
+        if(log.isDebugEnabled()) {
+            log.debug( "Action " + route.getPath() + " -> " + route.getType() );
+        }
+
+        return actionConfig;
+    }
+
+    /**
+     * Registers forms and routes from a pre-computed registry rather than
+     * by reflecting upon Sprouts and scanning the classpath.  Sprout routes
+     * are only registered if a corresponding Sprout is defined in the
+     * Spring context.
+     * 
+     * @param wac Spring context containing Sprouts.
+     * @param registry Registry to load.
+     */
+    private void loadRegistry(final WebApplicationContext wac, final SproutRouteRegistry registry) {
+        final Map<String,Class> sprouts = new HashMap<String,Class>();
+        final String[] beanNames = wac.getBeanNamesForType( Sprout.class );
+        for ( int i = 0; i < beanNames.length; i++ ) {
+            final Class type = wac.getType( beanNames[i] );
+            if ( null != type )
+                sprouts.put( type.getName(), type );
+        }
+
+        final FormBeanConfig[] forms = registry.getFormBeans();
+        for ( int i = 0; i < forms.length; i++ )
+            getModuleConfig().addFormBeanConfig( forms[i] );
+
+        final SproutRoute[] routes = registry.getRoutes();
+        for ( int i = 0; i < routes.length; i++ ) {
+            if ( !routes[i].isSprout() || sprouts.containsKey( routes[i].getType() ) )
+                addRoute( routes[i], sprouts.get( routes[i].getType() ) );
+            else
+                log.debug("Skipping route for undefined Sprout: " + routes[i] );
+        }
+
+        log.info("Loaded " + routes.length + " routes and " + forms.length + " forms from " + registry.getClass().getName() );
+    }
+
+    /**
+     * Instantiates the configured registry, if any.
+     * 
+     * @return Registry or null if none is configured or it could not be loaded.
+     */
+    private SproutRouteRegistry createRegistry() {
+        if ( null == registry || registry.length() == 0 )
+            return null;
+
+        try {
+            return (SproutRouteRegistry) BeanUtils.instantiateClass( ClassUtils.forName( registry ) );
+        }
+        catch (final Exception e) {
+            log.warn("Unable to load route registry " + registry + "; falling back to classpath scanning: " + e.getMessage() );
+            return null;
+        }
+        catch (final LinkageError e) {
+            // a registry compiled against classes that are no longer there
+            log.warn("Unable to link route registry " + registry + "; falling back to classpath scanning: " + e );
+            return null;
+        }
+    }
+
+    /**
+     * Sets the name of a generated <code>SproutRouteRegistry</code> to load
+     * routes from.
+     * 
+     * @see SproutRouteRegistry#DEFAULT_CLASS_NAME
+     */
+    public void setRegistry(final String registry) {
+        this.registry = registry;
+    }
+
+    public String getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Sets whether Sprouts should be obtained from the Spring context and
+     * their action configs built in parallel, using all available
+     * processors.  Only applies when no registry is used.  Sprouts that
+     * have not already been instantiated by the Spring context (e.g. those
+     * that are lazily initialized) are then instantiated concurrently, so
+     * they must not depend on the order in which Sprouts are loaded.
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Sets whether to watch the class directories found while scanning and
+     * re-register Sprouts, <code>@SproutAction</code>s and
+     * <code>@SproutForm</code>s whose classes change, without restarting.
+     * Intended for development; only applies when no registry is used.
+     * 
+     * @see SproutReloader
+     */
+    public void setReload(final boolean reload) {
+        this.reload = reload;
+    }
+
+    public boolean isReload() {
+        return reload;
+    }
+
+    /**
+     * Sets whether the routes found by scanning should be saved to an index
+     * in the servlet container's temporary directory and reused by
+     * subsequent startups, as long as the classpath (judging by the sizes
+     * and modification times of its entries) and the Sprouts defined in
+     * the Spring context are unchanged.  Defaults to <em>true</em>; ignored
+     * when a registry is used or classes are being reloaded.
+     * 
+     * @see SproutRouteIndex
+     */
+    public void setIndex(final boolean index) {
+        this.index = index;
+    }
+
+    public boolean isIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the maximum number of threads running tasks started by
+     * <code>Sprout.async()</code> when virtual threads are unavailable.
+     * Defaults to {@link AsyncSupport#DEFAULT_MAXIMUM_THREADS}.
+     */
+    public void setAsyncThreads(final int asyncThreads) {
+        this.asyncThreads = asyncThreads;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    /**
+     * Sets the number of tasks started by <code>Sprout.async()</code> that
+     * may wait for a thread when virtual threads are unavailable; further
+     * tasks are answered with <em>503 Service Unavailable</em>.  Defaults
+     * to {@link AsyncSupport#DEFAULT_QUEUE_SIZE}.
+     */
+    public void setAsyncQueueSize(final int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
     
-    private void loadForm(Class bean) {
+    private void loadForm(final Class bean) {
+        final FormBeanConfig fbc = createFormBeanConfig( bean );
+        if ( null != fbc ) {
+            getModuleConfig().addFormBeanConfig( fbc );
+            if ( null != indexForms )
+                indexForms.add( fbc );
+        }
+    }
+
+    /**
+     * Creates the form-bean config for an <code>@SproutForm</code>.
+     * 
+     * @param bean Form class.
+     * @return Form-bean config, or null if the class is not annotated.
+     */
+    FormBeanConfig createFormBeanConfig(final Class bean) {
         final Annotation[] annotations = bean.getAnnotations();
 
         for (int j = 0; j < annotations.length; j++ ) {
@@ -161,13 +744,25 @@ public class SproutAutoLoaderPlugIn extends ContextLoaderPlugIn {
                 if(log.isDebugEnabled()) {
                     log.debug( "ActionForm " + actionFormName + " -> " + actionFormType );
                 }
-                getModuleConfig().addFormBeanConfig(new ActionFormBean(actionFormName, actionFormType));
+                return new ActionFormBean(actionFormName, actionFormType);
             }
         }
+        return null;
     }
     
-    @SuppressWarnings("unchecked")
     private void loadAction(final Class bean) {
+        for ( final ActionConfig ac : createActionConfigs( bean ) )
+            register( ac );
+    }
+
+    /**
+     * Creates the action configs for an <code>@SproutAction</code>.
+     * 
+     * @param bean Action class.
+     * @return Action configs; empty if the class is not annotated.
+     */
+    List<ActionConfig> createActionConfigs(final Class bean) {
+        final List<ActionConfig> configs = new ArrayList<ActionConfig>();
         final Annotation[] annotations = bean.getAnnotations();
 
         for (int i = 0; i < annotations.length; i++ ) {
@@ -175,135 +770,206 @@ public class SproutAutoLoaderPlugIn extends ContextLoaderPlugIn {
             final Class type = a.annotationType();
 
             if(type.equals( SproutAction.class ) ) {
-                final SproutAction form = (SproutAction) a;
-                final String path = form.path();
-                final Class<ActionConfig> mappingClass = form.mappingClass();
-                final String scope = form.scope();
-                final String name = form.name();
-                final boolean validate = form.validate();
-                final String input = form.input();
-                final SproutProperty[] properties = form.properties();
-                final SproutForward[] forwards = form.forwards();
-                ActionConfig actionConfig = null;
-                
-                try {
-                    Constructor<ActionConfig> constructor = mappingClass.getDeclaredConstructor(new Class[]{});
-                    
-                    actionConfig = constructor.newInstance(new Object[]{});
-                } catch (NoSuchMethodException nsme) {
-                    log.error("Failed to create a new instance of " + mappingClass.toString() + ", " + nsme.getMessage());
-                } catch (InstantiationException ie) {
-                    log.error("Failed to create a new instance of " + mappingClass.toString() + ", " + ie.getMessage());
-                } catch (IllegalAccessException iae) {
-                    log.error("Failed to create a new instance of " + mappingClass.toString() + ", " + iae.getMessage());
-                } catch (InvocationTargetException ite) {
-                    log.error("Failed to create a new instance of " + mappingClass.toString() + ", " + ite.getMessage());
-                }
-
-                if(actionConfig != null) {
-                    actionConfig.setPath(path);
-                    actionConfig.setType(bean.getName());
-                    actionConfig.setScope(scope);
-                    actionConfig.setValidate(validate);
-
-                    if(name.length() > 0) {
-                        actionConfig.setName(name);
-                    }
-                    if(input.length() > 0) {
-                        actionConfig.setInput(input);
-                    }
-                    
-                    if(properties != null && properties.length > 0) {
-                        Map actionConfigBeanMap = new BeanMap(actionConfig);
-                        
-                        for(int j = 0; j < properties.length; j++) {
-                            actionConfigBeanMap.put(properties[j].property(), properties[j].value());
-                        }
-                    }
-                    
-                    if(forwards != null && forwards.length > 0) {
-                        for(int j = 0; j < forwards.length; j++) {
-                            String fcModule = forwards[j].module();
-                            
-                            actionConfig.addForwardConfig(makeForward(forwards[j].name(), forwards[j].path(), forwards[j].redirect(), fcModule.length() == 0? null: fcModule));
-                        }
-                    }
-                }
-                
-                if(log.isDebugEnabled()) {
-                    log.debug( "Action " + path + " -> " + bean.getName() );
-                }
-
-                getModuleConfig().addActionConfig( actionConfig );
+                final SproutRoute route = createRoute( bean, (SproutAction) a );
+                if ( null != indexRoutes )
+                    indexRoutes.add( route );
+                final ActionConfig ac = createActionConfig( route );
+                if ( null != ac )
+                    configs.add( ac );
             }
         }
+        return configs;
     }
-    
-    private boolean decendsFrom(final Class superclass, Class clazz) {
-        boolean result = false;
-        
-        if(clazz != null) {
-            result = clazz.equals(superclass)? true: decendsFrom(superclass, clazz.getSuperclass());
+
+    /**
+     * Creates a route for an <code>@SproutAction</code>.
+     * 
+     * @param bean Action class.
+     * @param form Annotation present on the action class.
+     * @return Route for the action.
+     */
+    private SproutRoute createRoute(final Class bean, final SproutAction form) {
+        final SproutRoute route = new SproutRoute();
+        route.setType( bean.getName() );
+        route.setSprout( false );
+        route.setPath( form.path() );
+        route.setMappingClass( form.mappingClass().getName() );
+        route.setScope( form.scope() );
+        route.setValidate( form.validate() );
+
+        if(form.name().length() > 0) {
+            route.setName( form.name() );
+        }
+        if(form.input().length() > 0) {
+            route.setInput( form.input() );
         }
-        
-        return result;
-    }
-    
-    // TODO: Right now, this is only scanning classpath URLs that are directories. It really needs
-    // to be more thorough, a good example can be found in the code to Tapestry 5. This works OK
-    // for JBoss, as it expands .war files into a directory structure when deploying them.
-    private void autoloadFromDirectory(final ClassLoader loader, final int baseLength, File directory) {
-        File [] files = directory.listFiles();
-        
-        for(int i = 0; i < files.length; i++) {
-            File file = files[i];
-            
-            if(file.isDirectory()) {
-                autoloadFromDirectory(loader, baseLength, file);
-            } else {
-                String path = file.getPath();
-                
-                if(path.endsWith(".class")) {
-                    int length = path.length();
-                    String className = path.substring(baseLength, length - 6).replace('/', '.');
 
-                    try {
-                        Class c = loader.loadClass(className);
-                        
-                        if(decendsFrom(ActionForm.class, c)) {
-                            loadForm(c);
-                        } else if(decendsFrom(org.apache.struts.action.Action.class, c)) {
-                            loadAction(c);
-                        }
-                    } catch(ClassNotFoundException ex) {
-                        log.error("Failed to load class, " + ex.getMessage());
-                    }
-                }
-            }
+        final SproutProperty[] properties = form.properties();
+        for(int j = 0; j < properties.length; j++) {
+            route.addProperty( properties[j].property(), properties[j].value() );
+        }
+
+        final SproutForward[] forwards = form.forwards();
+        for(int j = 0; j < forwards.length; j++) {
+            String fcModule = forwards[j].module();
+            route.addForward( forwards[j].name(), forwards[j].path(), forwards[j].redirect(), fcModule.length() == 0? null: fcModule );
         }
+
+        final SproutBulkhead bulkhead = (SproutBulkhead) bean.getAnnotation( SproutBulkhead.class );
+        if ( null != bulkhead )
+            setBulkhead( route, bulkhead );
+        final SproutRateLimit rateLimit = (SproutRateLimit) bean.getAnnotation( SproutRateLimit.class );
+        if ( null != rateLimit )
+            setRateLimit( route, rateLimit );
+
+        return route;
     }
     
+    /**
+     * Scans the classpath for <code>@SproutForm</code>s and
+     * <code>@SproutAction</code>s and registers them.  Both directories and
+     * jars are scanned by reading class files directly; only classes that
+     * carry one of these annotations and extend the appropriate Struts class
+     * are ever loaded.
+     */
     public void autoloadClasses(final WebApplicationContext wac) {
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
         
         if(loader instanceof URLClassLoader) {
-            URL[] cp = ((URLClassLoader)loader).getURLs();
+            final List<File> locations = getClassPath((URLClassLoader) loader);
+            for(final File location : locations) {
+                if(location.isDirectory()) {
+                    classDirectories.add(location);
+                }
+            }
+
+            long start = timer.start();
+            final ClassPathScanner scanner = new ClassPathScanner(loader);
+            scanner.scan(locations.toArray(new File[locations.size()]));
+            timer.stop("scan", start);
+            log.info("Scanned " + scanner.getClasses().size() + " classes in " + timer.getTime("scan") / 1000000L + "ms.");
 
-            for(int i = 0; i < cp.length; i++) {
-                URL url = cp[i];
+            start = timer.start();
+            for(final ClassFileInfo info : scanner.getClasses()) {
+                final boolean form = info.hasAnnotation(SproutForm.class.getName()) && scanner.isSubclass(info.getName(), ActionForm.class.getName());
+                final boolean action = info.hasAnnotation(SproutAction.class.getName()) && scanner.isSubclass(info.getName(), Action.class.getName());
+                if(!form && !action) {
+                    continue;
+                }
 
-                if(url.getProtocol().equals("file")) {
-                    String pathname = url.getFile();
-                    File file = new File(pathname);
-                    
-                    if(file.isDirectory()) {
-                        autoloadFromDirectory(loader, pathname.length(), file);
+                try {
+                    Class c = scanner.loadClass(info.getName());
+
+                    if(form) {
+                        loadForm(c);
+                    } else {
+                        loadAction(c);
                     }
+                } catch(ClassNotFoundException ex) {
+                    log.error("Failed to load class, " + ex.getMessage());
                 }
             }
+            timer.stop("autoload", start);
         }
     }
     
+    /**
+     * Lists the directories and jars on a class loader's classpath.
+     */
+    private List<File> getClassPath(final URLClassLoader loader) {
+        final URL[] cp = loader.getURLs();
+        final List<File> locations = new ArrayList<File>();
+        for ( int i = 0; i < cp.length; i++ ) {
+            if ( cp[i].getProtocol().equals("file") )
+                locations.add( new File( cp[i].getFile() ) );
+        }
+        return locations;
+    }
+
+    /**
+     * Registers forms and routes by scanning, unless an index computed by a
+     * previous scan of the same classpath and Sprouts is available.  Writes
+     * a new index after scanning.
+     */
+    private void loadIndexOrScan(final WebApplicationContext wac) {
+        final File file = getIndexFile();
+        if ( null == file ) {
+            // forms must be registered before Sprouts refer to them
+            autoloadClasses(wac);
+            loadSprouts(wac);
+            return;
+        }
+
+        long start = timer.start();
+        final long fingerprint = fingerprint( wac );
+        SproutRouteIndex index = null;
+        try {
+            index = SproutRouteIndex.read( file, fingerprint );
+        }
+        catch (final IOException e) {
+            log.warn("Unable to read route index " + file + ": " + e.getMessage() );
+        }
+        timer.stop( "index", start );
+
+        if ( null != index ) {
+            start = timer.start();
+            loadRegistry( wac, index );
+            timer.stop( "registry", start );
+            return;
+        }
+
+        indexForms = new ArrayList<FormBeanConfig>();
+        indexRoutes = Collections.synchronizedList( new ArrayList<SproutRoute>() );
+        try {
+            autoloadClasses(wac);
+            loadSprouts(wac);
+
+            start = timer.start();
+            new SproutRouteIndex( indexForms.toArray( new FormBeanConfig[ indexForms.size() ] ), indexRoutes.toArray( new SproutRoute[ indexRoutes.size() ] ) ).write( file, fingerprint );
+            timer.stop( "index", start );
+            log.info("Wrote route index " + file );
+        }
+        catch (final IOException e) {
+            log.warn("Unable to write route index " + file + ": " + e.getMessage() );
+        }
+        finally {
+            indexForms = null;
+            indexRoutes = null;
+        }
+    }
+
+    /**
+     * Determines where the route index for this module is kept.
+     * 
+     * @return Index file, or null if indexing is disabled or impossible.
+     */
+    private File getIndexFile() {
+        if ( !index || reload || !( Thread.currentThread().getContextClassLoader() instanceof URLClassLoader ) )
+            return null;
+
+        final File tmp = WebUtils.getTempDir( getServletContext() );
+        if ( null == tmp )
+            return null;
+        return new File( tmp, "sprout-routes" + getModulePrefix().replace('/', '_') + ".idx" );
+    }
+
+    /**
+     * Computes a fingerprint of the classpath (the sizes and modification
+     * times of its entries) and of the Sprouts defined in the Spring context.
+     */
+    private long fingerprint(final WebApplicationContext wac) {
+        final SproutRouteIndex.Fingerprint fingerprint = new SproutRouteIndex.Fingerprint();
+        for ( final File location : getClassPath( (URLClassLoader) Thread.currentThread().getContextClassLoader() ) )
+            fingerprint.add( location );
+
+        final String[] beanNames = wac.getBeanNamesForType( Sprout.class );
+        for ( int i = 0; i < beanNames.length; i++ ) {
+            final Class type = wac.getType( beanNames[i] );
+            fingerprint.add( beanNames[i] ).add( null == type ? null : type.getName() );
+        }
+        return fingerprint.getValue();
+    }
+
     /**
      * Extends Spring's ContextLoaderPlugIn initialization callback to add
      * Struts registration of Sprouts.
@@ -315,25 +981,105 @@ public class SproutAutoLoaderPlugIn extends ContextLoaderPlugIn {
         final WebApplicationContext wac = WebApplicationContextUtils.getWebApplicationContext( getServletContext() );
 
         try {
-            loadSprouts(wac);
-            autoloadClasses(wac);
+            AsyncSupport.setPoolSize( asyncThreads, asyncQueueSize );
+            loadDefaultForm();
+
+            final SproutRouteRegistry routes = createRegistry();
+            if ( null != routes ) {
+                final long start = timer.start();
+                loadRegistry(wac, routes);
+                timer.stop( "registry", start );
+            } else {
+                loadIndexOrScan(wac);
+            }
+
+            final long start = timer.start();
+            loadExtraAliases( wac );
+            timer.stop( "aliases", start );
+
+            // make registered paths available to SproutRequestProcessor
+            getServletContext().setAttribute( SproutRouter.ROUTER_KEY + getModulePrefix(), router );
+            getServletContext().setAttribute( Bulkhead.BULKHEADS_KEY + getModulePrefix(), bulkheads );
+            getServletContext().setAttribute( RateLimiter.RATE_LIMITERS_KEY + getModulePrefix(), rateLimiters );
+
+            if ( reload )
+                startReloader( wac, null != routes );
         } catch (final BeansException e) {
             log.warn( "Error while auto loading Sprouts: " + e.getMessage(), e );
             throw new ServletException( e );
         }
+
+        log.info("Registered " + getModuleConfig().findActionConfigs().length + " actions (" + timer + ")");
     }
-    
+
     /**
-     * Helper method for creating ActionForwards.
+     * Starts watching the class directories found while scanning for
+     * changes.
      * 
-     * @param name Forward name.
-     * @param path Registered path.
-     * @return ForwardConfig.
+     * @param wac Spring context containing Sprouts.
+     * @param registry Whether routes were loaded from a registry.
+     */
+    private void startReloader(final WebApplicationContext wac, final boolean registry) {
+        if ( registry || classDirectories.isEmpty() ) {
+            log.warn("Reloading requires classpath scanning with class directories; not reloading.");
+            return;
+        }
+
+        try {
+            reloader = new SproutReloader( this, wac, getActionServlet(), classDirectories );
+            reloader.start();
+            getServletContext().setAttribute( SproutReloader.RELOADER_KEY + getModulePrefix(), reloader );
+        }
+        catch (final IOException e) {
+            log.warn("Unable to watch class directories; not reloading: " + e.getMessage(), e );
+            reloader = null;
+        }
+    }
+
+    /**
+     * Stops watching for changes.
      */
-    private ForwardConfig makeForward(final String name, final String path) {
-        return makeForward( name, path, false, null );
+    @Override
+    public void destroy() {
+        if ( null != reloader ) {
+            reloader.stop();
+            getServletContext().removeAttribute( SproutReloader.RELOADER_KEY + getModulePrefix() );
+            reloader = null;
+        }
+        super.destroy();
+    }
+
+    /**
+     * Times creation of the plug-in's own WebApplicationContext.
+     */
+    @Override
+    protected WebApplicationContext initWebApplicationContext() throws BeansException, IllegalStateException {
+        final long start = timer.start();
+        try {
+            return super.initWebApplicationContext();
+        }
+        finally {
+            timer.stop( "context", start );
+        }
     }
 
+    /**
+     * Time (in nanoseconds) spent in each phase of initialization:
+     * <em>context</em> (creating the plug-in's Spring context),
+     * <em>lookup</em> (resolving Sprout aliases to methods), <em>routes</em>
+     * (reading annotations), <em>configs</em> (creating action mappings),
+     * <em>parallel</em> (the previous three, when loading Sprouts in
+     * parallel), <em>registration</em> (adding action mappings to the
+     * module), <em>scan</em> (scanning the classpath),
+     * <em>autoload</em> (registering <code>@SproutForm</code>s and
+     * <code>@SproutAction</code>s), <em>index</em> (reading or writing the
+     * route index) and <em>registry</em> (loading a generated registry or
+     * index).  Phases that did not occur are omitted.
+     */
+    public Map<String,Long> getPhaseTimes() {
+        return timer.getPhases();
+    }
+    
     /**
      * Helper method for creating ActionForwards.
      * 
@@ -352,23 +1098,43 @@ public class SproutAutoLoaderPlugIn extends ContextLoaderPlugIn {
     }
     
     /**
-     * Finds the method in the target class which corresponds to a registered
-     * pathname.
+     * Indexes the public methods of a class by the names that registered
+     * pathnames resolve to (see {@link #findMethod(String, Map)}), so that
+     * each alias can be resolved without scanning every method.  Where
+     * several methods share a name, the first one returned by
+     * <code>getMethods()</code> is used.
      * 
-     * @param name Action portion of pathname.
      * @param clazz Target class.
-     * @return Corresponding method.
-     * @throws NoSuchMethodException when corresponding method cannot be found.
+     * @return Methods keyed by lower-cased name.
      */
-    private Method findMethod(final String name, final Class clazz) throws NoSuchMethodException {
+    private Map<String,Method> indexMethods(final Class clazz) {
         final Method[] methods = clazz.getMethods();
+        final Map<String,Method> index = new HashMap<String,Method>( methods.length * 2 );
         for ( int i = 0; i < methods.length; i++ ) {
             String methodName = methods[i].getName();
             if ( methodName.equals("publick") )
                 methodName = "public";
-            if ( methodName.equalsIgnoreCase( name.replaceAll("_([a-z])", "$1") ) )
-                return methods[i];
+            final String key = methodName.toLowerCase( Locale.ENGLISH );
+            if ( !index.containsKey( key ) )
+                index.put( key, methods[i] );
         }
-        throw new NoSuchMethodException( name );
+        return index;
+    }
+
+    /**
+     * Finds the method in the target class which corresponds to a registered
+     * pathname.
+     * 
+     * @param name Action portion of pathname.
+     * @param methods Methods of the target class, as indexed by
+     * {@link #indexMethods(Class)}.
+     * @return Corresponding method.
+     * @throws NoSuchMethodException when corresponding method cannot be found.
+     */
+    private Method findMethod(final String name, final Map<String,Method> methods) throws NoSuchMethodException {
+        final Method method = methods.get( UNDERSCORED.matcher( name ).replaceAll("$1").toLowerCase( Locale.ENGLISH ) );
+        if ( null == method )
+            throw new NoSuchMethodException( name );
+        return method;
     }
 }
@@ -0,0 +1,435 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.struts.action.ActionForward;
+
+/**
+ * <p>Response body written directly by <code>SproutRequestProcessor</code>
+ * in place of a forward.  Sprout methods return one (as an
+ * <code>ActionForward</code> or as a <code>SproutBody</code>) to stream a
+ * file, a channel or the output of a callback:</p>
+ * <pre>
+ * public SproutBody export(final ActionMapping mapping, ...) {
+ *     final SproutBody body = SproutBody.file( new File( exportDir, "report.csv" ), "text/csv" );
+ *     body.setAttachment("report.csv");
+ *     return body;
+ * }
+ * </pre>
+ *
+ * <p>Bodies are copied to the response's output stream through a small,
+ * fixed-size heap buffer rather than buffered whole.  Only files sent by
+ * the container avoid that copy: if the request carries
+ * <em>org.apache.tomcat.sendfile.support</em> (as Tomcat's NIO and APR
+ * connectors set it, when sendfile is enabled), files are handed to the
+ * container to send with <em>sendfile</em> once the request has been
+ * processed.  Elsewhere there is no zero-copy path, since the servlet API
+ * only exposes the response as a stream.</p>
+ *
+ * <p>Bodies whose length is known are sent with a
+ * <em>Content-Length</em>.  Those that can also be read from arbitrary
+ * positions (files, <code>SeekableByteChannel</code>s) accept single
+ * <em>Range</em> requests, answering with <em>206 Partial Content</em> or
+ * <em>416 Requested Range Not Satisfiable</em>; requests for multiple
+ * ranges are answered with the entire body.</p>
+ *
+ * <p>Bodies other than JSON ones are not stored in the response
+ * cache.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public abstract class SproutBody extends ActionForward {
+    /** Default content type. */
+    public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String contentType;
+    private String filename;
+
+    protected SproutBody(final String contentType) {
+        this.contentType = null == contentType ? DEFAULT_CONTENT_TYPE : contentType;
+    }
+
+    /**
+     * Creates a body containing an entire file.
+     *
+     * @param contentType Content type, or null for <em>application/octet-stream</em>.
+     */
+    public static SproutBody file(final File file, final String contentType) {
+        return new FileBody( file, 0, -1, contentType );
+    }
+
+    /**
+     * Creates a body containing part of a file.
+     *
+     * @param start Offset of the first byte.
+     * @param count Number of bytes.
+     * @param contentType Content type, or null for <em>application/octet-stream</em>.
+     */
+    public static SproutBody file(final File file, final long start, final long count, final String contentType) {
+        if ( start < 0 || count < 0 )
+            throw new IllegalArgumentException("Invalid region: " + start + "+" + count );
+        return new FileBody( file, start, count, contentType );
+    }
+
+    /**
+     * Creates a body read from a channel, which is closed once it has been
+     * written (or if it is not needed).  Ranges are supported if the
+     * channel is a <code>SeekableByteChannel</code> and its length is known.
+     *
+     * @param length Number of bytes that will be read, or -1 if unknown.
+     * @param contentType Content type, or null for <em>application/octet-stream</em>.
+     */
+    public static SproutBody channel(final ReadableByteChannel channel, final long length, final String contentType) {
+        return new ChannelBody( channel, length, contentType );
+    }
+
+    /**
+     * Creates a body written by a callback.
+     *
+     * @param length Number of bytes that will be written, or -1 if unknown.
+     * @param contentType Content type, or null for <em>application/octet-stream</em>.
+     */
+    public static SproutBody stream(final Callback callback, final long length, final String contentType) {
+        return new CallbackBody( callback, length, contentType );
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Name the client should save the body as, or null if it should be
+     * displayed inline.
+     */
+    public String getAttachment() {
+        return filename;
+    }
+
+    public void setAttachment(final String filename) {
+        this.filename = filename;
+    }
+
+    /**
+     * Length of the body in bytes, or -1 if unknown.
+     */
+    public abstract long getLength();
+
+    /**
+     * Whether arbitrary ranges of the body can be written.
+     */
+    protected boolean isSeekable() {
+        return false;
+    }
+
+    /**
+     * When the body was last modified, or -1 if unknown.
+     */
+    protected long getLastModified() {
+        return -1;
+    }
+
+    /**
+     * Writes part of the body.
+     *
+     * @param start Offset of the first byte; always 0 unless seekable.
+     * @param count Number of bytes to write, or -1 for the remainder of a
+     * body of unknown length.
+     */
+    protected abstract void write(HttpServletRequest request, HttpServletResponse response, long start, long count) throws IOException;
+
+    /**
+     * Whether the body may be stored in the response cache.  Streamed
+     * bodies may not, as they would have to be buffered.
+     */
+    protected boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * Releases anything held by a body that was not written.
+     */
+    protected void discard() throws IOException {}
+
+    /**
+     * Sends the body, or the requested range of it.
+     */
+    public void send(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final long length = getLength();
+        final boolean ranges = isSeekable() && length >= 0;
+        final long lastModified = getLastModified();
+
+        response.setContentType( contentType );
+        if ( null != filename )
+            response.setHeader( "Content-Disposition", "attachment; filename=\"" + filename.replace( '"', '\'' ) + "\"" );
+        if ( lastModified >= 0 && !response.containsHeader("Last-Modified") )
+            response.setDateHeader( "Last-Modified", lastModified );
+        if ( ranges )
+            response.setHeader( "Accept-Ranges", "bytes" );
+
+        long start = 0;
+        long count = length;
+        if ( ranges && "GET".equals( request.getMethod() ) && isRangeCurrent( request, response, lastModified ) ) {
+            final long[] range = parseRange( request.getHeader("Range"), length );
+            if ( null == range ) {
+                discard();
+                response.setHeader( "Content-Range", "bytes */" + length );
+                response.sendError( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+                return;
+            }
+            if ( range.length > 0 ) {
+                start = range[0];
+                count = range[1] - range[0] + 1;
+                response.setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+                response.setHeader( "Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length );
+            }
+        }
+
+        if ( count >= 0 )
+            setContentLength( response, count );
+
+        if ( "HEAD".equals( request.getMethod() ) ) {
+            discard();
+            return;
+        }
+
+        write( request, response, start, count );
+    }
+
+    /**
+     * Whether a Range header still applies, i.e. there is no
+     * <em>If-Range</em> header or it matches the current representation.
+     */
+    private static boolean isRangeCurrent(final HttpServletRequest request, final HttpServletResponse response, final long lastModified) {
+        final String ifRange = request.getHeader("If-Range");
+        if ( null == ifRange )
+            return true;
+
+        // the body's entity tag (if any) isn't known here
+        if ( ifRange.startsWith("\"") || ifRange.startsWith("W/") )
+            return false;
+
+        if ( lastModified < 0 )
+            return false;
+        try {
+            return request.getDateHeader("If-Range") / 1000 == lastModified / 1000;
+        }
+        catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a single byte range.
+     *
+     * @return The first and last byte positions (inclusive), an empty array
+     * if the entire body should be sent (no header, multiple ranges or a
+     * syntax error) or null if the range cannot be satisfied.
+     */
+    static long[] parseRange(final String header, final long length) {
+        if ( null == header || !header.startsWith("bytes=") || header.indexOf(',') >= 0 )
+            return new long[0];
+
+        final String spec = header.substring( 6 ).trim();
+        final int dash = spec.indexOf('-');
+        if ( dash < 0 )
+            return new long[0];
+
+        try {
+            final long first;
+            final long last;
+            if ( 0 == dash ) {
+                // suffix range: the last n bytes
+                final long n = Long.parseLong( spec.substring( 1 ) );
+                if ( n < 0 )
+                    return new long[0];
+                if ( 0 == n || 0 == length )
+                    return null;
+                first = Math.max( 0, length - n );
+                last = length - 1;
+            } else {
+                first = Long.parseLong( spec.substring( 0, dash ) );
+                final long end = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong( spec.substring( dash + 1 ) );
+                if ( first < 0 || end < first )
+                    return new long[0];
+                if ( first >= length )
+                    return null;
+                last = Math.min( length - 1, end );
+            }
+            return new long[] { first, last };
+        }
+        catch (final NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static void setContentLength(final HttpServletResponse response, final long length) {
+        if ( length <= Integer.MAX_VALUE )
+            response.setContentLength( (int) length );
+        else
+            response.setHeader( "Content-Length", Long.toString( length ) );
+    }
+
+    /**
+     * Copies from a channel to the response in fixed-size chunks.
+     */
+    static void copy(final ReadableByteChannel in, final HttpServletResponse response, final long count) throws IOException {
+        final OutputStream out = response.getOutputStream();
+        final byte[] bytes = new byte[ BUFFER_SIZE ];
+        final ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        long remaining = count < 0 ? Long.MAX_VALUE : count;
+        while ( remaining > 0 ) {
+            buffer.clear();
+            if ( remaining < BUFFER_SIZE )
+                buffer.limit( (int) remaining );
+            final int n = in.read( buffer );
+            if ( n < 0 )
+                break;
+            out.write( bytes, 0, n );
+            remaining -= n;
+        }
+        if ( count >= 0 && remaining > 0 )
+            throw new IOException("Body ended " + remaining + " bytes early.");
+    }
+
+    /**
+     * Writes a body to an output stream.
+     */
+    public interface Callback {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static class FileBody extends SproutBody {
+        private final File file;
+        private final long offset;
+        private final long count;
+
+        FileBody(final File file, final long offset, final long count, final String contentType) {
+            super( contentType );
+            this.file = file;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        public long getLength() {
+            if ( count >= 0 )
+                return count;
+            // unreadable files are reported when written
+            return file.isFile() ? file.length() : -1;
+        }
+
+        protected boolean isSeekable() {
+            return true;
+        }
+
+        protected long getLastModified() {
+            final long lastModified = file.lastModified();
+            return 0 == lastModified ? -1 : lastModified;
+        }
+
+        protected void write(final HttpServletRequest request, final HttpServletResponse response, final long start, final long length) throws IOException {
+            if ( Boolean.TRUE.equals( request.getAttribute( SENDFILE_SUPPORT ) ) && length >= 0 ) {
+                // the container sends the file once the request has been processed
+                request.setAttribute( SENDFILE_FILENAME, file.getAbsolutePath() );
+                request.setAttribute( SENDFILE_START, Long.valueOf( offset + start ) );
+                request.setAttribute( SENDFILE_END, Long.valueOf( offset + start + length ) );
+                return;
+            }
+
+            final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+            try {
+                final long position = offset + start;
+                channel.position( position );
+                copy( channel, response, length < 0 ? channel.size() - position : length );
+            }
+            finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static class ChannelBody extends SproutBody {
+        private final ReadableByteChannel channel;
+        private final long length;
+
+        ChannelBody(final ReadableByteChannel channel, final long length, final String contentType) {
+            super( contentType );
+            this.channel = channel;
+            this.length = length;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        protected boolean isSeekable() {
+            return channel instanceof SeekableByteChannel;
+        }
+
+        protected void write(final HttpServletRequest request, final HttpServletResponse response, final long start, final long count) throws IOException {
+            try {
+                if ( start > 0 )
+                    ((SeekableByteChannel) channel).position( ((SeekableByteChannel) channel).position() + start );
+                copy( channel, response, count );
+            }
+            finally {
+                channel.close();
+            }
+        }
+
+        protected void discard() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static class CallbackBody extends SproutBody {
+        private final Callback callback;
+        private final long length;
+
+        CallbackBody(final Callback callback, final long length, final String contentType) {
+            super( contentType );
+            this.callback = callback;
+            this.length = length;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        protected void write(final HttpServletRequest request, final HttpServletResponse response, final long start, final long count) throws IOException {
+            final OutputStream out = response.getOutputStream();
+            callback.write( out );
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.struts.action.ActionForm;
+import org.apache.struts.action.ActionMapping;
+
+/**
+ * <p>State of the request a Sprout is processing: its mapping, form,
+ * request and response, along with any attributes a Sprout cares to add
+ * (in <code>onInit()</code>, for example).  A context is created by
+ * <code>SproutRequestProcessor</code> for each request and stored as a
+ * request attribute, so it is available wherever the request is
+ * (<code>Sprout.getContext(request)</code>), including on other threads.</p>
+ *
+ * <p>Sprouts are singletons; per-request state belongs here rather than in
+ * fields or <code>ThreadLocal</code>s:</p>
+ * <pre>
+ * protected void onInit(final SproutContext context) {
+ *     context.setAttribute( "user", lookupUser( context.getRequest() ) );
+ * }
+ * </pre>
+ *
+ * <p>Contexts are not thread-safe; a context may be handed to another thread
+ * (e.g. by an asynchronous Sprout method), but should not be used by two at
+ * once.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class SproutContext {
+    /** Name of the request attribute holding the current context. */
+    public static final String CONTEXT_KEY = SproutContext.class.getName();
+
+    private final ActionMapping mapping;
+    private final ActionForm form;
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private Map<String,Object> attributes;
+
+    public SproutContext(final ActionMapping mapping, final ActionForm form, final HttpServletRequest request, final HttpServletResponse response) {
+        this.mapping = mapping;
+        this.form = form;
+        this.request = request;
+        this.response = response;
+    }
+
+    /**
+     * Gets the context stored in a request.
+     *
+     * @return Context, or null if the request is not being processed by a
+     * Sprout.
+     */
+    public static SproutContext getContext(final ServletRequest request) {
+        return (SproutContext) request.getAttribute( CONTEXT_KEY );
+    }
+
+    public ActionMapping getMapping() {
+        return mapping;
+    }
+
+    public ActionForm getForm() {
+        return form;
+    }
+
+    public HttpServletRequest getRequest() {
+        return request;
+    }
+
+    public HttpServletResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * Gets an attribute.
+     */
+    public Object getAttribute(final String name) {
+        return null == attributes ? null : attributes.get( name );
+    }
+
+    /**
+     * Sets an attribute; null values remove it.
+     */
+    public void setAttribute(final String name, final Object value) {
+        if ( null == value ) {
+            removeAttribute( name );
+            return;
+        }
+
+        if ( null == attributes )
+            attributes = new HashMap<String,Object>();
+        attributes.put( name, value );
+    }
+
+    public void removeAttribute(final String name) {
+        if ( null != attributes )
+            attributes.remove( name );
+    }
+
+    /**
+     * Shortcut for ((DynaBean) form).get(key), as a String.
+     */
+    public String f(final String key) {
+        return (String) getDynaForm().get( key );
+    }
+
+    /**
+     * Shortcut for ((DynaBean) form).get(key).
+     */
+    public Object F(final String key) {
+        return getDynaForm().get( key );
+    }
+
+    /**
+     * Shortcut for ((DynaBean) form).set(key, value).
+     */
+    public void s(final String key, final Object value) {
+        getDynaForm().set( key, value );
+    }
+
+    private DynaBean getDynaForm() {
+        if ( !( form instanceof DynaBean ) )
+            throw new UnsupportedOperationException("Active form is not a DynaBean.");
+        return (DynaBean) form;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.struts.action.ActionForm;
+import org.apache.struts.action.ActionForward;
+import org.apache.struts.action.ActionMapping;
+
+/**
+ * <p>Pre-bound call to a single Sprout method.  Invokers are created once per
+ * registered path by <code>SproutAutoLoaderPlugIn</code> and attached to the
+ * corresponding <code>SproutActionMapping</code>, so dispatching a request
+ * is a direct (and inlinable) call rather than a method lookup by name
+ * followed by <code>Method.invoke()</code>.</p>
+ *
+ * @see SproutInvokerFactory
+ * @author Seth Fitzsimmons
+ */
+public interface SproutInvoker {
+    /**
+     * Calls the bound method on a Sprout.
+     *
+     * @param sprout Sprout to invoke the method on.  Must be an instance of
+     * the class the invoker was created for.
+     */
+    ActionForward invoke(Sprout sprout, ActionMapping mapping, ActionForm form, HttpServletRequest request, HttpServletResponse response) throws Exception;
+}
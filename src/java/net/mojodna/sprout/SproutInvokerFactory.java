@@ -0,0 +1,249 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.mojodna.sprout.json.JsonSerializer;
+
+import org.apache.log4j.Logger;
+import org.apache.struts.action.ActionForm;
+import org.apache.struts.action.ActionForward;
+import org.apache.struts.action.ActionMapping;
+
+/**
+ * <p>Creates <code>SproutInvoker</code>s.  Where possible, invokers are
+ * spun with <code>LambdaMetafactory</code> so that they compile down to a
+ * plain virtual call; otherwise they fall back to an exact
+ * <code>MethodHandle</code> invocation.</p>
+ *
+ * <p>Methods returning <code>CompletableFuture&lt;ActionForward&gt;</code>
+ * are also supported; their invokers return a placeholder forward that
+ * <code>SproutRequestProcessor</code> resolves once the future
+ * completes.</p>
+ *
+ * <p>So are methods annotated with <code>@Json</code>, whose results are
+ * wrapped in a body that writes them as JSON.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public final class SproutInvokerFactory {
+    private static final Logger log = Logger.getLogger( SproutInvokerFactory.class );
+
+    /** Parameter types of dispatchable Sprout methods. */
+    public static final Class[] PARAMETER_TYPES = new Class[] { ActionMapping.class, ActionForm.class, HttpServletRequest.class, HttpServletResponse.class };
+
+    private static final MethodType INVOKE_TYPE = MethodType.methodType( ActionForward.class, Sprout.class, PARAMETER_TYPES );
+
+    private SproutInvokerFactory() {}
+
+    /**
+     * Creates an invoker for a named method without checking its form type.
+     *
+     * @see #create(Class, String, Class)
+     */
+    public static SproutInvoker create(final Class clazz, final String name) throws NoSuchMethodException {
+        return create( clazz, name, null );
+    }
+
+    /**
+     * Creates an invoker for a named method.  Methods with the standard
+     * signature are preferred, but the form may also be declared as a
+     * <code>@SproutForm</code> interface, in which case the form is cast on
+     * each invocation.
+     *
+     * @param clazz Sprout class.
+     * @param name Method name.
+     * @param formType Class of the forms the mapping will pass, or null if
+     * it is not known.
+     * @return Invoker for the method.
+     * @throws NoSuchMethodException if the method does not exist, is not
+     * public, or does not return an <code>ActionForward</code> (or a
+     * <code>CompletableFuture</code>).
+     * @throws IllegalArgumentException if the method exists but its form
+     * parameter cannot accept forms of <code>formType</code>.
+     */
+    public static SproutInvoker create(final Class clazz, final String name, final Class formType) throws NoSuchMethodException {
+        Method method;
+        try {
+            method = clazz.getMethod( name, PARAMETER_TYPES );
+        }
+        catch (final NoSuchMethodException e) {
+            method = findTypedMethod( clazz, name, formType );
+        }
+        if ( !isActionMethod( method ) )
+            throw new NoSuchMethodException( clazz.getName() + "." + name + " does not return an ActionForward." );
+
+        return create( clazz, method );
+    }
+
+    /**
+     * Creates an invoker for a method.
+     *
+     * @param clazz Sprout class that invokers will be called with.
+     * @param method Public method with the standard Sprout signature.
+     * @return Invoker for the method.
+     */
+    public static SproutInvoker create(final Class clazz, final Method method) {
+        final Sprout.Json json = method.getAnnotation( Sprout.Json.class );
+        if ( null != json )
+            return createJson( method, json.contentType() );
+        if ( CompletableFuture.class.isAssignableFrom( method.getReturnType() ) )
+            return createAsync( method );
+
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn( clazz, MethodHandles.lookup() );
+            final MethodHandle target = lookup.unreflect( method );
+            final CallSite site = LambdaMetafactory.metafactory(
+                    lookup,
+                    "invoke",
+                    MethodType.methodType( SproutInvoker.class ),
+                    INVOKE_TYPE,
+                    target,
+                    target.type().changeParameterType( 0, clazz ) );
+            return (SproutInvoker) site.getTarget().invoke();
+        }
+        catch (final Throwable t) {
+            log.debug("Unable to spin invoker for " + method + "; using a MethodHandle: " + t.getMessage() );
+        }
+
+        try {
+            return new MethodHandleInvoker( MethodHandles.publicLookup().unreflect( method ).asType( INVOKE_TYPE ) );
+        }
+        catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException( "Unable to create an invoker for " + method, e );
+        }
+    }
+
+    /**
+     * Whether a method may be dispatched to, i.e. it is public and returns
+     * an <code>ActionForward</code>, a <code>SproutBody</code> or a
+     * <code>CompletableFuture&lt;ActionForward&gt;</code>, or is annotated
+     * with <code>@Json</code> and returns anything.
+     */
+    public static boolean isActionMethod(final Method method) {
+        final Class type = method.getReturnType();
+        if ( !Modifier.isPublic( method.getModifiers() ) )
+            return false;
+        if ( method.isAnnotationPresent( Sprout.Json.class ) )
+            return void.class != type;
+        return ActionForward.class.equals( type ) || SproutBody.class.isAssignableFrom( type ) || CompletableFuture.class.isAssignableFrom( type );
+    }
+
+    /**
+     * Creates an invoker for a method that returns a
+     * <code>CompletableFuture</code>.  The future is wrapped in an
+     * <code>AsyncForward</code> for <code>SproutRequestProcessor</code> to
+     * complete.
+     */
+    private static SproutInvoker createAsync(final Method method) {
+        try {
+            final MethodHandle target = MethodHandles.publicLookup().unreflect( method );
+            final MethodHandle wrap = MethodHandles.lookup()
+                    .findConstructor( AsyncForward.class, MethodType.methodType( void.class, CompletableFuture.class ) )
+                    .asType( MethodType.methodType( AsyncForward.class, target.type().returnType() ) );
+            return new MethodHandleInvoker( MethodHandles.filterReturnValue( target, wrap ).asType( INVOKE_TYPE ) );
+        }
+        catch (final ReflectiveOperationException e) {
+            throw new IllegalArgumentException( "Unable to create an invoker for " + method, e );
+        }
+    }
+
+    /**
+     * Creates an invoker for a method annotated with <code>@Json</code>.
+     * The result is wrapped in a <code>JsonBody</code> for
+     * <code>SproutRequestProcessor</code> to write.  The serializer for the
+     * declared return type is created now rather than on the first request.
+     */
+    private static SproutInvoker createJson(final Method method, final String contentType) {
+        final Class type = method.getReturnType();
+        if ( !type.isPrimitive() && !type.isInterface() && !Modifier.isAbstract( type.getModifiers() ) )
+            JsonSerializer.forType( type );
+
+        try {
+            final MethodHandle target = MethodHandles.publicLookup().unreflect( method );
+            final MethodHandle wrap = MethodHandles.insertArguments(
+                    MethodHandles.lookup().findConstructor( JsonBody.class, MethodType.methodType( void.class, String.class, Object.class ) ),
+                    0, contentType )
+                    .asType( MethodType.methodType( JsonBody.class, type ) );
+            return new MethodHandleInvoker( MethodHandles.filterReturnValue( target, wrap ).asType( INVOKE_TYPE ) );
+        }
+        catch (final ReflectiveOperationException e) {
+            throw new IllegalArgumentException( "Unable to create an invoker for " + method, e );
+        }
+    }
+
+    /**
+     * Finds a public method whose signature matches the standard one in all
+     * but the type of its form, which must be able to accept forms of
+     * <code>formType</code> (if known).  Overloads are otherwise
+     * indistinguishable, so a mismatch is reported rather than left to fail
+     * with a <code>ClassCastException</code> on every request.
+     */
+    private static Method findTypedMethod(final Class clazz, final String name, final Class formType) throws NoSuchMethodException {
+        final Method[] methods = clazz.getMethods();
+        Method mismatch = null;
+        for ( int i = 0; i < methods.length; i++ ) {
+            final Class[] params = methods[i].getParameterTypes();
+            if ( methods[i].getName().equals( name ) && params.length == PARAMETER_TYPES.length
+                    && params[0].equals( PARAMETER_TYPES[0] ) && params[2].equals( PARAMETER_TYPES[2] ) && params[3].equals( PARAMETER_TYPES[3] ) ) {
+                if ( null == formType || params[1].isAssignableFrom( formType ) )
+                    return methods[i];
+                mismatch = methods[i];
+            }
+        }
+        if ( null != mismatch )
+            throw new IllegalArgumentException( clazz.getName() + "." + name + " takes a " + mismatch.getParameterTypes()[1].getName() + ", but its mapping's form is a " + formType.getName() + "." );
+        throw new NoSuchMethodException( clazz.getName() + "." + name );
+    }
+
+    /**
+     * Invoker backed by a MethodHandle.
+     */
+    private static class MethodHandleInvoker implements SproutInvoker {
+        private final MethodHandle handle;
+
+        MethodHandleInvoker(final MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        public ActionForward invoke(final Sprout sprout, final ActionMapping mapping, final ActionForm form, final HttpServletRequest request, final HttpServletResponse response) throws Exception {
+            try {
+                return (ActionForward) handle.invokeExact( sprout, mapping, form, request, response );
+            }
+            catch (final Exception e) {
+                throw e;
+            }
+            catch (final Error e) {
+                throw e;
+            }
+            catch (final Throwable t) {
+                throw new ServletException( t );
+            }
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import net.mojodna.sprout.annotation.SproutAction;
+import net.mojodna.sprout.annotation.SproutForm;
+import net.mojodna.sprout.support.ClassFileInfo;
+import net.mojodna.sprout.support.PhaseTimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.apache.struts.action.Action;
+import org.apache.struts.action.ActionForm;
+import org.apache.struts.action.ActionServlet;
+import org.apache.struts.config.ActionConfig;
+import org.apache.struts.config.FormBeanConfig;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * <p>Watches class directories for changes and re-registers the Sprouts,
+ * <code>@SproutAction</code>s and <code>@SproutForm</code>s whose classes
+ * change, without restarting the application.  Started by
+ * <code>SproutAutoLoaderPlugIn</code> when its <em>reload</em> property is
+ * set, and stored in the servlet context under {@link #RELOADER_KEY}
+ * followed by the module prefix.</p>
+ *
+ * <p>Changed classes (and their nested classes) are loaded by a new class
+ * loader, which is replaced every time further changes are seen.  Only the
+ * action and form-bean configs corresponding to them are rebuilt; they are
+ * published all at once and consulted by
+ * <code>SproutRequestProcessor</code> before the module's own (frozen)
+ * configuration.  Reloaded Sprouts are configured using their original
+ * bean definitions.</p>
+ *
+ * <p>Every reload rebuilds the configs of all of the classes reloaded so
+ * far, so paths added by a change are routed (by a router of their own)
+ * and paths that a reloaded class no longer registers are unmapped.</p>
+ *
+ * <p>Changes to any other classes require a restart, as do changes to
+ * reloaded classes that rely on package-private access to classes that
+ * were not reloaded.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class SproutReloader {
+    private static final Logger log = Logger.getLogger( SproutReloader.class );
+    /** Servlet context attribute prefix under which reloaders are stored. */
+    public static final String RELOADER_KEY = SproutReloader.class.getName();
+    private static final String CLASS_EXTENSION = ".class";
+    /** Time to wait for further changes (e.g. from a compiler) before reloading, in milliseconds. */
+    private static final long QUIET_PERIOD = 250;
+
+    private final SproutAutoLoaderPlugIn plugIn;
+    private final WebApplicationContext wac;
+    private final ActionServlet servlet;
+    /** Loader that the application's classes were originally loaded by. */
+    private final ClassLoader parent;
+    private final List<Path> roots = new ArrayList<Path>();
+    private final WatchService watcher;
+    private final Map<WatchKey,Path> keys = new HashMap<WatchKey,Path>();
+    /** Reloadable classes that have changed since startup. */
+    private final Set<String> changed = new LinkedHashSet<String>();
+    private volatile State state = new State();
+    private Thread thread;
+
+    /**
+     * @param plugIn Plug-in used to build configs.
+     * @param wac Spring context containing Sprouts.
+     * @param servlet Servlet that reloaded actions and forms belong to.
+     * @param directories Class directories to watch.
+     * @throws IOException if the directories cannot be watched.
+     */
+    public SproutReloader(final SproutAutoLoaderPlugIn plugIn, final WebApplicationContext wac, final ActionServlet servlet, final List<File> directories) throws IOException {
+        this.plugIn = plugIn;
+        this.wac = wac;
+        this.servlet = servlet;
+        // the class directories were found on the context class loader
+        this.parent = Thread.currentThread().getContextClassLoader();
+        this.watcher = FileSystems.getDefault().newWatchService();
+        for ( final File directory : directories ) {
+            final Path root = directory.toPath().toAbsolutePath();
+            roots.add( root );
+            register( root );
+        }
+    }
+
+    /**
+     * Starts watching in a background thread.
+     */
+    public synchronized void start() {
+        if ( null != thread )
+            return;
+
+        thread = new Thread( new Runnable() {
+            public void run() {
+                watch();
+            }
+        }, "sprout-reload" );
+        thread.setDaemon( true );
+        thread.start();
+        log.info("Watching " + roots + " for changes.");
+    }
+
+    /**
+     * Stops watching.
+     */
+    public synchronized void stop() {
+        if ( null != thread ) {
+            thread.interrupt();
+            thread = null;
+        }
+        try {
+            watcher.close();
+        }
+        catch (final IOException e) {
+            log.debug("Unable to close WatchService: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Gets the reloaded config for a path.
+     *
+     * @return Config or null if the path has not been reloaded.
+     */
+    public ActionConfig findActionConfig(final String path) {
+        return state.actionConfigs.get( path );
+    }
+
+    /**
+     * Whether a path was registered at startup by a class that no longer
+     * registers it.
+     */
+    public boolean isRemoved(final String path) {
+        return state.removed.containsKey( path );
+    }
+
+    /**
+     * Resolves a path to a reloaded action path; see
+     * {@link SproutRouter#match(String, String[])}.
+     *
+     * @return Matching action path, or null if no reloaded path matches.
+     */
+    public String match(final String path, final String[] ids) {
+        return state.router.match( path, ids );
+    }
+
+    /**
+     * Gets the reloaded action instance for a path.
+     *
+     * @return Action or null if the path has not been reloaded.
+     */
+    public Action findAction(final String path) {
+        return state.actions.get( path );
+    }
+
+    /**
+     * Gets the reloaded config for a form-bean.
+     *
+     * @return Config or null if the form-bean has not been reloaded.
+     */
+    public ReloadedFormBeanConfig findFormBeanConfig(final String name) {
+        return state.formBeanConfigs.get( name );
+    }
+
+    private void watch() {
+        try {
+            while ( !Thread.currentThread().isInterrupted() ) {
+                // compilers write many files; wait for them to finish
+                final Set<Path> files = new LinkedHashSet<Path>();
+                WatchKey key = watcher.take();
+                while ( null != key ) {
+                    collect( key, files );
+                    key = watcher.poll( QUIET_PERIOD, TimeUnit.MILLISECONDS );
+                }
+                reload( files );
+            }
+        }
+        catch (final InterruptedException e) {
+            // stopped
+        }
+        catch (final ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Collects changed class files, watching new directories.
+     */
+    private void collect(final WatchKey key, final Set<Path> files) {
+        final Path dir = keys.get( key );
+        for ( final WatchEvent<?> event : key.pollEvents() ) {
+            if ( null == dir || StandardWatchEventKinds.OVERFLOW == event.kind() )
+                continue;
+
+            final Path path = dir.resolve( (Path) event.context() );
+            if ( Files.isDirectory( path ) ) {
+                if ( StandardWatchEventKinds.ENTRY_CREATE == event.kind() ) {
+                    try {
+                        files.addAll( register( path ) );
+                    }
+                    catch (final IOException e) {
+                        log.warn("Unable to watch " + path + ": " + e.getMessage() );
+                    }
+                }
+            } else if ( path.toString().endsWith( CLASS_EXTENSION ) ) {
+                files.add( path );
+            }
+        }
+        if ( !key.reset() )
+            keys.remove( key );
+    }
+
+    /**
+     * Watches a directory and its subdirectories.
+     *
+     * @return Class files already present.
+     */
+    private List<Path> register(final Path directory) throws IOException {
+        final List<Path> files = new ArrayList<Path>();
+        Files.walkFileTree( directory, new SimpleFileVisitor<Path>() {
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                keys.put( dir.register( watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY ), dir );
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if ( file.toString().endsWith( CLASS_EXTENSION ) )
+                    files.add( file );
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Reloads the classes whose class files have changed and publishes
+     * their configs.
+     */
+    void reload(final Set<Path> files) {
+        final Set<String> names = new LinkedHashSet<String>();
+        for ( final Path file : files ) {
+            if ( !Files.isRegularFile( file ) )
+                continue;
+
+            try {
+                String name = ClassFileInfo.read( Files.readAllBytes( file ) ).getName();
+                // nested classes are reloaded with their outermost class
+                if ( name.indexOf('$') > 0 )
+                    name = name.substring( 0, name.indexOf('$') );
+                names.add( name );
+            }
+            catch (final IOException e) {
+                log.debug("Unable to read " + file + ": " + e.getMessage() );
+            }
+        }
+
+        boolean reloadable = false;
+        for ( final String name : names ) {
+            if ( changed.contains( name ) || isReloadable( name ) ) {
+                changed.add( name );
+                reloadable = true;
+            } else {
+                log.info( name + " changed; restart to use the new version.");
+            }
+        }
+        if ( !reloadable )
+            return;
+
+        final long start = System.nanoTime();
+        // previously reloaded classes are loaded again so that they can see
+        // one another
+        final ReloadingClassLoader loader = new ReloadingClassLoader( parent, changed );
+        final State previous = state;
+        final State next = new State();
+        for ( final String name : changed ) {
+            try {
+                reload( loader.loadClass( name ), next );
+            }
+            catch (final Exception e) {
+                log.warn("Unable to reload " + name + ": " + e.getMessage(), e );
+                next.carryOver( previous, name );
+            }
+            catch (final LinkageError e) {
+                log.warn("Unable to reload " + name + ": " + e.getMessage(), e );
+                next.carryOver( previous, name );
+            }
+        }
+        state = next;
+        log.info("Reloaded " + changed + " in " + ( System.nanoTime() - start ) / 1000000L + "ms.");
+    }
+
+    /**
+     * Rebuilds the configs for a reloaded class.
+     */
+    private void reload(final Class clazz, final State next) throws Exception {
+        final FormBeanConfig fbc = plugIn.createFormBeanConfig( clazz );
+        if ( null != fbc && ActionForm.class.isAssignableFrom( clazz ) ) {
+            final ReloadedFormBeanConfig reloaded = new ReloadedFormBeanConfig( clazz );
+            reloaded.setName( fbc.getName() );
+            reloaded.setType( clazz.getName() );
+            reloaded.freeze();
+            next.formBeanConfigs.put( reloaded.getName(), reloaded );
+            return;
+        }
+
+        if ( Sprout.class.isAssignableFrom( clazz ) ) {
+            final String[] beanNames = wac.getBeanNamesForType( Sprout.class );
+            for ( int i = 0; i < beanNames.length; i++ ) {
+                final Class type = wac.getType( beanNames[i] );
+                if ( null == type || !type.getName().equals( clazz.getName() ) )
+                    continue;
+
+                // configure the new instance as Spring configured the original
+                final Sprout sprout = (Sprout) wac.getAutowireCapableBeanFactory().configureBean( clazz.getConstructor().newInstance(), beanNames[i] );
+                sprout.setServlet( servlet );
+                publish( plugIn.buildSprout( wac, beanNames[i], sprout, new PhaseTimer() ), sprout, next );
+
+                // paths registered by the original instance
+                String[] paths = ((Sprout) wac.getBean( beanNames[i] )).getPaths();
+                if ( null == paths )
+                    paths = wac.getAliases( beanNames[i] );
+                unmapRemoved( Arrays.asList( paths ), clazz, next );
+            }
+        } else if ( Action.class.isAssignableFrom( clazz ) ) {
+            final Action action = (Action) clazz.getConstructor().newInstance();
+            action.setServlet( servlet );
+            publish( plugIn.createActionConfigs( clazz ), action, next );
+
+            final List<String> paths = new ArrayList<String>();
+            final ActionConfig[] configs = plugIn.getModuleConfig().findActionConfigs();
+            for ( int i = 0; i < configs.length; i++ ) {
+                if ( clazz.getName().equals( configs[i].getType() ) )
+                    paths.add( configs[i].getPath() );
+            }
+            unmapRemoved( paths, clazz, next );
+        }
+    }
+
+    /**
+     * Unmaps paths that a class registered at startup but no longer
+     * registers.
+     */
+    private void unmapRemoved(final List<String> paths, final Class clazz, final State next) {
+        for ( final String path : paths ) {
+            if ( !next.actionConfigs.containsKey( path ) ) {
+                next.removed.put( path, clazz.getName() );
+                log.debug("Removed " + path );
+            }
+        }
+    }
+
+    private void publish(final List<ActionConfig> configs, final Action action, final State next) {
+        for ( final ActionConfig ac : configs ) {
+            ac.setModuleConfig( plugIn.getModuleConfig() );
+            ac.freeze();
+            next.actionConfigs.put( ac.getPath(), ac );
+            next.actions.put( ac.getPath(), action );
+            next.router.add( ac.getPath() );
+            log.debug("Reloaded " + ac.getPath() + " -> " + action.getClass().getName() );
+        }
+    }
+
+    /**
+     * Whether a class is a Sprout, <code>@SproutAction</code> or
+     * <code>@SproutForm</code>, judging by its class file.
+     */
+    private boolean isReloadable(final String name) {
+        final byte[] bytes = readClass( name );
+        if ( null == bytes )
+            return false;
+
+        try {
+            final ClassFileInfo info = ClassFileInfo.read( bytes );
+            if ( info.hasAnnotation( SproutAction.class.getName() ) || info.hasAnnotation( SproutForm.class.getName() ) )
+                return true;
+            if ( null == info.getSuperName() )
+                return false;
+            return Sprout.class.isAssignableFrom( Class.forName( info.getSuperName(), false, parent ) );
+        }
+        catch (final IOException e) {
+            return false;
+        }
+        catch (final ClassNotFoundException e) {
+            return false;
+        }
+        catch (final LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a class file from the watched directories.
+     *
+     * @return Class file contents or null if not found.
+     */
+    private byte[] readClass(final String name) {
+        final String file = name.replace('.', File.separatorChar) + CLASS_EXTENSION;
+        for ( final Path root : roots ) {
+            final Path path = root.resolve( file );
+            if ( Files.isRegularFile( path ) ) {
+                try {
+                    return Files.readAllBytes( path );
+                }
+                catch (final IOException e) {
+                    log.debug("Unable to read " + path + ": " + e.getMessage() );
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads reloaded classes (and their nested classes) from the watched
+     * directories, delegating everything else to its parent.
+     */
+    private class ReloadingClassLoader extends ClassLoader {
+        private final Set<String> names;
+
+        ReloadingClassLoader(final ClassLoader parent, final Set<String> names) {
+            super( parent );
+            this.names = new LinkedHashSet<String>( names );
+        }
+
+        @Override
+        protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+            if ( !isReloaded( name ) )
+                return super.loadClass( name, resolve );
+
+            synchronized ( getClassLoadingLock( name ) ) {
+                Class<?> c = findLoadedClass( name );
+                if ( null == c )
+                    c = findClass( name );
+                if ( resolve )
+                    resolveClass( c );
+                return c;
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(final String name) throws ClassNotFoundException {
+            final byte[] bytes = readClass( name );
+            if ( null == bytes )
+                throw new ClassNotFoundException( name );
+            return defineClass( name, bytes, 0, bytes.length );
+        }
+
+        private boolean isReloaded(final String name) {
+            final int nested = name.indexOf('$');
+            return names.contains( nested > 0 ? name.substring( 0, nested ) : name );
+        }
+    }
+
+    /**
+     * Form-bean config for a reloaded <code>@SproutForm</code>.
+     */
+    public static class ReloadedFormBeanConfig extends FormBeanConfig {
+        private final transient Class formBeanClass;
+
+        ReloadedFormBeanConfig(final Class formBeanClass) {
+            this.formBeanClass = formBeanClass;
+        }
+
+        /**
+         * Instantiates forms using the reloaded class rather than by name.
+         */
+        @Override
+        protected Class formBeanClass() {
+            return formBeanClass;
+        }
+
+        /**
+         * Reloaded form class.
+         */
+        public Class getFormBeanClass() {
+            return formBeanClass;
+        }
+    }
+
+    /**
+     * Reloaded configs.  Never modified once published.
+     */
+    private static class State {
+        final Map<String,ActionConfig> actionConfigs = new HashMap<String,ActionConfig>();
+        final Map<String,Action> actions = new HashMap<String,Action>();
+        final Map<String,ReloadedFormBeanConfig> formBeanConfigs = new HashMap<String,ReloadedFormBeanConfig>();
+        /** Routes to reloaded paths. */
+        final SproutRouter router = new SproutRouter();
+        /** Paths registered at startup that reloaded classes no longer register, and those classes. */
+        final Map<String,String> removed = new HashMap<String,String>();
+
+        /**
+         * Keeps the previous version of a class that could not be reloaded.
+         */
+        void carryOver(final State previous, final String name) {
+            for ( final Map.Entry<String,Action> entry : previous.actions.entrySet() ) {
+                if ( entry.getValue().getClass().getName().equals( name ) ) {
+                    actionConfigs.put( entry.getKey(), previous.actionConfigs.get( entry.getKey() ) );
+                    actions.put( entry.getKey(), entry.getValue() );
+                    router.add( entry.getKey() );
+                }
+            }
+            for ( final Map.Entry<String,String> entry : previous.removed.entrySet() ) {
+                if ( entry.getValue().equals( name ) )
+                    removed.put( entry.getKey(), name );
+            }
+            for ( final ReloadedFormBeanConfig fbc : previous.formBeanConfigs.values() ) {
+                if ( fbc.getType().equals( name ) )
+                    formBeanConfigs.put( fbc.getName(), fbc );
+            }
+        }
+    }
+}
@@ -15,36 +15,1185 @@ limitations under the License.
 */
 package net.mojodna.sprout;
 
+import net.mojodna.sprout.cache.CachedResponse;
+import net.mojodna.sprout.cache.CapturingResponseWrapper;
+import net.mojodna.sprout.cache.RecordingResponseWrapper;
+import net.mojodna.sprout.cache.ResponseCache;
+import net.mojodna.sprout.flash.CookieFlashStore;
+import net.mojodna.sprout.flash.FlashStore;
+import net.mojodna.sprout.metrics.ActionMetrics;
+import net.mojodna.sprout.metrics.PhaseEvent;
+import net.mojodna.sprout.metrics.PhaseEvents;
+import net.mojodna.sprout.metrics.SproutMetrics;
+import net.mojodna.sprout.support.AsyncSupport;
+import net.mojodna.sprout.support.NonBlockingSupport;
+import net.mojodna.sprout.validation.CompiledValidator;
+import net.mojodna.sprout.validation.ValidatorCompiler;
+
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
+import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.validator.ValidatorResources;
+import org.apache.log4j.Logger;
+import org.apache.struts.Globals;
 import org.apache.struts.action.Action;
+import org.apache.struts.action.ActionErrors;
 import org.apache.struts.action.ActionForm;
 import org.apache.struts.action.ActionForward;
 import org.apache.struts.action.ActionMapping;
+import org.apache.struts.action.ActionMessages;
+import org.apache.struts.action.ActionServlet;
+import org.apache.struts.config.ActionConfig;
+import org.apache.struts.config.FormBeanConfig;
+import org.apache.struts.config.ForwardConfig;
+import org.apache.struts.config.ModuleConfig;
+import org.apache.struts.taglib.html.Constants;
+import org.apache.struts.util.RequestUtils;
+import org.apache.struts.validator.DynaValidatorForm;
+import org.apache.struts.validator.ValidatorForm;
+import org.apache.struts.validator.ValidatorPlugIn;
+import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.web.struts.DelegatingRequestProcessor;
 
 /**
- * Extension of Spring's <code>DelegatingRequestProcessor</code> that adds
- * Sprout initialization.
+ * <p>Extension of Spring's <code>DelegatingRequestProcessor</code> that adds
+ * Sprout initialization and RESTful routing.</p>
+ *
+ * <p>Paths that do not correspond directly to an action mapping are resolved
+ * using the {@link SproutRouter} populated by
+ * <code>SproutAutoLoaderPlugIn</code>, so that <code>/subdir/index/42</code>
+ * is handled by <code>/subdir/index</code> with the <em>id</em> property of
+ * its form (and the <em>id</em> request parameter, unless the request has
+ * one) set to <em>42</em>.  Paths that still do not match (static content,
+ * when <code>ActionServlet</code> is mapped to <code>/</code>) are handed to
+ * the container's default servlet, named by the action servlet's
+ * <em>defaultServlet</em> init-param (<em>default</em> unless set), or
+ * answered with <em>404 Not Found</em> if there is no such servlet.</p>
+ *
+ * <p>Call counts, error counts, in-flight counts and latencies are recorded
+ * for each action path; see {@link SproutMetrics}.  Form population,
+ * validation, Sprout initialization, dispatch and forwarding are also
+ * recorded as Java Flight Recorder events; see {@link PhaseEvent}.</p>
+ *
+ * <p>Actions with a {@link Bulkhead} (declared with
+ * <code>@SproutBulkhead</code>) are not performed once their limit of
+ * concurrent executions has been reached; the request is answered with
+ * <em>503 Service Unavailable</em> instead and counted as a rejection.
+ * Clients that exceed an action's {@link RateLimiter} (declared with
+ * <code>@SproutRateLimit</code>) are answered with <em>429 Too Many
+ * Requests</em> before the form is populated, and counted as throttled.</p>
+ *
+ * <p>Errors and messages that have not been displayed when an action
+ * redirects are carried over to the next request by a {@link FlashStore}
+ * (the first one defined in the Spring context, or a
+ * {@link CookieFlashStore}).</p>
+ *
+ * <p>Sprout methods may return a
+ * <code>CompletableFuture&lt;ActionForward&gt;</code>.  If the container
+ * supports Servlet 3.0 asynchronous processing (and the request is
+ * async-supported), the request is put into asynchronous mode and the
+ * forward is processed (via <code>AsyncContext.dispatch()</code>) when the
+ * future completes, releasing the container thread in the meantime.
+ * If the container times the request out first (or it fails), the future
+ * is cancelled, the action's bulkhead permit is released and its eventual
+ * result is discarded.  Otherwise the future is waited for.</p>
+ *
+ * <p>Sprout methods may also return a {@link SproutBody}, which is written
+ * directly to the response instead of being forwarded to, or be annotated
+ * with <code>@Json</code>, in which case whatever they return is written as
+ * JSON.</p>
+ *
+ * <p>Responses of Sprout methods annotated with <code>@Cache</code> are
+ * stored in a {@link ResponseCache} (the first one defined in the Spring
+ * context, or a default one) and subsequent <em>GET</em> requests for them
+ * are answered before the form is populated or the action runs.  So are
+ * conditional requests for methods annotated with <code>@Conditional</code>
+ * whose responses have not been modified.</p>
+ *
+ * <p>If <code>SproutAutoLoaderPlugIn</code> is reloading changed classes,
+ * mappings, actions and forms provided by its {@link SproutReloader} take
+ * precedence over those in the module configuration.</p>
+ *
+ * <p>Request-scoped instances of the default form ({@link LazyForm}) are
+ * populated without <code>BeanUtils</code> where possible and are pooled:
+ * once a request has been processed its form is cleared and reused.</p>
+ *
+ * <p>If the Validator plug-in is in use, the rules in <em>validation.xml</em>
+ * are compiled by a {@link ValidatorCompiler} and applied without
+ * commons-validator's reflective dispatch.</p>
  * 
  * @see org.springframework.web.struts.DelegatingRequestProcessor
  * @author Seth Fitzsimmons
  */
 public class SproutRequestProcessor extends DelegatingRequestProcessor {
+    private static final Logger log = Logger.getLogger( SproutRequestProcessor.class );
+    /** Action servlet init-param naming the container's default (static content) servlet. */
+    public static final String DEFAULT_SERVLET_PARAM = "defaultServlet";
+    /** Name of the default servlet in Tomcat, Jetty and GlassFish. */
+    private static final String DEFAULT_SERVLET = "default";
+    /** Request attribute holding the AsyncContext of a request waiting for a future forward. */
+    private static final String ASYNC_CONTEXT_KEY = SproutRequestProcessor.class.getName() + ".ASYNC_CONTEXT";
+    /** Request attribute holding the key under which the response should be cached. */
+    private static final String CACHE_KEY_KEY = SproutRequestProcessor.class.getName() + ".CACHE_KEY";
+    /** Request attribute holding the headers set by an action whose response is to be cached. */
+    private static final String CACHE_HEADERS_KEY = SproutRequestProcessor.class.getName() + ".CACHE_HEADERS";
+    /** Request attribute holding the pooled form to recycle once the request has been processed. */
+    private static final String RECYCLED_FORM_KEY = SproutRequestProcessor.class.getName() + ".RECYCLED_FORM";
+    /** Maximum number of idle forms kept for reuse. */
+    private static final int FORM_POOL_SIZE = 64;
+    private static final String LAZY_FORM_TYPE = LazyForm.class.getName();
+    /** Not defined by HttpServletResponse. */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private SproutRouter router;
+    private RequestDispatcher defaultDispatcher;
+    /** Whether an "unknown" mapping handles paths that are not mapped. */
+    private boolean unknown;
+    private SproutMetrics metrics;
+    private Map<String,Bulkhead> bulkheads;
+    private Map<String,RateLimiter> rateLimiters;
+    private FlashStore flash;
+    private ResponseCache cache;
+    private SproutReloader reloader;
+    private final BlockingQueue<LazyForm> forms = new ArrayBlockingQueue<LazyForm>( FORM_POOL_SIZE );
+    private ValidatorCompiler validators;
+    /** Whether forms of a given class are validated by ValidatorForm.validate() or DynaValidatorForm.validate(). */
+    private final ConcurrentHashMap<Class,Boolean> compilableForms = new ConcurrentHashMap<Class,Boolean>();
+
+    @Override
+    public void init(final ActionServlet servlet, final ModuleConfig moduleConfig) throws ServletException {
+        super.init( servlet, moduleConfig );
+        router = (SproutRouter) getServletContext().getAttribute( SproutRouter.ROUTER_KEY + moduleConfig.getPrefix() );
+        reloader = (SproutReloader) getServletContext().getAttribute( SproutReloader.RELOADER_KEY + moduleConfig.getPrefix() );
+        metrics = new SproutMetrics( moduleConfig.getPrefix() );
+        getServletContext().setAttribute( SproutMetrics.METRICS_KEY + moduleConfig.getPrefix(), metrics );
+        bulkheads = (Map<String,Bulkhead>) getServletContext().getAttribute( Bulkhead.BULKHEADS_KEY + moduleConfig.getPrefix() );
+        rateLimiters = (Map<String,RateLimiter>) getServletContext().getAttribute( RateLimiter.RATE_LIMITERS_KEY + moduleConfig.getPrefix() );
+        flash = createFlashStore();
+        cache = createResponseCache();
+        getServletContext().setAttribute( ResponseCache.CACHE_KEY + moduleConfig.getPrefix(), cache );
+        validators = createValidators( moduleConfig );
+
+        // defer to a configured "unknown" mapping if present
+        final ActionConfig[] configs = moduleConfig.findActionConfigs();
+        for ( int i = 0; i < configs.length; i++ ) {
+            if ( configs[i].getUnknown() ) {
+                unknown = true;
+                return;
+            }
+        }
+
+        String name = servlet.getInitParameter( DEFAULT_SERVLET_PARAM );
+        if ( null == name || 0 == name.trim().length() )
+            name = DEFAULT_SERVLET;
+        defaultDispatcher = getServletContext().getNamedDispatcher( name.trim() );
+        if ( null == defaultDispatcher )
+            log.warn("No servlet named " + name + "; requests for unmapped paths will be answered with 404.  Set the " + DEFAULT_SERVLET_PARAM + " init-param of the action servlet to the name of the container's default servlet.");
+    }
+
+    /**
+     * Recycles the request-scoped {@link LazyForm} created while processing
+     * the request, unless the request has gone asynchronous.  Requests
+     * forwarded to other actions are processed recursively, so only the
+     * form created by this invocation is recycled.
+     */
+    @Override
+    public void process(final HttpServletRequest original, final HttpServletResponse response) throws IOException, ServletException {
+        // routed ids are exposed as the "id" parameter
+        final HttpServletRequest request = null == router || original instanceof RoutedRequest ? original : new RoutedRequest( original );
+        final Object outer = request.getAttribute( RECYCLED_FORM_KEY );
+        try {
+            super.process( request, response );
+        }
+        finally {
+            final Object form = request.getAttribute( RECYCLED_FORM_KEY );
+            if ( form != outer ) {
+                if ( null == outer )
+                    request.removeAttribute( RECYCLED_FORM_KEY );
+                else
+                    request.setAttribute( RECYCLED_FORM_KEY, outer );
+                recycle( request, (LazyForm) form );
+            }
+        }
+    }
+
+    private void recycle(final HttpServletRequest request, final LazyForm form) {
+        final ActionMapping mapping = (ActionMapping) request.getAttribute( Globals.MAPPING_KEY );
+        if ( null != mapping && form == request.getAttribute( mapping.getAttribute() ) )
+            request.removeAttribute( mapping.getAttribute() );
+        form.clear();
+        forms.offer( form );
+    }
+
+    /**
+     * Compiles the validation rules of every form validated by an action in
+     * this module, if the Validator plug-in is in use.  Rules for other
+     * locales are compiled when they are first needed.
+     */
+    private ValidatorCompiler createValidators(final ModuleConfig moduleConfig) {
+        final ValidatorResources resources = (ValidatorResources) getServletContext().getAttribute( ValidatorPlugIn.VALIDATOR_KEY + moduleConfig.getPrefix() );
+        if ( null == resources )
+            return null;
+
+        final ValidatorCompiler compiler = new ValidatorCompiler( resources );
+        final ActionConfig[] configs = moduleConfig.findActionConfigs();
+        for ( int i = 0; i < configs.length; i++ ) {
+            if ( configs[i].getValidate() && null != configs[i].getAttribute() )
+                compiler.getValidator( configs[i].getAttribute(), Locale.getDefault() );
+        }
+        return compiler;
+    }
+
+    /**
+     * Finds the FlashStore defined in the Spring context, if any.
+     */
+    private FlashStore createFlashStore() {
+        final Map stores = BeanFactoryUtils.beansOfTypeIncludingAncestors( getWebApplicationContext(), FlashStore.class );
+        if ( stores.isEmpty() )
+            return new CookieFlashStore();
+
+        if ( stores.size() > 1 )
+            log.warn("Multiple FlashStores defined: " + stores.keySet() + "; using the first.");
+        return (FlashStore) stores.values().iterator().next();
+    }
+
+    /**
+     * Finds the ResponseCache defined in the Spring context, if any.
+     */
+    private ResponseCache createResponseCache() {
+        final Map caches = BeanFactoryUtils.beansOfTypeIncludingAncestors( getWebApplicationContext(), ResponseCache.class );
+        if ( caches.isEmpty() )
+            return new ResponseCache();
+
+        if ( caches.size() > 1 )
+            log.warn("Multiple ResponseCaches defined: " + caches.keySet() + "; using the first.");
+        return (ResponseCache) caches.values().iterator().next();
+    }
+
+    /**
+     * Defers the <em>nocache</em> headers until the mapping is known; see
+     * {@link #processRoles(HttpServletRequest, HttpServletResponse, ActionMapping)}.
+     */
+    @Override
+    protected void processNoCache(final HttpServletRequest request, final HttpServletResponse response) {
+    }
+
+    /**
+     * Sends the <em>nocache</em> headers (if the controller is configured
+     * to), except for actions with <code>@Conditional</code>, whose responses
+     * are meant to be revalidated rather than fetched afresh.
+     */
+    private void processNoCache(final HttpServletRequest request, final HttpServletResponse response, final ActionMapping mapping) {
+        if ( mapping instanceof SproutActionMapping && null != ((SproutActionMapping) mapping).getFreshnessCheck() )
+            return;
+        super.processNoCache( request, response );
+    }
+
+    /**
+     * Sends the <em>nocache</em> headers and turns away rate-limited
+     * clients, then answers conditional requests whose responses have not
+     * been modified and requests for cacheable actions from the cache if
+     * possible.  Otherwise marks the request so that its response is cached
+     * once it has been rendered.
+     */
+    @Override
+    protected boolean processRoles(final HttpServletRequest request, final HttpServletResponse response, final ActionMapping mapping) throws IOException, ServletException {
+        processNoCache( request, response, mapping );
+        if ( !super.processRoles( request, response, mapping ) )
+            return false;
+
+        final RateLimiter limiter = null == rateLimiters ? null : rateLimiters.get( mapping.getPath() );
+        if ( null != limiter && !processRateLimit( request, response, mapping, limiter ) )
+            return false;
+
+        if ( !( mapping instanceof SproutActionMapping ) )
+            return true;
+
+        final SproutActionMapping sproutMapping = (SproutActionMapping) mapping;
+        final boolean get = "GET".equals( request.getMethod() );
+        if ( null != sproutMapping.getFreshnessCheck() && ( get || "HEAD".equals( request.getMethod() ) ) ) {
+            if ( !processConditional( request, response, sproutMapping ) )
+                return false;
+        }
+
+        if ( sproutMapping.getCacheTtl() <= 0 || !get )
+            return true;
+
+        // responses may include flashed messages
+        for ( int i = 0; i < FlashStore.KEYS.length; i++ ) {
+            if ( null != request.getAttribute( FlashStore.KEYS[i] ) )
+                return true;
+        }
+
+        // responses may be personal
+        if ( !cache.isCacheable( request, sproutMapping.getCacheVary(), sproutMapping.isCacheShared() ) )
+            return true;
+
+        final String key = cache.getKey( request, sproutMapping.getCacheParameters(), sproutMapping.getCacheVary() );
+        final CachedResponse cached = cache.get( key );
+        if ( null == cached ) {
+            request.setAttribute( CACHE_KEY_KEY, key );
+            return true;
+        }
+
+        if ( log.isDebugEnabled() )
+            log.debug("Cache hit: " + key );
+        cached.writeTo( response );
+        return false;
+    }
+
+    /**
+     * Answers requests from clients that have exceeded an action's rate
+     * limit with <em>429 Too Many Requests</em>.
+     *
+     * @return false if the response is complete.
+     */
+    private boolean processRateLimit(final HttpServletRequest request, final HttpServletResponse response, final ActionMapping mapping, final RateLimiter limiter) throws IOException {
+        final long wait = limiter.acquire( request );
+        if ( 0 == wait )
+            return true;
+
+        if ( log.isDebugEnabled() )
+            log.debug("Rate limited " + limiter.getClient( request ) + " on " + mapping.getPath() );
+        metrics.getMetrics( mapping.getPath() ).throttle();
+        response.setHeader("Retry-After", String.valueOf( Math.max( 1, ( wait + 999999999L ) / 1000000000L ) ) );
+        response.sendError( SC_TOO_MANY_REQUESTS );
+        return false;
+    }
+
+    /**
+     * Sets the <em>ETag</em> and <em>Last-Modified</em> headers declared by
+     * a Sprout method's freshness callbacks and answers with <em>304 Not
+     * Modified</em> if the client's copy is still fresh.
+     *
+     * @return false if the response is complete.
+     */
+    private boolean processConditional(final HttpServletRequest request, final HttpServletResponse response, final SproutActionMapping mapping) throws IOException, ServletException {
+        final Action action = processActionCreate( request, response, mapping );
+        if ( !( action instanceof Sprout ) )
+            return true;
+
+        final FreshnessCheck check = mapping.getFreshnessCheck();
+        final String etag = check.getETag( (Sprout) action, request );
+        final long lastModified = check.getLastModified( (Sprout) action, request );
+        if ( null != etag )
+            response.setHeader( "ETag", etag );
+        if ( lastModified >= 0 )
+            response.setDateHeader( "Last-Modified", lastModified );
+
+        if ( !isNotModified( request, etag, lastModified ) )
+            return true;
+
+        if ( log.isDebugEnabled() )
+            log.debug("Not modified: " + request.getRequestURI() );
+        response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+        return false;
+    }
+
+    /**
+     * Evaluates <em>If-None-Match</em> (which takes precedence) and
+     * <em>If-Modified-Since</em>, using weak comparison for entity tags.
+     */
+    private static boolean isNotModified(final HttpServletRequest request, final String etag, final long lastModified) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if ( null != ifNoneMatch ) {
+            if ( null == etag )
+                return false;
+
+            final String[] candidates = ifNoneMatch.split(",");
+            for ( int i = 0; i < candidates.length; i++ ) {
+                final String candidate = candidates[i].trim();
+                if ( "*".equals( candidate ) || stripWeak( candidate ).equals( stripWeak( etag ) ) )
+                    return true;
+            }
+            return false;
+        }
+
+        if ( lastModified < 0 )
+            return false;
+
+        final long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        }
+        catch (final IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a resolution of one second
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static String stripWeak(final String etag) {
+        return etag.startsWith("W/") ? etag.substring( 2 ) : etag;
+    }
+
+    /**
+     * Loads errors and messages carried over from the previous request into
+     * the request.
+     */
+    @Override
+    protected void processCachedMessages(final HttpServletRequest request, final HttpServletResponse response) {
+        super.processCachedMessages( request, response );
+
+        final Map<String,ActionMessages> saved = flash.load( request, response );
+        if ( null == saved )
+            return;
+
+        for ( final Map.Entry<String,ActionMessages> entry : saved.entrySet() ) {
+            final ActionMessages msgs = (ActionMessages) request.getAttribute( entry.getKey() );
+            if ( null == msgs )
+                request.setAttribute( entry.getKey(), entry.getValue() );
+            else
+                msgs.add( entry.getValue() );
+        }
+    }
+
+    /**
+     * Processes asynchronous forwards once they complete; see
+     * {@link #forward(HttpServletRequest, HttpServletResponse, ForwardConfig)}
+     * for everything else.
+     */
+    @Override
+    protected void processForwardConfig(final HttpServletRequest request, final HttpServletResponse response, final ForwardConfig forward) throws IOException, ServletException {
+        if ( forward instanceof AsyncForward ) {
+            processAsyncForward( request, response, (AsyncForward) forward );
+            return;
+        }
+
+        final PhaseEvent event = PhaseEvents.forward();
+        try {
+            forward( request, response, forward );
+        }
+        finally {
+            PhaseEvents.end( event, (ActionMapping) request.getAttribute( Globals.MAPPING_KEY ) );
+        }
+    }
+
+    /**
+     * Writes bodies, renders (and caches) forwards and saves undisplayed
+     * errors and messages before redirecting.
+     */
+    private void forward(final HttpServletRequest request, final HttpServletResponse response, final ForwardConfig forward) throws IOException, ServletException {
+        if ( forward instanceof SproutBody ) {
+            processBody( request, response, (SproutBody) forward );
+            return;
+        }
+
+        if ( null != forward && forward.getRedirect() ) {
+            final Map<String,ActionMessages> pending = new HashMap<String,ActionMessages>();
+            for ( int i = 0; i < FlashStore.KEYS.length; i++ ) {
+                final Object msgs = request.getAttribute( FlashStore.KEYS[i] );
+                if ( msgs instanceof ActionMessages && !((ActionMessages) msgs).isAccessed() && !((ActionMessages) msgs).isEmpty() )
+                    pending.put( FlashStore.KEYS[i], (ActionMessages) msgs );
+            }
+            if ( !pending.isEmpty() )
+                flash.save( request, response, pending );
+        }
+
+        final String key = (String) request.getAttribute( CACHE_KEY_KEY );
+        if ( null != key && null != forward && !forward.getRedirect() && null == request.getAttribute( ASYNC_CONTEXT_KEY ) ) {
+            request.removeAttribute( CACHE_KEY_KEY );
+            processCachedForward( request, response, forward, key );
+            return;
+        }
+
+        super.processForwardConfig( request, response, forward );
+    }
+
+    /**
+     * Writes a body returned by a Sprout method, caching it if possible.
+     */
+    private void processBody(final HttpServletRequest request, final HttpServletResponse response, final SproutBody body) throws IOException {
+        final String key = (String) request.getAttribute( CACHE_KEY_KEY );
+        request.removeAttribute( CACHE_KEY_KEY );
+        if ( null == key || !body.isCacheable() ) {
+            body.send( request, response );
+            return;
+        }
+
+        final CapturingResponseWrapper wrapper = createCapturingWrapper( request, response );
+        body.send( request, wrapper );
+        store( request, key, wrapper, null == wrapper.getContentType() ? body.getContentType() : wrapper.getContentType() );
+        wrapper.writeBody();
+    }
+
+    /**
+     * Renders a forward, caching the result if possible.
+     */
+    private void processCachedForward(final HttpServletRequest request, final HttpServletResponse response, final ForwardConfig forward, final String key) throws IOException, ServletException {
+        final CapturingResponseWrapper wrapper = createCapturingWrapper( request, response );
+        super.processForwardConfig( request, wrapper, forward );
+        store( request, key, wrapper, wrapper.getContentType() );
+        wrapper.writeBody();
+    }
+
+    /**
+     * Creates a wrapper to capture a response in, starting with the headers
+     * set by the action.
+     */
+    private CapturingResponseWrapper createCapturingWrapper(final HttpServletRequest request, final HttpServletResponse response) {
+        final RecordingResponseWrapper recorded = (RecordingResponseWrapper) request.getAttribute( CACHE_HEADERS_KEY );
+        request.removeAttribute( CACHE_HEADERS_KEY );
+        return new CapturingResponseWrapper( response, recorded );
+    }
+
+    /**
+     * Caches a captured response (along with its headers and locale) if
+     * possible.
+     */
+    private void store(final HttpServletRequest request, final String key, final CapturingResponseWrapper wrapper, final String contentType) {
+        final ActionMapping mapping = (ActionMapping) request.getAttribute( Globals.MAPPING_KEY );
+        if ( wrapper.isCacheable() && mapping instanceof SproutActionMapping ) {
+            final long ttl = 1000L * ((SproutActionMapping) mapping).getCacheTtl();
+            cache.put( key, new CachedResponse( contentType, wrapper.getRecordedLocale(), wrapper.getHeaders(), wrapper.getBody(), System.currentTimeMillis() + ttl ) );
+        }
+    }
+
+    /**
+     * Processes the forward produced by an asynchronous Sprout method,
+     * suspending the request until it is available if possible.
+     */
+    private void processAsyncForward(final HttpServletRequest request, final HttpServletResponse response, final AsyncForward forward) throws IOException, ServletException {
+        final CompletableFuture<ActionForward> future = forward.getFuture();
+        if ( null == future ) {
+            processForwardConfig( request, response, null );
+            return;
+        }
+
+        if ( future.isDone() || !AsyncSupport.isAvailable( request ) ) {
+            ActionForward next;
+            try {
+                next = future.get();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException( e );
+            }
+            catch (final ExecutionException e) {
+                next = processAsyncException( request, response, forward, e.getCause() );
+            }
+            processForwardConfig( request, response, next );
+            return;
+        }
+
+        final Object context = AsyncSupport.start( request, response );
+        request.setAttribute( ASYNC_CONTEXT_KEY, context );
+        // the form outlives this thread's processing of the request
+        request.removeAttribute( RECYCLED_FORM_KEY );
+
+        // set by whichever of the future and the container finishes first
+        final AtomicBoolean done = new AtomicBoolean();
+        try {
+            NonBlockingSupport.addListener( context, new NonBlockingSupport.AsyncHandler() {
+                public void onComplete() {}
+
+                public void onTimeout() {
+                    abandon( request, response, forward, done, context, null );
+                }
+
+                public void onError(final Throwable t) {
+                    abandon( request, response, forward, done, context, t );
+                }
+            });
+        }
+        catch (final IOException e) {
+            // Servlet 3.0 containers; the future is expected to complete
+            log.debug("Unable to listen for timeouts of " + forward.getMapping().getPath() + ": " + e.getMessage() );
+        }
+
+        future.whenComplete( new BiConsumer<ActionForward,Throwable>() {
+            public void accept(final ActionForward result, final Throwable failure) {
+                if ( done.compareAndSet( false, true ) )
+                    resume( request, response, forward, result, failure, context );
+            }
+        });
+    }
+
+    /**
+     * Gives up on a suspended request that timed out or failed before its
+     * future completed.  Cancelling the future releases the action's
+     * bulkhead permit (see {@link #processActionPerform(HttpServletRequest, HttpServletResponse, Action, ActionForm, ActionMapping)});
+     * whatever the action eventually produces is discarded.
+     *
+     * @param failure Error reported by the container, or null on timeout.
+     */
+    private void abandon(final HttpServletRequest request, final HttpServletResponse response, final AsyncForward forward, final AtomicBoolean done, final Object context, final Throwable failure) {
+        if ( !done.compareAndSet( false, true ) )
+            return;
+
+        final String path = forward.getMapping().getPath();
+        if ( null == failure )
+            log.warn("Timed out waiting for " + path );
+        else
+            log.warn("Asynchronous processing of " + path + " failed: " + failure.getMessage() );
+
+        metrics.getMetrics( path ).error();
+        forward.getFuture().cancel( false );
+        request.removeAttribute( ASYNC_CONTEXT_KEY );
+        try {
+            if ( null == failure && !response.isCommitted() )
+                response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+        }
+        catch (final IOException e) {
+            log.debug("Unable to send error: " + e.getMessage() );
+        }
+        try {
+            AsyncSupport.complete( context );
+        }
+        catch (final Exception e) {
+            log.debug("Unable to complete " + path + ": " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Processes a forward once its future has completed.  Forwards are
+     * dispatched by {@link #doForward(String, HttpServletRequest, HttpServletResponse)};
+     * anything else (redirects, responses written by the action) completes
+     * the request.
+     */
+    private void resume(final HttpServletRequest request, final HttpServletResponse response, final AsyncForward forward, final ActionForward result, final Throwable failure, final Object context) {
+        try {
+            final ActionForward next = null == failure ? result : processAsyncException( request, response, forward, failure );
+            processForwardConfig( request, response, next );
+        }
+        catch (final Exception e) {
+            log.error("Unable to complete " + forward.getMapping().getPath(), e );
+            try {
+                if ( !response.isCommitted() )
+                    response.sendError( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
+            }
+            catch (final IOException ioe) {
+                log.debug("Unable to send error: " + ioe.getMessage() );
+            }
+        }
+        finally {
+            if ( null != request.getAttribute( ASYNC_CONTEXT_KEY ) ) {
+                request.removeAttribute( ASYNC_CONTEXT_KEY );
+                try {
+                    AsyncSupport.complete( context );
+                }
+                catch (final Exception e) {
+                    // e.g. the request timed out
+                    log.warn("Unable to complete " + forward.getMapping().getPath() + ": " + e.getMessage() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands an exception thrown by an asynchronous Sprout method to the
+     * mapping's exception handlers.
+     */
+    private ActionForward processAsyncException(final HttpServletRequest request, final HttpServletResponse response, final AsyncForward forward, Throwable failure) throws IOException, ServletException {
+        if ( failure instanceof CompletionException && null != failure.getCause() )
+            failure = failure.getCause();
+
+        final Exception e = failure instanceof Exception ? (Exception) failure : new ServletException( failure );
+        return processException( request, response, e, forward.getForm(), forward.getMapping() );
+    }
+
+    /**
+     * Dispatches through the request's AsyncContext if it is waiting for a
+     * future forward.
+     */
+    @Override
+    protected void doForward(final String uri, final HttpServletRequest request, final HttpServletResponse response) throws IOException, ServletException {
+        final Object context = request.getAttribute( ASYNC_CONTEXT_KEY );
+        if ( null == context ) {
+            super.doForward( uri, request, response );
+            return;
+        }
+
+        request.removeAttribute( ASYNC_CONTEXT_KEY );
+        AsyncSupport.dispatch( context, uri );
+    }
+
+    /**
+     * Resolves paths that are not mapped directly using the router, storing
+     * the trailing id (if any) as a request attribute and, unless the
+     * request has one, as the <em>id</em> parameter.  Other paths are passed
+     * to the default servlet or answered with <em>404 Not Found</em>.
+     */
+    @Override
+    protected String processPath(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final String path = super.processPath( request, response );
+        if ( null == path || null != moduleConfig.findActionConfig( path ) || ( null != reloader && null != reloader.findActionConfig( path ) ) )
+            return path;
+
+        final String[] ids = new String[1];
+        String route = null == reloader ? null : reloader.match( path, ids );
+        if ( null == route && null != router )
+            route = router.match( path, ids );
+        if ( null != route ) {
+            if ( log.isDebugEnabled() )
+                log.debug( path + " -> " + route + ( null == ids[0] ? "" : " (id: " + ids[0] + ")" ) );
+            if ( null != ids[0] ) {
+                request.setAttribute( SproutRouter.ID_KEY, ids[0] );
+                if ( request instanceof RoutedRequest )
+                    ((RoutedRequest) request).setId( ids[0] );
+            }
+            return route;
+        }
+
+        if ( null != defaultDispatcher ) {
+            try {
+                defaultDispatcher.forward( request, response );
+            }
+            catch (final ServletException e) {
+                final IOException ioe = new IOException( e.getMessage() );
+                ioe.initCause( e );
+                throw ioe;
+            }
+            return null;
+        }
+
+        if ( !unknown ) {
+            if ( log.isDebugEnabled() )
+                log.debug("No action or default servlet for " + path );
+            response.sendError( HttpServletResponse.SC_NOT_FOUND, getInternal().getMessage( "processInvalid", path ) );
+            return null;
+        }
+        return path;
+    }
+
+    /**
+     * Uses reloaded mappings in preference to those in the module
+     * configuration, and treats paths that reloaded classes no longer
+     * register as unmapped.
+     */
+    @Override
+    protected ActionMapping processMapping(final HttpServletRequest request, final HttpServletResponse response, final String path) throws IOException {
+        if ( null != reloader ) {
+            if ( reloader.isRemoved( path ) ) {
+                response.sendError( HttpServletResponse.SC_NOT_FOUND, getInternal().getMessage( "processInvalid", path ) );
+                return null;
+            }
+
+            final ActionConfig reloaded = reloader.findActionConfig( path );
+            if ( null != reloaded ) {
+                request.setAttribute( Globals.MAPPING_KEY, reloaded );
+                return (ActionMapping) reloaded;
+            }
+        }
+        return super.processMapping( request, response, path );
+    }
+
+    /**
+     * Uses reloaded actions in preference to cached or Spring-managed ones.
+     */
+    @Override
+    protected Action processActionCreate(final HttpServletRequest request, final HttpServletResponse response, final ActionMapping mapping) throws IOException {
+        if ( null != reloader ) {
+            final Action reloaded = reloader.findAction( mapping.getPath() );
+            if ( null != reloaded )
+                return reloaded;
+        }
+        return super.processActionCreate( request, response, mapping );
+    }
+
+    /**
+     * Creates forms whose classes have been reloaded using the reloaded
+     * classes, discarding instances of previous versions.  Request-scoped
+     * {@link LazyForm}s are taken from a pool.
+     */
+    @Override
+    protected ActionForm processActionForm(final HttpServletRequest request, final HttpServletResponse response, final ActionMapping mapping) {
+        final SproutReloader.ReloadedFormBeanConfig reloaded = null == reloader || null == mapping.getName() ? null : reloader.findFormBeanConfig( mapping.getName() );
+        if ( null == reloaded ) {
+            if ( "request".equals( mapping.getScope() ) && null == request.getAttribute( mapping.getAttribute() ) ) {
+                final FormBeanConfig fbc = null == mapping.getName() ? null : moduleConfig.findFormBeanConfig( mapping.getName() );
+                if ( null != fbc && LAZY_FORM_TYPE.equals( fbc.getType() ) )
+                    return processPooledForm( request, mapping );
+            }
+            return super.processActionForm( request, response, mapping );
+        }
+
+        final boolean session = "session".equals( mapping.getScope() );
+        final Object existing = session ? request.getSession().getAttribute( mapping.getAttribute() ) : request.getAttribute( mapping.getAttribute() );
+        ActionForm form = null;
+        try {
+            form = null != existing && existing.getClass() == reloaded.getFormBeanClass() ? (ActionForm) existing : RequestUtils.createActionForm( reloaded, servlet );
+        }
+        catch (final RuntimeException e) {
+            log.error("Unable to create reloaded form " + mapping.getName(), e );
+            return null;
+        }
+        if ( null == form )
+            return null;
+
+        if ( session )
+            request.getSession().setAttribute( mapping.getAttribute(), form );
+        else
+            request.setAttribute( mapping.getAttribute(), form );
+        return form;
+    }
+
+    /**
+     * Provides a request-scoped {@link LazyForm}, reusing one whose request
+     * has been processed if possible.
+     */
+    private ActionForm processPooledForm(final HttpServletRequest request, final ActionMapping mapping) {
+        LazyForm form = forms.poll();
+        if ( null == form )
+            form = new LazyForm();
+        form.setServlet( servlet );
+
+        request.setAttribute( mapping.getAttribute(), form );
+        request.setAttribute( RECYCLED_FORM_KEY, form );
+        return form;
+    }
+
+    /**
+     * Populates {@link LazyForm}s without going through
+     * <code>BeanUtils</code> where possible and binds the id extracted from
+     * the path (if any) to the form's <em>id</em> property.
+     */
+    @Override
+    protected void processPopulate(final HttpServletRequest request, final HttpServletResponse response, final ActionForm form, final ActionMapping mapping) throws ServletException {
+        final PhaseEvent event = PhaseEvents.populate();
+        try {
+            populate( request, response, form, mapping );
+        }
+        finally {
+            PhaseEvents.end( event, mapping );
+        }
+    }
+
+    private void populate(final HttpServletRequest request, final HttpServletResponse response, final ActionForm form, final ActionMapping mapping) throws ServletException {
+        if ( form instanceof LazyForm && !isMultipart( request ) )
+            processLazyPopulate( request, (LazyForm) form, mapping );
+        else
+            super.processPopulate( request, response, form, mapping );
+
+        final Object id = request.getAttribute( SproutRouter.ID_KEY );
+        if ( null == form || null == id )
+            return;
+
+        if ( form instanceof LazyForm ) {
+            ((LazyForm) form).set( SproutRouter.ID_PROPERTY, id );
+            return;
+        }
+
+        try {
+            if ( PropertyUtils.isWriteable( form, SproutRouter.ID_PROPERTY ) )
+                BeanUtils.setProperty( form, SproutRouter.ID_PROPERTY, id );
+        }
+        catch (final IllegalAccessException e) {
+            throw new ServletException( e );
+        }
+        catch (final InvocationTargetException e) {
+            throw new ServletException( e );
+        }
+    }
+
+    /**
+     * Validates forms using precompiled rules where possible; see
+     * {@link ValidatorCompiler}.  Forms that override
+     * <code>validate()</code> or whose rules cannot be compiled are
+     * validated as usual.
+     */
+    @Override
+    protected boolean processValidate(final HttpServletRequest request, final HttpServletResponse response, final ActionForm form, final ActionMapping mapping) throws IOException, ServletException {
+        // the input forward rendered for invalid forms must not be cached
+        final Object key = request.getAttribute( CACHE_KEY_KEY );
+        request.removeAttribute( CACHE_KEY_KEY );
+
+        final PhaseEvent event = PhaseEvents.validate();
+        try {
+            final boolean valid = validate( request, response, form, mapping );
+            if ( valid && null != key )
+                request.setAttribute( CACHE_KEY_KEY, key );
+            return valid;
+        }
+        finally {
+            PhaseEvents.end( event, mapping );
+        }
+    }
+
+    private boolean validate(final HttpServletRequest request, final HttpServletResponse response, final ActionForm form, final ActionMapping mapping) throws IOException, ServletException {
+        if ( null == validators || null == form || !mapping.getValidate() || null != request.getAttribute( Globals.CANCEL_KEY ) || !isCompilable( form.getClass() ) )
+            return super.processValidate( request, response, form, mapping );
+
+        final String key;
+        final int page;
+        if ( form instanceof ValidatorForm ) {
+            key = ((ValidatorForm) form).getValidationKey( mapping, request );
+            page = ((ValidatorForm) form).getPage();
+        } else {
+            key = ((DynaValidatorForm) form).getValidationKey( mapping, request );
+            page = ((DynaValidatorForm) form).getPage();
+        }
+
+        final CompiledValidator validator = null == key ? null : validators.getValidator( key, RequestUtils.getUserLocale( request, null ) );
+        if ( null == validator )
+            return super.processValidate( request, response, form, mapping );
+
+        final boolean failFast = mapping instanceof SproutActionMapping && ((SproutActionMapping) mapping).isFailFast();
+        final ActionErrors errors = validator.validate( form, page, getServletContext(), request, failFast );
+        if ( null == errors || errors.isEmpty() )
+            return true;
+
+        // the remainder mirrors RequestProcessor.processValidate()
+        if ( null != form.getMultipartRequestHandler() )
+            form.getMultipartRequestHandler().rollback();
+
+        final String input = mapping.getInput();
+        if ( null == input ) {
+            response.sendError( HttpServletResponse.SC_INTERNAL_SERVER_ERROR, getInternal().getMessage( "noInput", mapping.getPath() ) );
+            return false;
+        }
+
+        request.setAttribute( Globals.ERROR_KEY, errors );
+        if ( moduleConfig.getControllerConfig().getInputForward() )
+            processForwardConfig( request, response, mapping.findForward( input ) );
+        else
+            internalModuleRelativeForward( input, request, response );
+        return false;
+    }
+
+    /**
+     * Whether a form class relies on the Validator framework's
+     * <code>validate()</code> implementation.
+     */
+    private boolean isCompilable(final Class formClass) {
+        Boolean compilable = compilableForms.get( formClass );
+        if ( null == compilable ) {
+            try {
+                final Class declaringClass = formClass.getMethod( "validate", ActionMapping.class, HttpServletRequest.class ).getDeclaringClass();
+                compilable = Boolean.valueOf( ValidatorForm.class == declaringClass || DynaValidatorForm.class == declaringClass );
+            }
+            catch (final NoSuchMethodException e) {
+                compilable = Boolean.FALSE;
+            }
+            compilableForms.put( formClass, compilable );
+        }
+        return compilable.booleanValue();
+    }
+
+    /**
+     * Equivalent of <code>RequestProcessor.processPopulate()</code> for
+     * {@link LazyForm}s.
+     */
+    private void processLazyPopulate(final HttpServletRequest request, final LazyForm form, final ActionMapping mapping) throws ServletException {
+        form.setServlet( servlet );
+        form.reset( mapping, request );
+        if ( null != mapping.getMultipartClass() )
+            request.setAttribute( Globals.MULTIPART_KEY, mapping.getMultipartClass() );
+
+        form.populate( request, mapping.getPrefix(), mapping.getSuffix() );
+
+        if ( null != request.getParameter( Constants.CANCEL_PROPERTY ) || null != request.getParameter( Constants.CANCEL_PROPERTY_X ) )
+            request.setAttribute( Globals.CANCEL_KEY, Boolean.TRUE );
+    }
+
+    private static boolean isMultipart(final HttpServletRequest request) {
+        final String contentType = request.getContentType();
+        return null != contentType && contentType.startsWith("multipart/form-data") && "POST".equalsIgnoreCase( request.getMethod() );
+    }
+
     /**
      * Provides each Sprout with an extensive set of objects during its
-     * initialization.
+     * initialization, in the form of a {@link SproutContext}.  Actions are
+     * only performed if their bulkhead (if any) admits them.  Headers set by
+     * actions whose responses are to be cached are recorded so that they
+     * can be replayed along with the response.
      */
     @Override
-    protected ActionForward processActionPerform(final HttpServletRequest request, final HttpServletResponse response, final Action action, final ActionForm form, final ActionMapping mapping) throws IOException, ServletException {
-        // initialize Sprout if necessary
-        if ( action instanceof Sprout )
-            ((Sprout) action).init( mapping, form, request, response );
-        
-        return super.processActionPerform( request, response, action, form, mapping );
+    protected ActionForward processActionPerform(final HttpServletRequest request, final HttpServletResponse original, final Action action, final ActionForm form, final ActionMapping mapping) throws IOException, ServletException {
+        final ActionMetrics stats = metrics.getMetrics( mapping.getPath() );
+        final Bulkhead bulkhead = null == bulkheads ? null : bulkheads.get( mapping.getPath() );
+        if ( null != bulkhead && !bulkhead.acquire() ) {
+            stats.reject();
+            return processRejection( request, original, mapping, bulkhead );
+        }
+
+        final RecordingResponseWrapper recorder = null == request.getAttribute( CACHE_KEY_KEY ) ? null : new RecordingResponseWrapper( original );
+        final HttpServletResponse response = null == recorder ? original : recorder;
+
+        final long start = stats.begin();
+        boolean pending = false;
+        try {
+            // initialize Sprout if necessary
+            if ( action instanceof Sprout ) {
+                final SproutContext context = new SproutContext( mapping, form, request, response );
+                request.setAttribute( SproutContext.CONTEXT_KEY, context );
+                final PhaseEvent init = PhaseEvents.init();
+                try {
+                    ((Sprout) action).init( context );
+                }
+                finally {
+                    PhaseEvents.end( init, mapping );
+                }
+            }
+
+            // exceptions thrown by the action itself are counted by processException
+            final PhaseEvent dispatch = PhaseEvents.dispatch();
+            final ActionForward forward;
+            try {
+                forward = super.processActionPerform( request, response, action, form, mapping );
+            }
+            finally {
+                PhaseEvents.end( dispatch, mapping );
+            }
+            if ( forward instanceof AsyncForward ) {
+                final AsyncForward async = (AsyncForward) forward;
+                async.bind( mapping, form );
+                if ( null != async.getFuture() ) {
+                    // include the time taken for the future to complete
+                    async.getFuture().whenComplete( new BiConsumer<ActionForward,Throwable>() {
+                        public void accept(final ActionForward result, final Throwable failure) {
+                            stats.end( start );
+                            if ( null != bulkhead )
+                                bulkhead.release();
+                        }
+                    });
+                    pending = true;
+                }
+            }
+            if ( null != recorder ) {
+                if ( recorder.isCacheable() )
+                    request.setAttribute( CACHE_HEADERS_KEY, recorder );
+                else
+                    request.removeAttribute( CACHE_KEY_KEY );
+            }
+            return forward;
+        }
+        catch (final RuntimeException e) {
+            stats.error();
+            throw e;
+        }
+        catch (final Error e) {
+            stats.error();
+            throw e;
+        }
+        finally {
+            if ( action instanceof Sprout )
+                ((Sprout) action).release();
+            if ( !pending ) {
+                stats.end( start );
+                if ( null != bulkhead )
+                    bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * Answers a request rejected by a bulkhead with <em>503 Service
+     * Unavailable</em>, rendered by the bulkhead's forward if it has one.
+     */
+    private ActionForward processRejection(final HttpServletRequest request, final HttpServletResponse response, final ActionMapping mapping, final Bulkhead bulkhead) throws IOException {
+        if ( log.isDebugEnabled() )
+            log.debug("Rejected " + mapping.getPath() + "; " + bulkhead.getInUse() + " of " + bulkhead.getMaxConcurrent() + " permits in use");
+
+        // don't cache the rejection
+        request.removeAttribute( CACHE_KEY_KEY );
+
+        ActionForward forward = null;
+        if ( null != bulkhead.getForward() ) {
+            forward = mapping.findForward( bulkhead.getForward() );
+            if ( null == forward )
+                log.warn("No forward named " + bulkhead.getForward() + " for rejected requests to " + mapping.getPath() );
+        }
+
+        if ( null == forward ) {
+            response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+            return null;
+        }
+        response.setStatus( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+        return forward;
+    }
+
+    /**
+     * Counts exceptions thrown by actions before handling them; the handler
+     * forward is never cached.  Tasks rejected by the executor behind
+     * <code>Sprout.async()</code> are answered with <em>503 Service
+     * Unavailable</em>, like requests rejected by a bulkhead.
+     */
+    @Override
+    protected ActionForward processException(final HttpServletRequest request, final HttpServletResponse response, final Exception exception, final ActionForm form, final ActionMapping mapping) throws IOException, ServletException {
+        // only responses of successful actions are cached
+        request.removeAttribute( CACHE_KEY_KEY );
+
+        if ( exception instanceof RejectedExecutionException ) {
+            log.warn("Rejected asynchronous task for " + mapping.getPath() + "; the executor is saturated");
+            metrics.getMetrics( mapping.getPath() ).reject();
+            response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+            return null;
+        }
+
+        metrics.getMetrics( mapping.getPath() ).error();
+        return super.processException( request, response, exception, form, mapping );
+    }
+
+    /**
+     * Request whose <em>id</em> parameter defaults to the id routed from its
+     * path, as it did when paths were rewritten to
+     * <code>/:controller/:action.do?id=:id</code>.
+     */
+    private static class RoutedRequest extends HttpServletRequestWrapper {
+        private String id;
+
+        RoutedRequest(final HttpServletRequest request) {
+            super( request );
+        }
+
+        void setId(final String id) {
+            this.id = id;
+        }
+
+        /**
+         * Whether the routed id stands in for a missing parameter.
+         */
+        private boolean isRouted(final String name) {
+            return null != id && SproutRouter.ID_PROPERTY.equals( name ) && null == super.getParameter( name );
+        }
+
+        @Override
+        public String getParameter(final String name) {
+            return isRouted( name ) ? id : super.getParameter( name );
+        }
+
+        @Override
+        public String[] getParameterValues(final String name) {
+            return isRouted( name ) ? new String[] { id } : super.getParameterValues( name );
+        }
+
+        @Override
+        public Map getParameterMap() {
+            if ( !isRouted( SproutRouter.ID_PROPERTY ) )
+                return super.getParameterMap();
+            final Map parameters = new HashMap( super.getParameterMap() );
+            parameters.put( SproutRouter.ID_PROPERTY, new String[] { id } );
+            return Collections.unmodifiableMap( parameters );
+        }
+
+        @Override
+        public Enumeration getParameterNames() {
+            if ( !isRouted( SproutRouter.ID_PROPERTY ) )
+                return super.getParameterNames();
+            return Collections.enumeration( getParameterMap().keySet() );
+        }
     }
 }
@@ -0,0 +1,320 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.struts.action.ActionForward;
+import org.apache.struts.config.ActionConfig;
+import org.apache.struts.config.ForwardConfig;
+
+/**
+ * <p>Everything <code>SproutAutoLoaderPlugIn</code> needs to know in order to
+ * register a single action mapping, independent of how it was discovered.</p>
+ *
+ * <p>Routes are either <em>Sprout</em> routes (one per alias registered by
+ * a Sprout, dispatched to the Spring bean by path) or <em>action</em> routes
+ * (one per <code>@SproutAction</code> class, dispatched by type).</p>
+ *
+ * @see net.mojodna.sprout.SproutRouteRegistry
+ * @author Seth Fitzsimmons
+ */
+public class SproutRoute {
+    private String type;
+    private boolean sprout;
+    private String path;
+    private String method;
+    private String name;
+    private String input;
+    private String scope = Sprout.DEFAULT_SCOPE;
+    private boolean validate;
+    private boolean failFast;
+    private String mappingClass = ActionConfig.class.getName();
+    private int cacheTtl;
+    private String[] cacheParameters;
+    private String[] cacheVary;
+    private boolean cacheShared;
+    private String lastModifiedMethod;
+    private String etagMethod;
+    private int bulkheadLimit;
+    private long bulkheadWait;
+    private String bulkheadForward;
+    private double rateLimit;
+    private int rateBurst;
+    private String rateKey;
+    private String rateHeader;
+    private final Map<String,String> properties = new LinkedHashMap<String,String>();
+    private final List<ForwardConfig> forwards = new ArrayList<ForwardConfig>();
+
+    /**
+     * Fully-qualified (binary) name of the Sprout or Action class.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public void setType(final String type) {
+        this.type = type;
+    }
+
+    /**
+     * Whether this route was registered by a Sprout (as opposed to an
+     * <code>@SproutAction</code>).
+     */
+    public boolean isSprout() {
+        return sprout;
+    }
+
+    public void setSprout(final boolean sprout) {
+        this.sprout = sprout;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * Name of the method to dispatch to.  Only meaningful for Sprout routes.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(final String method) {
+        this.method = method;
+    }
+
+    /**
+     * Declared form name.  For Sprout routes this may name a form-bean that
+     * does not exist, in which case the default form is used.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public void setInput(final String input) {
+        this.input = input;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public void setScope(final String scope) {
+        this.scope = scope;
+    }
+
+    public boolean isValidate() {
+        return validate;
+    }
+
+    public void setValidate(final boolean validate) {
+        this.validate = validate;
+    }
+
+    /**
+     * Whether validation stops at the first invalid field.  Only meaningful
+     * for Sprout routes.
+     */
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public void setFailFast(final boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * Fully-qualified name of the <code>ActionConfig</code> subclass to
+     * instantiate.  Only meaningful for action routes.
+     */
+    public String getMappingClass() {
+        return mappingClass;
+    }
+
+    public void setMappingClass(final String mappingClass) {
+        this.mappingClass = mappingClass;
+    }
+
+    /**
+     * Number of seconds responses may be cached for, or 0 if they may not
+     * be.  Only meaningful for Sprout routes.
+     */
+    public int getCacheTtl() {
+        return cacheTtl;
+    }
+
+    /**
+     * Request parameters that make up the cache key, or null if the entire
+     * query string does.
+     */
+    public String[] getCacheParameters() {
+        return cacheParameters;
+    }
+
+    /**
+     * Parts of the request (see <code>Sprout.Cache.vary()</code>) that make
+     * up the cache key, or null.
+     */
+    public String[] getCacheVary() {
+        return cacheVary;
+    }
+
+    /**
+     * Whether responses may be cached for requests with a session or a
+     * remote user.
+     */
+    public boolean isCacheShared() {
+        return cacheShared;
+    }
+
+    public void setCache(final int ttl, final String[] parameters) {
+        setCache( ttl, parameters, null, false );
+    }
+
+    public void setCache(final int ttl, final String[] parameters, final String[] vary, final boolean shared) {
+        this.cacheTtl = ttl;
+        this.cacheParameters = null == parameters || 0 == parameters.length ? null : parameters;
+        this.cacheVary = null == vary || 0 == vary.length ? null : vary;
+        this.cacheShared = shared;
+    }
+
+    /**
+     * Name of the method that determines when responses were last modified,
+     * or null.  Only meaningful for Sprout routes.
+     */
+    public String getLastModifiedMethod() {
+        return lastModifiedMethod;
+    }
+
+    /**
+     * Name of the method that determines the entity tags of responses, or
+     * null.  Only meaningful for Sprout routes.
+     */
+    public String getETagMethod() {
+        return etagMethod;
+    }
+
+    public void setConditional(final String lastModifiedMethod, final String etagMethod) {
+        this.lastModifiedMethod = null == lastModifiedMethod || 0 == lastModifiedMethod.length() ? null : lastModifiedMethod;
+        this.etagMethod = null == etagMethod || 0 == etagMethod.length() ? null : etagMethod;
+    }
+
+    /**
+     * Maximum number of concurrent executions, or 0 if they are not
+     * limited.
+     */
+    public int getBulkheadLimit() {
+        return bulkheadLimit;
+    }
+
+    /**
+     * Milliseconds to wait for a permit before rejecting a request.
+     */
+    public long getBulkheadWait() {
+        return bulkheadWait;
+    }
+
+    /**
+     * Name of the forward that renders rejected requests, or null.
+     */
+    public String getBulkheadForward() {
+        return bulkheadForward;
+    }
+
+    public void setBulkhead(final int limit, final long wait, final String forward) {
+        this.bulkheadLimit = limit;
+        this.bulkheadWait = wait;
+        this.bulkheadForward = null == forward || 0 == forward.length() ? null : forward;
+    }
+
+    /**
+     * Sustained number of requests each client may make per second, or 0
+     * if clients are not rate limited.
+     */
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    public int getRateBurst() {
+        return rateBurst;
+    }
+
+    /**
+     * What identifies a client, as the name of a
+     * <code>SproutRateLimit.Key</code>.
+     */
+    public String getRateKey() {
+        return rateKey;
+    }
+
+    /**
+     * Header identifying the client when keyed by header, or null.
+     */
+    public String getRateHeader() {
+        return rateHeader;
+    }
+
+    public void setRateLimit(final double rate, final int burst, final String key, final String header) {
+        this.rateLimit = rate;
+        this.rateBurst = burst;
+        this.rateKey = key;
+        this.rateHeader = null == header || 0 == header.length() ? null : header;
+    }
+
+    /**
+     * Additional properties to set on the generated <code>ActionConfig</code>.
+     */
+    public Map<String,String> getProperties() {
+        return properties;
+    }
+
+    public void addProperty(final String property, final String value) {
+        properties.put( property, value );
+    }
+
+    public List<ForwardConfig> getForwards() {
+        return forwards;
+    }
+
+    public void addForward(final String name, final String path, final boolean redirect, final String module) {
+        final ActionForward fc = new ActionForward();
+        fc.setName( name );
+        fc.setPath( path );
+        fc.setRedirect( redirect );
+        fc.setModule( module );
+        forwards.add( fc );
+    }
+
+    public String toString() {
+        return path + " -> " + type + ( null == method ? "" : "." + method );
+    }
+}
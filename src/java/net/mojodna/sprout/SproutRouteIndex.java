@@ -0,0 +1,345 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.struts.action.ActionFormBean;
+import org.apache.struts.config.FormBeanConfig;
+import org.apache.struts.config.ForwardConfig;
+
+/**
+ * <p>Route table computed by <code>SproutAutoLoaderPlugIn</code> while
+ * scanning, persisted to a compact binary file so that subsequent startups
+ * with the same classpath and Sprouts can skip scanning.</p>
+ *
+ * <p>Each index is stamped with a fingerprint (see {@link Fingerprint}) of
+ * its inputs; an index whose fingerprint does not match is ignored.</p>
+ *
+ * @see SproutRouteRegistry
+ * @author Seth Fitzsimmons
+ */
+public class SproutRouteIndex implements SproutRouteRegistry {
+    private static final int MAGIC = 0x53505249; // SPRI
+    private static final int VERSION = 5;
+
+    private final FormBeanConfig[] formBeans;
+    private final SproutRoute[] routes;
+
+    public SproutRouteIndex(final FormBeanConfig[] formBeans, final SproutRoute[] routes) {
+        this.formBeans = formBeans;
+        this.routes = routes;
+    }
+
+    public FormBeanConfig[] getFormBeans() {
+        return formBeans;
+    }
+
+    public SproutRoute[] getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Reads an index if its fingerprint matches.
+     *
+     * <p>The file is read into memory in one go rather than mapped, so that
+     * no mapping outlives this call and blocks replacing the file (on
+     * Windows, a mapped file can't be renamed over until the mapping has
+     * been garbage collected).</p>
+     *
+     * @param file Index file.
+     * @param fingerprint Expected fingerprint.
+     * @return Index, or null if the file does not exist, is stale or is
+     * unreadable.
+     */
+    public static SproutRouteIndex read(final File file, final long fingerprint) throws IOException {
+        if ( !file.isFile() )
+            return null;
+
+        final ByteBuffer in;
+        final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+        try {
+            final long size = channel.size();
+            if ( size > Integer.MAX_VALUE )
+                return null;
+            in = ByteBuffer.allocate( (int) size );
+            while ( in.hasRemaining() ) {
+                if ( channel.read( in ) < 0 )
+                    break;
+            }
+            in.flip();
+        }
+        finally {
+            channel.close();
+        }
+
+        try {
+            if ( in.remaining() < 16 || in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != fingerprint )
+                return null;
+
+            final FormBeanConfig[] forms = new FormBeanConfig[ in.getInt() ];
+            for ( int i = 0; i < forms.length; i++ )
+                forms[i] = new ActionFormBean( readString( in ), readString( in ) );
+
+            final SproutRoute[] routes = new SproutRoute[ in.getInt() ];
+            for ( int i = 0; i < routes.length; i++ )
+                routes[i] = readRoute( in );
+            return new SproutRouteIndex( forms, routes );
+        }
+        catch (final BufferUnderflowException e) {
+            throw new IOException( "Truncated index: " + file );
+        }
+    }
+
+    /**
+     * Writes this index.  The file is replaced atomically (where the
+     * platform allows).
+     *
+     * @param file Index file.
+     * @param fingerprint Fingerprint of the inputs this index was computed
+     * from.
+     */
+    public void write(final File file, final long fingerprint) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 64 * ( routes.length + formBeans.length ) + 16 );
+        final DataOutputStream out = new DataOutputStream( bytes );
+        out.writeInt( MAGIC );
+        out.writeInt( VERSION );
+        out.writeLong( fingerprint );
+
+        out.writeInt( formBeans.length );
+        for ( int i = 0; i < formBeans.length; i++ ) {
+            writeString( out, formBeans[i].getName() );
+            writeString( out, formBeans[i].getType() );
+        }
+
+        out.writeInt( routes.length );
+        for ( int i = 0; i < routes.length; i++ )
+            writeRoute( out, routes[i] );
+        out.flush();
+
+        final File tmp = new File( file.getPath() + ".tmp" );
+        final OutputStream os = new FileOutputStream( tmp );
+        try {
+            bytes.writeTo( os );
+        }
+        finally {
+            os.close();
+        }
+        if ( !tmp.renameTo( file ) ) {
+            file.delete();
+            if ( !tmp.renameTo( file ) )
+                throw new IOException( "Unable to replace " + file );
+        }
+    }
+
+    private static void writeRoute(final DataOutputStream out, final SproutRoute route) throws IOException {
+        writeString( out, route.getType() );
+        out.writeBoolean( route.isSprout() );
+        writeString( out, route.getPath() );
+        writeString( out, route.getMethod() );
+        writeString( out, route.getName() );
+        writeString( out, route.getInput() );
+        writeString( out, route.getScope() );
+        out.writeBoolean( route.isValidate() );
+        out.writeBoolean( route.isFailFast() );
+        writeString( out, route.getMappingClass() );
+        writeString( out, route.getLastModifiedMethod() );
+        writeString( out, route.getETagMethod() );
+        out.writeInt( route.getCacheTtl() );
+        final String[] params = route.getCacheParameters();
+        out.writeInt( null == params ? -1 : params.length );
+        for ( int i = 0; null != params && i < params.length; i++ )
+            writeString( out, params[i] );
+        final String[] vary = route.getCacheVary();
+        out.writeInt( null == vary ? -1 : vary.length );
+        for ( int i = 0; null != vary && i < vary.length; i++ )
+            writeString( out, vary[i] );
+        out.writeBoolean( route.isCacheShared() );
+        out.writeInt( route.getBulkheadLimit() );
+        out.writeLong( route.getBulkheadWait() );
+        writeString( out, route.getBulkheadForward() );
+        out.writeDouble( route.getRateLimit() );
+        out.writeInt( route.getRateBurst() );
+        writeString( out, route.getRateKey() );
+        writeString( out, route.getRateHeader() );
+
+        out.writeInt( route.getProperties().size() );
+        for ( final Map.Entry<String,String> property : route.getProperties().entrySet() ) {
+            writeString( out, property.getKey() );
+            writeString( out, property.getValue() );
+        }
+
+        out.writeInt( route.getForwards().size() );
+        for ( final ForwardConfig fc : route.getForwards() ) {
+            writeString( out, fc.getName() );
+            writeString( out, fc.getPath() );
+            out.writeBoolean( fc.getRedirect() );
+            writeString( out, fc.getModule() );
+        }
+    }
+
+    private static SproutRoute readRoute(final ByteBuffer in) {
+        final SproutRoute route = new SproutRoute();
+        route.setType( readString( in ) );
+        route.setSprout( readBoolean( in ) );
+        route.setPath( readString( in ) );
+        route.setMethod( readString( in ) );
+        route.setName( readString( in ) );
+        route.setInput( readString( in ) );
+        route.setScope( readString( in ) );
+        route.setValidate( readBoolean( in ) );
+        route.setFailFast( readBoolean( in ) );
+        route.setMappingClass( readString( in ) );
+        route.setConditional( readString( in ), readString( in ) );
+
+        final int ttl = in.getInt();
+        final String[] params = readStrings( in );
+        final String[] vary = readStrings( in );
+        route.setCache( ttl, params, vary, readBoolean( in ) );
+        route.setBulkhead( in.getInt(), in.getLong(), readString( in ) );
+        route.setRateLimit( in.getDouble(), in.getInt(), readString( in ), readString( in ) );
+
+        final int properties = in.getInt();
+        for ( int i = 0; i < properties; i++ )
+            route.addProperty( readString( in ), readString( in ) );
+
+        final int forwards = in.getInt();
+        for ( int i = 0; i < forwards; i++ )
+            route.addForward( readString( in ), readString( in ), readBoolean( in ), readString( in ) );
+        return route;
+    }
+
+    /**
+     * Writes a nullable string as its length (-1 for null) followed by its
+     * UTF-8 bytes.
+     */
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        if ( null == s ) {
+            out.writeInt( -1 );
+            return;
+        }
+        final byte[] bytes = s.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    private static String readString(final ByteBuffer in) {
+        final int length = in.getInt();
+        if ( length < 0 )
+            return null;
+        final byte[] bytes = new byte[ length ];
+        in.get( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Reads a nullable array of strings, preceded by its length (-1 for
+     * null).
+     */
+    private static String[] readStrings(final ByteBuffer in) {
+        final int count = in.getInt();
+        if ( count < 0 )
+            return null;
+        final String[] strings = new String[ count ];
+        for ( int i = 0; i < count; i++ )
+            strings[i] = readString( in );
+        return strings;
+    }
+
+    private static boolean readBoolean(final ByteBuffer in) {
+        return 0 != in.get();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of everything an index depends upon.
+     */
+    public static class Fingerprint {
+        private long hash = 0xcbf29ce484222325L;
+
+        public Fingerprint add(final String s) {
+            if ( null == s )
+                return add( -1L );
+            for ( int i = 0; i < s.length(); i++ )
+                mix( s.charAt( i ) );
+            return add( (long) s.length() );
+        }
+
+        public Fingerprint add(final long value) {
+            for ( int i = 0; i < 8; i++ )
+                mix( (int) ( value >>> ( 8 * i ) ) & 0xff );
+            return this;
+        }
+
+        /**
+         * Adds the sizes and modification times of a classpath entry: a jar
+         * or every file beneath a directory.
+         */
+        public Fingerprint add(final File location) {
+            add( location.getPath() );
+            if ( location.isDirectory() ) {
+                final List<File> files = new ArrayList<File>();
+                list( location, files );
+                for ( final File file : files ) {
+                    add( file.getPath() );
+                    add( file.length() );
+                    add( file.lastModified() );
+                }
+            } else {
+                add( location.length() );
+                add( location.lastModified() );
+            }
+            return this;
+        }
+
+        public long getValue() {
+            return hash;
+        }
+
+        private void mix(final int b) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+
+        private static void list(final File directory, final List<File> files) {
+            final File[] children = directory.listFiles();
+            if ( null == children )
+                return;
+
+            // listFiles() order is unspecified
+            Arrays.sort( children );
+            for ( int i = 0; i < children.length; i++ ) {
+                if ( children[i].isDirectory() )
+                    list( children[i], files );
+                else
+                    files.add( children[i] );
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import org.apache.struts.config.FormBeanConfig;
+
+/**
+ * <p>Pre-computed set of routes and form-beans.  Implementations are
+ * generated at compile time by
+ * <code>net.mojodna.sprout.processor.SproutRouteProcessor</code> and allow
+ * <code>SproutAutoLoaderPlugIn</code> to register everything without
+ * scanning the classpath or reflecting upon annotations.</p>
+ *
+ * <p>To use a registry, set the <em>registry</em> property of the plug-in:
+ * <pre>
+ * &lt;plug-in className="net.mojodna.sprout.SproutAutoLoaderPlugIn"&gt;
+ *   &lt;set-property property="registry" value="net.mojodna.sprout.generated.SproutRoutes" /&gt;
+ * &lt;/plug-in&gt;
+ * </pre>
+ *
+ * @author Seth Fitzsimmons
+ */
+public interface SproutRouteRegistry {
+    /** Name of the generated registry class if none is specified. */
+    String DEFAULT_CLASS_NAME = "net.mojodna.sprout.generated.SproutRoutes";
+
+    /**
+     * Form-beans declared with <code>@SproutForm</code>.
+     */
+    FormBeanConfig[] getFormBeans();
+
+    /**
+     * Routes for all Sprouts and <code>@SproutAction</code>s.
+     */
+    SproutRoute[] getRoutes();
+}
@@ -0,0 +1,190 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+/**
+ * <p>Prefix trie of registered action paths, used to resolve RESTful URLs of
+ * the form <code>/:controller/:action/:id</code> without regular
+ * expressions.</p>
+ *
+ * <p>Given a path, the router finds the deepest registered action path that
+ * is a prefix of it (at a segment boundary):
+ * <ul>
+ *   <li><code>/subdir/index</code> matches <code>/subdir/index</code>,</li>
+ *   <li><code>/subdir/index/42</code> matches <code>/subdir/index</code>
+ *       with an id of <em>42</em>,</li>
+ *   <li><code>/subdir/</code> and <code>/subdir</code> match
+ *       <code>/subdir/index</code>.</li>
+ * </ul>
+ * At most one segment may follow the matched action path.</p>
+ *
+ * <p>Lookups walk the path in place and do not allocate unless an id is
+ * present.  Routers are populated during initialization and are read-only
+ * thereafter.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class SproutRouter {
+    /** Servlet context attribute (suffixed with the module prefix) holding the router. */
+    public static final String ROUTER_KEY = SproutRouter.class.getName();
+    /** Request attribute holding the id portion of a routed path. */
+    public static final String ID_KEY = SproutRouter.class.getName() + ".ID";
+    /** Name of the form property that ids are bound to. */
+    public static final String ID_PROPERTY = "id";
+
+    static final String INDEX = "index";
+
+    private final Node root = new Node( "" );
+
+    /**
+     * Registers an action path.
+     *
+     * @param path Context-relative action path, e.g. <code>/subdir/index</code>.
+     */
+    public void add(final String path) {
+        Node node = root;
+        int start = 1;
+        while ( start <= path.length() ) {
+            int end = path.indexOf( '/', start );
+            if ( -1 == end )
+                end = path.length();
+            if ( end > start )
+                node = node.child( path.substring( start, end ) );
+            start = end + 1;
+        }
+        node.action = path;
+    }
+
+    /**
+     * Resolves a path to a registered action path.  Paths with a trailing id
+     * segment do not match.
+     *
+     * @param path Path to resolve.
+     * @return Matching action path, or null if nothing matches.
+     */
+    public String match(final String path) {
+        return match( path, null );
+    }
+
+    /**
+     * Resolves a path to a registered action path, extracting the id (if
+     * any).
+     *
+     * @param path Path to resolve.
+     * @param ids Single-element array that will hold the id, if one was
+     * present.  If null, paths with ids do not match.
+     * @return Matching action path, or null if nothing matches.
+     */
+    public String match(final String path, final String[] ids) {
+        final int length = path.length();
+        Node node = root;
+        int start = ( length > 0 && path.charAt( 0 ) == '/' ) ? 1 : 0;
+
+        while ( start < length ) {
+            int end = path.indexOf( '/', start );
+            if ( -1 == end )
+                end = length;
+
+            final Node child = node.find( path, start, end );
+            if ( null == child ) {
+                // a single trailing segment following an action is its id
+                if ( null != ids && null != node.action && end >= length - 1 ) {
+                    ids[0] = path.substring( start, end );
+                    return node.action;
+                }
+                return null;
+            }
+
+            node = child;
+            start = end + 1;
+        }
+
+        if ( null != node.action )
+            return node.action;
+
+        // directories map to their index
+        final Node index = node.find( INDEX, 0, INDEX.length() );
+        return null == index ? null : index.action;
+    }
+
+    /**
+     * Trie node.  Children are kept in an open-addressed table keyed by
+     * segment so that lookups can hash a region of the path in place.
+     */
+    private static class Node {
+        final String segment;
+        String action;
+        Node[] children = new Node[2];
+        int size;
+
+        Node(final String segment) {
+            this.segment = segment;
+        }
+
+        Node child(final String name) {
+            Node child = find( name, 0, name.length() );
+            if ( null == child ) {
+                if ( ( size + 1 ) * 2 > children.length )
+                    resize();
+                child = new Node( name );
+                insert( children, child );
+                size++;
+            }
+            return child;
+        }
+
+        Node find(final String path, final int start, final int end) {
+            final int length = end - start;
+            final int mask = children.length - 1;
+            int i = hash( path, start, end ) & mask;
+            Node child;
+            while ( null != ( child = children[i] ) ) {
+                if ( child.segment.length() == length && path.regionMatches( start, child.segment, 0, length ) )
+                    return child;
+                i = ( i + 1 ) & mask;
+            }
+            return null;
+        }
+
+        private void resize() {
+            final Node[] table = new Node[ children.length * 2 ];
+            for ( int i = 0; i < children.length; i++ ) {
+                if ( null != children[i] )
+                    insert( table, children[i] );
+            }
+            children = table;
+        }
+
+        private static void insert(final Node[] table, final Node node) {
+            final int mask = table.length - 1;
+            int i = hash( node.segment, 0, node.segment.length() ) & mask;
+            while ( null != table[i] )
+                i = ( i + 1 ) & mask;
+            table[i] = node;
+        }
+
+        /**
+         * Equivalent to <code>path.substring(start, end).hashCode()</code>,
+         * spread.
+         */
+        private static int hash(final String path, final int start, final int end) {
+            int h = 0;
+            for ( int i = start; i < end; i++ )
+                h = 31 * h + path.charAt( i );
+            return h ^ ( h >>> 16 );
+        }
+    }
+}
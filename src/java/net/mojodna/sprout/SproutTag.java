@@ -42,6 +42,9 @@ public abstract class SproutTag extends SpringBodyTagSupport {
      * 
      * <p>If a tag has already been instantiated and initialized, it should
      * already have had dependencies satisfied.</p>
+     * 
+     * <p>This runs each time the tag is used, but the properties to wire are
+     * only determined once per class, so re-wiring a pooled tag is cheap.</p>
      */
     protected void onInit() {
         super.onInit();
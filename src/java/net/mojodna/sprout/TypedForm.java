@@ -0,0 +1,216 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.lang.reflect.Array;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.beanutils.DynaClass;
+import org.apache.commons.beanutils.DynaProperty;
+import org.apache.struts.validator.ValidatorForm;
+
+/**
+ * <p>Base class for generated implementations of <code>@SproutForm</code>
+ * interfaces.  Property values are kept in arrays indexed by slot, with
+ * primitives stored unboxed, so that the generated getters and setters
+ * compile down to a single array access:</p>
+ *
+ * <pre>
+ * &#064;SproutForm(name="GreetingForm")
+ * public interface GreetingForm {
+ *     int getId();
+ *     void setId(int id);
+ * }
+ *
+ * public ActionForward greet(final ActionMapping mapping, final GreetingForm form, ...) {
+ *     final int id = form.getId();
+ *     ...
+ * }
+ * </pre>
+ *
+ * <p>Typed forms are also <code>DynaBean</code>s, so Struts populates and
+ * validates them the same way it would a <code>DynaActionForm</code>; name
+ * lookups (and boxing) only occur on that path.</p>
+ *
+ * @see TypedFormClass
+ * @author Seth Fitzsimmons
+ */
+public abstract class TypedForm extends ValidatorForm implements DynaBean {
+    protected final int[] ints;
+    protected final long[] longs;
+    protected final double[] doubles;
+    protected final boolean[] booleans;
+    protected final Object[] objects;
+
+    private final TypedFormClass formClass;
+
+    protected TypedForm(final TypedFormClass formClass) {
+        this.formClass = formClass;
+        this.ints = new int[ formClass.getSize( TypedFormClass.INT ) ];
+        this.longs = new long[ formClass.getSize( TypedFormClass.LONG ) ];
+        this.doubles = new double[ formClass.getSize( TypedFormClass.DOUBLE ) ];
+        this.booleans = new boolean[ formClass.getSize( TypedFormClass.BOOLEAN ) ];
+        this.objects = new Object[ formClass.getSize( TypedFormClass.OBJECT ) ];
+    }
+
+    public DynaClass getDynaClass() {
+        return formClass;
+    }
+
+    /**
+     * Gets all property values, keyed by name.  Equivalent to
+     * <code>DynaActionForm.getMap()</code>.
+     */
+    public Map<String,Object> getMap() {
+        final DynaProperty[] properties = formClass.getDynaProperties();
+        final Map<String,Object> map = new LinkedHashMap<String,Object>( properties.length * 2 );
+        for ( int i = 0; i < properties.length; i++ )
+            map.put( properties[i].getName(), get( i ) );
+        return map;
+    }
+
+    public Object get(final String name) {
+        return get( indexOf( name ) );
+    }
+
+    public void set(final String name, final Object value) {
+        final int i = indexOf( name );
+        final int slot = formClass.getSlot( i );
+        final Class type = formClass.getDynaProperties()[i].getType();
+
+        switch ( formClass.getKind( i ) ) {
+        case TypedFormClass.INT:
+            if ( value instanceof Character )
+                ints[ slot ] = ((Character) value).charValue();
+            else
+                ints[ slot ] = null == value ? 0 : toNumber( name, value ).intValue();
+            break;
+        case TypedFormClass.LONG:
+            longs[ slot ] = null == value ? 0L : toNumber( name, value ).longValue();
+            break;
+        case TypedFormClass.DOUBLE:
+            doubles[ slot ] = null == value ? 0d : toNumber( name, value ).doubleValue();
+            break;
+        case TypedFormClass.BOOLEAN:
+            if ( null != value && !( value instanceof Boolean ) )
+                throw new IllegalArgumentException("Cannot assign " + value.getClass().getName() + " to property '" + name + "'");
+            booleans[ slot ] = null == value ? false : ((Boolean) value).booleanValue();
+            break;
+        default:
+            if ( null != value && !type.isInstance( value ) )
+                throw new IllegalArgumentException("Cannot assign " + value.getClass().getName() + " to property '" + name + "'");
+            objects[ slot ] = value;
+        }
+    }
+
+    public Object get(final String name, final int index) {
+        final Object value = get( name );
+        if ( null == value )
+            throw new NullPointerException("No indexed value for '" + name + "[" + index + "]'");
+        else if ( value.getClass().isArray() )
+            return Array.get( value, index );
+        else if ( value instanceof List )
+            return ((List) value).get( index );
+        else
+            throw new IllegalArgumentException("Non-indexed property for '" + name + "[" + index + "]'");
+    }
+
+    public void set(final String name, final int index, final Object value) {
+        final Object prop = get( name );
+        if ( null == prop )
+            throw new NullPointerException("No indexed value for '" + name + "[" + index + "]'");
+        else if ( prop.getClass().isArray() )
+            Array.set( prop, index, value );
+        else if ( prop instanceof List )
+            ((List) prop).set( index, value );
+        else
+            throw new IllegalArgumentException("Non-indexed property for '" + name + "[" + index + "]'");
+    }
+
+    public Object get(final String name, final String key) {
+        return mapped( name ).get( key );
+    }
+
+    public void set(final String name, final String key, final Object value) {
+        mapped( name ).put( key, value );
+    }
+
+    public boolean contains(final String name, final String key) {
+        return mapped( name ).containsKey( key );
+    }
+
+    public void remove(final String name, final String key) {
+        mapped( name ).remove( key );
+    }
+
+    public String toString() {
+        return getClass().getName() + getMap();
+    }
+
+    /**
+     * Gets a property value by position, boxing primitives.
+     */
+    private Object get(final int i) {
+        final int slot = formClass.getSlot( i );
+        final Class type = formClass.getDynaProperties()[i].getType();
+
+        switch ( formClass.getKind( i ) ) {
+        case TypedFormClass.INT:
+            if ( short.class.equals( type ) )
+                return Short.valueOf( (short) ints[ slot ] );
+            else if ( byte.class.equals( type ) )
+                return Byte.valueOf( (byte) ints[ slot ] );
+            else if ( char.class.equals( type ) )
+                return Character.valueOf( (char) ints[ slot ] );
+            return Integer.valueOf( ints[ slot ] );
+        case TypedFormClass.LONG:
+            return Long.valueOf( longs[ slot ] );
+        case TypedFormClass.DOUBLE:
+            if ( float.class.equals( type ) )
+                return Float.valueOf( (float) doubles[ slot ] );
+            return Double.valueOf( doubles[ slot ] );
+        case TypedFormClass.BOOLEAN:
+            return Boolean.valueOf( booleans[ slot ] );
+        default:
+            return objects[ slot ];
+        }
+    }
+
+    private int indexOf(final String name) {
+        final int i = formClass.indexOf( name );
+        if ( i < 0 )
+            throw new IllegalArgumentException("Invalid property name '" + name + "'");
+        return i;
+    }
+
+    private Map mapped(final String name) {
+        final Object value = get( name );
+        if ( null == value )
+            throw new NullPointerException("No mapped value for '" + name + "'");
+        else if ( !( value instanceof Map ) )
+            throw new IllegalArgumentException("Non-mapped property for '" + name + "'");
+        return (Map) value;
+    }
+
+    private static Number toNumber(final String name, final Object value) {
+        if ( !( value instanceof Number ) )
+            throw new IllegalArgumentException("Cannot assign " + value.getClass().getName() + " to property '" + name + "'");
+        return (Number) value;
+    }
+}
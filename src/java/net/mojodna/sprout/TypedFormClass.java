@@ -0,0 +1,148 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.beanutils.DynaClass;
+import org.apache.commons.beanutils.DynaProperty;
+
+/**
+ * <p>Describes the properties of a {@link TypedForm} and the slot each of
+ * them occupies.  Instances are created by generated form implementations
+ * and shared by every instance of that form.</p>
+ *
+ * <p>Properties are stored by kind: <code>int</code>, <code>short</code>,
+ * <code>byte</code> and <code>char</code> properties share an
+ * <code>int[]</code>, <code>float</code>s and <code>double</code>s share a
+ * <code>double[]</code>, <code>long</code>s and <code>boolean</code>s have
+ * arrays of their own and everything else is kept in an
+ * <code>Object[]</code>.</p>
+ *
+ * @see net.mojodna.sprout.annotation.SproutForm
+ * @author Seth Fitzsimmons
+ */
+public class TypedFormClass implements DynaClass {
+    public static final int INT = 0;
+    public static final int LONG = 1;
+    public static final int DOUBLE = 2;
+    public static final int BOOLEAN = 3;
+    public static final int OBJECT = 4;
+
+    private final String name;
+    private final Class beanClass;
+    private final DynaProperty[] properties;
+    private final int[] kinds;
+    private final int[] slots;
+    private final int[] sizes = new int[ OBJECT + 1 ];
+    // only consulted by name-based (DynaBean) access
+    private final Map<String,Integer> index = new HashMap<String,Integer>();
+
+    /**
+     * @param name Form name.
+     * @param beanClass Generated implementation.
+     * @param names Property names.
+     * @param types Property types.
+     * @param slots Index of each property within the array for its kind.
+     */
+    public TypedFormClass(final String name, final Class beanClass, final String[] names, final Class[] types, final int[] slots) {
+        if ( names.length != types.length || names.length != slots.length )
+            throw new IllegalArgumentException("Property names, types and slots must be the same length.");
+
+        this.name = name;
+        this.beanClass = beanClass;
+        this.properties = new DynaProperty[ names.length ];
+        this.kinds = new int[ names.length ];
+        this.slots = slots.clone();
+
+        for ( int i = 0; i < names.length; i++ ) {
+            properties[i] = new DynaProperty( names[i], types[i] );
+            kinds[i] = kindOf( types[i] );
+            sizes[ kinds[i] ] = Math.max( sizes[ kinds[i] ], slots[i] + 1 );
+            index.put( names[i], Integer.valueOf( i ) );
+        }
+    }
+
+    /**
+     * Determines which array a property of a given type is stored in.
+     */
+    public static int kindOf(final Class type) {
+        if ( int.class.equals( type ) || short.class.equals( type ) || byte.class.equals( type ) || char.class.equals( type ) )
+            return INT;
+        else if ( long.class.equals( type ) )
+            return LONG;
+        else if ( double.class.equals( type ) || float.class.equals( type ) )
+            return DOUBLE;
+        else if ( boolean.class.equals( type ) )
+            return BOOLEAN;
+        else
+            return OBJECT;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DynaProperty getDynaProperty(final String name) {
+        final Integer i = index.get( name );
+        return null == i ? null : properties[ i.intValue() ];
+    }
+
+    public DynaProperty[] getDynaProperties() {
+        return properties;
+    }
+
+    public DynaBean newInstance() throws IllegalAccessException, InstantiationException {
+        try {
+            return (DynaBean) beanClass.getConstructor().newInstance();
+        }
+        catch (final NoSuchMethodException e) {
+            throw new InstantiationException( beanClass.getName() + " does not have a public no-argument constructor." );
+        }
+        catch (final InvocationTargetException e) {
+            throw new InstantiationException( "Unable to instantiate " + beanClass.getName() + ": " + e.getCause() );
+        }
+    }
+
+    /**
+     * Gets the position of a property.
+     *
+     * @param name Property name.
+     * @return Property index or -1 if no such property exists.
+     */
+    int indexOf(final String name) {
+        final Integer i = index.get( name );
+        return null == i ? -1 : i.intValue();
+    }
+
+    int getKind(final int property) {
+        return kinds[ property ];
+    }
+
+    int getSlot(final int property) {
+        return slots[ property ];
+    }
+
+    /**
+     * Number of slots required for properties of a given kind.
+     */
+    int getSize(final int kind) {
+        return sizes[ kind ];
+    }
+}
@@ -19,7 +19,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import net.mojodna.sprout.Sprout;
+import net.mojodna.sprout.SproutContext;
 import net.mojodna.sprout.example.ExampleBean;
+import net.mojodna.sprout.example.GreetingForm;
 
 import org.apache.struts.action.ActionForm;
 import org.apache.struts.action.ActionForward;
@@ -39,13 +41,19 @@ import org.apache.struts.action.ActionMapping;
 public class ExampleAction extends Sprout {
     /**
      * This is still a conventional Struts Action in many ways, which means
-     * that it must be written in a threadsafe manner.  Remember to clean up
-     * after yourself or ensure that it will always be reset during the
-     * initialization process.
+     * that it must be written in a threadsafe manner.  Rather than keeping
+     * per-request state in fields (or ThreadLocals), store it in the
+     * request's SproutContext.
      * 
      * This is often accompanied by an accessor method.
      */
-    private ThreadLocal<String> userHolder = new ThreadLocal();
+    private static final String USER = "user";
+    
+    /**
+     * Time this class was loaded; used as the last modification time of
+     * pages that only change when the application is redeployed.
+     */
+    private static final long STARTED = System.currentTimeMillis();
     
     /**
      * Beans wired by Spring
@@ -67,16 +75,16 @@ public class ExampleAction extends Sprout {
      * but before each method invocation.
      */
     @Override
-    protected void onInit(final ActionMapping mapping, final ActionForm form, final HttpServletRequest request, final HttpServletResponse response) {
-        super.onInit( mapping, form, request, response );
-        userHolder.set("Seth");
+    protected void onInit(final SproutContext context) {
+        super.onInit( context );
+        context.setAttribute( USER, "Seth" );
     }
     
     /**
-     * Accessor method for userHolder ThreadLocal.
+     * Accessor method for the "user" context attribute.
      */
-    protected String getUser() {
-        return userHolder.get();
+    protected String getUser(final HttpServletRequest request) {
+        return (String) getContext( request ).getAttribute( USER );
     }
     
     /**
@@ -138,18 +146,54 @@ public class ExampleAction extends Sprout {
     @Scope("request")
     @Validate
     public ActionForward complexExample(final ActionMapping mapping, final ActionForm form, final HttpServletRequest request, final HttpServletResponse response) {
+        final SproutContext context = getContext( request );
+        
         // get "name" property from ComplexForm as a String
-        final String name = f("name");
+        final String name = context.f("name");
         request.setAttribute("name", name);
         
         // get "id" property from ComplexForm as an Integer
-        final Integer id = (Integer) F("id");
+        final Integer id = (Integer) context.F("id");
         request.setAttribute("id", id);
         
         // set "greeting" property
-        s("greeting", "'Allo");
+        context.s("greeting", "'Allo");
         
         // calculated JSP is complex_example.jsp
         return mapping.findForward( FWD_SUCCESS );
     }
+    
+    /**
+     * <p>Demonstrates typed forms.  <code>GreetingForm</code> is an interface
+     * annotated with <code>@SproutForm</code>; its implementation is
+     * generated at compile time, so properties can be read without string
+     * lookups, casts or boxing.</p>
+     * 
+     * <p>The method's form parameter may be declared as the form interface
+     * rather than <code>ActionForm</code>.</p>
+     * 
+     * <p>The rendered page only depends on the path, the <em>name</em>
+     * parameter and (when no name is given) the user, so it is cached for a
+     * minute per user.</p>
+     */
+    @FormName("GreetingForm")
+    @Cache(ttl=60, params="name", vary=Cache.USER)
+    @Conditional(lastModified="typedExampleModified")
+    public ActionForward typedExample(final ActionMapping mapping, final GreetingForm form, final HttpServletRequest request, final HttpServletResponse response) {
+        if ( null == form.getName() )
+            form.setName( getUser( request ) );
+
+        // calculated JSP is typed_example.jsp
+        return mapping.findForward( FWD_SUCCESS );
+    }
+    
+    /**
+     * Freshness callback for <code>typedExample()</code>; browsers that
+     * already have the page receive <em>304 Not Modified</em> without it
+     * being rendered.  The page only changes when the application is
+     * redeployed.
+     */
+    public long typedExampleModified(final HttpServletRequest request) {
+        return STARTED;
+    }
 }
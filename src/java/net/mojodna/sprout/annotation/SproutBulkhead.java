@@ -0,0 +1,41 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caps the number of concurrent executions of a Sprout method or
+ * <code>@SproutAction</code>.  Requests that cannot get a permit within
+ * <em>maxWait</em> milliseconds are rejected with <em>503 Service
+ * Unavailable</em>, either directly or by way of the named forward.
+ *
+ * @see net.mojodna.sprout.Bulkhead
+ */
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SproutBulkhead
+{
+   /** Maximum number of concurrent executions. */
+   int value();
+   /** Milliseconds to wait for a permit before rejecting; 0 to reject immediately. */
+   long maxWait() default 0;
+   /** Forward to render rejections with; by default an error is sent. */
+   String forward() default "";
+}
@@ -21,6 +21,14 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * <p>Registers an <code>ActionForm</code> under a given name.  When applied
+ * to an interface, an implementation (a <code>TypedForm</code>) is generated
+ * at compile time and registered in its place.</p>
+ *
+ * @see net.mojodna.sprout.TypedForm
+ * @author Seth Fitzsimmons
+ */
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface SproutForm
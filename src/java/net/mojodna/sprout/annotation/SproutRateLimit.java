@@ -0,0 +1,44 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the rate at which each client may call a Sprout method or
+ * <code>@SproutAction</code>.  Clients exceeding it are answered with
+ * <em>429 Too Many Requests</em> before their forms are populated.
+ *
+ * @see net.mojodna.sprout.RateLimiter
+ */
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SproutRateLimit
+{
+   /** What identifies a client. */
+   enum Key { IP, SESSION, HEADER }
+
+   /** Sustained number of requests allowed per second. */
+   double value();
+   /** Number of requests that may be made in a burst; by default one second's worth. */
+   int burst() default 0;
+   Key key() default Key.IP;
+   /** Header identifying the client when keyed by HEADER. */
+   String header() default "";
+}
@@ -0,0 +1,121 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.cache;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>Rendered response held by a {@link ResponseCache}, along with the
+ * headers and locale (and hence <em>Content-Language</em>) that were set
+ * when it was rendered.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class CachedResponse {
+    private final String contentType;
+    private final Locale locale;
+    private final Map<String,List<Object>> headers;
+    private final byte[] body;
+    private final long expires;
+
+    /**
+     * @param contentType Content type (including the character encoding, if
+     * any).
+     * @param body Response body.
+     * @param expires Time (as per <code>System.currentTimeMillis()</code>)
+     * at which this response expires.
+     */
+    public CachedResponse(final String contentType, final byte[] body, final long expires) {
+        this( contentType, null, null, body, expires );
+    }
+
+    /**
+     * @param contentType Content type (including the character encoding, if
+     * any).
+     * @param locale Locale set on the response, or null.
+     * @param headers Headers set on the response (see
+     * {@link RecordingResponseWrapper#getHeaders()}), or null.
+     * @param body Response body.
+     * @param expires Time (as per <code>System.currentTimeMillis()</code>)
+     * at which this response expires.
+     */
+    public CachedResponse(final String contentType, final Locale locale, final Map<String,List<Object>> headers, final byte[] body, final long expires) {
+        this.contentType = contentType;
+        this.locale = locale;
+        this.headers = null == headers ? Collections.<String,List<Object>>emptyMap() : headers;
+        this.body = body;
+        this.expires = expires;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    public Map<String,List<Object>> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
+    public boolean isExpired(final long now) {
+        return now >= expires;
+    }
+
+    /**
+     * Writes this response.
+     */
+    public void writeTo(final HttpServletResponse response) throws IOException {
+        // the content type's character encoding takes precedence over the locale's
+        if ( null != locale )
+            response.setLocale( locale );
+        for ( final Map.Entry<String,List<Object>> header : headers.entrySet() ) {
+            boolean first = true;
+            for ( final Object value : header.getValue() ) {
+                if ( value instanceof Long ) {
+                    if ( first )
+                        response.setDateHeader( header.getKey(), ((Long) value).longValue() );
+                    else
+                        response.addDateHeader( header.getKey(), ((Long) value).longValue() );
+                } else if ( first ) {
+                    response.setHeader( header.getKey(), (String) value );
+                } else {
+                    response.addHeader( header.getKey(), (String) value );
+                }
+                first = false;
+            }
+        }
+        if ( null != contentType )
+            response.setContentType( contentType );
+        response.setContentLength( body.length );
+        response.getOutputStream().write( body );
+    }
+}
@@ -0,0 +1,152 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>Response wrapper that buffers the body rather than sending it, so that
+ * it can be cached.  Headers are passed through to the wrapped response
+ * and recorded (see {@link RecordingResponseWrapper}).  Once an error or
+ * redirect has been sent, the buffered body is discarded.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class CapturingResponseWrapper extends RecordingResponseWrapper {
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream( 8192 );
+    private ServletOutputStream out;
+    private PrintWriter writer;
+    private boolean committed;
+
+    public CapturingResponseWrapper(final HttpServletResponse response) {
+        super( response );
+    }
+
+    /**
+     * @param response Response to wrap.
+     * @param previous Wrapper that recorded the headers set while the
+     * action was performed, or null.
+     */
+    public CapturingResponseWrapper(final HttpServletResponse response, final RecordingResponseWrapper previous) {
+        super( response, previous );
+    }
+
+    /**
+     * Gets the body written so far.
+     */
+    public byte[] getBody() {
+        if ( null != writer )
+            writer.flush();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Sends the buffered body to the wrapped response (unless an error or
+     * redirect was sent instead).
+     */
+    public void writeBody() throws IOException {
+        if ( committed )
+            return;
+
+        final byte[] body = getBody();
+        getResponse().setContentLength( body.length );
+        getResponse().getOutputStream().write( body );
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if ( null != writer )
+            throw new IllegalStateException("getWriter() has already been called");
+        if ( null == out ) {
+            out = new ServletOutputStream() {
+                public void write(final int b) {
+                    buffer.write( b );
+                }
+
+                public void write(final byte[] b, final int off, final int len) {
+                    buffer.write( b, off, len );
+                }
+            };
+        }
+        return out;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if ( null != out )
+            throw new IllegalStateException("getOutputStream() has already been called");
+        if ( null == writer )
+            writer = new PrintWriter( new OutputStreamWriter( buffer, getCharacterEncoding() ) );
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() {
+        // nothing is sent until the body is complete
+        if ( null != writer )
+            writer.flush();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if ( null != writer )
+            writer.flush();
+        buffer.reset();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        if ( null != writer )
+            writer.flush();
+        buffer.reset();
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return committed || super.isCommitted();
+    }
+
+    @Override
+    public void setContentLength(final int len) {
+        // set when the body is written
+    }
+
+    @Override
+    public void sendError(final int sc) throws IOException {
+        committed = true;
+        super.sendError( sc );
+    }
+
+    @Override
+    public void sendError(final int sc, final String msg) throws IOException {
+        committed = true;
+        super.sendError( sc, msg );
+    }
+
+    @Override
+    public void sendRedirect(final String location) throws IOException {
+        committed = true;
+        super.sendRedirect( location );
+    }
+}
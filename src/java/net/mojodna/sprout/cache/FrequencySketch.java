@@ -0,0 +1,118 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.cache;
+
+/**
+ * <p>Count-Min sketch of 4-bit counters estimating how often keys have been
+ * seen recently; sixteen counters are packed into each <code>long</code>.
+ * Once the number of increments reaches ten times the width
+ * of the sketch, every counter is halved, so that old popularity fades.</p>
+ *
+ * <p>Not thread-safe.</p>
+ *
+ * @see TinyLfuCache
+ * @author Seth Fitzsimmons
+ */
+final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * @param width Expected number of distinct keys; rounded up to a power of
+     * two.
+     */
+    FrequencySketch(final int width) {
+        int w = 16;
+        while ( w < width && w < ( 1 << 24 ) )
+            w <<= 1;
+
+        table = new long[ DEPTH ][ w >>> 4 ];
+        mask = w - 1;
+        sampleSize = 10 * w;
+    }
+
+    /**
+     * Estimated number of times a key has been seen (at most 15).
+     */
+    int frequency(final Object key) {
+        final int hash = spread( key.hashCode() );
+        int frequency = MAX_COUNT;
+        for ( int i = 0; i < DEPTH; i++ )
+            frequency = Math.min( frequency, count( table[i], index( hash, i ) ) );
+        return frequency;
+    }
+
+    /**
+     * Records an occurrence of a key.
+     */
+    void increment(final Object key) {
+        final int hash = spread( key.hashCode() );
+        boolean added = false;
+        for ( int i = 0; i < DEPTH; i++ ) {
+            final int index = index( hash, i );
+            if ( count( table[i], index ) < MAX_COUNT ) {
+                table[i][ index >>> 4 ] += 1L << shift( index );
+                added = true;
+            }
+        }
+
+        if ( added && ++size >= sampleSize )
+            reset();
+    }
+
+    /**
+     * Halves every counter.
+     */
+    private void reset() {
+        for ( int i = 0; i < DEPTH; i++ ) {
+            final long[] row = table[i];
+            for ( int j = 0; j < row.length; j++ )
+                row[j] = ( row[j] >>> 1 ) & RESET_MASK;
+        }
+        size /= 2;
+    }
+
+    private static int count(final long[] row, final int index) {
+        return (int) ( row[ index >>> 4 ] >>> shift( index ) ) & MAX_COUNT;
+    }
+
+    private static int shift(final int index) {
+        return ( index & 15 ) << 2;
+    }
+
+    private int index(final int hash, final int row) {
+        long h = ( hash + SEEDS[ row ] ) * SEEDS[ row ];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        h *= 0xac4c1b51;
+        h ^= h >>> 15;
+        return h;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * <p>Response wrapper that records the headers and locale set on a
+ * response (while passing them through) so that they can be replayed when
+ * the response is served from a {@link ResponseCache}.</p>
+ *
+ * <p>Responses that set a status other than 200, send an error or a
+ * redirect, set cookies or are marked <em>private</em> or
+ * <em>no-store</em> are not cacheable.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class RecordingResponseWrapper extends HttpServletResponseWrapper {
+    private static final String CACHE_CONTROL = "Cache-Control";
+    private static final String SET_COOKIE = "Set-Cookie";
+
+    /** Header values: Strings, or Longs for date headers. */
+    private final Map<String,List<Object>> headers = new TreeMap<String,List<Object>>( String.CASE_INSENSITIVE_ORDER );
+    private Locale locale;
+    private boolean cacheable = true;
+
+    public RecordingResponseWrapper(final HttpServletResponse response) {
+        super( response );
+    }
+
+    /**
+     * @param response Response to wrap.
+     * @param previous Wrapper whose recorded headers (and cacheability) this
+     * one starts with, or null.
+     */
+    public RecordingResponseWrapper(final HttpServletResponse response, final RecordingResponseWrapper previous) {
+        super( response );
+        if ( null != previous ) {
+            for ( final Map.Entry<String,List<Object>> header : previous.headers.entrySet() )
+                headers.put( header.getKey(), new ArrayList<Object>( header.getValue() ) );
+            locale = previous.locale;
+            cacheable = previous.cacheable;
+        }
+    }
+
+    /**
+     * Whether the response may be cached.
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * Gets a copy of the headers set so far, keyed by (case-insensitive)
+     * name.  Values are Strings, or Longs for date headers.
+     */
+    public Map<String,List<Object>> getHeaders() {
+        final Map<String,List<Object>> copy = new TreeMap<String,List<Object>>( String.CASE_INSENSITIVE_ORDER );
+        for ( final Map.Entry<String,List<Object>> header : headers.entrySet() )
+            copy.put( header.getKey(), Collections.unmodifiableList( new ArrayList<Object>( header.getValue() ) ) );
+        return Collections.unmodifiableMap( copy );
+    }
+
+    /**
+     * Gets the locale set on the response.
+     *
+     * @return Locale, or null if none was set.
+     */
+    public Locale getRecordedLocale() {
+        return locale;
+    }
+
+    @Override
+    public void setStatus(final int sc) {
+        super.setStatus( sc );
+        if ( SC_OK != sc )
+            cacheable = false;
+    }
+
+    @Override
+    public void sendError(final int sc) throws IOException {
+        cacheable = false;
+        super.sendError( sc );
+    }
+
+    @Override
+    public void sendError(final int sc, final String msg) throws IOException {
+        cacheable = false;
+        super.sendError( sc, msg );
+    }
+
+    @Override
+    public void sendRedirect(final String location) throws IOException {
+        cacheable = false;
+        super.sendRedirect( location );
+    }
+
+    @Override
+    public void addCookie(final Cookie cookie) {
+        cacheable = false;
+        super.addCookie( cookie );
+    }
+
+    @Override
+    public void setHeader(final String name, final String value) {
+        record( name, value, true );
+        super.setHeader( name, value );
+    }
+
+    @Override
+    public void addHeader(final String name, final String value) {
+        record( name, value, false );
+        super.addHeader( name, value );
+    }
+
+    @Override
+    public void setIntHeader(final String name, final int value) {
+        record( name, String.valueOf( value ), true );
+        super.setIntHeader( name, value );
+    }
+
+    @Override
+    public void addIntHeader(final String name, final int value) {
+        record( name, String.valueOf( value ), false );
+        super.addIntHeader( name, value );
+    }
+
+    @Override
+    public void setDateHeader(final String name, final long date) {
+        record( name, Long.valueOf( date ), true );
+        super.setDateHeader( name, date );
+    }
+
+    @Override
+    public void addDateHeader(final String name, final long date) {
+        record( name, Long.valueOf( date ), false );
+        super.addDateHeader( name, date );
+    }
+
+    @Override
+    public void setLocale(final Locale locale) {
+        this.locale = locale;
+        super.setLocale( locale );
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        headers.clear();
+        locale = null;
+    }
+
+    private void record(final String name, final Object value, final boolean replace) {
+        if ( null == name )
+            return;
+        if ( SET_COOKIE.equalsIgnoreCase( name ) )
+            cacheable = false;
+        if ( CACHE_CONTROL.equalsIgnoreCase( name ) && null != value ) {
+            final String directives = value.toString().toLowerCase();
+            if ( directives.indexOf("private") >= 0 || directives.indexOf("no-store") >= 0 )
+                cacheable = false;
+        }
+
+        // setHeader( name, null ) removes the header
+        if ( null == value ) {
+            if ( replace )
+                headers.remove( name );
+            return;
+        }
+
+        List<Object> values = headers.get( name );
+        if ( null == values || replace ) {
+            values = new ArrayList<Object>( 1 );
+            headers.put( name, values );
+        }
+        values.add( value );
+    }
+}
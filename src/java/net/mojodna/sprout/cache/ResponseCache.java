@@ -0,0 +1,263 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.cache;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * <p>Cache of rendered responses for Sprout methods annotated with
+ * <code>@Cache</code>, bounded by the total size of the cached bodies and
+ * evicted using W-TinyLFU (see {@link TinyLfuCache}), so that a burst of
+ * one-off requests does not flush frequently requested pages.</p>
+ *
+ * <p><code>SproutRequestProcessor</code> uses the first ResponseCache
+ * defined in the Spring context, or creates one with the default size
+ * (16MB).  It is stored in the servlet context under {@link #CACHE_KEY}
+ * followed by the module prefix.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class ResponseCache {
+    /** Servlet context attribute prefix under which caches are stored. */
+    public static final String CACHE_KEY = ResponseCache.class.getName();
+    public static final long DEFAULT_MAXIMUM_SIZE = 16 * 1024 * 1024;
+    /** Expected average size of a response; used to size the frequency sketch. */
+    private static final int AVERAGE_SIZE = 8 * 1024;
+    /** Approximate per-entry overhead, in bytes. */
+    private static final int ENTRY_OVERHEAD = 128;
+    /** Varies responses by session (see <code>Sprout.Cache.vary()</code>). */
+    public static final String VARY_SESSION = "session";
+    /** Varies responses by remote user (see <code>Sprout.Cache.vary()</code>). */
+    public static final String VARY_USER = "user";
+
+    private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private volatile TinyLfuCache<String,CachedResponse> cache;
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Total number of bytes (bodies, keys and overhead) that may be cached.
+     * May only be set before the cache is first used.
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(final long maximumSize) {
+        if ( null != cache )
+            throw new IllegalStateException("Cache is already in use");
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Whether a request may be answered from (and its response stored in)
+     * the cache.  Responses to requests with a session or a remote user
+     * may be personal, so they are only cached if they are shared or vary
+     * by session or user.
+     *
+     * @param request Request.
+     * @param vary Parts of the request that the response varies by, or null.
+     * @param shared Whether responses are the same for every user.
+     */
+    public boolean isCacheable(final HttpServletRequest request, final String[] vary, final boolean shared) {
+        if ( shared )
+            return true;
+
+        final boolean session = null != request.getSession( false );
+        final boolean user = null != request.getRemoteUser();
+        final boolean varySession = contains( vary, VARY_SESSION );
+        final boolean varyUser = contains( vary, VARY_USER );
+        if ( session && !varySession && !varyUser )
+            return false;
+        return !user || varyUser || ( varySession && session );
+    }
+
+    /**
+     * Builds the key for a request.
+     *
+     * @see #getKey(HttpServletRequest, String[], String[])
+     */
+    public String getKey(final HttpServletRequest request, final String[] parameters) {
+        return getKey( request, parameters, null );
+    }
+
+    /**
+     * Builds the key for a request.  Parameter names and values are
+     * URL-encoded so that characters such as '&amp;' and '=' in a value cannot
+     * make two different requests share a key.
+     *
+     * @param request Request.
+     * @param parameters Parameters to include in the key, or null to use the
+     * entire query string.
+     * @param vary Further parts of the request to include in the key
+     * ({@link #VARY_SESSION}, {@link #VARY_USER} or header names), or null.
+     */
+    public String getKey(final HttpServletRequest request, final String[] parameters, final String[] vary) {
+        final StringBuilder key = new StringBuilder( request.getRequestURI() );
+        if ( null == parameters ) {
+            if ( null != request.getQueryString() )
+                key.append('?').append( request.getQueryString() );
+            appendVary( key, request, vary );
+            return key.toString();
+        }
+
+        char separator = '?';
+        for ( int i = 0; i < parameters.length; i++ ) {
+            final String[] values = request.getParameterValues( parameters[i] );
+            if ( null == values )
+                continue;
+            for ( int j = 0; j < values.length; j++ ) {
+                key.append( separator ).append( encode( parameters[i] ) ).append('=').append( encode( values[j] ) );
+                separator = '&';
+            }
+        }
+        appendVary( key, request, vary );
+        return key.toString();
+    }
+
+    /**
+     * Appends the varying parts of a request to its key, after a '#' (which
+     * cannot appear in a request URI or query string).
+     */
+    private static void appendVary(final StringBuilder key, final HttpServletRequest request, final String[] vary) {
+        if ( null == vary )
+            return;
+
+        char separator = '#';
+        for ( int i = 0; i < vary.length; i++ ) {
+            final String value;
+            if ( VARY_SESSION.equals( vary[i] ) ) {
+                final HttpSession session = request.getSession( false );
+                value = null == session ? null : session.getId();
+            } else if ( VARY_USER.equals( vary[i] ) ) {
+                value = request.getRemoteUser();
+            } else {
+                value = request.getHeader( vary[i] );
+            }
+            key.append( separator ).append( encode( vary[i] ) );
+            if ( null != value )
+                key.append('=').append( encode( value ) );
+            separator = '&';
+        }
+    }
+
+    private static boolean contains(final String[] values, final String value) {
+        for ( int i = 0; null != values && i < values.length; i++ ) {
+            if ( value.equals( values[i] ) )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets a response that has not expired.
+     *
+     * @return Response or null.
+     */
+    public CachedResponse get(final String key) {
+        final TinyLfuCache<String,CachedResponse> cache = getCache();
+        final CachedResponse response = cache.get( key );
+        if ( null != response && response.isExpired( System.currentTimeMillis() ) ) {
+            cache.remove( key );
+            expirations.incrementAndGet();
+            return null;
+        }
+        return response;
+    }
+
+    public void put(final String key, final CachedResponse response) {
+        getCache().put( key, response );
+    }
+
+    public void remove(final String key) {
+        getCache().remove( key );
+    }
+
+    public void clear() {
+        getCache().clear();
+    }
+
+    /**
+     * Number of requests answered from the cache.
+     */
+    public long getHits() {
+        return getCache().getHits() - expirations.get();
+    }
+
+    /**
+     * Number of requests for responses that were not cached (or had expired).
+     */
+    public long getMisses() {
+        return getCache().getMisses() + expirations.get();
+    }
+
+    /**
+     * Number of responses evicted to make room for others.
+     */
+    public long getEvictions() {
+        return getCache().getEvictions();
+    }
+
+    /**
+     * Number of responses discarded because they had expired.
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    public int getSize() {
+        return getCache().size();
+    }
+
+    /**
+     * Number of bytes currently cached.
+     */
+    public long getWeight() {
+        return getCache().getWeight();
+    }
+
+    private static String encode(final String value) {
+        try {
+            return URLEncoder.encode( value, "UTF-8" );
+        }
+        catch (final UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private TinyLfuCache<String,CachedResponse> getCache() {
+        TinyLfuCache<String,CachedResponse> c = cache;
+        if ( null == c ) {
+            synchronized ( this ) {
+                c = cache;
+                if ( null == c ) {
+                    c = new TinyLfuCache<String,CachedResponse>( maximumSize, (int) Math.max( 16, Math.min( Integer.MAX_VALUE, maximumSize / AVERAGE_SIZE ) ), new TinyLfuCache.Weigher<String,CachedResponse>() {
+                        public int weigh(final String key, final CachedResponse value) {
+                            return ENTRY_OVERHEAD + 2 * key.length() + value.getBody().length;
+                        }
+                    });
+                    cache = c;
+                }
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,363 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Bounded cache using W-TinyLFU eviction.  New entries enter a small LRU
+ * <em>window</em> (1% of the capacity); entries evicted from the window
+ * compete for a place in the <em>main</em> segmented LRU with that
+ * segment's next victim, and the one that has been requested more often
+ * (according to a {@link FrequencySketch}) survives.  The main segment is
+ * split into <em>probation</em> and <em>protected</em> (80%) regions;
+ * entries are promoted to the latter when they are requested again.</p>
+ *
+ * <p>Capacity is measured by weight (e.g. bytes) rather than by number of
+ * entries.  Entries that weigh more than the entire cache are not
+ * stored.</p>
+ *
+ * <p>Lookups do not block: hits are read from a concurrent map and the
+ * access is recorded in a small ring buffer, which is replayed against the
+ * frequency sketch and LRU lists by whichever thread next holds the lock
+ * (or drops the access if the buffer is full, as the policy only needs a
+ * sample).  All other operations take the lock.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class TinyLfuCache<K,V> {
+    /**
+     * Determines the weight of an entry.
+     */
+    public interface Weigher<K,V> {
+        int weigh(K key, V value);
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    // size of the access buffer (a power of two) and the backlog that
+    // triggers a drain
+    private static final int BUFFER_SIZE = 128;
+    private static final int DRAIN_THRESHOLD = 32;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final Weigher<K,V> weigher;
+    private final FrequencySketch sketch;
+    private final Map<K,Node<K,V>> data = new ConcurrentHashMap<K,Node<K,V>>();
+    private final ReentrantLock lock = new ReentrantLock();
+    // keys requested but not yet applied to the policy
+    private final AtomicReferenceArray<K> buffer = new AtomicReferenceArray<K>( BUFFER_SIZE );
+    private final AtomicLong writes = new AtomicLong();
+    private volatile long reads;
+    // sentinels of circular LRU lists, least recently used first
+    private final Node<K,V>[] queues;
+    private final long[] weights = new long[3];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long evictions;
+
+    /**
+     * @param maximumWeight Total weight the cache may hold.
+     * @param expectedEntries Expected number of entries; used to size the
+     * frequency sketch.
+     * @param weigher Weigher for entries.
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(final long maximumWeight, final int expectedEntries, final Weigher<K,V> weigher) {
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max( 1, maximumWeight / 100 );
+        this.protectedMaximum = ( maximumWeight - windowMaximum ) * 8 / 10;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch( expectedEntries );
+
+        queues = new Node[3];
+        for ( int i = 0; i < queues.length; i++ ) {
+            queues[i] = new Node<K,V>( null, null, 0 );
+            queues[i].prev = queues[i];
+            queues[i].next = queues[i];
+        }
+    }
+
+    /**
+     * Gets a value, recording the request.
+     *
+     * @return Value or null if it is not cached.
+     */
+    public V get(final K key) {
+        final Node<K,V> node = data.get( key );
+        if ( null == node )
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+
+        record( key );
+        return null == node ? null : node.value;
+    }
+
+    /**
+     * Adds (or replaces) a value.  This is not counted as a request; the
+     * frequency sketch only records requests made through {@link #get}.
+     */
+    public void put(final K key, final V value) {
+        final int weight = weigher.weigh( key, value );
+        lock.lock();
+        try {
+            drain();
+            removeNode( key );
+            if ( weight > maximumWeight )
+                return;
+
+            final Node<K,V> node = new Node<K,V>( key, value, weight );
+            data.put( key, node );
+            link( node, WINDOW );
+            evict();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @return The value removed, or null.
+     */
+    public V remove(final K key) {
+        lock.lock();
+        try {
+            drain();
+            return removeNode( key );
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            drain();
+            for ( int i = 0; i < queues.length; i++ ) {
+                queues[i].prev = queues[i];
+                queues[i].next = queues[i];
+                weights[i] = 0;
+            }
+            data.clear();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Total weight of the cached entries.
+     */
+    public long getWeight() {
+        lock.lock();
+        try {
+            return totalWeight();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of entries evicted to make room for others (entries that were
+     * removed or replaced are not counted).
+     */
+    public long getEvictions() {
+        lock.lock();
+        try {
+            return evictions;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a request to the access buffer, draining it if the backlog has
+     * grown and the lock is free.
+     */
+    private void record(final K key) {
+        final long tail = writes.get();
+        final long backlog = tail - reads;
+        if ( backlog < BUFFER_SIZE && writes.compareAndSet( tail, tail + 1 ) )
+            buffer.lazySet( (int) tail & ( BUFFER_SIZE - 1 ), key );
+
+        if ( backlog >= DRAIN_THRESHOLD && lock.tryLock() ) {
+            try {
+                drain();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies buffered requests to the policy.  Must hold the lock.
+     */
+    private void drain() {
+        long head = reads;
+        final long tail = writes.get();
+        for ( ; head < tail; head++ ) {
+            final int index = (int) head & ( BUFFER_SIZE - 1 );
+            final K key = buffer.get( index );
+            // the writer has claimed the slot but not yet filled it
+            if ( null == key )
+                break;
+            buffer.lazySet( index, null );
+
+            sketch.increment( key );
+            final Node<K,V> node = data.get( key );
+            // skip entries that were evicted or replaced in the meantime
+            if ( null != node && null != node.next )
+                onHit( node );
+        }
+        reads = head;
+    }
+
+    private V removeNode(final K key) {
+        final Node<K,V> node = data.remove( key );
+        if ( null == node )
+            return null;
+
+        unlink( node );
+        return node.value;
+    }
+
+    private long totalWeight() {
+        return weights[ WINDOW ] + weights[ PROBATION ] + weights[ PROTECTED ];
+    }
+
+    private void onHit(final Node<K,V> node) {
+        switch ( node.queue ) {
+        case PROBATION:
+            unlink( node );
+            link( node, PROTECTED );
+            // demote the least recently used protected entries
+            while ( weights[ PROTECTED ] > protectedMaximum ) {
+                final Node<K,V> demoted = first( PROTECTED );
+                unlink( demoted );
+                link( demoted, PROBATION );
+            }
+            break;
+        default:
+            unlink( node );
+            link( node, node.queue );
+        }
+    }
+
+    private void evict() {
+        // entries leaving the window become candidates for the main segment
+        while ( weights[ WINDOW ] > windowMaximum ) {
+            final Node<K,V> candidate = first( WINDOW );
+            unlink( candidate );
+            link( candidate, PROBATION );
+        }
+
+        while ( totalWeight() > maximumWeight ) {
+            final Node<K,V> victim = first( PROBATION );
+            if ( null == victim ) {
+                final Node<K,V> protectedVictim = first( PROTECTED );
+                evict( null == protectedVictim ? first( WINDOW ) : protectedVictim );
+                continue;
+            }
+
+            // the most recent arrival competes with the least recently used
+            final Node<K,V> candidate = last( PROBATION );
+            if ( candidate != victim && sketch.frequency( candidate.key ) > sketch.frequency( victim.key ) )
+                evict( victim );
+            else
+                evict( candidate );
+        }
+    }
+
+    private void evict(final Node<K,V> node) {
+        data.remove( node.key );
+        unlink( node );
+        evictions++;
+    }
+
+    private Node<K,V> first(final int queue) {
+        final Node<K,V> sentinel = queues[ queue ];
+        return sentinel.next == sentinel ? null : sentinel.next;
+    }
+
+    private Node<K,V> last(final int queue) {
+        final Node<K,V> sentinel = queues[ queue ];
+        return sentinel.prev == sentinel ? null : sentinel.prev;
+    }
+
+    private void link(final Node<K,V> node, final int queue) {
+        final Node<K,V> sentinel = queues[ queue ];
+        node.queue = queue;
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+        weights[ queue ] += node.weight;
+    }
+
+    private void unlink(final Node<K,V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        weights[ node.queue ] -= node.weight;
+    }
+
+    private static final class Node<K,V> {
+        final K key;
+        final V value;
+        final int weight;
+        int queue;
+        Node<K,V> prev;
+        Node<K,V> next;
+
+        Node(final K key, final V value, final int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
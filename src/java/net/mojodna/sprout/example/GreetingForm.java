@@ -0,0 +1,36 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.example;
+
+import net.mojodna.sprout.annotation.SproutForm;
+
+/**
+ * <p>Example typed form.  <code>GreetingFormImpl</code> is generated at
+ * compile time and registered as <em>GreetingForm</em>.</p>
+ *
+ * @see net.mojodna.sprout.TypedForm
+ * @author Seth Fitzsimmons
+ */
+@SproutForm(name="GreetingForm")
+public interface GreetingForm {
+    int getId();
+
+    void setId(int id);
+
+    String getName();
+
+    void setName(String name);
+}
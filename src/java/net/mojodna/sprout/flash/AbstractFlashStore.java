@@ -0,0 +1,96 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.flash;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.apache.struts.action.ActionMessage;
+import org.apache.struts.action.ActionMessages;
+
+/**
+ * <p>Base class for <code>FlashStore</code>s that bounds the number of
+ * messages saved.  Messages beyond the limit (errors first, then messages,
+ * in the order they were added) are dropped.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public abstract class AbstractFlashStore implements FlashStore {
+    private static final Logger log = Logger.getLogger( AbstractFlashStore.class );
+    public static final int DEFAULT_MAX_MESSAGES = 20;
+
+    private int maxMessages = DEFAULT_MAX_MESSAGES;
+
+    /**
+     * Writes a (bounded) flash.
+     */
+    protected abstract void store(HttpServletRequest request, HttpServletResponse response, Map<String,ActionMessages> flash);
+
+    public final void save(final HttpServletRequest request, final HttpServletResponse response, final Map<String,ActionMessages> flash) {
+        int remaining = maxMessages;
+        final Map<String,ActionMessages> bounded = new LinkedHashMap<String,ActionMessages>();
+        for ( int i = 0; i < KEYS.length; i++ ) {
+            final ActionMessages msgs = flash.get( KEYS[i] );
+            if ( null == msgs || msgs.isEmpty() )
+                continue;
+
+            if ( msgs.size() <= remaining ) {
+                bounded.put( KEYS[i], msgs );
+                remaining -= msgs.size();
+            } else {
+                log.warn("Flash is limited to " + maxMessages + " messages; dropping " + ( msgs.size() - remaining ) + " of " + KEYS[i] );
+                if ( remaining > 0 )
+                    bounded.put( KEYS[i], truncate( msgs, remaining ) );
+                remaining = 0;
+            }
+        }
+
+        if ( !bounded.isEmpty() )
+            store( request, response, bounded );
+    }
+
+    /**
+     * Copies the first <em>count</em> messages.
+     */
+    private static ActionMessages truncate(final ActionMessages msgs, final int count) {
+        final ActionMessages truncated = new ActionMessages();
+        final Iterator properties = msgs.properties();
+        while ( properties.hasNext() && truncated.size() < count ) {
+            final String property = (String) properties.next();
+            final Iterator it = msgs.get( property );
+            while ( it.hasNext() && truncated.size() < count )
+                truncated.add( property, (ActionMessage) it.next() );
+        }
+        return truncated;
+    }
+
+    /**
+     * Maximum number of messages (errors and messages combined) to save.
+     * Defaults to {@value #DEFAULT_MAX_MESSAGES}.
+     */
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(final int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+}
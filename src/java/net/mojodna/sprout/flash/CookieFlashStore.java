@@ -0,0 +1,373 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.flash;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.apache.struts.action.ActionMessage;
+import org.apache.struts.action.ActionMessages;
+
+/**
+ * <p>Keeps the flash in a signed cookie, so that neither saving nor loading
+ * it requires a session.  The cookie is cleared as soon as it is read.</p>
+ *
+ * <p>Message keys, properties and values are stored; values other than
+ * strings and numbers are stored as strings.  Messages that would make the
+ * cookie larger than <em>maxSize</em> (or than the 4kB browsers are
+ * required to support) are dropped, as are messages that cannot be encoded
+ * (more than 255 values, or strings longer than 64kB), with a warning.</p>
+ *
+ * <p>Cookies are signed with HMAC-SHA256.  Unless a secret is set, a random
+ * one is generated when the store is created, in which case a flash can only
+ * be read by the same server (and only until it restarts).  Clustered
+ * applications should define the store in the Spring context with a shared
+ * secret:
+ * <pre>
+ * &lt;bean id="flashStore" class="net.mojodna.sprout.flash.CookieFlashStore"&gt;
+ *   &lt;property name="secret" value="..." /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class CookieFlashStore extends AbstractFlashStore {
+    private static final Logger log = Logger.getLogger( CookieFlashStore.class );
+    public static final String DEFAULT_COOKIE_NAME = "SPROUT_FLASH";
+    public static final int DEFAULT_MAX_SIZE = 3072;
+    /** Size of the cookie (name and value) browsers are required to support. */
+    private static final int MAX_COOKIE_SIZE = 4096;
+    // limits of the encoding
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final int MAX_VALUES = 0xFF;
+    private static final int MAX_UTF_LENGTH = 0xFFFF;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int VERSION = 1;
+    private static final char SEPARATOR = '.';
+
+    // value types
+    private static final int STRING = 's';
+    private static final int LONG = 'l';
+    private static final int DOUBLE = 'd';
+    private static final int NULL = 'n';
+
+    private String cookieName = DEFAULT_COOKIE_NAME;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private SecretKeySpec key;
+
+    public CookieFlashStore() {
+        final byte[] secret = new byte[32];
+        new SecureRandom().nextBytes( secret );
+        key = new SecretKeySpec( secret, ALGORITHM );
+    }
+
+    public Map<String,ActionMessages> load(final HttpServletRequest request, final HttpServletResponse response) {
+        final Cookie[] cookies = request.getCookies();
+        if ( null == cookies )
+            return null;
+
+        for ( int i = 0; i < cookies.length; i++ ) {
+            if ( cookieName.equals( cookies[i].getName() ) ) {
+                // read-once
+                response.addCookie( createCookie( request, "", 0 ) );
+                return decode( cookies[i].getValue() );
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void store(final HttpServletRequest request, final HttpServletResponse response, final Map<String,ActionMessages> flash) {
+        final List<Entry> entries = new ArrayList<Entry>();
+        for ( int i = 0; i < KEYS.length; i++ ) {
+            final ActionMessages msgs = flash.get( KEYS[i] );
+            if ( null == msgs )
+                continue;
+
+            for ( final Iterator properties = msgs.properties(); properties.hasNext(); ) {
+                final String property = (String) properties.next();
+                for ( final Iterator it = msgs.get( property ); it.hasNext(); )
+                    entries.add( new Entry( i, property, (ActionMessage) it.next() ) );
+            }
+        }
+
+        for ( final Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            final Entry entry = it.next();
+            if ( !isEncodable( entry.message, entry.property ) ) {
+                log.warn("Dropping flash message for " + entry.property + "; it has too many values or values that are too long to store in a cookie.");
+                it.remove();
+            }
+        }
+
+        final int count = entries.size();
+        while ( entries.size() > MAX_ENTRIES )
+            entries.remove( entries.size() - 1 );
+
+        final int limit = Math.min( maxSize, MAX_COOKIE_SIZE - cookieName.length() - 1 );
+        String value = encode( entries );
+        while ( value.length() > limit && !entries.isEmpty() ) {
+            entries.remove( entries.size() - 1 );
+            value = encode( entries );
+        }
+
+        if ( entries.size() < count )
+            log.warn("Flash does not fit in a " + limit + " byte cookie; dropping " + ( count - entries.size() ) + " of " + count + " messages.");
+        if ( !entries.isEmpty() )
+            response.addCookie( createCookie( request, value, -1 ) );
+    }
+
+    /**
+     * Whether a message fits the encoding: at most 255 values, and strings
+     * that are at most 64kB in modified UTF-8 (as written by
+     * <code>DataOutputStream.writeUTF()</code>).
+     */
+    private static boolean isEncodable(final ActionMessage message, final String property) {
+        if ( utfLength( property ) > MAX_UTF_LENGTH || utfLength( message.getKey() ) > MAX_UTF_LENGTH )
+            return false;
+
+        final Object[] values = message.getValues();
+        if ( null == values )
+            return true;
+        if ( values.length > MAX_VALUES )
+            return false;
+        for ( int i = 0; i < values.length; i++ ) {
+            if ( null != values[i] && !( values[i] instanceof Number ) && utfLength( values[i].toString() ) > MAX_UTF_LENGTH )
+                return false;
+        }
+        return true;
+    }
+
+    private static int utfLength(final String s) {
+        if ( s.length() > MAX_UTF_LENGTH )
+            return s.length();
+
+        int length = 0;
+        for ( int i = 0; i < s.length(); i++ ) {
+            final char c = s.charAt( i );
+            if ( c >= 0x0001 && c <= 0x007F )
+                length++;
+            else if ( c <= 0x07FF )
+                length += 2;
+            else
+                length += 3;
+        }
+        return length;
+    }
+
+    private Cookie createCookie(final HttpServletRequest request, final String value, final int maxAge) {
+        final Cookie cookie = new Cookie( cookieName, value );
+        final String path = request.getContextPath();
+        cookie.setPath( null == path || path.length() == 0 ? "/" : path );
+        cookie.setMaxAge( maxAge );
+        cookie.setSecure( request.isSecure() );
+        return cookie;
+    }
+
+    /**
+     * Serializes and signs a set of messages.
+     */
+    private String encode(final List<Entry> entries) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream( bytes );
+            out.writeByte( VERSION );
+            out.writeShort( entries.size() );
+            for ( final Entry entry : entries ) {
+                out.writeByte( entry.key );
+                out.writeUTF( entry.property );
+                out.writeUTF( entry.message.getKey() );
+                out.writeBoolean( entry.message.isResource() );
+
+                final Object[] values = entry.message.getValues();
+                out.writeByte( null == values ? 0 : values.length );
+                for ( int i = 0; null != values && i < values.length; i++ )
+                    writeValue( out, values[i] );
+            }
+            out.close();
+
+            final byte[] payload = bytes.toByteArray();
+            final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+            return encoder.encodeToString( payload ) + SEPARATOR + encoder.encodeToString( sign( payload ) );
+        }
+        catch (final IOException e) {
+            // writing to memory
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Verifies and deserializes a set of messages.
+     *
+     * @return Messages, or null if the cookie is malformed or was not signed
+     * with this store's secret.
+     */
+    private Map<String,ActionMessages> decode(final String value) {
+        final int separator = value.indexOf( SEPARATOR );
+        if ( separator < 0 )
+            return null;
+
+        try {
+            final Base64.Decoder decoder = Base64.getUrlDecoder();
+            final byte[] payload = decoder.decode( value.substring( 0, separator ) );
+            if ( !MessageDigest.isEqual( sign( payload ), decoder.decode( value.substring( separator + 1 ) ) ) ) {
+                log.debug("Ignoring flash with an invalid signature.");
+                return null;
+            }
+
+            final DataInputStream in = new DataInputStream( new ByteArrayInputStream( payload ) );
+            if ( in.readUnsignedByte() != VERSION )
+                return null;
+
+            final Map<String,ActionMessages> flash = new LinkedHashMap<String,ActionMessages>();
+            final int count = in.readUnsignedShort();
+            for ( int i = 0; i < count; i++ ) {
+                final String attribute = KEYS[ in.readUnsignedByte() ];
+                final String property = in.readUTF();
+                final String key = in.readUTF();
+                final boolean resource = in.readBoolean();
+                final Object[] values = new Object[ in.readUnsignedByte() ];
+                for ( int j = 0; j < values.length; j++ )
+                    values[j] = readValue( in );
+
+                ActionMessages msgs = flash.get( attribute );
+                if ( null == msgs ) {
+                    msgs = new ActionMessages();
+                    flash.put( attribute, msgs );
+                }
+                msgs.add( property, resource ? new ActionMessage( key, values ) : new ActionMessage( key, false ) );
+            }
+            return flash;
+        }
+        catch (final IllegalArgumentException e) {
+            log.debug("Ignoring malformed flash: " + e.getMessage() );
+        }
+        catch (final IndexOutOfBoundsException e) {
+            log.debug("Ignoring malformed flash: " + e.getMessage() );
+        }
+        catch (final IOException e) {
+            log.debug("Ignoring malformed flash: " + e.getMessage() );
+        }
+        return null;
+    }
+
+    private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if ( null == value ) {
+            out.writeByte( NULL );
+        } else if ( value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte ) {
+            out.writeByte( LONG );
+            out.writeLong( ((Number) value).longValue() );
+        } else if ( value instanceof Number ) {
+            out.writeByte( DOUBLE );
+            out.writeDouble( ((Number) value).doubleValue() );
+        } else {
+            out.writeByte( STRING );
+            out.writeUTF( value.toString() );
+        }
+    }
+
+    private static Object readValue(final DataInputStream in) throws IOException {
+        final int type = in.readUnsignedByte();
+        switch ( type ) {
+        case NULL:
+            return null;
+        case LONG:
+            return Long.valueOf( in.readLong() );
+        case DOUBLE:
+            return Double.valueOf( in.readDouble() );
+        case STRING:
+            return in.readUTF();
+        default:
+            throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    private byte[] sign(final byte[] payload) {
+        try {
+            final Mac mac = Mac.getInstance( ALGORITHM );
+            mac.init( key );
+            return mac.doFinal( payload );
+        }
+        catch (final GeneralSecurityException e) {
+            throw new IllegalStateException( "Unable to sign flash: " + e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Sets the secret used to sign cookies.  Servers that share a secret can
+     * read each other's cookies.
+     */
+    public void setSecret(final String secret) {
+        key = new SecretKeySpec( secret.getBytes( StandardCharsets.UTF_8 ), ALGORITHM );
+    }
+
+    public String getCookieName() {
+        return cookieName;
+    }
+
+    public void setCookieName(final String cookieName) {
+        this.cookieName = cookieName;
+    }
+
+    /**
+     * Maximum length of the cookie value.  Defaults to
+     * {@value #DEFAULT_MAX_SIZE}, leaving room for other cookies within the
+     * 4kB browsers are required to support; larger values are capped so
+     * that the cookie's name and value fit in 4kB.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Message to be saved, along with where it came from.
+     */
+    private static class Entry {
+        final int key;
+        final String property;
+        final ActionMessage message;
+
+        Entry(final int key, final String property, final ActionMessage message) {
+            this.key = key;
+            this.property = property;
+            this.message = message;
+        }
+    }
+}
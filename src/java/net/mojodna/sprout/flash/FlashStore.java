@@ -0,0 +1,59 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.flash;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.struts.Globals;
+import org.apache.struts.action.ActionMessages;
+
+/**
+ * <p>Carries errors and messages across a redirect.  Before an action
+ * redirects, <code>SproutRequestProcessor</code> saves any undisplayed
+ * errors and messages in the request; at the start of the following request
+ * it loads them back into the request, where <code>getErrors()</code>,
+ * <code>getMessages()</code> and <code>&lt;html:messages /&gt;</code> will
+ * find them.</p>
+ *
+ * <p>Stores are read-once: loading a flash removes it.</p>
+ *
+ * <p>{@link CookieFlashStore} is used unless a <code>FlashStore</code> is
+ * defined in the Spring context.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public interface FlashStore {
+    /** Request attributes that are carried across redirects. */
+    String[] KEYS = new String[] { Globals.ERROR_KEY, Globals.MESSAGE_KEY };
+
+    /**
+     * Loads (and removes) the flash saved by a previous request.
+     *
+     * @return Messages keyed by request attribute, or null if there are none.
+     */
+    Map<String,ActionMessages> load(HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * Saves a flash for the next request.  Must be called before the
+     * response is committed.
+     *
+     * @param flash Messages keyed by request attribute (one of {@link #KEYS}).
+     */
+    void save(HttpServletRequest request, HttpServletResponse response, Map<String,ActionMessages> flash);
+}
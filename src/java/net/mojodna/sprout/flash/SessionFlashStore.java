@@ -0,0 +1,57 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.flash;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.struts.action.ActionMessages;
+
+/**
+ * <p>Keeps the flash in the user's session.  A session is only created when
+ * a flash is saved, and the flash is removed from it as soon as it is
+ * read.</p>
+ *
+ * <p>To use it, define it in the Spring context:
+ * <pre>
+ * &lt;bean id="flashStore" class="net.mojodna.sprout.flash.SessionFlashStore" /&gt;
+ * </pre>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class SessionFlashStore extends AbstractFlashStore {
+    /** Name of the session attribute holding the flash. */
+    public static final String FLASH_KEY = SessionFlashStore.class.getName() + ".FLASH";
+
+    public Map<String,ActionMessages> load(final HttpServletRequest request, final HttpServletResponse response) {
+        final HttpSession session = request.getSession( false );
+        if ( null == session )
+            return null;
+
+        final Map<String,ActionMessages> flash = (Map<String,ActionMessages>) session.getAttribute( FLASH_KEY );
+        if ( null != flash )
+            session.removeAttribute( FLASH_KEY );
+        return flash;
+    }
+
+    @Override
+    protected void store(final HttpServletRequest request, final HttpServletResponse response, final Map<String,ActionMessages> flash) {
+        request.getSession().setAttribute( FLASH_KEY, flash );
+    }
+}
@@ -0,0 +1,531 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.json;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Writes objects of a single class as JSON.  Serializers are created
+ * once per class (see {@link #forType(Class)}); those for beans resolve
+ * their properties up front as <code>MethodHandle</code>s with pre-encoded
+ * names, so writing an object involves neither reflection nor intermediate
+ * strings.</p>
+ *
+ * <p>Mapping:</p>
+ * <ul>
+ *   <li><code>CharSequence</code>s, <code>Character</code>s and enums
+ *   (by name) are written as strings;</li>
+ *   <li>numbers as numbers (non-finite ones as <code>null</code>);</li>
+ *   <li><code>Date</code>s and <code>Calendar</code>s as milliseconds since
+ *   the epoch;</li>
+ *   <li><code>Map</code>s as objects, arrays and <code>Iterable</code>s as
+ *   arrays and <code>Optional</code>s as their values;</li>
+ *   <li>other <code>java.*</code> and <code>javax.*</code> classes as the
+ *   strings returned by <code>toString()</code>;</li>
+ *   <li>anything else as an object containing the components of a record
+ *   or the readable properties and public fields of a bean.</li>
+ * </ul>
+ *
+ * @author Seth Fitzsimmons
+ */
+public abstract class JsonSerializer {
+    private static final ClassValue<JsonSerializer> SERIALIZERS = new ClassValue<JsonSerializer>() {
+        protected JsonSerializer computeValue(final Class<?> type) {
+            return create( type );
+        }
+    };
+    private static final MethodType OBJECT_GETTER = MethodType.methodType( Object.class, Object.class );
+    private static final MethodType LONG_GETTER = MethodType.methodType( long.class, Object.class );
+    private static final MethodType DOUBLE_GETTER = MethodType.methodType( double.class, Object.class );
+    private static final MethodType BOOLEAN_GETTER = MethodType.methodType( boolean.class, Object.class );
+
+    /**
+     * Writes a (non-null) value.
+     */
+    public abstract void write(Object value, JsonWriter out) throws IOException;
+
+    /**
+     * Gets the serializer for a class, creating it if necessary.
+     */
+    public static JsonSerializer forType(final Class type) {
+        return SERIALIZERS.get( type );
+    }
+
+    /**
+     * Writes any value, using the serializer for its class.
+     */
+    public static void writeValue(final Object value, final JsonWriter out) throws IOException {
+        if ( null == value )
+            out.writeNull();
+        else
+            SERIALIZERS.get( value.getClass() ).write( value, out );
+    }
+
+    private static JsonSerializer create(final Class type) {
+        final JsonSerializer scalar = scalar( type );
+        if ( null != scalar )
+            return scalar;
+
+        if ( Map.class.isAssignableFrom( type ) )
+            return MAP;
+        if ( Iterable.class.isAssignableFrom( type ) )
+            return ITERABLE;
+        if ( Optional.class == type )
+            return OPTIONAL;
+        if ( type.isArray() )
+            return array( type.getComponentType() );
+
+        final String name = type.getName();
+        if ( name.startsWith("java.") || name.startsWith("javax.") )
+            return TO_STRING;
+
+        try {
+            return new BeanSerializer( type );
+        }
+        catch (final IntrospectionException e) {
+            throw new IllegalArgumentException( "Unable to create a JSON serializer for " + type, e );
+        }
+        catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException( "Unable to create a JSON serializer for " + type, e );
+        }
+    }
+
+    /**
+     * Serializers for values written as single tokens, or null.
+     */
+    private static JsonSerializer scalar(final Class type) {
+        if ( CharSequence.class.isAssignableFrom( type ) )
+            return STRING;
+        if ( Character.class == type )
+            return TO_STRING;
+        if ( Boolean.class == type )
+            return BOOLEAN;
+        if ( Integer.class == type || Long.class == type || Short.class == type || Byte.class == type || AtomicInteger.class == type || AtomicLong.class == type )
+            return INTEGRAL;
+        if ( BigDecimal.class == type || BigInteger.class == type )
+            return BIG_NUMBER;
+        if ( Float.class == type )
+            return FLOAT;
+        if ( Number.class.isAssignableFrom( type ) )
+            return FLOATING;
+        if ( Enum.class.isAssignableFrom( type ) )
+            return ENUM;
+        if ( Date.class.isAssignableFrom( type ) )
+            return DATE;
+        if ( Calendar.class.isAssignableFrom( type ) )
+            return CALENDAR;
+        return null;
+    }
+
+    private static JsonSerializer array(final Class component) {
+        if ( !component.isPrimitive() )
+            return OBJECT_ARRAY;
+        if ( int.class == component )
+            return INT_ARRAY;
+        if ( long.class == component )
+            return LONG_ARRAY;
+        if ( double.class == component )
+            return DOUBLE_ARRAY;
+        if ( char.class == component )
+            return CHAR_ARRAY;
+        // the rest are rare enough not to warrant their own serializers
+        return PRIMITIVE_ARRAY;
+    }
+
+    private static final JsonSerializer STRING = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeString( (CharSequence) value );
+        }
+    };
+
+    private static final JsonSerializer TO_STRING = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeString( value.toString() );
+        }
+    };
+
+    private static final JsonSerializer ENUM = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeString( ((Enum) value).name() );
+        }
+    };
+
+    private static final JsonSerializer BOOLEAN = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeBoolean( ((Boolean) value).booleanValue() );
+        }
+    };
+
+    private static final JsonSerializer INTEGRAL = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeLong( ((Number) value).longValue() );
+        }
+    };
+
+    private static final JsonSerializer FLOATING = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeDouble( ((Number) value).doubleValue() );
+        }
+    };
+
+    private static final JsonSerializer FLOAT = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeFloat( ((Float) value).floatValue() );
+        }
+    };
+
+    private static final JsonSerializer BIG_NUMBER = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeAscii( value.toString() );
+        }
+    };
+
+    private static final JsonSerializer DATE = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeLong( ((Date) value).getTime() );
+        }
+    };
+
+    private static final JsonSerializer CALENDAR = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeLong( ((Calendar) value).getTimeInMillis() );
+        }
+    };
+
+    private static final JsonSerializer OPTIONAL = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            writeValue( ((Optional) value).orElse( null ), out );
+        }
+    };
+
+    private static final JsonSerializer MAP = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.begin('{');
+            boolean first = true;
+            for ( final Object o : ((Map) value).entrySet() ) {
+                final Map.Entry entry = (Map.Entry) o;
+                if ( !first )
+                    out.write(',');
+                first = false;
+                final Object key = entry.getKey();
+                out.writeString( key instanceof Enum ? ((Enum) key).name() : String.valueOf( key ) );
+                out.write(':');
+                writeValue( entry.getValue(), out );
+            }
+            out.end('}');
+        }
+    };
+
+    private static final JsonSerializer ITERABLE = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.begin('[');
+            final Iterator i = ((Iterable) value).iterator();
+            if ( i.hasNext() ) {
+                writeValue( i.next(), out );
+                while ( i.hasNext() ) {
+                    out.write(',');
+                    writeValue( i.next(), out );
+                }
+            }
+            out.end(']');
+        }
+    };
+
+    private static final JsonSerializer OBJECT_ARRAY = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            final Object[] array = (Object[]) value;
+            out.begin('[');
+            for ( int i = 0; i < array.length; i++ ) {
+                if ( i > 0 )
+                    out.write(',');
+                writeValue( array[i], out );
+            }
+            out.end(']');
+        }
+    };
+
+    private static final JsonSerializer INT_ARRAY = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            final int[] array = (int[]) value;
+            out.begin('[');
+            for ( int i = 0; i < array.length; i++ ) {
+                if ( i > 0 )
+                    out.write(',');
+                out.writeLong( array[i] );
+            }
+            out.end(']');
+        }
+    };
+
+    private static final JsonSerializer LONG_ARRAY = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            final long[] array = (long[]) value;
+            out.begin('[');
+            for ( int i = 0; i < array.length; i++ ) {
+                if ( i > 0 )
+                    out.write(',');
+                out.writeLong( array[i] );
+            }
+            out.end(']');
+        }
+    };
+
+    private static final JsonSerializer DOUBLE_ARRAY = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            final double[] array = (double[]) value;
+            out.begin('[');
+            for ( int i = 0; i < array.length; i++ ) {
+                if ( i > 0 )
+                    out.write(',');
+                out.writeDouble( array[i] );
+            }
+            out.end(']');
+        }
+    };
+
+    private static final JsonSerializer CHAR_ARRAY = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.writeString( CharBuffer.wrap( (char[]) value ) );
+        }
+    };
+
+    private static final JsonSerializer PRIMITIVE_ARRAY = new JsonSerializer() {
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            final int length = Array.getLength( value );
+            out.begin('[');
+            for ( int i = 0; i < length; i++ ) {
+                if ( i > 0 )
+                    out.write(',');
+                writeValue( Array.get( value, i ), out );
+            }
+            out.end(']');
+        }
+    };
+
+    /**
+     * Writes records and beans as objects.
+     */
+    private static final class BeanSerializer extends JsonSerializer {
+        private final Property[] properties;
+
+        BeanSerializer(final Class type) throws IntrospectionException, IllegalAccessException {
+            final List<Property> properties = new ArrayList<Property>();
+            if ( type.isRecord() ) {
+                final RecordComponent[] components = type.getRecordComponents();
+                for ( int i = 0; i < components.length; i++ )
+                    properties.add( property( components[i].getName(), components[i].getType(), unreflect( components[i].getAccessor() ) ) );
+            } else {
+                final PropertyDescriptor[] descriptors = Introspector.getBeanInfo( type, Object.class ).getPropertyDescriptors();
+                for ( int i = 0; i < descriptors.length; i++ ) {
+                    final Method getter = descriptors[i].getReadMethod();
+                    if ( null != getter )
+                        properties.add( property( descriptors[i].getName(), getter.getReturnType(), unreflect( getter ) ) );
+                }
+                final Field[] fields = type.getFields();
+                for ( int i = 0; i < fields.length; i++ ) {
+                    final int modifiers = fields[i].getModifiers();
+                    if ( !Modifier.isStatic( modifiers ) && !Modifier.isTransient( modifiers ) )
+                        properties.add( property( fields[i].getName(), fields[i].getType(), unreflect( fields[i] ) ) );
+                }
+            }
+            this.properties = properties.toArray( new Property[ properties.size() ] );
+        }
+
+        public void write(final Object value, final JsonWriter out) throws IOException {
+            out.begin('{');
+            for ( int i = 0; i < properties.length; i++ ) {
+                if ( i > 0 )
+                    out.write(',');
+                out.writeRaw( properties[i].name );
+                properties[i].write( value, out );
+            }
+            out.end('}');
+        }
+    }
+
+    private static Property property(final String name, final Class type, final MethodHandle getter) {
+        final byte[] quoted = JsonWriter.encode( name );
+        final byte[] encoded = Arrays.copyOf( quoted, quoted.length + 1 );
+        encoded[ quoted.length ] = ':';
+        if ( boolean.class == type )
+            return new BooleanProperty( encoded, getter.asType( BOOLEAN_GETTER ) );
+        if ( long.class == type || int.class == type || short.class == type || byte.class == type )
+            return new LongProperty( encoded, getter.asType( LONG_GETTER ) );
+        if ( double.class == type )
+            return new DoubleProperty( encoded, getter.asType( DOUBLE_GETTER ) );
+
+        // values of final (and enum) types can be written without looking up their serializers
+        final Class boxed = char.class == type ? Character.class : float.class == type ? Float.class : type;
+        final JsonSerializer fixed = boxed.isEnum() || Modifier.isFinal( boxed.getModifiers() ) ? scalar( boxed ) : null;
+        return new ObjectProperty( encoded, getter.asType( OBJECT_GETTER ), fixed );
+    }
+
+    private static MethodHandle unreflect(final Method method) throws IllegalAccessException {
+        try {
+            return MethodHandles.publicLookup().unreflect( method );
+        }
+        catch (final IllegalAccessException e) {
+            // public members of non-public classes
+            method.setAccessible( true );
+            return MethodHandles.lookup().unreflect( method );
+        }
+    }
+
+    private static MethodHandle unreflect(final Field field) throws IllegalAccessException {
+        try {
+            return MethodHandles.publicLookup().unreflectGetter( field );
+        }
+        catch (final IllegalAccessException e) {
+            field.setAccessible( true );
+            return MethodHandles.lookup().unreflectGetter( field );
+        }
+    }
+
+    /**
+     * A single property of a bean, named by its pre-encoded
+     * <code>"name":</code>.
+     */
+    private abstract static class Property {
+        final byte[] name;
+
+        Property(final byte[] name) {
+            this.name = name;
+        }
+
+        abstract void write(Object bean, JsonWriter out) throws IOException;
+
+        static IOException rethrow(final Throwable t) throws IOException {
+            if ( t instanceof IOException )
+                throw (IOException) t;
+            if ( t instanceof RuntimeException )
+                throw (RuntimeException) t;
+            if ( t instanceof Error )
+                throw (Error) t;
+            throw new IllegalStateException( t );
+        }
+    }
+
+    private static final class ObjectProperty extends Property {
+        private final MethodHandle getter;
+        private final JsonSerializer serializer;
+
+        ObjectProperty(final byte[] name, final MethodHandle getter, final JsonSerializer serializer) {
+            super( name );
+            this.getter = getter;
+            this.serializer = serializer;
+        }
+
+        void write(final Object bean, final JsonWriter out) throws IOException {
+            final Object value;
+            try {
+                value = (Object) getter.invokeExact( bean );
+            }
+            catch (final Throwable t) {
+                throw rethrow( t );
+            }
+            if ( null == value )
+                out.writeNull();
+            else if ( null != serializer )
+                serializer.write( value, out );
+            else
+                writeValue( value, out );
+        }
+    }
+
+    private static final class LongProperty extends Property {
+        private final MethodHandle getter;
+
+        LongProperty(final byte[] name, final MethodHandle getter) {
+            super( name );
+            this.getter = getter;
+        }
+
+        void write(final Object bean, final JsonWriter out) throws IOException {
+            final long value;
+            try {
+                value = (long) getter.invokeExact( bean );
+            }
+            catch (final Throwable t) {
+                throw rethrow( t );
+            }
+            out.writeLong( value );
+        }
+    }
+
+    private static final class DoubleProperty extends Property {
+        private final MethodHandle getter;
+
+        DoubleProperty(final byte[] name, final MethodHandle getter) {
+            super( name );
+            this.getter = getter;
+        }
+
+        void write(final Object bean, final JsonWriter out) throws IOException {
+            final double value;
+            try {
+                value = (double) getter.invokeExact( bean );
+            }
+            catch (final Throwable t) {
+                throw rethrow( t );
+            }
+            out.writeDouble( value );
+        }
+    }
+
+    private static final class BooleanProperty extends Property {
+        private final MethodHandle getter;
+
+        BooleanProperty(final byte[] name, final MethodHandle getter) {
+            super( name );
+            this.getter = getter;
+        }
+
+        void write(final Object bean, final JsonWriter out) throws IOException {
+            final boolean value;
+            try {
+                value = (boolean) getter.invokeExact( bean );
+            }
+            catch (final Throwable t) {
+                throw rethrow( t );
+            }
+            out.writeBoolean( value );
+        }
+    }
+}
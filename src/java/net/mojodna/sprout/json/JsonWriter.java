@@ -0,0 +1,268 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Writes JSON tokens to an output stream as UTF-8, through a small
+ * buffer of its own.  Strings and numbers are encoded directly into the
+ * buffer rather than into intermediate strings.</p>
+ *
+ * <p>The writer does not check that tokens are combined into valid JSON;
+ * that is up to {@link JsonSerializer}s.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public final class JsonWriter {
+    /** Kept small, as writers are created per response (which is buffered as well). */
+    private static final int BUFFER_SIZE = 1024;
+    /** Deepest nesting allowed, to catch cycles. */
+    private static final int MAX_DEPTH = 128;
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+    private static final byte[] MIN_LONG = Long.toString( Long.MIN_VALUE ).getBytes();
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[ BUFFER_SIZE ];
+    private int position;
+    private int depth;
+
+    public JsonWriter(final OutputStream out) {
+        this.out = out;
+    }
+
+    public void writeNull() throws IOException {
+        writeRaw( NULL );
+    }
+
+    public void writeBoolean(final boolean value) throws IOException {
+        writeRaw( value ? TRUE : FALSE );
+    }
+
+    public void writeLong(long value) throws IOException {
+        if ( Long.MIN_VALUE == value ) {
+            writeRaw( MIN_LONG );
+            return;
+        }
+
+        // at most 20 bytes: a sign and 19 digits
+        ensure( 20 );
+        if ( value < 0 ) {
+            buffer[ position++ ] = '-';
+            value = -value;
+        }
+        int end = position + digits( value );
+        final int last = end;
+        do {
+            buffer[ --end ] = (byte) ( '0' + value % 10 );
+            value /= 10;
+        } while ( 0 != value );
+        position = last;
+    }
+
+    /**
+     * Writes a floating-point number; non-finite values (which JSON cannot
+     * represent) are written as <code>null</code>.
+     */
+    public void writeDouble(final double value) throws IOException {
+        if ( Double.isNaN( value ) || Double.isInfinite( value ) ) {
+            writeNull();
+        } else if ( value == (long) value && Math.abs( value ) < 1e15 && !( 0 == value && 1 / value < 0 ) ) {
+            writeLong( (long) value );
+        } else {
+            writeAscii( Double.toString( value ) );
+        }
+    }
+
+    /**
+     * Writes a single-precision number without widening it (which would
+     * expose digits that aren't significant).
+     */
+    public void writeFloat(final float value) throws IOException {
+        if ( Float.isNaN( value ) || Float.isInfinite( value ) ) {
+            writeNull();
+        } else if ( value == (long) value && Math.abs( value ) < 1e7f && !( 0 == value && 1 / value < 0 ) ) {
+            writeLong( (long) value );
+        } else {
+            writeAscii( Float.toString( value ) );
+        }
+    }
+
+    /**
+     * Writes characters that are known not to need escaping or encoding,
+     * such as the representation of a number.
+     */
+    public void writeAscii(final CharSequence value) throws IOException {
+        final int length = value.length();
+        for ( int i = 0; i < length; i++ ) {
+            if ( position == BUFFER_SIZE )
+                drain();
+            buffer[ position++ ] = (byte) value.charAt( i );
+        }
+    }
+
+    /**
+     * Writes a quoted, escaped string.
+     */
+    public void writeString(final CharSequence value) throws IOException {
+        write( '"' );
+        final int length = value.length();
+        for ( int i = 0; i < length; i++ ) {
+            // room for the longest escape (six bytes) or encoding (four)
+            if ( position > BUFFER_SIZE - 6 )
+                drain();
+
+            final char c = value.charAt( i );
+            if ( c >= 0x20 && c < 0x80 ) {
+                if ( '"' == c || '\\' == c )
+                    buffer[ position++ ] = '\\';
+                buffer[ position++ ] = (byte) c;
+            } else if ( c < 0x20 ) {
+                escape( c );
+            } else if ( c < 0x800 ) {
+                buffer[ position++ ] = (byte) ( 0xc0 | c >> 6 );
+                buffer[ position++ ] = (byte) ( 0x80 | c & 0x3f );
+            } else if ( Character.isHighSurrogate( c ) && i + 1 < length && Character.isLowSurrogate( value.charAt( i + 1 ) ) ) {
+                final int cp = Character.toCodePoint( c, value.charAt( ++i ) );
+                buffer[ position++ ] = (byte) ( 0xf0 | cp >> 18 );
+                buffer[ position++ ] = (byte) ( 0x80 | cp >> 12 & 0x3f );
+                buffer[ position++ ] = (byte) ( 0x80 | cp >> 6 & 0x3f );
+                buffer[ position++ ] = (byte) ( 0x80 | cp & 0x3f );
+            } else if ( Character.isSurrogate( c ) ) {
+                // unpaired surrogates can't be encoded as UTF-8
+                escape( c );
+            } else {
+                buffer[ position++ ] = (byte) ( 0xe0 | c >> 12 );
+                buffer[ position++ ] = (byte) ( 0x80 | c >> 6 & 0x3f );
+                buffer[ position++ ] = (byte) ( 0x80 | c & 0x3f );
+            }
+        }
+        write( '"' );
+    }
+
+    private void escape(final char c) {
+        buffer[ position++ ] = '\\';
+        switch ( c ) {
+        case '\n':
+            buffer[ position++ ] = 'n';
+            break;
+        case '\r':
+            buffer[ position++ ] = 'r';
+            break;
+        case '\t':
+            buffer[ position++ ] = 't';
+            break;
+        default:
+            buffer[ position++ ] = 'u';
+            buffer[ position++ ] = HEX[ c >> 12 & 0xf ];
+            buffer[ position++ ] = HEX[ c >> 8 & 0xf ];
+            buffer[ position++ ] = HEX[ c >> 4 & 0xf ];
+            buffer[ position++ ] = HEX[ c & 0xf ];
+        }
+    }
+
+    /**
+     * Writes a single ASCII character, e.g. a bracket or separator.
+     */
+    public void write(final char c) throws IOException {
+        if ( position == BUFFER_SIZE )
+            drain();
+        buffer[ position++ ] = (byte) c;
+    }
+
+    /**
+     * Writes pre-encoded bytes, such as a property name that has already
+     * been quoted and escaped.
+     */
+    public void writeRaw(final byte[] bytes) throws IOException {
+        if ( bytes.length > BUFFER_SIZE ) {
+            drain();
+            out.write( bytes );
+            return;
+        }
+        ensure( bytes.length );
+        System.arraycopy( bytes, 0, buffer, position, bytes.length );
+        position += bytes.length;
+    }
+
+    /**
+     * Writes the start of an object or array.
+     */
+    public void begin(final char bracket) throws IOException {
+        if ( ++depth > MAX_DEPTH )
+            throw new IllegalArgumentException("JSON nested more than " + MAX_DEPTH + " levels deep; is the object graph cyclic?");
+        write( bracket );
+    }
+
+    /**
+     * Writes the end of an object or array.
+     */
+    public void end(final char bracket) throws IOException {
+        depth--;
+        write( bracket );
+    }
+
+    /**
+     * Sends anything buffered to the underlying stream.
+     */
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    /**
+     * Encodes a string as a quoted, escaped JSON string.
+     */
+    public static byte[] encode(final CharSequence value) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream( value.length() + 2 );
+        final JsonWriter writer = new JsonWriter( bytes );
+        try {
+            writer.writeString( value );
+            writer.drain();
+        }
+        catch (final IOException e) {
+            throw new IllegalStateException( e );
+        }
+        return bytes.toByteArray();
+    }
+
+    private void ensure(final int length) throws IOException {
+        if ( position + length > BUFFER_SIZE )
+            drain();
+    }
+
+    private void drain() throws IOException {
+        if ( position > 0 ) {
+            out.write( buffer, 0, position );
+            position = 0;
+        }
+    }
+
+    private static int digits(final long value) {
+        long bound = 10;
+        for ( int i = 1; i < 19; i++ ) {
+            if ( value < bound )
+                return i;
+            bound *= 10;
+        }
+        return 19;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Call count, error count, rejection count, throttled count, in-flight
+ * count and latency histogram for a single action path.</p>
+ *
+ * <p>All counters are striped (<code>LongAdder</code>) so that concurrent
+ * requests for the same path do not contend, and recording does not
+ * allocate.  Latencies are kept in power-of-two buckets of microseconds:
+ * bucket <em>n</em> holds calls that took less than 2<sup>n</sup>&micro;s
+ * (and at least 2<sup>n-1</sup>&micro;s).</p>
+ *
+ * <p>Values read while requests are in progress are not an atomic snapshot;
+ * they are accurate to within the requests being recorded at the time.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class ActionMetrics {
+    /** Number of histogram buckets; the last one holds everything slower than ~18 minutes. */
+    public static final int BUCKETS = 31;
+
+    private final String path;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final AtomicLong maxTime = new AtomicLong();
+    private final LongAdder[] histogram = new LongAdder[ BUCKETS ];
+
+    public ActionMetrics(final String path) {
+        this.path = path;
+        for ( int i = 0; i < BUCKETS; i++ )
+            histogram[i] = new LongAdder();
+    }
+
+    /**
+     * Records the start of a call.
+     *
+     * @return Start time, to be passed to {@link #end(long)}.
+     */
+    public long begin() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the completion of a call, successful or not.
+     *
+     * @param start Value returned by {@link #begin()}.
+     */
+    public void end(final long start) {
+        final long elapsed = System.nanoTime() - start;
+        inFlight.decrement();
+        calls.increment();
+        totalTime.add( elapsed );
+        histogram[ bucket( elapsed ) ].increment();
+
+        long max;
+        while ( elapsed > ( max = maxTime.get() ) && !maxTime.compareAndSet( max, elapsed ) )
+            ;
+    }
+
+    /**
+     * Records a failed call.  Failed calls are also recorded by
+     * {@link #end(long)}.
+     */
+    public void error() {
+        errors.increment();
+    }
+
+    /**
+     * Records a call that was rejected because the server was overloaded
+     * (by a bulkhead or a saturated executor) rather than made.
+     * Rejected calls are not counted as calls.
+     */
+    public void reject() {
+        rejections.increment();
+    }
+
+    /**
+     * Records a call that was turned away because its client exceeded a
+     * rate limit.  Throttled calls are not counted as calls or rejections.
+     */
+    public void throttle() {
+        throttled.increment();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Number of completed calls.
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Number of calls rejected because the server was overloaded.
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Number of calls turned away by a rate limiter.
+     */
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    /**
+     * Number of calls currently in progress.
+     */
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Total time spent in completed calls, in nanoseconds.
+     */
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    /**
+     * Duration of the slowest call, in nanoseconds.
+     */
+    public long getMaxTime() {
+        return maxTime.get();
+    }
+
+    /**
+     * Mean call duration, in nanoseconds.
+     */
+    public long getMeanTime() {
+        final long n = getCalls();
+        return 0 == n ? 0 : getTotalTime() / n;
+    }
+
+    /**
+     * Copies the latency histogram.
+     *
+     * @see #getBucketLimit(int)
+     */
+    public long[] getHistogram() {
+        final long[] counts = new long[ BUCKETS ];
+        for ( int i = 0; i < BUCKETS; i++ )
+            counts[i] = histogram[i].sum();
+        return counts;
+    }
+
+    /**
+     * Estimates a percentile from the latency histogram.
+     *
+     * @param percentile Percentile, between 0 and 100.
+     * @return Upper bound of the bucket containing the percentile, in
+     * nanoseconds (capped at the slowest recorded call).
+     */
+    public long getPercentile(final double percentile) {
+        final long[] counts = getHistogram();
+        long total = 0;
+        for ( int i = 0; i < counts.length; i++ )
+            total += counts[i];
+        if ( 0 == total )
+            return 0;
+
+        final long rank = (long) Math.ceil( total * percentile / 100.0 );
+        long seen = 0;
+        for ( int i = 0; i < counts.length; i++ ) {
+            seen += counts[i];
+            if ( seen >= rank && counts[i] > 0 )
+                return Math.min( getBucketLimit( i ), getMaxTime() );
+        }
+        return getMaxTime();
+    }
+
+    /**
+     * Exclusive upper bound of a histogram bucket, in nanoseconds.
+     */
+    public static long getBucketLimit(final int bucket) {
+        return ( 1L << bucket ) * 1000L;
+    }
+
+    private static int bucket(final long nanos) {
+        final long micros = nanos / 1000L;
+        return Math.min( BUCKETS - 1, 64 - Long.numberOfLeadingZeros( micros ) );
+    }
+}
@@ -0,0 +1,217 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.mojodna.sprout.Sproutlet;
+import net.mojodna.sprout.cache.ResponseCache;
+
+/**
+ * <p>Exposes the metrics recorded by <code>SproutRequestProcessor</code> for
+ * all modules, as plain text (the default) or as JSON
+ * (<code>?format=json</code>).  Times are in milliseconds in the text
+ * format and in nanoseconds in JSON.  Response cache statistics are included
+ * for each module.</p>
+ *
+ * <p>Register it in <code>web.xml</code>:
+ * <pre>
+ * &lt;servlet&gt;
+ *   &lt;servlet-name&gt;metrics&lt;/servlet-name&gt;
+ *   &lt;servlet-class&gt;net.mojodna.sprout.metrics.MetricsSproutlet&lt;/servlet-class&gt;
+ * &lt;/servlet&gt;
+ * &lt;servlet-mapping&gt;
+ *   &lt;servlet-name&gt;metrics&lt;/servlet-name&gt;
+ *   &lt;url-pattern&gt;/sprout/metrics&lt;/url-pattern&gt;
+ * &lt;/servlet-mapping&gt;
+ * &lt;security-constraint&gt;
+ *   &lt;web-resource-collection&gt;
+ *     &lt;web-resource-name&gt;Sprout metrics&lt;/web-resource-name&gt;
+ *     &lt;url-pattern&gt;/sprout/metrics&lt;/url-pattern&gt;
+ *   &lt;/web-resource-collection&gt;
+ *   &lt;auth-constraint&gt;
+ *     &lt;role-name&gt;sprout-admin&lt;/role-name&gt;
+ *   &lt;/auth-constraint&gt;
+ * &lt;/security-constraint&gt;
+ * </pre>
+ * Metrics reveal the application's structure, so access to this servlet
+ * must be restricted, as above.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class MetricsSproutlet extends Sproutlet {
+    private static final String FORMAT_PARAMETER = "format";
+    private static final String FORMAT_JSON = "json";
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+        final List<SproutMetrics> modules = getModules();
+
+        response.setHeader("Cache-Control", "no-cache");
+        if ( FORMAT_JSON.equals( request.getParameter( FORMAT_PARAMETER ) ) ) {
+            response.setContentType("application/json; charset=UTF-8");
+            writeJson( response.getWriter(), modules );
+        } else {
+            response.setContentType("text/plain; charset=UTF-8");
+            writeText( response.getWriter(), modules );
+        }
+    }
+
+    /**
+     * Finds metrics for all modules, ordered by module prefix.
+     */
+    protected List<SproutMetrics> getModules() {
+        final List<String> names = new ArrayList<String>();
+        for ( final Enumeration e = getServletContext().getAttributeNames(); e.hasMoreElements(); ) {
+            final String name = (String) e.nextElement();
+            if ( name.startsWith( SproutMetrics.METRICS_KEY ) )
+                names.add( name );
+        }
+        Collections.sort( names );
+
+        final List<SproutMetrics> modules = new ArrayList<SproutMetrics>();
+        for ( final String name : names ) {
+            final Object metrics = getServletContext().getAttribute( name );
+            if ( metrics instanceof SproutMetrics )
+                modules.add( (SproutMetrics) metrics );
+        }
+        return modules;
+    }
+
+    private void writeText(final PrintWriter out, final List<SproutMetrics> modules) {
+        for ( final SproutMetrics module : modules ) {
+            for ( final ActionMetrics m : module.getAll() ) {
+                out.print( module.getPrefix() + m.getPath() );
+                out.print( " calls=" + m.getCalls() );
+                out.print( " errors=" + m.getErrors() );
+                out.print( " rejections=" + m.getRejections() );
+                out.print( " throttled=" + m.getThrottled() );
+                out.print( " inflight=" + m.getInFlight() );
+                out.print( " mean=" + millis( m.getMeanTime() ) );
+                for ( int i = 0; i < PERCENTILES.length; i++ )
+                    out.print( " p" + (int) PERCENTILES[i] + "=" + millis( m.getPercentile( PERCENTILES[i] ) ) );
+                out.println( " max=" + millis( m.getMaxTime() ) );
+            }
+
+            final ResponseCache cache = getCache( module );
+            if ( null != cache ) {
+                out.print( module.getPrefix() + " cache" );
+                out.print( " hits=" + cache.getHits() );
+                out.print( " misses=" + cache.getMisses() );
+                out.print( " evictions=" + cache.getEvictions() );
+                out.print( " expirations=" + cache.getExpirations() );
+                out.print( " size=" + cache.getSize() );
+                out.println( " bytes=" + cache.getWeight() );
+            }
+        }
+        out.flush();
+    }
+
+    private void writeJson(final PrintWriter out, final List<SproutMetrics> modules) {
+        out.print("{\"modules\":[");
+        for ( int i = 0; i < modules.size(); i++ ) {
+            final SproutMetrics module = modules.get( i );
+            if ( i > 0 )
+                out.print(',');
+            out.print("{\"prefix\":" + quote( module.getPrefix() ) + ",\"actions\":[");
+
+            final List<ActionMetrics> actions = module.getAll();
+            for ( int j = 0; j < actions.size(); j++ ) {
+                final ActionMetrics m = actions.get( j );
+                if ( j > 0 )
+                    out.print(',');
+                out.print("{\"path\":" + quote( m.getPath() ) );
+                out.print(",\"calls\":" + m.getCalls() );
+                out.print(",\"errors\":" + m.getErrors() );
+                out.print(",\"rejections\":" + m.getRejections() );
+                out.print(",\"throttled\":" + m.getThrottled() );
+                out.print(",\"inFlight\":" + m.getInFlight() );
+                out.print(",\"totalTime\":" + m.getTotalTime() );
+                out.print(",\"meanTime\":" + m.getMeanTime() );
+                out.print(",\"maxTime\":" + m.getMaxTime() );
+                for ( int k = 0; k < PERCENTILES.length; k++ )
+                    out.print(",\"p" + (int) PERCENTILES[k] + "\":" + m.getPercentile( PERCENTILES[k] ) );
+
+                // histogram as [upper bound, count] pairs for non-empty buckets
+                out.print(",\"histogram\":[");
+                final long[] counts = m.getHistogram();
+                boolean first = true;
+                for ( int k = 0; k < counts.length; k++ ) {
+                    if ( 0 == counts[k] )
+                        continue;
+                    if ( !first )
+                        out.print(',');
+                    out.print("[" + ActionMetrics.getBucketLimit( k ) + "," + counts[k] + "]");
+                    first = false;
+                }
+                out.print("]}");
+            }
+            out.print("]");
+
+            final ResponseCache cache = getCache( module );
+            if ( null != cache ) {
+                out.print(",\"cache\":{\"hits\":" + cache.getHits() );
+                out.print(",\"misses\":" + cache.getMisses() );
+                out.print(",\"evictions\":" + cache.getEvictions() );
+                out.print(",\"expirations\":" + cache.getExpirations() );
+                out.print(",\"size\":" + cache.getSize() );
+                out.print(",\"bytes\":" + cache.getWeight() + "}");
+            }
+            out.print("}");
+        }
+        out.println("]}");
+        out.flush();
+    }
+
+    /**
+     * Finds the response cache for a module.
+     *
+     * @return Cache or null.
+     */
+    protected ResponseCache getCache(final SproutMetrics module) {
+        final Object cache = getServletContext().getAttribute( ResponseCache.CACHE_KEY + module.getPrefix() );
+        return cache instanceof ResponseCache ? (ResponseCache) cache : null;
+    }
+
+    private static String millis(final long nanos) {
+        return String.format( "%.3fms", nanos / 1000000.0 );
+    }
+
+    private static String quote(final String value) {
+        final StringBuilder sb = new StringBuilder( value.length() + 2 );
+        sb.append('"');
+        for ( int i = 0; i < value.length(); i++ ) {
+            final char c = value.charAt( i );
+            if ( c == '"' || c == '\\' )
+                sb.append('\\').append( c );
+            else if ( c < 0x20 )
+                sb.append( String.format( "\\u%04x", (int) c ) );
+            else
+                sb.append( c );
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import org.apache.struts.config.ActionConfig;
+
+/**
+ * <p>Java Flight Recorder event spanning one phase of the processing of a
+ * request by <code>SproutRequestProcessor</code>, labelled with the action
+ * path and Sprout method (the mapping's <em>parameter</em>).</p>
+ *
+ * <p>Events are enabled by default but only recorded for phases that take
+ * at least a millisecond, so they can be left on in production.  To record
+ * every phase, lower the threshold in the recording's settings, e.g.
+ * <code>net.mojodna.sprout.Dispatch#threshold=0 ms</code>.</p>
+ *
+ * <p>Events are created through {@link PhaseEvents}, which skips them
+ * entirely until a recording has been started.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+@Category("Sprout")
+@StackTrace(false)
+@Threshold("1 ms")
+public abstract class PhaseEvent extends Event {
+    @Label("Path")
+    @Description("Path of the action mapping")
+    String path;
+
+    @Label("Method")
+    @Description("Sprout method dispatched to, if any")
+    String method;
+
+    /**
+     * Ends the event and records it if it should be.
+     *
+     * @param mapping Mapping the request was processed by; may be null.
+     */
+    public void commit(final ActionConfig mapping) {
+        end();
+        if ( shouldCommit() ) {
+            if ( null != mapping ) {
+                path = mapping.getPath();
+                method = mapping.getParameter();
+            }
+            commit();
+        }
+    }
+
+    @Name("net.mojodna.sprout.Populate")
+    @Label("Form Population")
+    @Description("RequestProcessor.processPopulate()")
+    public static final class Populate extends PhaseEvent {}
+
+    @Name("net.mojodna.sprout.Validate")
+    @Label("Form Validation")
+    @Description("RequestProcessor.processValidate()")
+    public static final class Validate extends PhaseEvent {}
+
+    @Name("net.mojodna.sprout.Init")
+    @Label("Sprout Initialization")
+    @Description("Sprout.init(), including onInit()")
+    public static final class Init extends PhaseEvent {}
+
+    @Name("net.mojodna.sprout.Dispatch")
+    @Label("Method Dispatch")
+    @Description("Action.execute(), i.e. the Sprout method; excludes time spent waiting for asynchronous results")
+    public static final class Dispatch extends PhaseEvent {}
+
+    @Name("net.mojodna.sprout.Forward")
+    @Label("Forward")
+    @Description("RequestProcessor.processForwardConfig(), i.e. rendering the view or writing the body")
+    public static final class Forward extends PhaseEvent {}
+}
@@ -0,0 +1,81 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.metrics;
+
+import jdk.jfr.FlightRecorder;
+
+import org.apache.struts.config.ActionConfig;
+
+/**
+ * <p>Begins and ends {@link PhaseEvent}s.  Until Flight Recorder has been
+ * initialized (i.e. a recording has been started), no events are created,
+ * so phases cost a single volatile read.</p>
+ *
+ * <pre>
+ * final PhaseEvent event = PhaseEvents.populate();
+ * try {
+ *     ...
+ * }
+ * finally {
+ *     PhaseEvents.end( event, mapping );
+ * }
+ * </pre>
+ *
+ * <p>(These would be static methods of <code>PhaseEvent</code> were it not
+ * that Flight Recorder rejects event classes that instantiate other event
+ * classes.)</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public final class PhaseEvents {
+    private PhaseEvents() {}
+
+    public static PhaseEvent populate() {
+        return FlightRecorder.isInitialized() ? begin( new PhaseEvent.Populate() ) : null;
+    }
+
+    public static PhaseEvent validate() {
+        return FlightRecorder.isInitialized() ? begin( new PhaseEvent.Validate() ) : null;
+    }
+
+    public static PhaseEvent init() {
+        return FlightRecorder.isInitialized() ? begin( new PhaseEvent.Init() ) : null;
+    }
+
+    public static PhaseEvent dispatch() {
+        return FlightRecorder.isInitialized() ? begin( new PhaseEvent.Dispatch() ) : null;
+    }
+
+    public static PhaseEvent forward() {
+        return FlightRecorder.isInitialized() ? begin( new PhaseEvent.Forward() ) : null;
+    }
+
+    private static PhaseEvent begin(final PhaseEvent event) {
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends an event and records it if it should be.
+     *
+     * @param event Event, or null if none was created.
+     * @param mapping Mapping the request was processed by; may be null.
+     */
+    public static void end(final PhaseEvent event, final ActionConfig mapping) {
+        if ( null != event )
+            event.commit( mapping );
+    }
+}
@@ -0,0 +1,77 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Per-path {@link ActionMetrics} for a single Struts module.  Instances
+ * are created by <code>SproutRequestProcessor</code> and stored in the
+ * servlet context under {@link #METRICS_KEY} followed by the module
+ * prefix.</p>
+ *
+ * @see MetricsSproutlet
+ * @author Seth Fitzsimmons
+ */
+public class SproutMetrics {
+    /** Servlet context attribute (suffixed with the module prefix) holding module metrics. */
+    public static final String METRICS_KEY = SproutMetrics.class.getName();
+
+    private final String prefix;
+    private final ConcurrentMap<String,ActionMetrics> metrics = new ConcurrentHashMap<String,ActionMetrics>();
+
+    /**
+     * @param prefix Module prefix.
+     */
+    public SproutMetrics(final String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Gets (creating if necessary) the metrics for an action path.
+     */
+    public ActionMetrics getMetrics(final String path) {
+        final ActionMetrics m = metrics.get( path );
+        if ( null != m )
+            return m;
+
+        final ActionMetrics created = new ActionMetrics( path );
+        final ActionMetrics existing = metrics.putIfAbsent( path, created );
+        return null == existing ? created : existing;
+    }
+
+    /**
+     * Gets metrics for all paths that have been called, ordered by path.
+     */
+    public List<ActionMetrics> getAll() {
+        final List<ActionMetrics> all = new ArrayList<ActionMetrics>( metrics.values() );
+        Collections.sort( all, new Comparator<ActionMetrics>() {
+            public int compare(final ActionMetrics a, final ActionMetrics b) {
+                return a.getPath().compareTo( b.getPath() );
+            }
+        });
+        return all;
+    }
+}
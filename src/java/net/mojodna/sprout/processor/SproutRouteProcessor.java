@@ -0,0 +1,755 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * <p>Compile-time counterpart to <code>SproutAutoLoaderPlugIn</code>.  Finds
+ * Sprouts, <code>@SproutAction</code>s and <code>@SproutForm</code>s among
+ * the classes being compiled and generates a
+ * <code>SproutRouteRegistry</code> describing every route they would
+ * register at runtime.</p>
+ *
+ * <p>The conventions applied here (paths derived from package names,
+ * CamelCase conversion, default forms, forwards and inputs) <strong>must</strong>
+ * match those in <code>Sprout.setBeanFactory()</code> and
+ * <code>SproutAutoLoaderPlugIn</code>.</p>
+ *
+ * <p><code>@SproutForm</code> interfaces are implemented by generated
+ * subclasses of <code>TypedForm</code> (named after the interface, with an
+ * <code>Impl</code> suffix), which are in turn registered as forms.</p>
+ *
+ * <p>The name of the generated class may be set with
+ * <code>-Asprout.registry=com.example.Routes</code>.</p>
+ *
+ * @see net.mojodna.sprout.SproutRouteRegistry
+ * @author Seth Fitzsimmons
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(SproutRouteProcessor.REGISTRY_OPTION)
+public class SproutRouteProcessor extends AbstractProcessor {
+    public static final String REGISTRY_OPTION = "sprout.registry";
+    static final String DEFAULT_REGISTRY = "net.mojodna.sprout.generated.SproutRoutes";
+
+    static final String SPROUT = "net.mojodna.sprout.Sprout";
+    static final String SPROUT_ACTION = "net.mojodna.sprout.annotation.SproutAction";
+    static final String SPROUT_FORM = "net.mojodna.sprout.annotation.SproutForm";
+    static final String SPROUT_BULKHEAD = "net.mojodna.sprout.annotation.SproutBulkhead";
+    static final String SPROUT_RATE_LIMIT = "net.mojodna.sprout.annotation.SproutRateLimit";
+    static final String ACTION = "org.apache.struts.action.Action";
+    static final String ACTION_FORM = "org.apache.struts.action.ActionForm";
+    static final String ACTION_FORWARD = "org.apache.struts.action.ActionForward";
+    static final String SPROUT_BODY = "net.mojodna.sprout.SproutBody";
+    static final String ACTION_CONFIG = "org.apache.struts.config.ActionConfig";
+    static final String COMPLETABLE_FUTURE = "java.util.concurrent.CompletableFuture";
+    static final String TYPED_FORM = "net.mojodna.sprout.TypedForm";
+    static final String TYPED_FORM_CLASS = "net.mojodna.sprout.TypedFormClass";
+    static final String TYPED_FORM_SUFFIX = "Impl";
+
+    static final String PACKAGE_DELIMITER = ".action";
+    static final String FWD_SUCCESS = "success";
+    static final String DEFAULT_VIEW_EXTENSION = ".jsp";
+    static final String DEFAULT_FORM_SUFFIX = "Form";
+    static final String DEFAULT_SCOPE = "request";
+
+    // TypedFormClass kinds and the TypedForm arrays that hold them
+    private static final int KIND_INT = 0;
+    private static final int KIND_LONG = 1;
+    private static final int KIND_DOUBLE = 2;
+    private static final int KIND_BOOLEAN = 3;
+    private static final int KIND_OBJECT = 4;
+    private static final String[] ARRAYS = new String[] { "ints", "longs", "doubles", "booleans", "objects" };
+
+    /** Number of routes emitted per generated method (keeps methods < 64k). */
+    private static final int CHUNK_SIZE = 100;
+
+    private final List<Route> routes = new ArrayList<Route>();
+    private final Map<String,String> forms = new LinkedHashMap<String,String>();
+    private boolean generated = false;
+    /** Whether forms were generated in the current round. */
+    private boolean generatedForms;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Collects routes from each round's types.  The registry is written in
+     * the first round that does not generate forms (which are registered
+     * when they are compiled in the following round) rather than once
+     * processing is over, as sources created in the last round are not
+     * processed (and javac warns about them).
+     */
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        final int routeCount = routes.size();
+        final int formCount = forms.size();
+        generatedForms = false;
+        for ( final Element e : roundEnv.getRootElements() )
+            collect( e );
+
+        if ( generated ) {
+            if ( routes.size() != routeCount || forms.size() != formCount )
+                processingEnv.getMessager().printMessage( Diagnostic.Kind.WARNING, "Sprouts generated by other processors after the registry was written are not included in it." );
+        } else if ( !generatedForms || roundEnv.processingOver() ) {
+            generated = true;
+            generate();
+        }
+
+        // other processors may be interested in the same annotations
+        return false;
+    }
+
+    /**
+     * Inspects a type and any types nested within it.
+     */
+    private void collect(final Element e) {
+        if ( e.getKind() == ElementKind.INTERFACE ) {
+            final AnnotationMirror form = findAnnotation( e, SPROUT_FORM );
+            if ( null != form )
+                generateForm( (TypeElement) e, (String) values( form ).get("name") );
+            return;
+        }
+
+        if ( e.getKind() != ElementKind.CLASS )
+            return;
+
+        final TypeElement type = (TypeElement) e;
+        if ( !type.getModifiers().contains( Modifier.ABSTRACT ) ) {
+            if ( isSubtype( type, SPROUT ) && !type.getQualifiedName().contentEquals( SPROUT ) )
+                collectSprout( type );
+
+            final AnnotationMirror form = findAnnotation( type, SPROUT_FORM );
+            if ( null != form && isSubtype( type, ACTION_FORM ) )
+                forms.put( (String) values( form ).get("name"), binaryName( type ) );
+
+            final AnnotationMirror action = findAnnotation( type, SPROUT_ACTION );
+            if ( null != action && isSubtype( type, ACTION ) )
+                collectAction( type, action );
+        }
+
+        for ( final TypeElement nested : ElementFilter.typesIn( type.getEnclosedElements() ) ) {
+            if ( nested.getModifiers().contains( Modifier.STATIC ) )
+                collect( nested );
+        }
+    }
+
+    /**
+     * Mirrors Sprout.setBeanFactory() and SproutAutoLoaderPlugIn.loadSprouts().
+     */
+    private void collectSprout(final TypeElement type) {
+        final Elements elements = processingEnv.getElementUtils();
+        final String pkgName = elements.getPackageOf( type ).getQualifiedName().toString();
+        final String path = pkgName.substring( pkgName.indexOf( PACKAGE_DELIMITER ) + PACKAGE_DELIMITER.length() ).replace('.', '/') + "/";
+
+        // most-derived declarations win, as they would with Class.getMethods()
+        final Map<String,ExecutableElement> methods = new LinkedHashMap<String,ExecutableElement>();
+        TypeElement clazz = type;
+        while ( null != clazz ) {
+            for ( final ExecutableElement method : ElementFilter.methodsIn( clazz.getEnclosedElements() ) ) {
+                if ( method.getModifiers().contains( Modifier.PUBLIC ) && isActionMethod( method ) ) {
+                    String name = method.getSimpleName().toString();
+                    if ( name.equals("publick") )
+                        name = "public";
+                    final String url = path + name.replaceAll("([A-Z])", "_$1" ).toLowerCase();
+                    if ( !methods.containsKey( url ) )
+                        methods.put( url, method );
+                }
+            }
+
+            if ( clazz.getQualifiedName().contentEquals( SPROUT ) )
+                break;
+            clazz = superclass( clazz );
+        }
+
+        for ( final Map.Entry<String,ExecutableElement> entry : methods.entrySet() ) {
+            final String url = entry.getKey();
+            final ExecutableElement method = entry.getValue();
+
+            final Route route = new Route();
+            route.type = binaryName( type );
+            route.sprout = true;
+            route.path = url;
+            route.method = method.getSimpleName().toString();
+            route.name = type.getSimpleName() + DEFAULT_FORM_SUFFIX;
+            route.input = url + DEFAULT_VIEW_EXTENSION;
+            route.forwards.add( new String[] { FWD_SUCCESS, url + DEFAULT_VIEW_EXTENSION, "false", null } );
+
+            for ( final AnnotationMirror a : method.getAnnotationMirrors() ) {
+                final String name = annotationName( a );
+                final Map<String,Object> values = values( a );
+                if ( name.equals( SPROUT + ".FormName" ) )
+                    route.name = (String) values.get("value");
+                else if ( name.equals( SPROUT + ".Forward" ) ) {
+                    final List<Object> names = list( values.get("name") );
+                    final List<Object> paths = list( values.get("path") );
+                    final List<Object> redirects = list( values.get("redirect") );
+                    for ( int m = 0; m < paths.size(); m++ ) {
+                        final String fwdName = m < names.size() ? (String) names.get( m ) : FWD_SUCCESS;
+                        final boolean fwdRedirect = m < redirects.size() ? ((Boolean) redirects.get( m )).booleanValue() : false;
+                        route.forwards.add( new String[] { fwdName, (String) paths.get( m ), String.valueOf( fwdRedirect ), null } );
+                    }
+                } else if ( name.equals( SPROUT + ".Input" ) )
+                    route.input = (String) values.get("value");
+                else if ( name.equals( SPROUT + ".Scope" ) )
+                    route.scope = (String) values.get("value");
+                else if ( name.equals( SPROUT + ".Validate" ) ) {
+                    route.validate = ((Boolean) values.get("value")).booleanValue();
+                    route.failFast = ((Boolean) values.get("failFast")).booleanValue();
+                }
+                else if ( name.equals( SPROUT + ".Conditional" ) ) {
+                    route.lastModifiedMethod = (String) values.get("lastModified");
+                    route.etagMethod = (String) values.get("etag");
+                } else if ( name.equals( SPROUT + ".Cache" ) ) {
+                    route.cacheTtl = ((Integer) values.get("ttl")).intValue();
+                    for ( final Object param : list( values.get("params") ) )
+                        route.cacheParameters.add( (String) param );
+                    for ( final Object part : list( values.get("vary") ) )
+                        route.cacheVary.add( (String) part );
+                    route.cacheShared = ((Boolean) values.get("shared")).booleanValue();
+                } else if ( name.equals( SPROUT_BULKHEAD ) )
+                    setBulkhead( route, values );
+                else if ( name.equals( SPROUT_RATE_LIMIT ) )
+                    setRateLimit( route, values );
+            }
+
+            routes.add( route );
+        }
+    }
+
+    /**
+     * Mirrors SproutAutoLoaderPlugIn.loadAction().
+     */
+    private void collectAction(final TypeElement type, final AnnotationMirror action) {
+        final Map<String,Object> values = values( action );
+
+        final Route route = new Route();
+        route.type = binaryName( type );
+        route.sprout = false;
+        route.path = (String) values.get("path");
+        route.scope = (String) values.get("scope");
+        route.validate = ((Boolean) values.get("validate")).booleanValue();
+        route.mappingClass = binaryName( (TypeElement) processingEnv.getTypeUtils().asElement( (TypeMirror) values.get("mappingClass") ) );
+
+        final String name = (String) values.get("name");
+        if ( name.length() > 0 )
+            route.name = name;
+        final String input = (String) values.get("input");
+        if ( input.length() > 0 )
+            route.input = input;
+
+        for ( final Object o : list( values.get("properties") ) ) {
+            final Map<String,Object> property = values( (AnnotationMirror) o );
+            route.properties.add( new String[] { (String) property.get("property"), (String) property.get("value") } );
+        }
+
+        for ( final Object o : list( values.get("forwards") ) ) {
+            final Map<String,Object> forward = values( (AnnotationMirror) o );
+            final String module = (String) forward.get("module");
+            route.forwards.add( new String[] {
+                    (String) forward.get("name"),
+                    (String) forward.get("path"),
+                    String.valueOf( forward.get("redirect") ),
+                    module.length() == 0 ? null : module } );
+        }
+
+        final AnnotationMirror bulkhead = findAnnotation( type, SPROUT_BULKHEAD );
+        if ( null != bulkhead )
+            setBulkhead( route, values( bulkhead ) );
+        final AnnotationMirror rateLimit = findAnnotation( type, SPROUT_RATE_LIMIT );
+        if ( null != rateLimit )
+            setRateLimit( route, values( rateLimit ) );
+
+        routes.add( route );
+    }
+
+    private void setBulkhead(final Route route, final Map<String,Object> values) {
+        route.bulkheadLimit = ((Integer) values.get("value")).intValue();
+        route.bulkheadWait = ((Long) values.get("maxWait")).longValue();
+        route.bulkheadForward = (String) values.get("forward");
+    }
+
+    private void setRateLimit(final Route route, final Map<String,Object> values) {
+        route.rateLimit = ((Double) values.get("value")).doubleValue();
+        route.rateBurst = ((Integer) values.get("burst")).intValue();
+        // enum constants are VariableElements
+        route.rateKey = ((Element) values.get("key")).getSimpleName().toString();
+        route.rateHeader = (String) values.get("header");
+    }
+
+    /**
+     * Generates an implementation of a <code>@SproutForm</code> interface.
+     * Properties are derived from abstract getters and setters; each is
+     * assigned a slot in the <code>TypedForm</code> array for its kind, in
+     * declaration order.
+     */
+    private void generateForm(final TypeElement type, final String formName) {
+        final Elements elements = processingEnv.getElementUtils();
+        final Types types = processingEnv.getTypeUtils();
+
+        if ( !type.getTypeParameters().isEmpty() ) {
+            processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, "@SproutForm interfaces may not be generic.", type );
+            return;
+        }
+
+        final Map<String,Property> properties = new LinkedHashMap<String,Property>();
+        for ( final ExecutableElement method : ElementFilter.methodsIn( elements.getAllMembers( type ) ) ) {
+            if ( !method.getModifiers().contains( Modifier.ABSTRACT ) )
+                continue;
+
+            final String name = method.getSimpleName().toString();
+            final int params = method.getParameters().size();
+            final TypeKind returns = method.getReturnType().getKind();
+
+            final String property;
+            final TypeMirror propertyType;
+            final boolean getter;
+            if ( name.startsWith("get") && name.length() > 3 && 0 == params && returns != TypeKind.VOID ) {
+                property = decapitalize( name.substring( 3 ) );
+                propertyType = method.getReturnType();
+                getter = true;
+            } else if ( name.startsWith("is") && name.length() > 2 && 0 == params && returns == TypeKind.BOOLEAN ) {
+                property = decapitalize( name.substring( 2 ) );
+                propertyType = method.getReturnType();
+                getter = true;
+            } else if ( name.startsWith("set") && name.length() > 3 && 1 == params && returns == TypeKind.VOID ) {
+                property = decapitalize( name.substring( 3 ) );
+                propertyType = method.getParameters().get( 0 ).asType();
+                getter = false;
+            } else {
+                processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, name + " is not a property getter or setter.", method );
+                return;
+            }
+
+            Property p = properties.get( property );
+            if ( null == p ) {
+                p = new Property( property, propertyType );
+                properties.put( property, p );
+            } else if ( !types.isSameType( p.type, propertyType ) ) {
+                processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, "Conflicting types for property '" + property + "'.", method );
+                return;
+            }
+
+            if ( getter )
+                p.getter = name;
+            else
+                p.setter = name;
+        }
+
+        final int[] sizes = new int[ 5 ];
+        for ( final Property p : properties.values() ) {
+            p.kind = kindOf( p.type );
+            p.slot = sizes[ p.kind ]++;
+        }
+
+        final String pkg = elements.getPackageOf( type ).getQualifiedName().toString();
+        String simpleName = type.getSimpleName().toString();
+        for ( Element outer = type.getEnclosingElement(); outer instanceof TypeElement; outer = outer.getEnclosingElement() )
+            simpleName = outer.getSimpleName() + "_" + simpleName;
+        simpleName += TYPED_FORM_SUFFIX;
+        final String className = pkg.length() == 0 ? simpleName : pkg + "." + simpleName;
+
+        try {
+            final PrintWriter out = new PrintWriter( processingEnv.getFiler().createSourceFile( className, type ).openWriter() );
+            generatedForms = true;
+            try {
+                if ( pkg.length() > 0 )
+                    out.println("package " + pkg + ";");
+                out.println();
+                out.println("/**");
+                out.println(" * Generated by " + getClass().getName() + " from " + type.getQualifiedName() + "; do not edit.");
+                out.println(" */");
+                out.println("@" + SPROUT_FORM + "(name=" + quote( formName ) + ")");
+                out.println("@SuppressWarnings(\"unchecked\")");
+                out.println("public class " + simpleName + " extends " + TYPED_FORM + " implements " + type.getQualifiedName() + " {");
+
+                final StringBuilder names = new StringBuilder();
+                final StringBuilder classes = new StringBuilder();
+                final StringBuilder slots = new StringBuilder();
+                for ( final Property p : properties.values() ) {
+                    if ( names.length() > 0 ) {
+                        names.append(", ");
+                        classes.append(", ");
+                        slots.append(", ");
+                    }
+                    names.append( quote( p.name ) );
+                    classes.append( types.erasure( p.type ) ).append(".class");
+                    slots.append( p.slot );
+                }
+                out.println("    private static final " + TYPED_FORM_CLASS + " FORM_CLASS = new " + TYPED_FORM_CLASS + "(");
+                out.println("            " + quote( formName ) + ", " + simpleName + ".class,");
+                out.println("            new String[] { " + names + " },");
+                out.println("            new Class[] { " + classes + " },");
+                out.println("            new int[] { " + slots + " } );");
+                out.println();
+                out.println("    public " + simpleName + "() {");
+                out.println("        super( FORM_CLASS );");
+                out.println("    }");
+
+                for ( final Property p : properties.values() ) {
+                    final String array = ARRAYS[ p.kind ] + "[" + p.slot + "]";
+                    if ( null != p.getter ) {
+                        out.println();
+                        out.println("    public " + p.type + " " + p.getter + "() {");
+                        // objects and narrower primitives (short, float, etc.) need a cast
+                        final TypeKind kind = p.type.getKind();
+                        if ( kind == TypeKind.INT || kind == TypeKind.LONG || kind == TypeKind.DOUBLE || kind == TypeKind.BOOLEAN )
+                            out.println("        return " + array + ";");
+                        else
+                            out.println("        return (" + p.type + ") " + array + ";");
+                        out.println("    }");
+                    }
+                    if ( null != p.setter ) {
+                        out.println();
+                        out.println("    public void " + p.setter + "(final " + p.type + " value) {");
+                        out.println("        " + array + " = value;");
+                        out.println("    }");
+                    }
+                }
+
+                out.println("}");
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (final IOException e) {
+            processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, "Unable to write " + className + ": " + e.getMessage(), type );
+        }
+    }
+
+    /**
+     * Mirrors TypedFormClass.kindOf().
+     */
+    private static int kindOf(final TypeMirror type) {
+        switch ( type.getKind() ) {
+        case INT:
+        case SHORT:
+        case BYTE:
+        case CHAR:
+            return KIND_INT;
+        case LONG:
+            return KIND_LONG;
+        case DOUBLE:
+        case FLOAT:
+            return KIND_DOUBLE;
+        case BOOLEAN:
+            return KIND_BOOLEAN;
+        default:
+            return KIND_OBJECT;
+        }
+    }
+
+    /**
+     * Equivalent to java.beans.Introspector.decapitalize().
+     */
+    private static String decapitalize(final String name) {
+        if ( name.length() > 1 && Character.isUpperCase( name.charAt( 1 ) ) && Character.isUpperCase( name.charAt( 0 ) ) )
+            return name;
+        return Character.toLowerCase( name.charAt( 0 ) ) + name.substring( 1 );
+    }
+
+    /**
+     * Writes the registry source.
+     */
+    private void generate() {
+        String className = processingEnv.getOptions().get( REGISTRY_OPTION );
+        if ( null == className || className.length() == 0 )
+            className = DEFAULT_REGISTRY;
+
+        final int dot = className.lastIndexOf('.');
+        final String pkg = dot > 0 ? className.substring( 0, dot ) : null;
+        final String simpleName = className.substring( dot + 1 );
+
+        try {
+            final PrintWriter out = new PrintWriter( processingEnv.getFiler().createSourceFile( className ).openWriter() );
+            try {
+                if ( null != pkg )
+                    out.println("package " + pkg + ";");
+                out.println();
+                out.println("import java.util.ArrayList;");
+                out.println("import java.util.List;");
+                out.println();
+                out.println("import net.mojodna.sprout.SproutRoute;");
+                out.println("import net.mojodna.sprout.SproutRouteRegistry;");
+                out.println();
+                out.println("import org.apache.struts.action.ActionFormBean;");
+                out.println("import org.apache.struts.config.FormBeanConfig;");
+                out.println();
+                out.println("/**");
+                out.println(" * Generated by " + getClass().getName() + "; do not edit.");
+                out.println(" */");
+                out.println("public final class " + simpleName + " implements SproutRouteRegistry {");
+
+                out.println("    public FormBeanConfig[] getFormBeans() {");
+                out.println("        return new FormBeanConfig[] {");
+                for ( final Map.Entry<String,String> form : forms.entrySet() )
+                    out.println("            new ActionFormBean(" + quote( form.getKey() ) + ", " + quote( form.getValue() ) + "),");
+                out.println("        };");
+                out.println("    }");
+                out.println();
+
+                final int chunks = ( routes.size() + CHUNK_SIZE - 1 ) / CHUNK_SIZE;
+                out.println("    public SproutRoute[] getRoutes() {");
+                out.println("        final List<SproutRoute> routes = new ArrayList<SproutRoute>(" + routes.size() + ");");
+                for ( int i = 0; i < chunks; i++ )
+                    out.println("        routes" + i + "( routes );");
+                out.println("        return routes.toArray( new SproutRoute[ routes.size() ] );");
+                out.println("    }");
+
+                for ( int i = 0; i < chunks; i++ ) {
+                    out.println();
+                    out.println("    private static void routes" + i + "(final List<SproutRoute> routes) {");
+                    out.println("        SproutRoute r;");
+                    for ( final Route route : routes.subList( i * CHUNK_SIZE, Math.min( routes.size(), ( i + 1 ) * CHUNK_SIZE ) ) )
+                        write( out, route );
+                    out.println("    }");
+                }
+
+                out.println("}");
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (final IOException e) {
+            processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, "Unable to write " + className + ": " + e.getMessage() );
+        }
+
+        processingEnv.getMessager().printMessage( Diagnostic.Kind.NOTE, "Generated " + className + " with " + routes.size() + " routes and " + forms.size() + " forms." );
+    }
+
+    private void write(final PrintWriter out, final Route route) {
+        out.println("        r = new SproutRoute();");
+        out.println("        r.setType(" + quote( route.type ) + ");");
+        out.println("        r.setSprout(" + route.sprout + ");");
+        out.println("        r.setPath(" + quote( route.path ) + ");");
+        if ( null != route.method )
+            out.println("        r.setMethod(" + quote( route.method ) + ");");
+        if ( null != route.name )
+            out.println("        r.setName(" + quote( route.name ) + ");");
+        if ( null != route.input )
+            out.println("        r.setInput(" + quote( route.input ) + ");");
+        out.println("        r.setScope(" + quote( route.scope ) + ");");
+        out.println("        r.setValidate(" + route.validate + ");");
+        if ( route.failFast )
+            out.println("        r.setFailFast(true);");
+        if ( route.lastModifiedMethod.length() > 0 || route.etagMethod.length() > 0 )
+            out.println("        r.setConditional(" + quote( route.lastModifiedMethod ) + ", " + quote( route.etagMethod ) + ");");
+        if ( route.cacheTtl > 0 ) {
+            final StringBuilder params = new StringBuilder();
+            for ( final String param : route.cacheParameters )
+                params.append( params.length() > 0 ? ", " : "" ).append( quote( param ) );
+            final StringBuilder vary = new StringBuilder();
+            for ( final String part : route.cacheVary )
+                vary.append( vary.length() > 0 ? ", " : "" ).append( quote( part ) );
+            out.println("        r.setCache(" + route.cacheTtl + ", new String[] { " + params + " }, new String[] { " + vary + " }, " + route.cacheShared + ");");
+        }
+        if ( route.bulkheadLimit > 0 )
+            out.println("        r.setBulkhead(" + route.bulkheadLimit + ", " + route.bulkheadWait + "L, " + quote( route.bulkheadForward ) + ");");
+        if ( route.rateLimit > 0 )
+            out.println("        r.setRateLimit(" + route.rateLimit + ", " + route.rateBurst + ", " + quote( route.rateKey ) + ", " + quote( route.rateHeader ) + ");");
+        if ( !route.sprout )
+            out.println("        r.setMappingClass(" + quote( route.mappingClass ) + ");");
+        for ( final String[] property : route.properties )
+            out.println("        r.addProperty(" + quote( property[0] ) + ", " + quote( property[1] ) + ");");
+        for ( final String[] forward : route.forwards )
+            out.println("        r.addForward(" + quote( forward[0] ) + ", " + quote( forward[1] ) + ", " + forward[2] + ", " + quote( forward[3] ) + ");");
+        out.println("        routes.add( r );");
+    }
+
+    private boolean isSubtype(final TypeElement type, final String superclass) {
+        final TypeElement s = processingEnv.getElementUtils().getTypeElement( superclass );
+        if ( null == s )
+            return false;
+
+        final Types types = processingEnv.getTypeUtils();
+        return types.isSubtype( types.erasure( type.asType() ), types.erasure( s.asType() ) );
+    }
+
+    /**
+     * Mirrors SproutInvokerFactory.isActionMethod().
+     */
+    private boolean isActionMethod(final ExecutableElement method) {
+        if ( null != findAnnotation( method, SPROUT + ".Json" ) )
+            return method.getReturnType().getKind() != TypeKind.VOID;
+        return isActionType( method.getReturnType() );
+    }
+
+    private boolean isActionType(final TypeMirror type) {
+        if ( isType( type, ACTION_FORWARD ) )
+            return true;
+        if ( type.getKind() != TypeKind.DECLARED )
+            return false;
+        final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        return isSubtype( element, SPROUT_BODY ) || isSubtype( element, COMPLETABLE_FUTURE );
+    }
+
+    private boolean isType(final TypeMirror type, final String name) {
+        if ( type.getKind() != TypeKind.DECLARED )
+            return false;
+        return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals( name );
+    }
+
+    private TypeElement superclass(final TypeElement type) {
+        final TypeMirror s = type.getSuperclass();
+        if ( s.getKind() != TypeKind.DECLARED )
+            return null;
+        return (TypeElement) ((DeclaredType) s).asElement();
+    }
+
+    private String binaryName(final TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName( type ).toString();
+    }
+
+    private AnnotationMirror findAnnotation(final Element e, final String name) {
+        for ( final AnnotationMirror a : e.getAnnotationMirrors() ) {
+            if ( annotationName( a ).equals( name ) )
+                return a;
+        }
+        return null;
+    }
+
+    private String annotationName(final AnnotationMirror a) {
+        return ((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    /**
+     * Gets annotation values (including defaults), keyed by element name.
+     */
+    private Map<String,Object> values(final AnnotationMirror a) {
+        final Map<String,Object> values = new HashMap<String,Object>();
+        for ( final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv.getElementUtils().getElementValuesWithDefaults( a ).entrySet() )
+            values.put( entry.getKey().getSimpleName().toString(), entry.getValue().getValue() );
+        return values;
+    }
+
+    /**
+     * Unwraps an array-valued annotation element.
+     */
+    private List<Object> list(final Object value) {
+        if ( null == value )
+            return Collections.emptyList();
+        if ( !( value instanceof List ) )
+            return Collections.singletonList( value );
+
+        final List<Object> values = new ArrayList<Object>();
+        for ( final Object o : (List) value )
+            values.add( ((AnnotationValue) o).getValue() );
+        return values;
+    }
+
+    private static String quote(final String s) {
+        if ( null == s )
+            return "null";
+
+        final StringBuilder sb = new StringBuilder("\"");
+        for ( int i = 0; i < s.length(); i++ ) {
+            final char c = s.charAt( i );
+            switch ( c ) {
+            case '"':  sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+                if ( c < 0x20 || c > 0x7e )
+                    sb.append( String.format( "\\u%04x", Integer.valueOf( c ) ) );
+                else
+                    sb.append( c );
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Property of a <code>@SproutForm</code> interface.
+     */
+    private static class Property {
+        final String name;
+        final TypeMirror type;
+        String getter;
+        String setter;
+        int kind;
+        int slot;
+
+        Property(final String name, final TypeMirror type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Compile-time equivalent of SproutRoute.
+     */
+    private static class Route {
+        String type;
+        boolean sprout;
+        String path;
+        String method;
+        String name;
+        String input;
+        String scope = DEFAULT_SCOPE;
+        boolean validate;
+        boolean failFast;
+        String mappingClass = ACTION_CONFIG;
+        int cacheTtl;
+        boolean cacheShared;
+        int bulkheadLimit;
+        long bulkheadWait;
+        String bulkheadForward = "";
+        double rateLimit;
+        int rateBurst;
+        String rateKey;
+        String rateHeader = "";
+        String lastModifiedMethod = "";
+        String etagMethod = "";
+        final List<String> cacheParameters = new ArrayList<String>();
+        final List<String> cacheVary = new ArrayList<String>();
+        final List<String[]> properties = new ArrayList<String[]>();
+        final List<String[]> forwards = new ArrayList<String[]>();
+    }
+}
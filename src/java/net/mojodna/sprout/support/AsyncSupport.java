@@ -0,0 +1,205 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.support;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Bridge to Servlet 3.0 asynchronous processing.  Sprout is compiled
+ * against the Servlet 2.4 API, so <code>startAsync()</code> and
+ * <code>AsyncContext</code> are resolved reflectively; when the container
+ * does not provide them, {@link #isAvailable(ServletRequest)} returns false
+ * and callers are expected to block instead.</p>
+ *
+ * <p>Also provides the executor that <code>Sprout.async()</code> runs tasks
+ * on: one virtual thread per task where the JVM supports them (Java 21+),
+ * otherwise a bounded pool of daemon threads (see
+ * {@link #setPoolSize(int, int)}).  Tasks that the pool has no room for are
+ * rejected with a <code>RejectedExecutionException</code>, which
+ * <code>SproutRequestProcessor</code> answers with <em>503 Service
+ * Unavailable</em>.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public final class AsyncSupport {
+    private static final Logger log = Logger.getLogger( AsyncSupport.class );
+
+    private static final Method IS_ASYNC_SUPPORTED;
+    private static final Method START_ASYNC;
+    private static final Method DISPATCH;
+    private static final Method COMPLETE;
+
+    public static final int DEFAULT_MAXIMUM_THREADS = 64;
+    public static final int DEFAULT_QUEUE_SIZE = 256;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static int maximumThreads = DEFAULT_MAXIMUM_THREADS;
+    private static int queueSize = DEFAULT_QUEUE_SIZE;
+    private static ExecutorService executor;
+
+    static {
+        Method isAsyncSupported = null;
+        Method startAsync = null;
+        Method dispatch = null;
+        Method complete = null;
+        try {
+            final Class asyncContext = Class.forName( "javax.servlet.AsyncContext", false, ServletRequest.class.getClassLoader() );
+            isAsyncSupported = ServletRequest.class.getMethod( "isAsyncSupported" );
+            startAsync = ServletRequest.class.getMethod( "startAsync", ServletRequest.class, ServletResponse.class );
+            dispatch = asyncContext.getMethod( "dispatch", String.class );
+            complete = asyncContext.getMethod( "complete" );
+        }
+        catch (final ClassNotFoundException e) {
+            log.debug("Servlet 3.0 asynchronous processing is unavailable.");
+        }
+        catch (final NoSuchMethodException e) {
+            log.debug("Servlet 3.0 asynchronous processing is unavailable: " + e.getMessage() );
+        }
+        IS_ASYNC_SUPPORTED = null == complete ? null : isAsyncSupported;
+        START_ASYNC = startAsync;
+        DISPATCH = dispatch;
+        COMPLETE = complete;
+    }
+
+    private AsyncSupport() {}
+
+    /**
+     * Whether a request may be put into asynchronous mode, i.e. the
+     * container implements Servlet 3.0 and every filter and servlet the
+     * request passed through supports it.
+     */
+    public static boolean isAvailable(final ServletRequest request) {
+        if ( null == IS_ASYNC_SUPPORTED )
+            return false;
+
+        try {
+            return ((Boolean) IS_ASYNC_SUPPORTED.invoke( request )).booleanValue();
+        }
+        catch (final Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Puts a request into asynchronous mode.
+     *
+     * @return The request's <code>AsyncContext</code>.
+     */
+    public static Object start(final ServletRequest request, final ServletResponse response) throws ServletException {
+        return invoke( START_ASYNC, request, request, response );
+    }
+
+    /**
+     * Dispatches an asynchronous request to a (context-relative) path.
+     */
+    public static void dispatch(final Object asyncContext, final String path) throws ServletException {
+        invoke( DISPATCH, asyncContext, path );
+    }
+
+    /**
+     * Completes an asynchronous request.
+     */
+    public static void complete(final Object asyncContext) throws ServletException {
+        invoke( COMPLETE, asyncContext );
+    }
+
+    /**
+     * Executor for asynchronous Sprout methods.
+     */
+    public static synchronized ExecutorService getExecutor() {
+        if ( null == executor )
+            executor = createExecutor();
+        return executor;
+    }
+
+    /**
+     * Sizes the pool used when virtual threads are unavailable.  If the
+     * pool has already been created, it is replaced; tasks already
+     * submitted to it still run.
+     *
+     * @param maximumThreads Maximum number of threads running tasks.
+     * @param queueSize Maximum number of tasks waiting for a thread.
+     */
+    public static synchronized void setPoolSize(final int maximumThreads, final int queueSize) {
+        if ( maximumThreads < 1 || queueSize < 0 )
+            throw new IllegalArgumentException("Invalid pool size: " + maximumThreads + " threads, " + queueSize + " queued tasks");
+
+        if ( maximumThreads == AsyncSupport.maximumThreads && queueSize == AsyncSupport.queueSize )
+            return;
+        AsyncSupport.maximumThreads = maximumThreads;
+        AsyncSupport.queueSize = queueSize;
+        if ( executor instanceof ThreadPoolExecutor ) {
+            executor.shutdown();
+            executor = createExecutor();
+        }
+    }
+
+    private static Object invoke(final Method method, final Object target, final Object... args) throws ServletException {
+        if ( null == method )
+            throw new ServletException("Asynchronous processing is not supported by this container.");
+
+        try {
+            return method.invoke( target, args );
+        }
+        catch (final InvocationTargetException e) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException) e.getCause();
+            throw new ServletException( e.getCause() );
+        }
+        catch (final IllegalAccessException e) {
+            throw new ServletException( e );
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        }
+        catch (final Exception e) {
+            log.debug("Virtual threads are unavailable; using a thread pool.");
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadFactory factory = new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread( r, "sprout-async-" + count.incrementAndGet() );
+                t.setDaemon( true );
+                return t;
+            }
+        };
+        // idle threads exit; tasks are rejected once every thread is busy and the queue is full
+        final BlockingQueue<Runnable> queue = 0 == queueSize ? new SynchronousQueue<Runnable>() : new LinkedBlockingQueue<Runnable>( queueSize );
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor( maximumThreads, maximumThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, factory, new ThreadPoolExecutor.AbortPolicy() );
+        pool.allowCoreThreadTimeOut( true );
+        return pool;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * <p>Minimal class file reader.  Extracts the name, superclass and
+ * class-level runtime-visible annotations of a class directly from its
+ * bytes, without loading (or initializing) it.</p>
+ *
+ * <p>Everything else (interfaces, fields, methods, other attributes) is
+ * skipped.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class ClassFileInfo {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final String[] NO_ANNOTATIONS = new String[0];
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    // constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final String name;
+    private final String superName;
+    private final String[] annotations;
+
+    private ClassFileInfo(final String name, final String superName, final String[] annotations) {
+        this.name = name;
+        this.superName = superName;
+        this.annotations = annotations;
+    }
+
+    /**
+     * Binary name of this class, e.g. <code>com.example.Outer$Inner</code>.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Binary name of the superclass, or null for <code>java.lang.Object</code>.
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * Binary names of class-level annotations with runtime retention.
+     */
+    public String[] getAnnotations() {
+        return annotations;
+    }
+
+    /**
+     * Whether this class is annotated with a given annotation.
+     *
+     * @param annotation Binary name of the annotation type.
+     */
+    public boolean hasAnnotation(final String annotation) {
+        for ( int i = 0; i < annotations.length; i++ ) {
+            if ( annotations[i].equals( annotation ) )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a class file.
+     *
+     * @param bytes Contents of a class file.
+     * @return Information about the class.
+     * @throws IOException if the class file is truncated or malformed.
+     */
+    public static ClassFileInfo read(final byte[] bytes) throws IOException {
+        final DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes ) );
+        if ( in.readInt() != MAGIC )
+            throw new IOException("Not a class file.");
+        in.readUnsignedShort(); // minor_version
+        in.readUnsignedShort(); // major_version
+
+        // only UTF8 and Class entries are of interest
+        final int count = in.readUnsignedShort();
+        final String[] utf8 = new String[ count ];
+        final int[] classes = new int[ count ];
+        for ( int i = 1; i < count; i++ ) {
+            final int tag = in.readUnsignedByte();
+            switch ( tag ) {
+            case CONSTANT_UTF8:
+                utf8[i] = in.readUTF();
+                break;
+            case CONSTANT_CLASS:
+                classes[i] = in.readUnsignedShort();
+                break;
+            case CONSTANT_STRING:
+            case CONSTANT_METHOD_TYPE:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                in.skipBytes( 2 );
+                break;
+            case CONSTANT_METHOD_HANDLE:
+                in.skipBytes( 3 );
+                break;
+            case CONSTANT_INTEGER:
+            case CONSTANT_FLOAT:
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                in.skipBytes( 4 );
+                break;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                in.skipBytes( 8 );
+                // 8-byte constants take up two entries
+                i++;
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag: " + tag);
+            }
+        }
+
+        in.readUnsignedShort(); // access_flags
+        final String name = toBinaryName( utf8[ classes[ in.readUnsignedShort() ] ] );
+        final int superIndex = in.readUnsignedShort();
+        final String superName = 0 == superIndex ? null : toBinaryName( utf8[ classes[ superIndex ] ] );
+
+        in.skipBytes( 2 * in.readUnsignedShort() ); // interfaces
+        skipMembers( in ); // fields
+        skipMembers( in ); // methods
+
+        String[] annotations = NO_ANNOTATIONS;
+        final int attributes = in.readUnsignedShort();
+        for ( int i = 0; i < attributes; i++ ) {
+            final String attribute = utf8[ in.readUnsignedShort() ];
+            final int length = in.readInt();
+            if ( RUNTIME_VISIBLE_ANNOTATIONS.equals( attribute ) ) {
+                annotations = new String[ in.readUnsignedShort() ];
+                for ( int j = 0; j < annotations.length; j++ ) {
+                    annotations[j] = fromDescriptor( utf8[ in.readUnsignedShort() ] );
+                    final int pairs = in.readUnsignedShort();
+                    for ( int k = 0; k < pairs; k++ ) {
+                        in.skipBytes( 2 ); // element_name_index
+                        skipElementValue( in );
+                    }
+                }
+            } else {
+                in.skipBytes( length );
+            }
+        }
+
+        return new ClassFileInfo( name, superName, annotations );
+    }
+
+    private static void skipMembers(final DataInputStream in) throws IOException {
+        final int count = in.readUnsignedShort();
+        for ( int i = 0; i < count; i++ ) {
+            in.skipBytes( 6 ); // access_flags, name_index, descriptor_index
+            final int attributes = in.readUnsignedShort();
+            for ( int j = 0; j < attributes; j++ ) {
+                in.skipBytes( 2 );
+                in.skipBytes( in.readInt() );
+            }
+        }
+    }
+
+    private static void skipElementValue(final DataInputStream in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch ( tag ) {
+        case 'e':
+            in.skipBytes( 4 ); // type_name_index, const_name_index
+            break;
+        case '@':
+            in.skipBytes( 2 ); // type_index
+            final int pairs = in.readUnsignedShort();
+            for ( int i = 0; i < pairs; i++ ) {
+                in.skipBytes( 2 );
+                skipElementValue( in );
+            }
+            break;
+        case '[':
+            final int values = in.readUnsignedShort();
+            for ( int i = 0; i < values; i++ )
+                skipElementValue( in );
+            break;
+        default:
+            // const_value_index or class_info_index
+            in.skipBytes( 2 );
+        }
+    }
+
+    private static String toBinaryName(final String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    /**
+     * Converts a field descriptor (<code>Lcom/example/Foo;</code>) to a binary
+     * name.
+     */
+    private static String fromDescriptor(final String descriptor) {
+        return toBinaryName( descriptor.substring( 1, descriptor.length() - 1 ) );
+    }
+}
@@ -0,0 +1,320 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Scans directories and jars for class files, reading their names,
+ * superclasses and annotations from class bytes rather than by loading
+ * them.  Classes that turn out to be interesting can subsequently be loaded
+ * (without being initialized) with {@link #loadClass(String)}.</p>
+ *
+ * <p>Scanning is spread across all available processors.  Entries that
+ * cannot be read are logged and skipped.  Where a class appears in more
+ * than one location, the first location wins, as it would when loading
+ * the class.</p>
+ *
+ * @see ClassFileInfo
+ * @author Seth Fitzsimmons
+ */
+public class ClassPathScanner {
+    private static final Logger log = Logger.getLogger( ClassPathScanner.class );
+    private static final String CLASS_EXTENSION = ".class";
+    /** Number of class files in a directory read by a single task. */
+    private static final int BATCH_SIZE = 256;
+
+    private final ClassLoader loader;
+    private final ConcurrentHashMap<String,Found> index = new ConcurrentHashMap<String,Found>();
+
+    /**
+     * @param loader ClassLoader used to resolve classes outside of the
+     * scanned locations and to load classes once found.
+     */
+    public ClassPathScanner(final ClassLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Scans a set of directories and jars.  Locations that are neither are
+     * ignored.
+     *
+     * @param locations Classpath entries, in classpath order.
+     */
+    public void scan(final File[] locations) {
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for ( int i = 0; i < locations.length; i++ ) {
+            final File location = locations[i];
+            if ( location.isDirectory() ) {
+                final List<File> files = new ArrayList<File>();
+                listClassFiles( location, files );
+                for ( int j = 0; j < files.size(); j += BATCH_SIZE )
+                    tasks.add( new DirectoryTask( files.subList( j, Math.min( files.size(), j + BATCH_SIZE ) ), i ) );
+            } else if ( location.isFile() && location.getName().endsWith(".jar") ) {
+                tasks.add( new JarTask( location, i ) );
+            }
+        }
+
+        final int threads = Math.max( 1, Math.min( tasks.size(), Runtime.getRuntime().availableProcessors() ) );
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            final List<Future<Object>> results = executor.invokeAll( tasks );
+            for ( final Future<Object> result : results ) {
+                try {
+                    result.get();
+                }
+                catch (final ExecutionException e) {
+                    log.warn("Error while scanning classpath: " + e.getCause().getMessage(), e.getCause() );
+                }
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Gets information about all classes found so far.
+     */
+    public Collection<ClassFileInfo> getClasses() {
+        final List<ClassFileInfo> classes = new ArrayList<ClassFileInfo>( index.size() );
+        for ( final Found found : index.values() )
+            classes.add( found.info );
+        return classes;
+    }
+
+    /**
+     * Gets information about a specific class.
+     *
+     * @param className Binary name of the class.
+     * @return Class information or null if it has not been scanned.
+     */
+    public ClassFileInfo getClass(final String className) {
+        final Found found = index.get( className );
+        return null == found ? null : found.info;
+    }
+
+    /**
+     * Determines whether a class descends from (or is) another class.
+     * Superclasses that were scanned are resolved from the index; the first
+     * one that was not (typically a framework or JDK class) is loaded without
+     * being initialized.
+     *
+     * @param className Binary name of the class to check.
+     * @param superclass Binary name of the potential superclass.
+     */
+    public boolean isSubclass(final String className, final String superclass) {
+        String name = className;
+        while ( null != name ) {
+            if ( name.equals( superclass ) )
+                return true;
+
+            final ClassFileInfo info = getClass( name );
+            if ( null == info ) {
+                try {
+                    return loadClass( superclass ).isAssignableFrom( loadClass( name ) );
+                }
+                catch (final ClassNotFoundException e) {
+                    return false;
+                }
+                catch (final LinkageError e) {
+                    return false;
+                }
+            }
+            name = info.getSuperName();
+        }
+        return false;
+    }
+
+    /**
+     * Loads a class without initializing it.
+     */
+    public Class loadClass(final String className) throws ClassNotFoundException {
+        return Class.forName( className, false, loader );
+    }
+
+    private void listClassFiles(final File directory, final List<File> files) {
+        final File[] children = directory.listFiles();
+        if ( null == children )
+            return;
+
+        for ( int i = 0; i < children.length; i++ ) {
+            if ( children[i].isDirectory() )
+                listClassFiles( children[i], files );
+            else if ( children[i].getName().endsWith( CLASS_EXTENSION ) )
+                files.add( children[i] );
+        }
+    }
+
+    /**
+     * Indexes a class file.  Locations are scanned concurrently, so a
+     * duplicate replaces a class found earlier if its location comes first
+     * on the classpath.
+     *
+     * @param rank Position of the class's location on the classpath.
+     */
+    private void add(final byte[] bytes, final String source, final int rank) {
+        final ClassFileInfo info;
+        try {
+            info = ClassFileInfo.read( bytes );
+        }
+        catch (final IOException e) {
+            log.warn("Unable to read class file " + source + ": " + e.getMessage() );
+            return;
+        }
+        catch (final RuntimeException e) {
+            log.warn("Unable to read class file " + source + ": " + e );
+            return;
+        }
+
+        final Found found = new Found( info, source, rank );
+        Found existing = index.putIfAbsent( info.getName(), found );
+        while ( null != existing && rank < existing.rank ) {
+            if ( index.replace( info.getName(), existing, found ) ) {
+                log.debug("Duplicate class " + info.getName() + " in " + existing.source + "; using " + source );
+                return;
+            }
+            existing = index.putIfAbsent( info.getName(), found );
+        }
+        if ( null != existing )
+            log.debug("Duplicate class " + info.getName() + " in " + source + "; using " + existing.source );
+    }
+
+    private static byte[] read(final InputStream in, final int size) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream( size > 0 ? size : 4096 );
+        final byte[] buffer = new byte[4096];
+        int n;
+        while ( -1 != ( n = in.read( buffer ) ) )
+            out.write( buffer, 0, n );
+        return out.toByteArray();
+    }
+
+    /**
+     * A scanned class and where it was found.
+     */
+    private static class Found {
+        final ClassFileInfo info;
+        final String source;
+        final int rank;
+
+        Found(final ClassFileInfo info, final String source, final int rank) {
+            this.info = info;
+            this.source = source;
+            this.rank = rank;
+        }
+    }
+
+    private class DirectoryTask implements Callable<Object> {
+        private final List<File> files;
+        private final int rank;
+
+        DirectoryTask(final List<File> files, final int rank) {
+            this.files = files;
+            this.rank = rank;
+        }
+
+        public Object call() {
+            for ( final File file : files ) {
+                try {
+                    final InputStream in = new FileInputStream( file );
+                    try {
+                        add( read( in, (int) file.length() ), file.getPath(), rank );
+                    }
+                    finally {
+                        in.close();
+                    }
+                }
+                catch (final IOException e) {
+                    log.warn("Unable to read class file " + file.getPath() + ": " + e.getMessage() );
+                }
+            }
+            return null;
+        }
+    }
+
+    private class JarTask implements Callable<Object> {
+        private final File file;
+        private final int rank;
+
+        JarTask(final File file, final int rank) {
+            this.file = file;
+            this.rank = rank;
+        }
+
+        public Object call() {
+            final JarFile jar;
+            try {
+                jar = new JarFile( file );
+            }
+            catch (final IOException e) {
+                log.warn("Unable to open " + file.getPath() + "; skipping it: " + e.getMessage() );
+                return null;
+            }
+
+            try {
+                for ( final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                    final JarEntry entry = entries.nextElement();
+                    final String name = entry.getName();
+                    if ( !name.endsWith( CLASS_EXTENSION ) || name.startsWith("META-INF/") || name.endsWith("module-info.class") )
+                        continue;
+
+                    try {
+                        final InputStream in = jar.getInputStream( entry );
+                        try {
+                            add( read( in, (int) entry.getSize() ), file.getPath() + "!/" + name, rank );
+                        }
+                        finally {
+                            in.close();
+                        }
+                    }
+                    catch (final IOException e) {
+                        log.warn("Unable to read class file " + file.getPath() + "!/" + name + ": " + e.getMessage() );
+                    }
+                }
+            }
+            finally {
+                try {
+                    jar.close();
+                }
+                catch (final IOException e) {
+                    log.debug("Unable to close " + file.getPath() + ": " + e.getMessage() );
+                }
+            }
+            return null;
+        }
+    }
+}
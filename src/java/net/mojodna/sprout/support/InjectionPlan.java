@@ -0,0 +1,150 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.support;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.log4j.Logger;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * <p>Pre-computed set of properties to auto-wire for a given class, along
+ * with a pre-bound setter for each.  Plans are computed once per class (see
+ * <code>SproutUtils.getInjectionPlan()</code>) so that re-wiring an instance
+ * (a pooled tag, for example) does not involve any introspection.</p>
+ *
+ * <p>Singleton beans are resolved once per
+ * <code>WebApplicationContext</code>; other beans are retrieved from the
+ * context each time.</p>
+ *
+ * @see SproutUtils#initialize(Object, WebApplicationContext, Class)
+ * @author Seth Fitzsimmons
+ */
+public class InjectionPlan {
+    private static final Logger log = Logger.getLogger( InjectionPlan.class );
+    private static final MethodType SETTER_TYPE = MethodType.methodType( void.class, Object.class, Object.class );
+
+    private final String[] names;
+    private final MethodHandle[] setters;
+    private volatile Resolved resolved;
+
+    /**
+     * @param beanClass Class to be wired.
+     * @param clazz Type of Sprout.  Only setters declared in this class and
+     * its subclasses are candidates for auto-wiring.
+     */
+    InjectionPlan(final Class beanClass, final Class clazz) {
+        final Collection<Method> methods = SproutUtils.getDeclaredMethods( beanClass, clazz );
+
+        final List<String> names = new ArrayList<String>();
+        final List<MethodHandle> setters = new ArrayList<MethodHandle>();
+
+        final PropertyDescriptor[] descriptors = PropertyUtils.getPropertyDescriptors( beanClass );
+        for ( final PropertyDescriptor descriptor : descriptors ) {
+            final Class type = descriptor.getPropertyType();
+            final Method writeMethod = descriptor.getWriteMethod();
+            
+            // beans should never be of type String
+            // there must be a write method present
+            // the write method must exist within the relevant subset of declared methods
+            if ( null != type && !type.equals( String.class ) && null != writeMethod && methods.contains( writeMethod ) ) {
+                try {
+                    final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn( writeMethod.getDeclaringClass(), MethodHandles.lookup() );
+                    setters.add( lookup.unreflect( writeMethod ).asType( SETTER_TYPE ) );
+                    names.add( descriptor.getName() );
+                }
+                catch (final IllegalAccessException e) {
+                    throw new RuntimeException( e );
+                }
+            }
+        }
+
+        this.names = names.toArray( new String[ names.size() ] );
+        this.setters = setters.toArray( new MethodHandle[ setters.size() ] );
+    }
+
+    /**
+     * Gets the names of the properties that will be wired.
+     */
+    public String[] getPropertyNames() {
+        return names.clone();
+    }
+
+    /**
+     * Wires a bean with beans of the same name from a Spring context.
+     *
+     * @param bean Bean to wire.
+     * @param context WebApplicationContext containing Spring beans.
+     */
+    public void inject(final Object bean, final WebApplicationContext context) {
+        if ( 0 == names.length )
+            return;
+
+        Resolved r = resolved;
+        if ( null == r || r.context != context ) {
+            r = new Resolved( context );
+            resolved = r;
+        }
+
+        for ( int i = 0; i < setters.length; i++ ) {
+            Object serviceBean = r.singletons[i];
+            if ( null == serviceBean )
+                serviceBean = context.getBean( names[i] );
+
+            if ( null != serviceBean ) {
+                if ( log.isDebugEnabled() )
+                    log.debug("Wiring property '" + names[i] + "' with bean of type " + serviceBean.getClass().getName() );
+                try {
+                    setters[i].invokeExact( bean, serviceBean );
+                }
+                catch (final RuntimeException e) {
+                    throw e;
+                }
+                catch (final Error e) {
+                    throw e;
+                }
+                catch (final Throwable t) {
+                    throw new RuntimeException( t );
+                }
+            }
+        }
+    }
+
+    /**
+     * Singleton beans resolved from a specific context.
+     */
+    private class Resolved {
+        final WebApplicationContext context;
+        final Object[] singletons;
+
+        Resolved(final WebApplicationContext context) {
+            this.context = context;
+            this.singletons = new Object[ names.length ];
+            for ( int i = 0; i < names.length; i++ ) {
+                if ( context.containsBean( names[i] ) && context.isSingleton( names[i] ) )
+                    singletons[i] = context.getBean( names[i] );
+            }
+        }
+    }
+}
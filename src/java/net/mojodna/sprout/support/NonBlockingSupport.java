@@ -0,0 +1,255 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.support;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Bridge to Servlet 3.1 non-blocking I/O.  Like {@link AsyncSupport},
+ * this resolves the API reflectively; listeners are implemented with
+ * dynamic proxies that delegate to the (identically named) methods of
+ * {@link ReadHandler}, {@link WriteHandler} and {@link AsyncHandler}.  When
+ * the container does not provide the API,
+ * {@link #isAvailable(ServletRequest)} returns false.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public final class NonBlockingSupport {
+    private static final Logger log = Logger.getLogger( NonBlockingSupport.class );
+
+    private static final Class READ_LISTENER;
+    private static final Class WRITE_LISTENER;
+    private static final Class ASYNC_LISTENER;
+    private static final Method SET_READ_LISTENER;
+    private static final Method IS_INPUT_READY;
+    private static final Method IS_FINISHED;
+    private static final Method SET_WRITE_LISTENER;
+    private static final Method IS_OUTPUT_READY;
+    private static final Method SET_TIMEOUT;
+    private static final Method ADD_LISTENER;
+    private static final Method GET_THROWABLE;
+
+    static {
+        Class readListener = null;
+        Class writeListener = null;
+        Class asyncListener = null;
+        Method setReadListener = null;
+        Method isInputReady = null;
+        Method isFinished = null;
+        Method setWriteListener = null;
+        Method isOutputReady = null;
+        Method setTimeout = null;
+        Method addListener = null;
+        Method getThrowable = null;
+        try {
+            final ClassLoader loader = ServletRequest.class.getClassLoader();
+            readListener = Class.forName( "javax.servlet.ReadListener", false, loader );
+            writeListener = Class.forName( "javax.servlet.WriteListener", false, loader );
+            asyncListener = Class.forName( "javax.servlet.AsyncListener", false, loader );
+            final Class asyncContext = Class.forName( "javax.servlet.AsyncContext", false, loader );
+            final Class asyncEvent = Class.forName( "javax.servlet.AsyncEvent", false, loader );
+            setReadListener = ServletInputStream.class.getMethod( "setReadListener", readListener );
+            isInputReady = ServletInputStream.class.getMethod( "isReady" );
+            isFinished = ServletInputStream.class.getMethod( "isFinished" );
+            setWriteListener = ServletOutputStream.class.getMethod( "setWriteListener", writeListener );
+            isOutputReady = ServletOutputStream.class.getMethod( "isReady" );
+            setTimeout = asyncContext.getMethod( "setTimeout", long.class );
+            addListener = asyncContext.getMethod( "addListener", asyncListener );
+            getThrowable = asyncEvent.getMethod( "getThrowable" );
+        }
+        catch (final ClassNotFoundException e) {
+            log.debug("Servlet 3.1 non-blocking I/O is unavailable.");
+        }
+        catch (final NoSuchMethodException e) {
+            log.debug("Servlet 3.1 non-blocking I/O is unavailable: " + e.getMessage() );
+        }
+        final boolean available = null != getThrowable;
+        READ_LISTENER = available ? readListener : null;
+        WRITE_LISTENER = available ? writeListener : null;
+        ASYNC_LISTENER = available ? asyncListener : null;
+        SET_READ_LISTENER = available ? setReadListener : null;
+        IS_INPUT_READY = isInputReady;
+        IS_FINISHED = isFinished;
+        SET_WRITE_LISTENER = setWriteListener;
+        IS_OUTPUT_READY = isOutputReady;
+        SET_TIMEOUT = setTimeout;
+        ADD_LISTENER = addListener;
+        GET_THROWABLE = getThrowable;
+    }
+
+    private NonBlockingSupport() {}
+
+    /**
+     * Mirror of <code>javax.servlet.ReadListener</code>.
+     */
+    public interface ReadHandler {
+        void onDataAvailable() throws IOException;
+        void onAllDataRead() throws IOException;
+        void onError(Throwable t);
+    }
+
+    /**
+     * Mirror of <code>javax.servlet.WriteListener</code>.
+     */
+    public interface WriteHandler {
+        void onWritePossible() throws IOException;
+        void onError(Throwable t);
+    }
+
+    /**
+     * Simplified mirror of <code>javax.servlet.AsyncListener</code>.
+     */
+    public interface AsyncHandler {
+        void onComplete();
+        void onTimeout();
+        void onError(Throwable t);
+    }
+
+    /**
+     * Whether a request may be processed with non-blocking I/O, i.e. the
+     * container implements Servlet 3.1 and the request may be put into
+     * asynchronous mode.
+     */
+    public static boolean isAvailable(final ServletRequest request) {
+        return null != SET_READ_LISTENER && AsyncSupport.isAvailable( request );
+    }
+
+    public static void setReadListener(final ServletInputStream in, final ReadHandler handler) throws IOException {
+        invoke( SET_READ_LISTENER, in, proxy( READ_LISTENER, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final String name = method.getName();
+                if ( "onDataAvailable".equals( name ) )
+                    handler.onDataAvailable();
+                else if ( "onAllDataRead".equals( name ) )
+                    handler.onAllDataRead();
+                else if ( "onError".equals( name ) )
+                    handler.onError( (Throwable) args[0] );
+                else
+                    return invokeObjectMethod( proxy, method, args, handler );
+                return null;
+            }
+        }));
+    }
+
+    public static void setWriteListener(final ServletOutputStream out, final WriteHandler handler) throws IOException {
+        invoke( SET_WRITE_LISTENER, out, proxy( WRITE_LISTENER, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final String name = method.getName();
+                if ( "onWritePossible".equals( name ) )
+                    handler.onWritePossible();
+                else if ( "onError".equals( name ) )
+                    handler.onError( (Throwable) args[0] );
+                else
+                    return invokeObjectMethod( proxy, method, args, handler );
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * Adds a listener to an <code>AsyncContext</code>.
+     */
+    public static void addListener(final Object asyncContext, final AsyncHandler handler) throws IOException {
+        invoke( ADD_LISTENER, asyncContext, proxy( ASYNC_LISTENER, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final String name = method.getName();
+                if ( "onComplete".equals( name ) )
+                    handler.onComplete();
+                else if ( "onTimeout".equals( name ) )
+                    handler.onTimeout();
+                else if ( "onError".equals( name ) )
+                    handler.onError( (Throwable) NonBlockingSupport.invoke( GET_THROWABLE, args[0] ) );
+                else if ( !"onStartAsync".equals( name ) )
+                    return invokeObjectMethod( proxy, method, args, handler );
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * Sets the timeout of an <code>AsyncContext</code>.
+     *
+     * @param timeout Milliseconds; 0 for none.
+     */
+    public static void setTimeout(final Object asyncContext, final long timeout) throws IOException {
+        invoke( SET_TIMEOUT, asyncContext, Long.valueOf( timeout ) );
+    }
+
+    /**
+     * Whether data can be read without blocking.
+     */
+    public static boolean isReady(final ServletInputStream in) throws IOException {
+        return ((Boolean) invoke( IS_INPUT_READY, in )).booleanValue();
+    }
+
+    /**
+     * Whether all of the request body has been read.
+     */
+    public static boolean isFinished(final ServletInputStream in) throws IOException {
+        return ((Boolean) invoke( IS_FINISHED, in )).booleanValue();
+    }
+
+    /**
+     * Whether data can be written without blocking.
+     */
+    public static boolean isReady(final ServletOutputStream out) throws IOException {
+        return ((Boolean) invoke( IS_OUTPUT_READY, out )).booleanValue();
+    }
+
+    private static Object proxy(final Class listener, final InvocationHandler handler) throws IOException {
+        if ( null == listener )
+            throw new IOException("Non-blocking I/O is not supported by this container.");
+        return Proxy.newProxyInstance( listener.getClassLoader(), new Class[] { listener }, handler );
+    }
+
+    private static Object invokeObjectMethod(final Object proxy, final Method method, final Object[] args, final Object handler) {
+        final String name = method.getName();
+        if ( "equals".equals( name ) )
+            return Boolean.valueOf( proxy == args[0] );
+        if ( "hashCode".equals( name ) )
+            return Integer.valueOf( System.identityHashCode( proxy ) );
+        return handler.toString();
+    }
+
+    private static Object invoke(final Method method, final Object target, final Object... args) throws IOException {
+        if ( null == method )
+            throw new IOException("Non-blocking I/O is not supported by this container.");
+
+        try {
+            return method.invoke( target, args );
+        }
+        catch (final InvocationTargetException e) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException) e.getCause();
+            if ( e.getCause() instanceof IOException )
+                throw (IOException) e.getCause();
+            throw new IOException( e.getCause() );
+        }
+        catch (final IllegalAccessException e) {
+            throw new IOException( e );
+        }
+    }
+}
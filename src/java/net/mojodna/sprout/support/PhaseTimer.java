@@ -0,0 +1,91 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.support;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Accumulates time spent in named phases.  Unlike Spring's
+ * <code>StopWatch</code>, phases may be entered repeatedly and interleaved;
+ * the time spent in each is summed.</p>
+ *
+ * <pre>
+ * final long start = timer.start();
+ * ...
+ * timer.stop( "lookup", start );
+ * </pre>
+ *
+ * <p>Not thread-safe.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class PhaseTimer {
+    private final Map<String,Long> phases = new LinkedHashMap<String,Long>();
+
+    /**
+     * @return Start time, to be passed to {@link #stop(String, long)}.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time elapsed since <code>start</code> to a phase.
+     *
+     * @param phase Phase name.
+     * @param start Value returned by {@link #start()}.
+     */
+    public void stop(final String phase, final long start) {
+        final long elapsed = System.nanoTime() - start;
+        final Long total = phases.get( phase );
+        phases.put( phase, null == total ? elapsed : total + elapsed );
+    }
+
+    /**
+     * Time spent in each phase (in nanoseconds), in the order in which
+     * phases were first recorded.
+     */
+    public Map<String,Long> getPhases() {
+        return Collections.unmodifiableMap( phases );
+    }
+
+    /**
+     * Time spent in a phase, in nanoseconds.
+     */
+    public long getTime(final String phase) {
+        final Long total = phases.get( phase );
+        return null == total ? 0 : total;
+    }
+
+    public void reset() {
+        phases.clear();
+    }
+
+    /**
+     * Formats phases as <em>name=12ms</em>, comma-separated.
+     */
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for ( final Map.Entry<String,Long> phase : phases.entrySet() ) {
+            if ( sb.length() > 0 )
+                sb.append(", ");
+            sb.append( phase.getKey() ).append('=').append( phase.getValue() / 1000000L ).append("ms");
+        }
+        return sb.toString();
+    }
+}
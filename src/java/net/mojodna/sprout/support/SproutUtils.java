@@ -15,14 +15,13 @@ limitations under the License.
 */
 package net.mojodna.sprout.support;
 
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.web.context.WebApplicationContext;
@@ -35,6 +34,13 @@ import org.springframework.web.context.WebApplicationContext;
 public class SproutUtils {
     private static final Logger log = Logger.getLogger( SproutUtils.class );
     
+    /** Injection plans, attached to the classes they wire. */
+    private static final ClassValue<ConcurrentMap<Class,InjectionPlan>> INJECTION_PLANS = new ClassValue<ConcurrentMap<Class,InjectionPlan>>() {
+        protected ConcurrentMap<Class,InjectionPlan> computeValue(final Class type) {
+            return new ConcurrentHashMap<Class,InjectionPlan>( 2 );
+        }
+    };
+    
     /**
      * Gets a collection of methods declared in a specified range of a given
      * class' hierarchy.
@@ -61,40 +67,17 @@ public class SproutUtils {
      * retrieve appropriate beans from the WebApplicationContext and set them
      * locally.
      * 
+     * <p>Properties are only determined once per class; subsequent
+     * initializations of the same class use a cached
+     * <code>InjectionPlan</code>.</p>
+     * 
      * @param bean Bean to initialize.
      * @param context WebApplicationContext containing Spring beans.
      * @param clazz Type of Sprout.  This is used to determine which declared
      * methods are candidates for auto-wiring.
      */
     public static void initialize(final Object bean, final WebApplicationContext context, final Class clazz) {
-        final Collection<Method> methods = SproutUtils.getDeclaredMethods( bean.getClass(), clazz );
-        
-        final PropertyDescriptor[] descriptors = PropertyUtils.getPropertyDescriptors( bean.getClass() );
-        for ( final PropertyDescriptor descriptor : descriptors ) {
-            final Class type = descriptor.getPropertyType();
-            
-            // beans should never be of type String
-            // there must be a write method present
-            // the write method must exist within the relevant subset of declared methods
-            if ( !type.equals( String.class ) && null != descriptor.getWriteMethod() && methods.contains( descriptor.getWriteMethod() ) ) {
-                final Object serviceBean = context.getBean( descriptor.getName() );
-                if ( null != serviceBean ) {
-                    try {
-                        log.debug("Wiring property '" + descriptor.getName() + "' with bean of type " + serviceBean.getClass().getName() );
-                        PropertyUtils.setProperty( bean, descriptor.getName(), serviceBean );
-                    }
-                    catch (final IllegalAccessException e) {
-                        throw new RuntimeException( e );
-                    }
-                    catch (final InvocationTargetException e) {
-                        throw new RuntimeException( e );
-                    }
-                    catch (final NoSuchMethodException e) {
-                        throw new RuntimeException( e );
-                    }
-                }
-            }
-        }
+        getInjectionPlan( bean.getClass(), clazz ).inject( bean, context );
 
         /**
          * TODO additional lifecycle interface callbacks as defined in BeanFactory
@@ -112,4 +95,23 @@ public class SproutUtils {
             }
         }
     }
+    
+    /**
+     * Gets the (cached) injection plan for a class.
+     * 
+     * @param beanClass Class to be wired.
+     * @param clazz Type of Sprout; see {@link #initialize}.
+     * @return Injection plan.
+     */
+    public static InjectionPlan getInjectionPlan(final Class beanClass, final Class clazz) {
+        final ConcurrentMap<Class,InjectionPlan> plans = INJECTION_PLANS.get( beanClass );
+        InjectionPlan plan = plans.get( clazz );
+        if ( null == plan ) {
+            plan = new InjectionPlan( beanClass, clazz );
+            final InjectionPlan existing = plans.putIfAbsent( clazz, plan );
+            if ( null != existing )
+                plan = existing;
+        }
+        return plan;
+    }
 }
@@ -0,0 +1,207 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.validation;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collection;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.validator.Field;
+import org.apache.commons.validator.Validator;
+import org.apache.commons.validator.ValidatorAction;
+import org.apache.log4j.Logger;
+import org.apache.struts.action.ActionErrors;
+import org.apache.struts.validator.Resources;
+
+/**
+ * <p>Validation rules for a single form (in a single locale), compiled by
+ * {@link ValidatorCompiler}.  Checks are plain Java objects with their
+ * variables (lengths, ranges, patterns) already parsed; commons-validator
+ * is only consulted to build error messages.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public final class CompiledValidator {
+    private static final Logger log = Logger.getLogger( CompiledValidator.class );
+
+    private final String formName;
+    private final CompiledField[] fields;
+
+    CompiledValidator(final String formName, final CompiledField[] fields) {
+        this.formName = formName;
+        this.fields = fields;
+    }
+
+    /**
+     * Validates a form, as <code>ValidatorForm.validate()</code> would.  As
+     * with commons-validator, the rules for each field are applied in order
+     * until one fails; fields on later pages are skipped.
+     *
+     * @param bean Form to validate.
+     * @param page Current page of a multi-page form.
+     * @param failFast Whether to stop at the first invalid field.
+     * @return Errors, or null if the form is valid.
+     */
+    public ActionErrors validate(final Object bean, final int page, final ServletContext application, final HttpServletRequest request, final boolean failFast) {
+        ActionErrors errors = null;
+        Validator validator = null;
+
+        for ( int i = 0; i < fields.length; i++ ) {
+            final CompiledField field = fields[i];
+            if ( field.page > page )
+                continue;
+
+            final Rule failed = field.validate( bean, request );
+            if ( null == failed )
+                continue;
+
+            if ( null == errors ) {
+                errors = new ActionErrors();
+                // only needed to resolve messages the way FieldChecks does
+                validator = Resources.initValidator( formName, bean, application, request, errors, page );
+            }
+            errors.add( field.field.getKey(), Resources.getActionMessage( validator, request, failed.action, field.field ) );
+            if ( failFast )
+                break;
+        }
+        return errors;
+    }
+
+    /**
+     * A single check, equivalent to one of the methods of
+     * <code>FieldChecks</code>.
+     */
+    abstract static class Rule {
+        final ValidatorAction action;
+
+        Rule(final ValidatorAction action) {
+            this.action = action;
+        }
+
+        /**
+         * @param value Property value, as a String (may be null).
+         */
+        abstract boolean isValid(String value, HttpServletRequest request);
+    }
+
+    /**
+     * A field and the rules that apply to it, including those the rules
+     * themselves depend on.
+     */
+    static final class CompiledField {
+        final Field field;
+        final int page;
+        private final String property;
+        private final Rule[] rules;
+        /** Getter for the last non-DynaBean class seen. */
+        private volatile Accessor accessor;
+
+        CompiledField(final Field field, final Rule[] rules) {
+            this.field = field;
+            this.page = field.getPage();
+            this.property = field.getProperty();
+            this.rules = rules;
+        }
+
+        /**
+         * @return The first rule that failed, or null.
+         */
+        Rule validate(final Object bean, final HttpServletRequest request) {
+            final String value = getValueAsString( bean );
+            for ( int i = 0; i < rules.length; i++ ) {
+                if ( !rules[i].isValid( value, request ) )
+                    return rules[i];
+            }
+            return null;
+        }
+
+        /**
+         * Equivalent of <code>ValidatorUtils.getValueAsString()</code>.
+         */
+        private String getValueAsString(final Object bean) {
+            final Object value = getValue( bean );
+            if ( null == value )
+                return null;
+            else if ( value instanceof String[] )
+                return ((String[]) value).length > 0 ? value.toString() : "";
+            else if ( value instanceof Collection )
+                return ((Collection) value).isEmpty() ? "" : value.toString();
+            return value.toString();
+        }
+
+        private Object getValue(final Object bean) {
+            if ( bean instanceof DynaBean ) {
+                try {
+                    return ((DynaBean) bean).get( property );
+                }
+                catch (final IllegalArgumentException e) {
+                    log.error( e.getMessage(), e );
+                    return null;
+                }
+            }
+
+            Accessor a = accessor;
+            if ( null == a || a.type != bean.getClass() )
+                accessor = a = new Accessor( bean.getClass(), property );
+            if ( null == a.getter )
+                return null;
+
+            try {
+                return a.getter.invoke( bean );
+            }
+            catch (final RuntimeException e) {
+                throw e;
+            }
+            catch (final Throwable t) {
+                log.error( t.getMessage(), t );
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Getter of a property of a (non-DynaBean) form class.
+     */
+    private static final class Accessor {
+        final Class type;
+        final MethodHandle getter;
+
+        Accessor(final Class type, final String property) {
+            this.type = type;
+            MethodHandle getter = null;
+            try {
+                final PropertyDescriptor[] descriptors = Introspector.getBeanInfo( type ).getPropertyDescriptors();
+                for ( int i = 0; i < descriptors.length; i++ ) {
+                    if ( descriptors[i].getName().equals( property ) && null != descriptors[i].getReadMethod() )
+                        getter = MethodHandles.publicLookup().unreflect( descriptors[i].getReadMethod() ).asType( MethodType.methodType( Object.class, Object.class ) );
+                }
+                if ( null == getter )
+                    log.error("No getter for '" + property + "' in " + type.getName() );
+            }
+            catch (final Exception e) {
+                log.error("Unable to access '" + property + "' in " + type.getName(), e );
+            }
+            this.getter = getter;
+        }
+    }
+}
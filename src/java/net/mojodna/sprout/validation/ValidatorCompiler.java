@@ -0,0 +1,363 @@
+/*
+Copyright 2005-2006 Seth Fitzsimmons <seth@mojodna.net>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.mojodna.sprout.validation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import net.mojodna.sprout.validation.CompiledValidator.CompiledField;
+import net.mojodna.sprout.validation.CompiledValidator.Rule;
+
+import org.apache.commons.validator.Field;
+import org.apache.commons.validator.Form;
+import org.apache.commons.validator.GenericTypeValidator;
+import org.apache.commons.validator.GenericValidator;
+import org.apache.commons.validator.UrlValidator;
+import org.apache.commons.validator.ValidatorAction;
+import org.apache.commons.validator.ValidatorResources;
+import org.apache.log4j.Logger;
+import org.apache.struts.util.RequestUtils;
+
+/**
+ * <p>Compiles the forms defined in <em>validation.xml</em> into
+ * {@link CompiledValidator}s, so that validating a request doesn't involve
+ * interpreting the rules or invoking <code>FieldChecks</code>
+ * reflectively.</p>
+ *
+ * <p>The standard rules (those implemented by <code>FieldChecks</code>:
+ * <em>required</em>, <em>minlength</em>, <em>maxlength</em>, <em>mask</em>,
+ * <em>byte</em> through <em>double</em>, <em>date</em>, the <em>range</em>
+ * rules, <em>creditCard</em>, <em>email</em> and <em>url</em>) are
+ * supported, as are rules that depend on them.  Forms using other rules
+ * (<em>requiredif</em>, <em>validwhen</em>, custom ones) or indexed or
+ * nested properties are not compiled and should be validated by
+ * commons-validator as usual.</p>
+ *
+ * <p>Compiled validators are cached by form name and locale.</p>
+ *
+ * @author Seth Fitzsimmons
+ */
+public class ValidatorCompiler {
+    private static final Logger log = Logger.getLogger( ValidatorCompiler.class );
+    private static final String FIELD_CHECKS = "org.apache.struts.validator.FieldChecks";
+    /** Cached in place of forms that could not be compiled. */
+    private static final Object UNSUPPORTED = new Object();
+
+    private final ValidatorResources resources;
+    private final ConcurrentHashMap<Locale,ConcurrentHashMap<String,Object>> validators = new ConcurrentHashMap<Locale,ConcurrentHashMap<String,Object>>();
+
+    public ValidatorCompiler(final ValidatorResources resources) {
+        this.resources = resources;
+    }
+
+    /**
+     * Gets the compiled validator for a form.
+     *
+     * @param formName Validation key (usually the form's name).
+     * @param locale Locale to find form definitions for.
+     * @return Validator (one that accepts anything if the form has no
+     * rules), or null if the form cannot be compiled.
+     */
+    public CompiledValidator getValidator(final String formName, final Locale locale) {
+        ConcurrentHashMap<String,Object> forms = validators.get( locale );
+        if ( null == forms ) {
+            validators.putIfAbsent( locale, new ConcurrentHashMap<String,Object>() );
+            forms = validators.get( locale );
+        }
+
+        Object validator = forms.get( formName );
+        if ( null == validator ) {
+            validator = compile( formName, resources.getForm( locale, formName ) );
+            forms.put( formName, validator );
+        }
+        return UNSUPPORTED == validator ? null : (CompiledValidator) validator;
+    }
+
+    private Object compile(final String formName, final Form form) {
+        final List<CompiledField> fields = new ArrayList<CompiledField>();
+        if ( null != form ) {
+            for ( final Iterator i = form.getFields().iterator(); i.hasNext(); ) {
+                final Field field = (Field) i.next();
+                // commons-validator ignores fields without rules
+                if ( null == field.getDepends() )
+                    continue;
+
+                if ( field.isIndexed() || !isSimple( field.getProperty() ) ) {
+                    log.info("Not compiling validation rules for " + formName + ": " + field.getProperty() + " is not a simple property.");
+                    return UNSUPPORTED;
+                }
+
+                final List<Rule> rules = new ArrayList<Rule>();
+                final Set<String> seen = new HashSet<String>();
+                for ( final Iterator j = field.getDependencyList().iterator(); j.hasNext(); ) {
+                    final String name = (String) j.next();
+                    if ( !addRules( field, name, rules, seen ) ) {
+                        log.info("Not compiling validation rules for " + formName + ": '" + name + "' (for " + field.getProperty() + ") is not supported.");
+                        return UNSUPPORTED;
+                    }
+                }
+                fields.add( new CompiledField( field, rules.toArray( new Rule[ rules.size() ] ) ) );
+            }
+        }
+        return new CompiledValidator( formName, fields.toArray( new CompiledField[ fields.size() ] ) );
+    }
+
+    /**
+     * Adds the rules an action depends on, followed by the action itself.
+     * Rules already added are skipped; since rules are applied until one
+     * fails, re-applying them would not change the outcome.
+     *
+     * @return Whether all of them could be compiled.
+     */
+    private boolean addRules(final Field field, final String name, final List<Rule> rules, final Set<String> seen) {
+        if ( !seen.add( name ) )
+            return true;
+
+        final ValidatorAction action = resources.getValidatorAction( name );
+        if ( null == action )
+            return false;
+
+        for ( final Iterator i = action.getDependencyList().iterator(); i.hasNext(); ) {
+            if ( !addRules( field, (String) i.next(), rules, seen ) )
+                return false;
+        }
+
+        final Rule rule = createRule( action, field );
+        if ( null == rule )
+            return false;
+        rules.add( rule );
+        return true;
+    }
+
+    /**
+     * Creates the equivalent of a <code>FieldChecks</code> method.
+     *
+     * @return Rule, or null if the action is not one of the standard ones
+     * or its variables are invalid.
+     */
+    private Rule createRule(final ValidatorAction action, final Field field) {
+        if ( !FIELD_CHECKS.equals( action.getClassname() ) )
+            return null;
+
+        final String method = action.getMethod();
+        try {
+            if ( "validateRequired".equals( method ) ) {
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return !GenericValidator.isBlankOrNull( value );
+                    }
+                };
+            } else if ( "validateMinLength".equals( method ) ) {
+                final int min = Integer.parseInt( field.getVarValue("minlength") );
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || value.length() >= min;
+                    }
+                };
+            } else if ( "validateMaxLength".equals( method ) ) {
+                final int max = Integer.parseInt( field.getVarValue("maxlength") );
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return null == value || value.length() <= max;
+                    }
+                };
+            } else if ( "validateMask".equals( method ) ) {
+                final String mask = field.getVarValue("mask");
+                if ( null == mask || 0 == mask.length() )
+                    return null;
+                // FieldChecks uses Perl5 matching, i.e. find() rather than matches()
+                final Pattern pattern = Pattern.compile( mask );
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || pattern.matcher( value ).find();
+                    }
+                };
+            } else if ( "validateByte".equals( method ) ) {
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || null != GenericTypeValidator.formatByte( value );
+                    }
+                };
+            } else if ( "validateShort".equals( method ) ) {
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || null != GenericTypeValidator.formatShort( value );
+                    }
+                };
+            } else if ( "validateInteger".equals( method ) ) {
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || null != GenericTypeValidator.formatInt( value );
+                    }
+                };
+            } else if ( "validateLong".equals( method ) ) {
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || null != GenericTypeValidator.formatLong( value );
+                    }
+                };
+            } else if ( "validateFloat".equals( method ) ) {
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || null != GenericTypeValidator.formatFloat( value );
+                    }
+                };
+            } else if ( "validateDouble".equals( method ) ) {
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || null != GenericTypeValidator.formatDouble( value );
+                    }
+                };
+            } else if ( "validateDate".equals( method ) ) {
+                final String pattern = field.getVarValue("datePattern");
+                final String strictPattern = field.getVarValue("datePatternStrict");
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        if ( GenericValidator.isBlankOrNull( value ) )
+                            return true;
+                        else if ( null != pattern && pattern.length() > 0 )
+                            return null != GenericTypeValidator.formatDate( value, pattern, false );
+                        else if ( null != strictPattern && strictPattern.length() > 0 )
+                            return null != GenericTypeValidator.formatDate( value, strictPattern, true );
+                        return null != GenericTypeValidator.formatDate( value, RequestUtils.getUserLocale( request, null ) );
+                    }
+                };
+            } else if ( "validateIntRange".equals( method ) ) {
+                final int min = Integer.parseInt( field.getVarValue("min") );
+                final int max = Integer.parseInt( field.getVarValue("max") );
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        if ( GenericValidator.isBlankOrNull( value ) )
+                            return true;
+                        try {
+                            return GenericValidator.isInRange( Integer.parseInt( value ), min, max );
+                        }
+                        catch (final NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                };
+            } else if ( "validateFloatRange".equals( method ) ) {
+                final float min = Float.parseFloat( field.getVarValue("min") );
+                final float max = Float.parseFloat( field.getVarValue("max") );
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        if ( GenericValidator.isBlankOrNull( value ) )
+                            return true;
+                        try {
+                            return GenericValidator.isInRange( Float.parseFloat( value ), min, max );
+                        }
+                        catch (final NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                };
+            } else if ( "validateDoubleRange".equals( method ) ) {
+                final double min = Double.parseDouble( field.getVarValue("min") );
+                final double max = Double.parseDouble( field.getVarValue("max") );
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        if ( GenericValidator.isBlankOrNull( value ) )
+                            return true;
+                        try {
+                            return GenericValidator.isInRange( Double.parseDouble( value ), min, max );
+                        }
+                        catch (final NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                };
+            } else if ( "validateCreditCard".equals( method ) ) {
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || null != GenericTypeValidator.formatCreditCard( value );
+                    }
+                };
+            } else if ( "validateEmail".equals( method ) ) {
+                return new Rule( action ) {
+                    boolean isValid(final String value, final HttpServletRequest request) {
+                        return GenericValidator.isBlankOrNull( value ) || GenericValidator.isEmail( value );
+                    }
+                };
+            } else if ( "validateUrl".equals( method ) ) {
+                return createUrlRule( action, field );
+            }
+        }
+        catch (final NumberFormatException e) {
+            log.warn("Invalid variable for '" + action.getName() + "' (for " + field.getProperty() + "): " + e.getMessage() );
+        }
+        catch (final NullPointerException e) {
+            log.warn("Missing variable for '" + action.getName() + "' (for " + field.getProperty() + ")");
+        }
+        catch (final PatternSyntaxException e) {
+            log.warn("Invalid mask for " + field.getProperty() + ": " + e.getMessage() );
+        }
+        return null;
+    }
+
+    private Rule createUrlRule(final ValidatorAction action, final Field field) {
+        int options = 0;
+        if ( "true".equalsIgnoreCase( field.getVarValue("allowallschemes") ) )
+            options |= UrlValidator.ALLOW_ALL_SCHEMES;
+        if ( "true".equalsIgnoreCase( field.getVarValue("allow2slashes") ) )
+            options |= UrlValidator.ALLOW_2_SLASHES;
+        if ( "true".equalsIgnoreCase( field.getVarValue("nofragments") ) )
+            options |= UrlValidator.NO_FRAGMENTS;
+
+        final String schemesVar = field.getVarValue("schemes");
+        if ( 0 == options && null == schemesVar ) {
+            return new Rule( action ) {
+                boolean isValid(final String value, final HttpServletRequest request) {
+                    return GenericValidator.isBlankOrNull( value ) || GenericValidator.isUrl( value );
+                }
+            };
+        }
+
+        String[] schemes = null;
+        if ( null != schemesVar ) {
+            final StringTokenizer st = new StringTokenizer( schemesVar, "," );
+            schemes = new String[ st.countTokens() ];
+            for ( int i = 0; st.hasMoreTokens(); i++ )
+                schemes[i] = st.nextToken().trim();
+        }
+
+        final UrlValidator validator = new UrlValidator( schemes, options );
+        return new Rule( action ) {
+            boolean isValid(final String value, final HttpServletRequest request) {
+                return GenericValidator.isBlankOrNull( value ) || validator.isValid( value );
+            }
+        };
+    }
+
+    private static boolean isSimple(final String property) {
+        for ( int i = 0; i < property.length(); i++ ) {
+            final char c = property.charAt( i );
+            if ( '.' == c || '[' == c || '(' == c )
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+
+<%--
+This is displayed by the typedExample() method in ExampleAction.
+
+GreetingForm is a typed form; its properties are accessed with getters
+rather than by name.
+--%>
+
+<html>
+<body>
+<p>This is a typed example.</p>
+<p>Name: <c:out value="${GreetingForm.name}" /><br />
+ID: ${GreetingForm.id}</p>
+</body>
+</html>